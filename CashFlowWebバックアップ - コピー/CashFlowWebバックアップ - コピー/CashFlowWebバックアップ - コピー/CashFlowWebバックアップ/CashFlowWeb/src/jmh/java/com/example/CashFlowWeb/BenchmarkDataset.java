@@ -0,0 +1,148 @@
+package com.example.CashFlowWeb;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ベンチマーク用の合成データセット。
+ * 件数ごとに別のSQLiteファイル (target/jmh-data/cashflow-r{版}-{rows}.db) を作成し、
+ * 作成済みであれば次回以降はそのまま再利用します。
+ * データはすべてベンチマーク用ユーザー1人の所有として作成します。
+ * 乱数の種と期間は固定なので、同じ件数なら何度作り直しても同じデータになります。
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDataset {
+
+    // データの最終日（実行日に左右されないよう固定）
+    static final LocalDate LAST_DAY = LocalDate.of(2025, 12, 31);
+    // データの期間（5年分）
+    static final int SPAN_DAYS = 5 * 365;
+
+    // データの作り方を変えたら上げる（古いファイルは使われなくなる）
+    private static final int DATASET_REVISION = 2;
+    private static final String BENCH_USER = "bench";
+    private static final long SEED = 20240101L;
+    private static final int CHUNK_SIZE = 5000;
+
+    private static final String[] EXPENSE_CATEGORIES = {
+        "食費", "日用品", "住居費", "水道光熱費", "通信費", "交通費", "医療費", "教育費",
+        "交際費", "趣味・娯楽", "衣服・美容", "保険", "税金", "車両費", "特別な支出"
+    };
+    private static final String[] INCOME_CATEGORIES = {"給与", "賞与", "副業", "臨時収入"};
+
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    int userId;
+    TransactionDAO transactionDAO;
+    CategoryDAO categoryDAO;
+    BudgetDAO budgetDAO;
+    List<Category> categories;
+    int expenseCategoryId;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        Path dir = Paths.get("target", "jmh-data");
+        Files.createDirectories(dir);
+        String baseName = "cashflow-r" + DATASET_REVISION + "-" + rows;
+        Path db = dir.resolve(baseName + ".db");
+        Path marker = dir.resolve(baseName + ".done");
+
+        boolean seeded = Files.exists(marker);
+        if (!seeded) {
+            // 途中で中断されたファイルは使わない
+            Files.deleteIfExists(db);
+        }
+        // DBManager はこの時点で初めて読み込まれ、ここで指定したファイルに接続する（JMHはフォークごとに別JVM）
+        System.setProperty("cashflow.sqlite.path", db.toString());
+        DBManager.initializeDatabase();
+
+        transactionDAO = new TransactionDAO();
+        categoryDAO = new CategoryDAO();
+        budgetDAO = new BudgetDAO();
+
+        UserDAO userDAO = new UserDAO();
+        if (!seeded) {
+            userDAO.saveUser(new User(BENCH_USER, "-"));
+        }
+        userId = userDAO.findByUsername(BENCH_USER).getId();
+
+        if (!seeded) {
+            long start = System.nanoTime();
+            seed();
+            Files.createFile(marker);
+            System.out.printf("データセットを作成しました: %d件 (%.1f秒)%n", rows, (System.nanoTime() - start) / 1e9);
+        }
+
+        categoryDAO.initializeCache();
+        categories = categoryDAO.getAllCategories(userId);
+        expenseCategoryId = categories.stream()
+                .filter(c -> "EXPENSE".equals(c.getType()))
+                .mapToInt(Category::getId)
+                .min()
+                .orElse(0);
+    }
+
+    /**
+     * カテゴリ・予算・取引を作成します。
+     * 取引は日付順に並べて一括登録APIで書き込みます（実際の明細の取り込みと同じ順序）。
+     */
+    private void seed() throws SQLException {
+        for (String name : EXPENSE_CATEGORIES) {
+            categoryDAO.addCategory(userId, name, "EXPENSE");
+        }
+        for (String name : INCOME_CATEGORIES) {
+            categoryDAO.addCategory(userId, name, "INCOME");
+        }
+        List<Integer> expenseIds = new ArrayList<>();
+        List<Integer> incomeIds = new ArrayList<>();
+        for (Category category : categoryDAO.getAllCategories(userId)) {
+            ("INCOME".equals(category.getType()) ? incomeIds : expenseIds).add(category.getId());
+        }
+
+        LocalDate firstDay = LAST_DAY.minusDays(SPAN_DAYS - 1);
+        YearMonth lastMonth = YearMonth.from(LAST_DAY);
+        for (YearMonth month = YearMonth.from(firstDay); !month.isAfter(lastMonth); month = month.plusMonths(1)) {
+            for (int categoryId : expenseIds) {
+                budgetDAO.saveOrUpdateBudget(userId, month.toString(), categoryId, 30_000);
+            }
+        }
+
+        Random random = new Random(SEED);
+        List<Transaction> chunk = new ArrayList<>(CHUNK_SIZE);
+        for (long i = 0; i < rows; i++) {
+            LocalDate date = firstDay.plusDays(i * SPAN_DAYS / rows);
+            boolean income = random.nextInt(10) == 0;
+            int categoryId = income
+                    ? incomeIds.get(random.nextInt(incomeIds.size()))
+                    : expenseIds.get(random.nextInt(expenseIds.size()));
+            double amount = income
+                    ? 50_000 + random.nextInt(250_000)
+                    : 100 + random.nextInt(20_000);
+            boolean isFuture = random.nextInt(100) == 0;
+            boolean isExtraordinary = random.nextInt(50) == 0;
+            chunk.add(new Transaction(date, amount, income ? "INCOME" : "EXPENSE", categoryId, isFuture, isExtraordinary));
+
+            if (chunk.size() == CHUNK_SIZE) {
+                transactionDAO.addTransactions(userId, chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            transactionDAO.addTransactions(userId, chunk);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.CashFlowWeb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 取引の列ストアによるカテゴリ別集計のベンチマーク。
+ * DaoBenchmark の categorySummaryMonth / categorySummaryYear（SQLでの集計）と同じ期間で比較できます。
+ *
+ * 実行例: ./mvnw -Pjmh test-compile exec:exec -Djmh.args="ColumnarStoreBenchmark -p rows=1000000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ColumnarStoreBenchmark {
+
+    private static final LocalDate LAST_DAY = BenchmarkDataset.LAST_DAY;
+
+    private ColumnarTransactionStore store;
+    private int userId;
+
+    @Setup
+    public void setUp(BenchmarkDataset dataset) {
+        userId = dataset.userId;
+        // 共有インスタンスは設定で無効になっているため、ベンチマーク専用に有効なストアを作る
+        store = new ColumnarTransactionStore(true);
+        store.loadAll();
+    }
+
+    /** 1ヶ月分のカテゴリ別支出 */
+    @Benchmark
+    public Map<Integer, Long> sumByCategoryMonth() {
+        return store.sumByCategory(userId, LAST_DAY.withDayOfMonth(1), LAST_DAY, "EXPENSE", false);
+    }
+
+    /** 1年分のカテゴリ別支出 */
+    @Benchmark
+    public Map<Integer, Long> sumByCategoryYear() {
+        return store.sumByCategory(userId, LAST_DAY.minusYears(1).plusDays(1), LAST_DAY, "EXPENSE", false);
+    }
+
+    /** 全期間のカテゴリ別支出（全件の走査） */
+    @Benchmark
+    public Map<Integer, Long> sumByCategoryAll() {
+        return store.sumByCategory(userId, LocalDate.MIN.withYear(1), LAST_DAY, "EXPENSE", false);
+    }
+}
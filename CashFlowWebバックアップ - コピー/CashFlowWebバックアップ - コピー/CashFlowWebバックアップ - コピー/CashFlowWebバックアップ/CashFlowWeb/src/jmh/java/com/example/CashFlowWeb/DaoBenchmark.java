@@ -0,0 +1,102 @@
+package com.example.CashFlowWeb;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DAO と予測APIの主要な読み取り処理のベンチマーク。
+ * 対象期間はデータセットの最終日を基準に固定しているため、件数を変えても同じ条件で比較できます。
+ *
+ * 実行例: ./mvnw -Pjmh test-compile exec:exec -Djmh.args="DaoBenchmark -p rows=10000,1000000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoBenchmark {
+
+    private static final LocalDate LAST_DAY = BenchmarkDataset.LAST_DAY;
+    private static final LocalDate MONTH_START = LAST_DAY.withDayOfMonth(1);
+    private static final YearMonth LAST_MONTH = YearMonth.from(LAST_DAY);
+
+    private TransactionDAO transactionDAO;
+    private BudgetDAO budgetDAO;
+    private TransactionController transactionController;
+    private User user;
+    private int categoryId;
+
+    @Setup
+    public void setUp(BenchmarkDataset dataset) {
+        transactionDAO = dataset.transactionDAO;
+        budgetDAO = dataset.budgetDAO;
+        categoryId = dataset.expenseCategoryId;
+        user = new User(dataset.userId, "bench", null);
+        transactionController = new TransactionController(new ObjectMapper().findAndRegisterModules(), dataset.categoryDAO);
+    }
+
+    /** 直近30日分の取引一覧（絞り込みなし） */
+    @Benchmark
+    public List<Transaction> filteredLast30Days() {
+        return transactionDAO.getFilteredTransactions(user.getId(), LAST_DAY.minusDays(29), LAST_DAY, null, null);
+    }
+
+    /** 1ヶ月分の取引一覧（カテゴリと区分で絞り込み） */
+    @Benchmark
+    public List<Transaction> filteredMonthByCategory() {
+        return transactionDAO.getFilteredTransactions(user.getId(), MONTH_START, LAST_DAY, categoryId, "EXPENSE");
+    }
+
+    @Benchmark
+    public double currentBalance() {
+        return transactionDAO.calculateCurrentBalance(user.getId());
+    }
+
+    @Benchmark
+    public List<MonthlySummary> monthlySummary() {
+        return transactionDAO.getMonthlySummary(user.getId());
+    }
+
+    /** 1ヶ月分のカテゴリ別支出 */
+    @Benchmark
+    public List<CategorySummary> categorySummaryMonth() {
+        return transactionDAO.getCategorySummary(user.getId(), MONTH_START, LAST_DAY, "EXPENSE");
+    }
+
+    /** 1年分のカテゴリ別支出 */
+    @Benchmark
+    public List<CategorySummary> categorySummaryYear() {
+        return transactionDAO.getCategorySummary(user.getId(), LAST_DAY.minusYears(1).plusDays(1), LAST_DAY, "EXPENSE");
+    }
+
+    @Benchmark
+    public List<Budget> budgetsForMonth() {
+        return budgetDAO.getBudgetsForMonth(user.getId(), LAST_MONTH);
+    }
+
+    /** /api/transactions/predict と同じ計算（HTTP層を除く） */
+    @Benchmark
+    public ResponseEntity<PredictionResult> predict() {
+        return transactionController.predictTargetAchievement(user, 5_000_000, 24, null, 42L,
+                new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse()));
+    }
+}
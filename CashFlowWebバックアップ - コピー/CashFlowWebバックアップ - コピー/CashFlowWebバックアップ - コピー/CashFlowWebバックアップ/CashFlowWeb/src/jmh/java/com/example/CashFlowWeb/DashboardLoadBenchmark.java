@@ -0,0 +1,103 @@
+package com.example.CashFlowWeb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ダッシュボードへの同時リクエストの負荷試験（プラットフォームスレッドと仮想スレッドの比較）。
+ *
+ * 1リクエストは、ダッシュボードの表示と同じく残高と月次集計をDBから読み（バルクヘッド経由）、
+ * 続いてクライアントへの書き出しを clientMillis だけ待つ、という処理です（回線の遅いモバイル端末を想定）。
+ * concurrency 件を同時に投げ、すべて終わるまでを1回として、1秒あたりの処理リクエスト数を測ります。
+ *   platform … Tomcat の既定と同じ200スレッドのプール。待ち時間の間もスレッドを占有する
+ *   virtual  … リクエストごとに仮想スレッド（Java 21以降のみ。spring.threads.virtual.enabled=true 相当）
+ * DBの同時実行数はどちらもバルクヘッドで接続プールの上限に抑えられます。
+ *
+ * 実行例: ./mvnw -Pjmh test-compile exec:exec -Djmh.args="DashboardLoadBenchmark -p rows=10000"
+ * （Java 17 で実行する場合は -p executor=platform を付ける）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class DashboardLoadBenchmark {
+
+    // Tomcat の server.tomcat.threads.max の既定値
+    private static final int PLATFORM_THREADS = 200;
+    private static final int CONCURRENCY = 2000;
+
+    @Param({"platform", "virtual"})
+    public String executor;
+
+    // 1000ms ではプラットフォームスレッドは 200スレッド / 1秒 で頭打ちになり、仮想スレッドはDBの処理能力まで伸びる
+    @Param({"20", "1000"})
+    public int clientMillis;
+
+    private ExecutorService pool;
+    private TransactionDAO transactionDAO;
+    private int userId;
+
+    @Setup
+    public void setUp(BenchmarkDataset dataset) throws ReflectiveOperationException {
+        transactionDAO = dataset.transactionDAO;
+        userId = dataset.userId;
+        if (executor.equals("virtual")) {
+            // ビルドは Java 17 のため、仮想スレッドのAPIはリフレクションで呼ぶ
+            try {
+                pool = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("仮想スレッドには Java 21 以降が必要です（-p executor=platform で実行してください）", e);
+            }
+        } else {
+            pool = Executors.newFixedThreadPool(PLATFORM_THREADS);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONCURRENCY)
+    public double dashboardRequests() throws InterruptedException, ExecutionException {
+        List<Future<Double>> responses = new ArrayList<>(CONCURRENCY);
+        for (int i = 0; i < CONCURRENCY; i++) {
+            responses.add(pool.submit(this::dashboardRequest));
+        }
+        double sum = 0;
+        for (Future<Double> response : responses) {
+            sum += response.get();
+        }
+        return sum;
+    }
+
+    private double dashboardRequest() throws InterruptedException {
+        double balance = transactionDAO.calculateCurrentBalance(userId);
+        int months = transactionDAO.getMonthlySummary(userId).size();
+        // レスポンスの書き出し（遅いクライアント）
+        Thread.sleep(clientMillis);
+        return balance + months;
+    }
+}
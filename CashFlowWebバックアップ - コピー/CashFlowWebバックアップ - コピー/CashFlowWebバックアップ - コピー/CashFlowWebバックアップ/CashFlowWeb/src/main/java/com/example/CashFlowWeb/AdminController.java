@@ -0,0 +1,223 @@
+package com.example.CashFlowWeb;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 運用・監視用のAPIコントローラー。
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    private final RollupDAO rollupDAO = new RollupDAO();
+    private final AssetPriceDAO assetPriceDAO = new AssetPriceDAO();
+    private final CategoryDAO categoryDAO;
+    private final RecurringTransactionScheduler recurringScheduler;
+    private final DatabaseBackupService backupService;
+
+    // 価格フィードのファイル（未設定なら /prices/feed は 404）
+    @Value("${cashflow.price-feed.file:}")
+    private String priceFeedFile;
+
+    public AdminController(CategoryDAO categoryDAO, RecurringTransactionScheduler recurringScheduler,
+                           DatabaseBackupService backupService) {
+        this.categoryDAO = categoryDAO;
+        this.recurringScheduler = recurringScheduler;
+        this.backupService = backupService;
+    }
+
+    /**
+     * コネクションプールの利用状況（使用中/待機中の接続数、接続待ち時間）を取得します。
+     */
+    @GetMapping("/pool")
+    public PoolStats getPoolStats() {
+        return DBManager.getPoolStats();
+    }
+
+    /**
+     * SQLiteの書き込みキューの状況（待ち件数、コミット回数、1回のコミットあたりの書き込み数）を取得します。
+     */
+    @GetMapping("/write-queue")
+    public WriteQueueStats getWriteQueueStats() {
+        return DBManager.getWriteQueueStats();
+    }
+
+    /**
+     * 閾値 (DB_SLOW_QUERY_MS) を超えたSQLの記録を取得します。直近の実行と、文ごとの最大実行時間・実行計画を含みます。
+     */
+    @GetMapping("/slow-queries")
+    public SlowQueryReport getSlowQueries() {
+        return QueryTracer.getReport();
+    }
+
+    /**
+     * 遅いSQLの記録を消去します（インデックスを追加した後に測り直す場合など）。
+     */
+    @DeleteMapping("/slow-queries")
+    public SlowQueryReport clearSlowQueries() {
+        QueryTracer.reset();
+        return QueryTracer.getReport();
+    }
+
+    /**
+     * 月次集計を取引テーブルから作り直します。
+     */
+    @PostMapping("/rollups/rebuild")
+    public ResponseEntity<Boolean> rebuildRollups() {
+        boolean isSuccess = rollupDAO.rebuild();
+        // 残高・集計の結果が変わりうるため、クライアントのキャッシュを無効にする
+        DataVersions.bumpAll();
+        return isSuccess ? ResponseEntity.ok(true) : ResponseEntity.internalServerError().body(false);
+    }
+
+    /**
+     * 月次集計と取引テーブルの整合性をチェックします。
+     */
+    @GetMapping("/rollups/check")
+    public ResponseEntity<RollupCheckResult> checkRollups() {
+        RollupCheckResult result = rollupDAO.checkConsistency();
+        return result != null ? ResponseEntity.ok(result) : ResponseEntity.internalServerError().build();
+    }
+
+    /**
+     * カテゴリキャッシュの状態（世代、件数、ヒット/ミス数）を取得します。
+     */
+    @GetMapping("/cache/categories")
+    public CategoryCacheStats getCategoryCacheStats() {
+        return categoryDAO.getCacheStats();
+    }
+
+    /**
+     * カテゴリキャッシュをDBから読み直します（DBを直接変更した場合など）。
+     */
+    @PostMapping("/cache/categories/refresh")
+    public CategoryCacheStats refreshCategoryCache() {
+        categoryDAO.refreshCache();
+        DataVersions.bumpAll();
+        return categoryDAO.getCacheStats();
+    }
+
+    /**
+     * 取引の列ストアの状態（読み込み済みユーザー数、件数、メモリ使用量）を取得します。
+     */
+    @GetMapping("/cache/transactions")
+    public ColumnarStoreStats getColumnarStoreStats() {
+        return ColumnarTransactionStore.getInstance().getStats();
+    }
+
+    /**
+     * 取引の列ストアをDBから読み直します（DBを直接変更した場合など）。
+     */
+    @PostMapping("/cache/transactions/refresh")
+    public ColumnarStoreStats refreshColumnarStore() {
+        ColumnarTransactionStore store = ColumnarTransactionStore.getInstance();
+        store.invalidateAll();
+        store.loadAll();
+        DataVersions.bumpAll();
+        return store.getStats();
+    }
+
+    /**
+     * 価格のCSV（銘柄コード,日付,価格）をアップロードして価格履歴に取り込みます。
+     */
+    @PostMapping("/prices/import")
+    public ResponseEntity<ImportResult> importPrices(@RequestParam("file") MultipartFile file) throws IOException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8), 1 << 16)) {
+            return ResponseEntity.ok(assetPriceDAO.importCsv(reader));
+        }
+    }
+
+    /**
+     * 設定した価格フィードのファイル (cashflow.price-feed.file) を読み、価格履歴に取り込みます。
+     * 外部の価格配信の代わりに、定期的に書き出されるファイルを取り込む想定です。
+     */
+    @PostMapping("/prices/feed")
+    public ResponseEntity<ImportResult> importPriceFeed() throws IOException {
+        if (priceFeedFile == null || priceFeedFile.isBlank()) {
+            return ResponseEntity.notFound().build();
+        }
+        Path path = Path.of(priceFeedFile);
+        if (!Files.isReadable(path)) {
+            return ResponseEntity.notFound().build();
+        }
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return ResponseEntity.ok(assetPriceDAO.importCsv(reader));
+        }
+    }
+
+    /**
+     * メモリ上の価格履歴の状態（銘柄数、点の数、符号化後のバイト数）を取得します。
+     */
+    @GetMapping("/prices/stats")
+    public PriceHistoryStats getPriceHistoryStats() {
+        return AssetPriceDAO.getStats();
+    }
+
+    /**
+     * 定期取引の期日を迎えた回を、スケジューラーの実行を待たずに取引として登録します。登録した件数を返します。
+     */
+    @PostMapping("/recurring/run")
+    public int runRecurringScheduler() {
+        return recurringScheduler.runNow();
+    }
+
+    /**
+     * DBのスナップショットの一覧を新しい順に取得します（SQLiteのみ）。
+     */
+    @GetMapping("/backups")
+    public ResponseEntity<List<BackupInfo>> listBackups() throws IOException {
+        try {
+            return ResponseEntity.ok(backupService.listBackups());
+        } catch (UnsupportedOperationException e) {
+            return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
+        }
+    }
+
+    /**
+     * アプリケーションを止めずにDBのスナップショットを作成します（SQLiteのみ）。定期実行を待たずに取る場合に使います。
+     * 他のバックアップ・リストアを実行中なら 409 を返します。
+     */
+    @PostMapping("/backups")
+    public ResponseEntity<BackupResult> createBackup() throws IOException {
+        try {
+            return ResponseEntity.ok(backupService.backup());
+        } catch (UnsupportedOperationException e) {
+            return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    /**
+     * スナップショットからDBを復元します（SQLiteのみ）。復元の直前の状態もスナップショットとして残します。
+     * 名前が不正、またはスナップショットが壊れている場合は 400、見つからない場合は 404 を返します。
+     */
+    @PostMapping("/backups/{name}/restore")
+    public ResponseEntity<BackupResult> restoreBackup(@PathVariable String name) throws IOException {
+        try {
+            return ResponseEntity.ok(backupService.restore(name));
+        } catch (UnsupportedOperationException e) {
+            return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
+        } catch (NoSuchFileException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+}
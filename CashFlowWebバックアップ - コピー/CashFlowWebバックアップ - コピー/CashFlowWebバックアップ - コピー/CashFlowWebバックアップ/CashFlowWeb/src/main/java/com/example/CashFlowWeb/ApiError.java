@@ -0,0 +1,29 @@
+package com.example.CashFlowWeb;
+
+import java.time.LocalDateTime;
+
+/**
+ * APIのエラー応答の本文を保持するモデルクラス。
+ */
+public class ApiError {
+    private final LocalDateTime timestamp = LocalDateTime.now();
+    private final int status;
+    private final String error;
+    private final String message;
+    private final String path;
+
+    public ApiError(int status, String error, String message, String path) {
+        this.status = status;
+        this.error = error;
+        this.message = message;
+        this.path = path;
+    }
+
+    // --- Getter Methods ---
+    public LocalDateTime getTimestamp() { return timestamp; }
+    public int getStatus() { return status; }
+    /** エラーの種類 (DB_ERROR, DB_BUSY) */
+    public String getError() { return error; }
+    public String getMessage() { return message; }
+    public String getPath() { return path; }
+}
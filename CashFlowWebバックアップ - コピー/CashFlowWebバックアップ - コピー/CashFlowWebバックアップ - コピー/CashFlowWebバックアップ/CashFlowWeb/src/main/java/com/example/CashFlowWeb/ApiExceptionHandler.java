@@ -0,0 +1,31 @@
+package com.example.CashFlowWeb;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * コントローラーから投げられたDBの例外を、エラーの種類がわかるJSONの応答に変換するクラス。
+ * DBのエラーメッセージ（SQLやテーブル名を含みうる）はクライアントに返さず、DaoMetrics のログにだけ出力します。
+ */
+@RestControllerAdvice
+public class ApiExceptionHandler {
+
+    @ExceptionHandler(DaoException.class)
+    public ResponseEntity<ApiError> handleDaoException(DaoException e, HttpServletRequest request) {
+        HttpStatus status = HttpStatus.INTERNAL_SERVER_ERROR;
+        return ResponseEntity.status(status)
+                .body(new ApiError(status.value(), "DB_ERROR", "データベースの処理に失敗しました (" + e.getOperation() + ")", request.getRequestURI()));
+    }
+
+    @ExceptionHandler(DbBusyException.class)
+    public ResponseEntity<ApiError> handleDbBusy(DbBusyException e, HttpServletRequest request) {
+        HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new ApiError(status.value(), "DB_BUSY", e.getMessage(), request.getRequestURI()));
+    }
+}
@@ -9,122 +9,122 @@ import java.util.List;
  */
 public class AssetDAO {
 
+    private static final DaoMetrics METRICS = DaoMetrics.forDao("AssetDAO");
+
     /**
      * 新しい資産を登録します (Create)。
      */
-    public boolean addAsset(Asset asset) {
-        String sql = "INSERT INTO assets(name, ticker_symbol, quantity, purchase_price, current_price, asset_type) VALUES(?, ?, ?, ?, ?, ?)";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, asset.getName());
-            pstmt.setString(2, asset.getTickerSymbol());
-            pstmt.setDouble(3, asset.getQuantity());
-            pstmt.setDouble(4, asset.getPurchasePrice());
-            pstmt.setDouble(5, asset.getCurrentPrice());
-            pstmt.setString(6, asset.getAssetType());
-            
-            pstmt.executeUpdate();
+    public boolean addAsset(int userId, Asset asset) {
+        String sql = "INSERT INTO assets(user_id, name, ticker_symbol, quantity, purchase_price, current_price, asset_type) VALUES(?, ?, ?, ?, ?, ?, ?)";
+        return METRICS.call("addAsset", () -> {
+            DBManager.executeUpdate(sql, pstmt -> {
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, asset.getName());
+                pstmt.setString(3, asset.getTickerSymbol());
+                pstmt.setDouble(4, asset.getQuantity());
+                pstmt.setDouble(5, asset.getPurchasePrice());
+                pstmt.setDouble(6, asset.getCurrentPrice());
+                pstmt.setString(7, asset.getAssetType());
+            });
+            DataVersions.bump(userId, DataVersions.Dataset.ASSETS);
             return true;
-        } catch (SQLException e) {
-            System.err.println("資産登録エラー: " + e.getMessage());
-            return false;
-        }
+        });
     }
 
     /**
-     * 登録されているすべての資産を取得します (Read)。
+     * ユーザーが登録しているすべての資産を取得します (Read)。
      */
-    public List<Asset> getAllAssets() {
-        List<Asset> assets = new ArrayList<>();
-        String sql = "SELECT id, name, ticker_symbol, quantity, purchase_price, current_price, asset_type FROM assets ORDER BY name";
+    public List<Asset> getAllAssets(int userId) {
+        String sql = "SELECT id, name, ticker_symbol, quantity, purchase_price, current_price, asset_type FROM assets WHERE user_id = ? ORDER BY name";
+        return METRICS.call("getAllAssets", () -> {
+            List<Asset> assets = new ArrayList<>();
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-        try (Connection conn = DBManager.connect();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                assets.add(new Asset(
-                    rs.getInt("id"),
-                    rs.getString("name"),
-                    rs.getString("ticker_symbol"),
-                    rs.getDouble("quantity"),
-                    rs.getDouble("purchase_price"),
-                    rs.getDouble("current_price"),
-                    rs.getString("asset_type")
-                ));
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        assets.add(new Asset(
+                            rs.getInt("id"),
+                            rs.getString("name"),
+                            rs.getString("ticker_symbol"),
+                            rs.getDouble("quantity"),
+                            rs.getDouble("purchase_price"),
+                            rs.getDouble("current_price"),
+                            rs.getString("asset_type")
+                        ));
+                    }
+                }
             }
-        } catch (SQLException e) {
-            System.err.println("資産取得エラー: " + e.getMessage());
-        }
-        return assets;
+            return assets;
+        });
     }
 
     /**
      * IDを指定して単一の資産データを取得します。
      */
-    public Asset getAssetById(int id) {
-        String sql = "SELECT id, name, ticker_symbol, quantity, purchase_price, current_price, asset_type FROM assets WHERE id = ?";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return new Asset(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("ticker_symbol"),
-                        rs.getDouble("quantity"),
-                        rs.getDouble("purchase_price"),
-                        rs.getDouble("current_price"),
-                        rs.getString("asset_type")
-                    );
+    public Asset getAssetById(int userId, int id) {
+        String sql = "SELECT id, name, ticker_symbol, quantity, purchase_price, current_price, asset_type FROM assets WHERE id = ? AND user_id = ?";
+        return METRICS.call("getAssetById", () -> {
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, id);
+                pstmt.setInt(2, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        return new Asset(
+                            rs.getInt("id"),
+                            rs.getString("name"),
+                            rs.getString("ticker_symbol"),
+                            rs.getDouble("quantity"),
+                            rs.getDouble("purchase_price"),
+                            rs.getDouble("current_price"),
+                            rs.getString("asset_type")
+                        );
+                    }
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("単一資産の取得エラー: " + e.getMessage());
-        }
-        return null;
+            return null;
+        });
     }
 
     /**
      * 既存の資産情報を更新します (Update)。
      */
-    public boolean updateAsset(Asset asset) {
-        String sql = "UPDATE assets SET name = ?, ticker_symbol = ?, quantity = ?, purchase_price = ?, current_price = ?, asset_type = ? WHERE id = ?";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, asset.getName());
-            pstmt.setString(2, asset.getTickerSymbol());
-            pstmt.setDouble(3, asset.getQuantity());
-            pstmt.setDouble(4, asset.getPurchasePrice());
-            pstmt.setDouble(5, asset.getCurrentPrice());
-            pstmt.setString(6, asset.getAssetType());
-            pstmt.setInt(7, asset.getId());
-
-            int rowsAffected = pstmt.executeUpdate();
+    public boolean updateAsset(int userId, Asset asset) {
+        String sql = "UPDATE assets SET name = ?, ticker_symbol = ?, quantity = ?, purchase_price = ?, current_price = ?, asset_type = ? WHERE id = ? AND user_id = ?";
+        return METRICS.call("updateAsset", () -> {
+            int rowsAffected = DBManager.executeUpdate(sql, pstmt -> {
+                pstmt.setString(1, asset.getName());
+                pstmt.setString(2, asset.getTickerSymbol());
+                pstmt.setDouble(3, asset.getQuantity());
+                pstmt.setDouble(4, asset.getPurchasePrice());
+                pstmt.setDouble(5, asset.getCurrentPrice());
+                pstmt.setString(6, asset.getAssetType());
+                pstmt.setInt(7, asset.getId());
+                pstmt.setInt(8, userId);
+            });
+            if (rowsAffected > 0) {
+                DataVersions.bump(userId, DataVersions.Dataset.ASSETS);
+            }
             return rowsAffected > 0;
-        } catch (SQLException e) {
-            System.err.println("資産更新エラー: " + e.getMessage());
-            return false;
-        }
+        });
     }
 
     /**
      * 指定されたIDの資産を削除します (Delete)。
      */
-    public boolean deleteAsset(int id) {
-        String sql = "DELETE FROM assets WHERE id = ?";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setInt(1, id);
-            int rowsAffected = pstmt.executeUpdate();
+    public boolean deleteAsset(int userId, int id) {
+        String sql = "DELETE FROM assets WHERE id = ? AND user_id = ?";
+        return METRICS.call("deleteAsset", () -> {
+            int rowsAffected = DBManager.executeUpdate(sql, pstmt -> {
+                pstmt.setInt(1, id);
+                pstmt.setInt(2, userId);
+            });
+            if (rowsAffected > 0) {
+                DataVersions.bump(userId, DataVersions.Dataset.ASSETS);
+            }
             return rowsAffected > 0;
-        } catch (SQLException e) {
-            System.err.println("資産削除エラー: " + e.getMessage());
-            return false;
-        }
+        });
     }
-}
\ No newline at end of file
+}
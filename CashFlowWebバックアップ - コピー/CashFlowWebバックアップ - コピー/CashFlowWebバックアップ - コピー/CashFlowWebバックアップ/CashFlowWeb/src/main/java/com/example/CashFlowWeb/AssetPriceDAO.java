@@ -0,0 +1,229 @@
+package com.example.CashFlowWeb;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 銘柄ごとの価格履歴 (asset_prices) を扱うクラス。
+ * 読み込んだ履歴は銘柄ごとに PriceSeries としてメモリに保持し、取り込みで新しい日付が増えた分だけ追記します。
+ */
+public class AssetPriceDAO {
+
+    private static final DaoMetrics METRICS = DaoMetrics.forDao("AssetPriceDAO");
+
+    // 1回のDBトランザクションで書き込む行数
+    private static final int CHUNK_SIZE = 5_000;
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO asset_prices(ticker_symbol, date, price) VALUES(?, ?, ?) " +
+            "ON CONFLICT(ticker_symbol, date) DO UPDATE SET price = excluded.price";
+    // 資産の現在価格を、その銘柄の最新の価格にそろえる
+    private static final String UPDATE_CURRENT_PRICE_SQL =
+            "UPDATE assets SET current_price = (SELECT price FROM asset_prices WHERE ticker_symbol = ? ORDER BY date DESC LIMIT 1) / " +
+            PriceSeries.PRICE_SCALE + ".0 WHERE UPPER(ticker_symbol) = ?";
+
+    // キー: 正規化した銘柄コード
+    private static final Map<String, PriceSeries> SERIES = new ConcurrentHashMap<>();
+
+    /**
+     * 検索・保存用に銘柄コードを正規化（前後の空白除去・大文字化）します。空ならnull。
+     */
+    public static String normalizeTicker(String ticker) {
+        if (ticker == null || ticker.trim().isEmpty()) {
+            return null;
+        }
+        return ticker.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * 銘柄の価格履歴を返します（初回はDBから読み込みます）。読み込めなかった場合はnull。
+     */
+    PriceSeries.Snapshot getSeries(String ticker) {
+        String key = normalizeTicker(ticker);
+        if (key == null) {
+            return null;
+        }
+        PriceSeries series = SERIES.computeIfAbsent(key, this::loadSeries);
+        return series != null ? series.snapshot() : null;
+    }
+
+    private PriceSeries loadSeries(String ticker) {
+        String sql = "SELECT date, price FROM asset_prices WHERE ticker_symbol = ? ORDER BY date";
+        return METRICS.call("loadSeries", () -> {
+            PriceSeries series = new PriceSeries();
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, ticker);
+                pstmt.setFetchSize(10_000);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        series.append(rs.getInt("date"), rs.getLong("price"));
+                    }
+                }
+            }
+            return series;
+        });
+    }
+
+    /**
+     * CSV（銘柄コード,日付(YYYY-MM-DD),価格）から価格を一括で取り込みます。
+     * 同じ銘柄・日付の価格は上書きします。1行目が見出しの場合は読み飛ばします。
+     * 取り込んだ銘柄を持つ資産の現在価格は、その銘柄の最新の価格に更新されます。
+     */
+    public ImportResult importCsv(Reader reader) throws IOException {
+        long start = System.nanoTime();
+        ImportResult result = new ImportResult();
+        TransactionImporter.CsvReader csv = new TransactionImporter.CsvReader(reader);
+        Map<String, List<long[]>> pointsByTicker = new HashMap<>();
+        List<Object[]> chunk = new ArrayList<>(CHUNK_SIZE);
+
+        List<String> record;
+        boolean first = true;
+        while ((record = csv.readRecord()) != null) {
+            long line = csv.getRecordLine();
+            boolean header = first && record.size() >= 3 && !record.get(2).trim().isEmpty()
+                    && !Character.isDigit(record.get(2).trim().charAt(0));
+            first = false;
+            if (header) {
+                continue;
+            }
+            result.addProcessed(1);
+            if (record.size() < 3) {
+                result.addError(line, "列が足りません（銘柄コード,日付,価格）");
+                continue;
+            }
+            String ticker = normalizeTicker(record.get(0));
+            if (ticker == null) {
+                result.addError(line, "銘柄コードが空です");
+                continue;
+            }
+            int day;
+            long price;
+            try {
+                day = (int) LocalDate.parse(record.get(1).trim()).toEpochDay();
+                price = PriceSeries.toScaled(Double.parseDouble(record.get(2).trim()));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                result.addError(line, "日付または価格の形式が正しくありません: " + e.getMessage());
+                continue;
+            }
+            if (price < 0) {
+                result.addError(line, "価格が負の値です");
+                continue;
+            }
+            chunk.add(new Object[] {ticker, day, price});
+            pointsByTicker.computeIfAbsent(ticker, k -> new ArrayList<>()).add(new long[] {day, price});
+            if (chunk.size() >= CHUNK_SIZE) {
+                if (!writeChunk(chunk, null, result)) {
+                    return finish(result, start, pointsByTicker, false);
+                }
+            }
+        }
+        boolean success = writeChunk(chunk, pointsByTicker.keySet(), result);
+        return finish(result, start, pointsByTicker, success);
+    }
+
+    /**
+     * 価格をDBに書き込みます。tickers を指定した場合は、同じトランザクションで資産の現在価格も更新します。
+     */
+    private boolean writeChunk(List<Object[]> chunk, Iterable<String> tickers, ImportResult result) {
+        try {
+            DBManager.inTransaction(conn -> {
+                if (!chunk.isEmpty()) {
+                    try (PreparedStatement pstmt = conn.prepareStatement(UPSERT_SQL)) {
+                        for (Object[] row : chunk) {
+                            pstmt.setString(1, (String) row[0]);
+                            pstmt.setInt(2, (Integer) row[1]);
+                            pstmt.setLong(3, (Long) row[2]);
+                            pstmt.addBatch();
+                        }
+                        pstmt.executeBatch();
+                    }
+                }
+                if (tickers != null) {
+                    try (PreparedStatement pstmt = conn.prepareStatement(UPDATE_CURRENT_PRICE_SQL)) {
+                        for (String ticker : tickers) {
+                            pstmt.setString(1, ticker);
+                            pstmt.setString(2, ticker);
+                            pstmt.addBatch();
+                        }
+                        pstmt.executeBatch();
+                    }
+                }
+                return null;
+            });
+            result.addInserted(chunk.size());
+            chunk.clear();
+            return true;
+        } catch (SQLException e) {
+            // 取り込み結果にエラーとして返すため、例外にはせずエラーだけを記録する
+            METRICS.recordFailure("importCsv", e);
+            result.addError(0, "DBへの書き込みに失敗しました: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 取り込んだ点をメモリ上の履歴に反映し、結果を完了状態にします。
+     * 既存の最後の日付より新しい点だけなら追記し、過去の日付を含む場合は次に使うときにDBから読み直させます。
+     */
+    private ImportResult finish(ImportResult result, long start, Map<String, List<long[]>> pointsByTicker, boolean success) {
+        for (Map.Entry<String, List<long[]>> entry : pointsByTicker.entrySet()) {
+            List<long[]> points = entry.getValue();
+            points.sort((a, b) -> Long.compare(a[0], b[0]));
+            // 読み込み中の履歴があれば、読み込みが終わるのを待ってから反映する（null を返すと破棄される）
+            SERIES.computeIfPresent(entry.getKey(), (ticker, series) -> success && appendAll(series, points) ? series : null);
+        }
+        if (result.getInsertedRows() > 0) {
+            // 資産の現在価格はすべてのユーザーで変わりうる
+            DataVersions.bumpAll();
+        }
+        result.finish((System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+
+    private static boolean appendAll(PriceSeries series, List<long[]> points) {
+        for (int i = 0; i < points.size(); i++) {
+            // 同じ日付が続く場合は、最後の値がDBに保存されている
+            if (i + 1 < points.size() && points.get(i + 1)[0] == points.get(i)[0]) {
+                continue;
+            }
+            if (!series.append((int) points.get(i)[0], points.get(i)[1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * メモリ上の価格履歴をすべて破棄します（DBを直接変更した場合など）。
+     */
+    public static void invalidateAll() {
+        SERIES.clear();
+    }
+
+    /**
+     * メモリ上に読み込んでいる銘柄数、点の数、符号化後のバイト数を返します（監視用）。
+     */
+    public static PriceHistoryStats getStats() {
+        long points = 0;
+        long bytes = 0;
+        for (PriceSeries series : SERIES.values()) {
+            PriceSeries.Snapshot snapshot = series.snapshot();
+            points += snapshot.size();
+            bytes += snapshot.encodedBytes();
+        }
+        return new PriceHistoryStats(SERIES.size(), points, bytes);
+    }
+}
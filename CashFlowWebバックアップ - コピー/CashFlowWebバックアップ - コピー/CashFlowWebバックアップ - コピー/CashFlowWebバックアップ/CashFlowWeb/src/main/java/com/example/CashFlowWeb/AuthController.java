@@ -15,15 +15,17 @@ public class AuthController {
 
     private final UserDAO userDAO;
     private final PasswordEncoder passwordEncoder; // SecurityConfigで定義したBean
+    private final CustomUserDetailsService userDetailsService; // ユーザー検索のキャッシュを共有する
 
     /**
      * コンストラクタ (依存性の注入)
      * SpringがSecurityConfigで定義したPasswordEncoderを自動的に注入(DI)します。
      */
     @Autowired
-    public AuthController(PasswordEncoder passwordEncoder) {
-        this.userDAO = new UserDAO();
+    public AuthController(UserDAO userDAO, PasswordEncoder passwordEncoder, CustomUserDetailsService userDetailsService) {
+        this.userDAO = userDAO;
         this.passwordEncoder = passwordEncoder;
+        this.userDetailsService = userDetailsService;
     }
 
     // --- 内部で使用するリクエスト用クラス ---
@@ -53,7 +55,11 @@ public class AuthController {
     public ResponseEntity<?> registerUser(@RequestBody RegisterRequest request) {
         
         // 1. ユーザー名が既に使われていないかチェック
-        if (userDAO.findByUsername(request.getUsername()) != null) {
+        // (同時登録の競合は users.username_lower の一意インデックスで防ぐ)
+        if (request.getUsername() == null || request.getUsername().isEmpty()) {
+            return ResponseEntity.status(400).body("ユーザー名が必要です。");
+        }
+        if (userDetailsService.findUser(request.getUsername()) != null) {
             return ResponseEntity.status(400).body("このユーザー名は既に使用されています。");
         }
         
@@ -68,15 +74,19 @@ public class AuthController {
         // 4. 新しいUserオブジェクトを作成
         // (パスワードにはハッシュ化済みのものを設定)
         User newUser = new User(request.getUsername(), hashedPassword);
-        newUser.setRole("USER"); // デフォルトロール
+        newUser.setRole(User.ROLE_USER); // デフォルトロール（最初のユーザーだけは UserDAO が管理者にする）
 
         // 5. データベースに保存
         boolean success = userDAO.saveUser(newUser);
+        // 「見つからない」としてキャッシュされている結果を破棄する
+        userDetailsService.invalidate(request.getUsername());
 
         if (success) {
             return ResponseEntity.ok().body("ユーザー登録が成功しました。");
         } else {
-            return ResponseEntity.status(500).body("サーバーエラーにより登録に失敗しました。");
+            // 事前チェックの後に同じユーザー名が登録された（一意インデックスで弾かれた）場合
+            // (DBエラーは例外として ApiExceptionHandler が500を返す)
+            return ResponseEntity.status(409).body("このユーザー名は既に使用されています。");
         }
     }
 
@@ -0,0 +1,20 @@
+package com.example.CashFlowWeb;
+
+/**
+ * バックアップのディレクトリにあるDBのスナップショット1つを表すモデルクラス。
+ */
+public class BackupInfo {
+    private final String name;
+    private final long sizeBytes;
+    private final String createdAt;
+
+    public BackupInfo(String name, long sizeBytes, String createdAt) {
+        this.name = name;
+        this.sizeBytes = sizeBytes;
+        this.createdAt = createdAt;
+    }
+
+    public String getName() { return name; }
+    public long getSizeBytes() { return sizeBytes; }
+    public String getCreatedAt() { return createdAt; }
+}
@@ -0,0 +1,39 @@
+package com.example.CashFlowWeb;
+
+/**
+ * バックアップまたはリストア1回の結果（かかった時間と速度）を保持するモデルクラス。
+ */
+public class BackupResult {
+    private final String operation;       // "backup" または "restore"
+    private final String name;            // 作成した（リストアした）スナップショットのファイル名
+    private final long sizeBytes;
+    private final long pages;             // コピーしたページ数
+    private final int restarts;           // コピー中に元のDBが更新され、最初からやり直した回数
+    private final long elapsedMillis;     // コピーと検証にかかった時間
+    private final double mbPerSecond;
+    private final boolean verified;       // 整合性チェック (PRAGMA quick_check) を行ったかどうか
+    private final String safetyBackup;    // リストアの直前に取ったスナップショット（バックアップでは null）
+
+    public BackupResult(String operation, String name, long sizeBytes, long pages, int restarts, long elapsedMillis,
+                        boolean verified, String safetyBackup) {
+        this.operation = operation;
+        this.name = name;
+        this.sizeBytes = sizeBytes;
+        this.pages = pages;
+        this.restarts = restarts;
+        this.elapsedMillis = elapsedMillis;
+        this.mbPerSecond = elapsedMillis == 0 ? 0.0 : sizeBytes / 1_048_576.0 / (elapsedMillis / 1000.0);
+        this.verified = verified;
+        this.safetyBackup = safetyBackup;
+    }
+
+    public String getOperation() { return operation; }
+    public String getName() { return name; }
+    public long getSizeBytes() { return sizeBytes; }
+    public long getPages() { return pages; }
+    public int getRestarts() { return restarts; }
+    public long getElapsedMillis() { return elapsedMillis; }
+    public double getMbPerSecond() { return mbPerSecond; }
+    public boolean getVerified() { return verified; }
+    public String getSafetyBackup() { return safetyBackup; }
+}
@@ -1,29 +1,95 @@
 package com.example.CashFlowWeb;
 
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/budgets")
 public class BudgetController {
 
+    // 予算レポートで1回に取得できる月数の上限
+    private static final int MAX_REPORT_MONTHS = 120;
+
     private final BudgetDAO budgetDAO = new BudgetDAO();
+    private final CategoryDAO categoryDAO;
+
+    public BudgetController(CategoryDAO categoryDAO) {
+        this.categoryDAO = categoryDAO;
+    }
 
     /**
-     * 指定された月の予算状況を取得します。
+     * 指定された月の予算状況を取得します。年月が YYYY-MM 形式でない場合は 400 を返します。
      */
     @GetMapping
-    public List<Budget> getBudgets(@RequestParam String yearMonth) {
-        return budgetDAO.getBudgetsForMonth(yearMonth);
+    public ResponseEntity<List<Budget>> getBudgets(@AuthenticationPrincipal User user, @RequestParam String yearMonth,
+                                                   ServletWebRequest request) {
+        YearMonth month;
+        try {
+            month = YearMonth.parse(yearMonth);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        // 実績は取引、行はカテゴリから作るため、予算以外の変更でも結果が変わる
+        if (DataVersions.checkNotModified(request, user.getId(),
+                DataVersions.Dataset.BUDGETS, DataVersions.Dataset.TRANSACTIONS, DataVersions.Dataset.CATEGORIES)) {
+            return null;
+        }
+        return ResponseEntity.ok(budgetDAO.getBudgetsForMonth(user.getId(), month));
     }
 
     /**
-     * 新しい予算を設定（または更新）します。
+     * startMonth〜endMonth（YYYY-MM、両端を含む）の予算と実績を、支出カテゴリ・月ごとにまとめて取得します。
+     * 月ごとに /api/budgets を呼ばずに、1年分のグラフなどを描けます。
+     */
+    @GetMapping("/report")
+    public ResponseEntity<BudgetReport> getBudgetReport(@AuthenticationPrincipal User user,
+                                                        @RequestParam String startMonth, @RequestParam String endMonth,
+                                                        ServletWebRequest request) {
+        YearMonth start;
+        YearMonth end;
+        try {
+            start = YearMonth.parse(startMonth);
+            end = YearMonth.parse(endMonth);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (end.isBefore(start) || start.until(end, ChronoUnit.MONTHS) >= MAX_REPORT_MONTHS) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (DataVersions.checkNotModified(request, user.getId(),
+                DataVersions.Dataset.BUDGETS, DataVersions.Dataset.TRANSACTIONS, DataVersions.Dataset.CATEGORIES)) {
+            return null;
+        }
+        // DBエラーは DaoException として ApiExceptionHandler が応答する
+        return ResponseEntity.ok(budgetDAO.getBudgetReport(user.getId(), start, end));
+    }
+
+    /**
+     * 新しい予算を設定（または更新）します。年月が YYYY-MM 形式でない場合は 400 を返します。
      */
     @PostMapping
-    public ResponseEntity<Boolean> setBudget(@RequestBody Budget budget) {
-        boolean success = budgetDAO.saveOrUpdateBudget(budget.getYearMonth(), budget.getCategoryId(), budget.getBudgetAmount());
+    public ResponseEntity<Boolean> setBudget(@AuthenticationPrincipal User user, @RequestBody Budget budget) {
+        // 予算は年月の文字列で検索・集計するため、形式の違う値（"2025-6" など）は保存しない
+        if (budget.getYearMonth() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        YearMonth yearMonth;
+        try {
+            yearMonth = YearMonth.parse(budget.getYearMonth());
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        // 他のユーザーのカテゴリには予算を設定させない
+        if (categoryDAO.getCategoryById(user.getId(), budget.getCategoryId()) == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        boolean success = budgetDAO.saveOrUpdateBudget(user.getId(), yearMonth.toString(), budget.getCategoryId(), budget.getBudgetAmount());
         if (success) {
             return ResponseEntity.ok(true);
         }
@@ -1,66 +1,179 @@
 package com.example.CashFlowWeb;
 
 import java.sql.*;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class BudgetDAO {
 
+    private static final DaoMetrics METRICS = DaoMetrics.forDao("BudgetDAO");
+
+    private final ColumnarTransactionStore columnarStore = ColumnarTransactionStore.getInstance();
+
     /**
-     * 指定された月の支出カテゴリに対する予算と実績を取得します。
+     * 指定された月の、ユーザーの支出カテゴリに対する予算と実績を取得します。
      */
-    public List<Budget> getBudgetsForMonth(String yearMonth) {
-        List<Budget> budgetStatusList = new ArrayList<>();
-        String sql = "SELECT " +
-                     "  c.id AS category_id, c.name AS category_name, " +
-                     "  COALESCE(b.amount, 0) AS budget_amount, " +
-                     "  COALESCE(t.total_spent, 0) AS actual_amount " +
-                     "FROM categories c " +
-                     "LEFT JOIN (SELECT category_id, amount FROM budgets WHERE year_month = ?) b ON c.id = b.category_id " +
-                     "LEFT JOIN (SELECT category_id, SUM(amount) AS total_spent FROM transactions WHERE strftime('%Y-%m', date) = ? AND type = 'EXPENSE' GROUP BY category_id) t ON c.id = t.category_id " +
-                     "WHERE c.type = 'EXPENSE' ORDER BY c.name";
-
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, yearMonth);
-            pstmt.setString(2, yearMonth);
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    Budget budget = new Budget();
-                    budget.setCategoryId(rs.getInt("category_id"));
-                    budget.setCategoryName(rs.getString("category_name"));
-                    budget.setBudgetAmount(rs.getDouble("budget_amount"));
-                    budget.setActualAmount(rs.getDouble("actual_amount"));
-                    budgetStatusList.add(budget);
+    public List<Budget> getBudgetsForMonth(int userId, YearMonth month) {
+        return METRICS.call("getBudgetsForMonth", () -> {
+            List<Budget> budgetStatusList = new ArrayList<>();
+            // 列ストアが有効なら実績はメモリ上で集計し、SQLでは予算だけを読む
+            Map<Integer, Long> spent = columnarStore.sumByCategory(userId, month.atDay(1), month.atEndOfMonth(), "EXPENSE", true);
+            String sql = "SELECT " +
+                         "  c.id AS category_id, c.name AS category_name, " +
+                         "  COALESCE(b.amount, 0) AS budget_amount, " +
+                         (spent != null ? "  0 AS actual_amount " : "  COALESCE(t.total_spent, 0) AS actual_amount ") +
+                         "FROM categories c " +
+                         "LEFT JOIN (SELECT category_id, amount FROM budgets WHERE user_id = ? AND year_month = ?) b ON c.id = b.category_id " +
+                         (spent != null ? "" : "LEFT JOIN (SELECT category_id, SUM(amount) AS total_spent FROM transactions WHERE user_id = ? AND type = 'EXPENSE' AND date >= ? AND date < ? GROUP BY category_id) t ON c.id = t.category_id ") +
+                         "WHERE c.user_id = ? AND c.type = 'EXPENSE' ORDER BY c.name";
+
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+                int index = 1;
+                pstmt.setInt(index++, userId);
+                pstmt.setString(index++, month.toString());
+                if (spent == null) {
+                    // 月の初日〜翌月初日の範囲で絞り込む（(user_id, type, is_future, date) インデックスが使える）
+                    pstmt.setInt(index++, userId);
+                    pstmt.setLong(index++, month.atDay(1).toEpochDay());
+                    pstmt.setLong(index++, month.plusMonths(1).atDay(1).toEpochDay());
+                }
+                pstmt.setInt(index, userId);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Budget budget = new Budget();
+                        budget.setCategoryId(rs.getInt("category_id"));
+                        budget.setCategoryName(rs.getString("category_name"));
+                        budget.setBudgetAmount(Money.fromMinor(rs.getLong("budget_amount")));
+                        long actual = spent != null ? spent.getOrDefault(budget.getCategoryId(), 0L) : rs.getLong("actual_amount");
+                        budget.setActualAmount(Money.fromMinor(actual));
+                        budgetStatusList.add(budget);
+                    }
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("予算データ取得エラー: " + e.getMessage());
+            return budgetStatusList;
+        });
+    }
+
+    /**
+     * startMonth〜endMonth の各月について、ユーザーの支出カテゴリごとの予算・実績・差額と累計を取得します（グラフ用）。
+     * 実績は期間全体を1回だけ走査して月ごとに集計するため、月数に関係なくクエリの数は変わりません。
+     */
+    public BudgetReport getBudgetReport(int userId, YearMonth startMonth, YearMonth endMonth) {
+        return METRICS.call("getBudgetReport", () -> buildBudgetReport(userId, startMonth, endMonth));
+    }
+
+    private BudgetReport buildBudgetReport(int userId, YearMonth startMonth, YearMonth endMonth) throws SQLException {
+        int monthCount = (int) startMonth.until(endMonth, ChronoUnit.MONTHS) + 1;
+        List<String> months = new ArrayList<>(monthCount);
+        for (int m = 0; m < monthCount; m++) {
+            months.add(startMonth.plusMonths(m).toString());
         }
-        return budgetStatusList;
+
+        Map<Integer, long[]> actuals = columnarStore.sumByCategoryAndMonth(userId, startMonth, monthCount, "EXPENSE", true);
+        Map<Integer, long[]> budgets = new HashMap<>();
+        Map<Integer, String> categoryNames = new LinkedHashMap<>();
+        try (Connection conn = DBManager.connect()) {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT id, name FROM categories WHERE user_id = ? AND type = 'EXPENSE' ORDER BY name")) {
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        categoryNames.put(rs.getInt("id"), rs.getString("name"));
+                    }
+                }
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT category_id, year_month, amount FROM budgets WHERE user_id = ? AND year_month >= ? AND year_month <= ?")) {
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, startMonth.toString());
+                pstmt.setString(3, endMonth.toString());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int index = (int) startMonth.until(YearMonth.parse(rs.getString("year_month")), ChronoUnit.MONTHS);
+                        budgets.computeIfAbsent(rs.getInt("category_id"), k -> new long[monthCount])[index] = rs.getLong("amount");
+                    }
+                }
+            }
+
+            if (actuals == null) {
+                // 期間全体を (user_id, type, is_future, date) インデックスで1回だけ範囲検索し、カテゴリ・月ごとにまとめる
+                actuals = new HashMap<>();
+                String sql = "SELECT category_id, " + DBManager.monthOfEpochDay("date") + " AS month, SUM(amount) AS total_spent " +
+                             "FROM transactions WHERE user_id = ? AND type = 'EXPENSE' AND date >= ? AND date < ? " +
+                             "GROUP BY category_id, month";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setInt(1, userId);
+                    pstmt.setLong(2, startMonth.atDay(1).toEpochDay());
+                    pstmt.setLong(3, endMonth.plusMonths(1).atDay(1).toEpochDay());
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            int index = (int) startMonth.until(YearMonth.parse(rs.getString("month")), ChronoUnit.MONTHS);
+                            actuals.computeIfAbsent(rs.getInt("category_id"), k -> new long[monthCount])[index] = rs.getLong("total_spent");
+                        }
+                    }
+                }
+            }
+        }
+
+        long[] empty = new long[monthCount];
+        long[] totalBudgets = new long[monthCount];
+        long[] totalActuals = new long[monthCount];
+        List<BudgetReport.CategoryRow> rows = new ArrayList<>(categoryNames.size());
+        for (Map.Entry<Integer, String> category : categoryNames.entrySet()) {
+            long[] budget = budgets.getOrDefault(category.getKey(), empty);
+            long[] actual = actuals.getOrDefault(category.getKey(), empty);
+            for (int m = 0; m < monthCount; m++) {
+                totalBudgets[m] += budget[m];
+                totalActuals[m] += actual[m];
+            }
+            rows.add(new BudgetReport.CategoryRow(category.getKey(), category.getValue(), toCells(months, budget, actual)));
+        }
+        return new BudgetReport(startMonth.toString(), endMonth.toString(), months, rows, toCells(months, totalBudgets, totalActuals));
+    }
+
+    /**
+     * 月ごとの予算・実績から、累計を付けたセルの並びを作ります。
+     */
+    private static List<BudgetReport.Cell> toCells(List<String> months, long[] budget, long[] actual) {
+        List<BudgetReport.Cell> cells = new ArrayList<>(months.size());
+        long cumulativeBudget = 0;
+        long cumulativeActual = 0;
+        for (int m = 0; m < months.size(); m++) {
+            cumulativeBudget += budget[m];
+            cumulativeActual += actual[m];
+            cells.add(new BudgetReport.Cell(months.get(m), budget[m], actual[m], cumulativeBudget, cumulativeActual));
+        }
+        return cells;
     }
 
     /**
      * 予算を保存または更新します。
      * SQLiteの "INSERT OR REPLACE" を利用して、存在すれば更新、なければ挿入します。
      */
-    public boolean saveOrUpdateBudget(String yearMonth, int categoryId, double amount) {
-        String sql = "INSERT OR REPLACE INTO budgets (id, year_month, category_id, amount) " +
-                     "VALUES ((SELECT id FROM budgets WHERE year_month = ? AND category_id = ?), ?, ?, ?)";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, yearMonth);
-            pstmt.setInt(2, categoryId);
-            pstmt.setString(3, yearMonth);
-            pstmt.setInt(4, categoryId);
-            pstmt.setDouble(5, amount);
-            pstmt.executeUpdate();
+    public boolean saveOrUpdateBudget(int userId, String yearMonth, int categoryId, double amount) {
+        String sql = "INSERT OR REPLACE INTO budgets (id, user_id, year_month, category_id, amount) " +
+                     "VALUES ((SELECT id FROM budgets WHERE user_id = ? AND year_month = ? AND category_id = ?), ?, ?, ?, ?)";
+        return METRICS.call("saveOrUpdateBudget", () -> {
+            DBManager.executeUpdate(sql, pstmt -> {
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, yearMonth);
+                pstmt.setInt(3, categoryId);
+                pstmt.setInt(4, userId);
+                pstmt.setString(5, yearMonth);
+                pstmt.setInt(6, categoryId);
+                pstmt.setLong(7, Money.toMinor(amount));
+            });
+            DataVersions.bump(userId, DataVersions.Dataset.BUDGETS);
             return true;
-        } catch (SQLException e) {
-            System.err.println("予算保存エラー: " + e.getMessage());
-            return false;
-        }
+        });
     }
 }
\ No newline at end of file
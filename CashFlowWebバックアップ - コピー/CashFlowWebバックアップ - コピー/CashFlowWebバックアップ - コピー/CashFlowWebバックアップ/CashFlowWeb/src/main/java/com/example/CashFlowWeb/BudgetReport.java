@@ -0,0 +1,81 @@
+package com.example.CashFlowWeb;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 複数月の予算と実績の比較（予算レポート）を保持するモデルクラス。
+ * 支出カテゴリごとに、各月の予算・実績・差額と、期間の最初の月からの累計を持ちます。
+ * 差額は「予算 - 実績」で、負ならその分だけ予算をオーバーしています。
+ */
+public class BudgetReport {
+    private final String startMonth;
+    private final String endMonth;
+    private final List<String> months;
+    private final List<CategoryRow> categories;
+    private final List<Cell> totals;
+
+    public BudgetReport(String startMonth, String endMonth, List<String> months, List<CategoryRow> categories, List<Cell> totals) {
+        this.startMonth = startMonth;
+        this.endMonth = endMonth;
+        this.months = Collections.unmodifiableList(months);
+        this.categories = Collections.unmodifiableList(categories);
+        this.totals = Collections.unmodifiableList(totals);
+    }
+
+    public String getStartMonth() { return startMonth; }
+    public String getEndMonth() { return endMonth; }
+    /** 対象の月 (YYYY-MM) を古い順に並べたもの。各行の months と同じ順です */
+    public List<String> getMonths() { return months; }
+    public List<CategoryRow> getCategories() { return categories; }
+    /** 全支出カテゴリを合計した月ごとの値 */
+    public List<Cell> getTotals() { return totals; }
+
+    /**
+     * 1つの支出カテゴリの月ごとの値。
+     */
+    public static class CategoryRow {
+        private final int categoryId;
+        private final String categoryName;
+        private final List<Cell> months;
+
+        public CategoryRow(int categoryId, String categoryName, List<Cell> months) {
+            this.categoryId = categoryId;
+            this.categoryName = categoryName;
+            this.months = Collections.unmodifiableList(months);
+        }
+
+        public int getCategoryId() { return categoryId; }
+        public String getCategoryName() { return categoryName; }
+        public List<Cell> getMonths() { return months; }
+    }
+
+    /**
+     * 1ヶ月分の予算・実績と、期間の最初の月からの累計。金額は最小単位で保持します。
+     */
+    public static class Cell {
+        private final String yearMonth;
+        private final long budgetMinor;
+        private final long actualMinor;
+        private final long cumulativeBudgetMinor;
+        private final long cumulativeActualMinor;
+
+        public Cell(String yearMonth, long budgetMinor, long actualMinor, long cumulativeBudgetMinor, long cumulativeActualMinor) {
+            this.yearMonth = yearMonth;
+            this.budgetMinor = budgetMinor;
+            this.actualMinor = actualMinor;
+            this.cumulativeBudgetMinor = cumulativeBudgetMinor;
+            this.cumulativeActualMinor = cumulativeActualMinor;
+        }
+
+        public String getYearMonth() { return yearMonth; }
+        public double getBudgetAmount() { return Money.fromMinor(budgetMinor); }
+        public double getActualAmount() { return Money.fromMinor(actualMinor); }
+        public double getVariance() { return Money.fromMinor(budgetMinor - actualMinor); }
+        public boolean isOverBudget() { return actualMinor > budgetMinor; }
+        public double getCumulativeBudget() { return Money.fromMinor(cumulativeBudgetMinor); }
+        public double getCumulativeActual() { return Money.fromMinor(cumulativeActualMinor); }
+        public double getCumulativeVariance() { return Money.fromMinor(cumulativeBudgetMinor - cumulativeActualMinor); }
+        public boolean isCumulativeOverBudget() { return cumulativeActualMinor > cumulativeBudgetMinor; }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.CashFlowWeb;
+
+import java.time.LocalDateTime;
+
+/**
+ * カテゴリキャッシュの状態を保持するモデルクラス（監視用）。
+ */
+public class CategoryCacheStats {
+    private long version;           // スナップショットの世代（読み直すたびに増える）
+    private int size;
+    private LocalDateTime loadedAt; // 最後にスナップショットをDBから読み込んだ日時
+    private long hits;
+    private long misses;
+
+    public CategoryCacheStats(long version, int size, LocalDateTime loadedAt, long hits, long misses) {
+        this.version = version;
+        this.size = size;
+        this.loadedAt = loadedAt;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    // --- Getter Methods ---
+    public long getVersion() { return version; }
+    public int getSize() { return size; }
+    public LocalDateTime getLoadedAt() { return loadedAt; }
+    public long getHits() { return hits; }
+    public long getMisses() { return misses; }
+
+    public double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+}
@@ -1,7 +1,9 @@
 package com.example.CashFlowWeb;
 
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import java.util.List;
 
 /**
@@ -11,22 +13,30 @@ import java.util.List;
 @RequestMapping("/api/categories")
 public class CategoryController {
 
-    private final CategoryDAO categoryDAO = new CategoryDAO();
+    // カテゴリキャッシュは TransactionController などと共有する
+    private final CategoryDAO categoryDAO;
+
+    public CategoryController(CategoryDAO categoryDAO) {
+        this.categoryDAO = categoryDAO;
+    }
 
     /**
-     * すべてのカテゴリのリストを取得します。
+     * ログイン中のユーザーのすべてのカテゴリのリストを取得します。
      */
     @GetMapping
-    public List<Category> getAllCategories() {
-        return categoryDAO.getAllCategories();
+    public List<Category> getAllCategories(@AuthenticationPrincipal User user, ServletWebRequest request) {
+        if (DataVersions.checkNotModified(request, user.getId(), DataVersions.Dataset.CATEGORIES)) {
+            return null;
+        }
+        return categoryDAO.getAllCategories(user.getId());
     }
 
     /**
      * 新しいカテゴリを追加します。
      */
     @PostMapping
-    public ResponseEntity<Boolean> addCategory(@RequestBody Category category) {
-        boolean isSuccess = categoryDAO.addCategory(category.getName(), category.getType());
+    public ResponseEntity<Boolean> addCategory(@AuthenticationPrincipal User user, @RequestBody Category category) {
+        boolean isSuccess = categoryDAO.addCategory(user.getId(), category.getName(), category.getType());
         return isSuccess ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false);
     }
 
@@ -34,8 +44,8 @@ public class CategoryController {
      * 既存のカテゴリを更新します。
      */
     @PutMapping("/{id}")
-    public ResponseEntity<Boolean> updateCategory(@PathVariable int id, @RequestBody Category category) {
-        boolean isSuccess = categoryDAO.updateCategory(id, category.getName(), category.getType());
+    public ResponseEntity<Boolean> updateCategory(@AuthenticationPrincipal User user, @PathVariable int id, @RequestBody Category category) {
+        boolean isSuccess = categoryDAO.updateCategory(user.getId(), id, category.getName(), category.getType());
         return isSuccess ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false);
     }
 
@@ -43,9 +53,9 @@ public class CategoryController {
      * カテゴリを削除します。
      */
     @DeleteMapping("/{id}")
-    public ResponseEntity<Boolean> deleteCategory(@PathVariable int id) {
-        boolean isSuccess = categoryDAO.deleteCategory(id);
-        // 削除できない場合(関連する取引がある場合)はDAOがfalseを返す
+    public ResponseEntity<Boolean> deleteCategory(@AuthenticationPrincipal User user, @PathVariable int id) {
+        boolean isSuccess = categoryDAO.deleteCategory(user.getId(), id);
+        // 削除できない場合(関連する取引・定期ルールがある場合)はDAOがfalseを返す
         if (isSuccess) {
             return ResponseEntity.ok(true);
         } else {
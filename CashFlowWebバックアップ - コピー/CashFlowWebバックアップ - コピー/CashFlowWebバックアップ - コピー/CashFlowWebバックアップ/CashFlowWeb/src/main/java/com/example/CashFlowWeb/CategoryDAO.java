@@ -1,108 +1,241 @@
 package com.example.CashFlowWeb;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Repository;
+
 import java.sql.*;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * カテゴリのデータベース操作と、アプリ全体で共有するカテゴリキャッシュを担当するクラス。
+ * カテゴリはユーザーごとに持つため、キャッシュもユーザーごとのスナップショットとして保持します。
+ * スナップショットは読み取り専用で、更新時はそのユーザーの分だけをDBから読み直して丸ごと差し替えます。
+ * 読み取り側はロックを取らず、常に一貫した（途中まで更新された状態ではない）カテゴリ一覧を参照できます。
+ */
+@Repository
 public class CategoryDAO {
 
-    // キャッシュ: IDからカテゴリ名を取得する際の効率化
-    private Map<Integer, Category> categoryCache = new HashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(CategoryDAO.class);
+
+    // 目標への積立に使う特殊カテゴリ（ユーザーごとに自動作成する）
+    private static final String SAVINGS_CATEGORY_NAME = "貯金";
+    private static final String SAVINGS_CATEGORY_TYPE = "EXPENSE";
+
+    private static final DaoMetrics METRICS = DaoMetrics.forDao("CategoryDAO");
 
     /**
-     * キャッシュの初期化（「貯金」カテゴリの存在確認も行う）
+     * ある時点の、1ユーザー分のカテゴリ一覧。作成後は変更しない。
+     */
+    private static final class Snapshot {
+        final long version;
+        final List<Category> categories;
+        final Map<Integer, Category> byId;
+        final LocalDateTime loadedAt;
+
+        Snapshot(long version, List<Category> categories, LocalDateTime loadedAt) {
+            Map<Integer, Category> ids = new HashMap<>();
+            for (Category category : categories) {
+                ids.put(category.getId(), category);
+            }
+            this.version = version;
+            this.categories = Collections.unmodifiableList(categories);
+            this.byId = Collections.unmodifiableMap(ids);
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    // キャッシュ: キーはユーザーID。IDからカテゴリ名を取得する際の効率化
+    private final Map<Integer, Snapshot> cache = new ConcurrentHashMap<>();
+    // 再読み込みの世代番号（後から読み込みを始めたスナップショットほど大きい）
+    private final AtomicLong generation = new AtomicLong();
+    // この世代より前に読み込みを始めたスナップショットは、全体の破棄より古いので採用しない
+    private final AtomicLong invalidatedBefore = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * キャッシュの初期化
+     * （各ユーザーのカテゴリは最初に参照したときに読み込み、「貯金」カテゴリの存在確認もそのときに行う）
      */
     public void initializeCache() {
-        categoryCache.clear();
-        
-        // 【重要】「貯金」という支出カテゴリが存在するか確認し、なければ作成
-        ensureSpecialCategoryExists("貯金", "EXPENSE");
-        
-        // 全カテゴリをDBから取得してキャッシュを構築
-        List<Category> allCategories = fetchAllCategoriesFromDb();
-        allCategories.forEach(c -> categoryCache.put(c.getId(), c));
+        refreshCache();
+    }
+
+    /**
+     * すべてのユーザーのスナップショットを破棄します（DBをバックアップから戻したときなど）。
+     * 各ユーザーのカテゴリは、次に参照したときにDBから読み直します。
+     */
+    public void refreshCache() {
+        invalidatedBefore.set(generation.incrementAndGet());
+        cache.clear();
+    }
+
+    /**
+     * 指定したユーザーのカテゴリだけをDBから読み直し、そのユーザーのスナップショットを差し替えます。
+     * 複数のスレッドが同時に読み直した場合でも、後から読み込みを始めた（より新しい）結果だけが残ります。
+     */
+    public void refreshCache(int userId) {
+        long version = generation.incrementAndGet();
+        Snapshot loaded = new Snapshot(version, fetchCategoriesFromDb(userId), LocalDateTime.now());
+        cache.compute(userId, (key, current) -> {
+            if (loaded.version < invalidatedBefore.get()) {
+                return current;
+            }
+            return current == null || loaded.version > current.version ? loaded : current;
+        });
+    }
+
+    private Snapshot snapshot(int userId) {
+        Snapshot snapshot = cache.get(userId);
+        if (snapshot == null) {
+            refreshCache(userId);
+            snapshot = cache.get(userId);
+            if (snapshot == null) {
+                // 読み込みと同時に全体が破棄された場合は、キャッシュに入れずに読んだ結果を使う
+                snapshot = new Snapshot(0, fetchCategoriesFromDb(userId), LocalDateTime.now());
+            }
+        }
+        return snapshot;
     }
 
     /**
-     * IDに基づいて単一のカテゴリを取得します。（キャッシュ優先）
+     * IDに基づいて、ユーザーが所有する単一のカテゴリを取得します。（キャッシュ優先）
+     * 他のユーザーのカテゴリを指定した場合は null を返します。
      */
-    public Category getCategoryById(int id) {
-        if (categoryCache.isEmpty()) {
-            initializeCache();
+    public Category getCategoryById(int userId, int id) {
+        Category category = snapshot(userId).byId.get(id);
+        if (category != null) {
+            hits.increment();
+            return category;
         }
+        misses.increment();
         // キャッシュに存在しない場合はDBから取得 (稀なケース)
-        return categoryCache.getOrDefault(id, fetchCategoryByIdFromDb(id));
+        // 他のインスタンスでの追加や、最初のユーザーへのデータ引き継ぎの後は、そのユーザーのキャッシュも読み直しておく
+        category = fetchCategoryByIdFromDb(userId, id);
+        if (category != null) {
+            refreshCache(userId);
+        }
+        return category;
     }
-    
+
     /**
-     * すべてのカテゴリのリストを取得します。（キャッシュ優先）
+     * ユーザーのすべてのカテゴリのリストを取得します。（キャッシュ優先）
      */
-    public List<Category> getAllCategories() {
-        if (categoryCache.isEmpty()) {
-            initializeCache();
+    public List<Category> getAllCategories(int userId) {
+        List<Category> categories = snapshot(userId).categories;
+        if (categories.stream().noneMatch(CategoryDAO::isSavingsCategory)) {
+            misses.increment();
+            // 【重要】「貯金」という支出カテゴリが存在するか確認し、なければ作成
+            ensureSpecialCategoryExists(userId, SAVINGS_CATEGORY_NAME, SAVINGS_CATEGORY_TYPE);
+            refreshCache(userId);
+            categories = snapshot(userId).categories;
+        } else {
+            hits.increment();
         }
         // DBからではなくキャッシュからリストを生成して返す
-        return new ArrayList<>(categoryCache.values());
+        return new ArrayList<>(categories);
+    }
+
+    /**
+     * ユーザーの「貯金」カテゴリのIDを返します（なければ作成します）。作成できなかった場合はnull。
+     */
+    public Integer getSavingsCategoryId(int userId) {
+        return getAllCategories(userId).stream()
+            .filter(CategoryDAO::isSavingsCategory)
+            .map(Category::getId)
+            .findFirst()
+            .orElse(null);
+    }
+
+    private static boolean isSavingsCategory(Category category) {
+        return SAVINGS_CATEGORY_NAME.equals(category.getName()) && SAVINGS_CATEGORY_TYPE.equals(category.getType());
+    }
+
+    /**
+     * キャッシュの状態（世代、件数、ヒット/ミス数）を取得します（監視用）。
+     * 件数はキャッシュしている全ユーザー分の合計、読み込み日時は最も新しいスナップショットのものです。
+     */
+    public CategoryCacheStats getCacheStats() {
+        int size = 0;
+        LocalDateTime loadedAt = null;
+        for (Snapshot snapshot : cache.values()) {
+            size += snapshot.categories.size();
+            if (loadedAt == null || snapshot.loadedAt.isAfter(loadedAt)) {
+                loadedAt = snapshot.loadedAt;
+            }
+        }
+        return new CategoryCacheStats(generation.get(), size, loadedAt, hits.sum(), misses.sum());
     }
 
     /**
      * (キャッシュミス時の) DBからIDに基づいて単一のカテゴリを取得します。
      * 【修正点】Category(id, name, type) コンストラクタを使用
      */
-    private Category fetchCategoryByIdFromDb(int id) {
-        String sql = "SELECT id, name, type FROM categories WHERE id = ?";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    private Category fetchCategoryByIdFromDb(int userId, int id) {
+        String sql = "SELECT id, name, type FROM categories WHERE id = ? AND user_id = ?";
+        return METRICS.call("fetchCategoryById", () -> {
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setInt(1, id);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return new Category(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("type")
-                    );
+                pstmt.setInt(1, id);
+                pstmt.setInt(2, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        return new Category(
+                            rs.getInt("id"),
+                            rs.getString("name"),
+                            rs.getString("type")
+                        );
+                    }
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("DBからのカテゴリ取得エラー: " + e.getMessage());
-        }
-        return null;
+            return null;
+        });
     }
 
     /**
-     * DBからすべてのカテゴリを取得します。(キャッシュ構築用)
+     * DBからユーザーのカテゴリを取得します。(キャッシュ構築用)
      * 【修正点】Category(id, name, type) コンストラクタを使用
      */
-    private List<Category> fetchAllCategoriesFromDb() {
-        List<Category> categories = new ArrayList<>();
-        String sql = "SELECT id, name, type FROM categories ORDER BY type, name";
-        try (Connection conn = DBManager.connect();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                categories.add(new Category(
-                    rs.getInt("id"),
-                    rs.getString("name"),
-                    rs.getString("type")
-                ));
+    private List<Category> fetchCategoriesFromDb(int userId) {
+        String sql = "SELECT id, name, type FROM categories WHERE user_id = ? ORDER BY type, name";
+        return METRICS.call("fetchCategories", () -> {
+            List<Category> categories = new ArrayList<>();
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        categories.add(new Category(
+                            rs.getInt("id"),
+                            rs.getString("name"),
+                            rs.getString("type")
+                        ));
+                    }
+                }
             }
-        } catch (SQLException e) {
-            System.err.println("全カテゴリ取得エラー: " + e.getMessage());
-        }
-        return categories;
+            return categories;
+        });
     }
 
     /**
      * カテゴリを追加し、キャッシュを更新します。
      */
-    public boolean addCategory(String name, String type) {
-        boolean success = internalAddCategory(name, type);
+    public boolean addCategory(int userId, String name, String type) {
+        boolean success = internalAddCategory(userId, name, type);
         if (success) {
-            initializeCache(); // キャッシュを更新
+            refreshCache(userId); // そのユーザーのキャッシュを更新
+            DataVersions.bump(userId, DataVersions.Dataset.CATEGORIES);
         }
         return success;
     }
@@ -110,111 +243,105 @@ public class CategoryDAO {
     /**
      * 【新規追加】カテゴリを追加する内部メソッド（キャッシュの更新は行わない）
      */
-    private boolean internalAddCategory(String name, String type) {
-        String sql = "INSERT INTO categories(name, type) VALUES(?, ?)";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, name.trim());
-            pstmt.setString(2, type.toUpperCase());
-            pstmt.executeUpdate();
+    private boolean internalAddCategory(int userId, String name, String type) {
+        String sql = "INSERT INTO categories(user_id, name, type) VALUES(?, ?, ?)";
+        return METRICS.call("addCategory", () -> {
+            DBManager.executeUpdate(sql, pstmt -> {
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, name.trim());
+                pstmt.setString(3, type.toUpperCase());
+            });
             return true;
-        } catch (SQLException e) {
-            System.err.println("カテゴリ登録エラー: " + e.getMessage());
-            return false;
-        }
+        });
     }
-    
-    /**
-     * 【新規追加】特定の名前とタイプのカテゴリが存在するか確認し、なければ作成します。
-     */
-    private void ensureSpecialCategoryExists(String name, String type) {
-        String checkSql = "SELECT COUNT(*) FROM categories WHERE name = ? AND type = ?";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmtCheck = conn.prepareStatement(checkSql)) {
-            
-            pstmtCheck.setString(1, name);
-            pstmtCheck.setString(2, type);
-            
-            try (ResultSet rs = pstmtCheck.executeQuery()) {
-                if (rs.next() && rs.getInt(1) == 0) {
-                    // カテゴリが存在しない場合、追加する
-                    internalAddCategory(name, type); 
-                    System.out.println("「" + name + "」カテゴリを自動作成しました。");
-                }
+
+    /**
+     * 【新規追加】ユーザーに特定の名前とタイプのカテゴリが存在するか確認し、なければ作成します。
+     * 確認と作成を1文で行うため、同時に呼ばれても重複して作成されません。
+     */
+    private void ensureSpecialCategoryExists(int userId, String name, String type) {
+        String sql = "INSERT INTO categories(user_id, name, type) SELECT ?, ?, ? " +
+                     "WHERE NOT EXISTS (SELECT 1 FROM categories WHERE user_id = ? AND name = ? AND type = ?)";
+        METRICS.call("ensureSpecialCategoryExists", () -> {
+            int rowsAffected = DBManager.executeUpdate(sql, pstmt -> {
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, name);
+                pstmt.setString(3, type);
+                pstmt.setInt(4, userId);
+                pstmt.setString(5, name);
+                pstmt.setString(6, type);
+            });
+            if (rowsAffected > 0) {
+                DataVersions.bump(userId, DataVersions.Dataset.CATEGORIES);
+                log.info("「{}」カテゴリを自動作成しました (ユーザーID: {})", name, userId);
             }
-        } catch (SQLException e) {
-            System.err.println("特殊カテゴリの確認エラー: " + e.getMessage());
-        }
+            return null;
+        });
     }
 
     /**
      * 既存のカテゴリを更新します。
      */
-    public boolean updateCategory(int id, String name, String type) {
-        String sql = "UPDATE categories SET name = ?, type = ? WHERE id = ?";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, name.trim());
-            pstmt.setString(2, type.toUpperCase());
-            pstmt.setInt(3, id);
-            
-            int rowsAffected = pstmt.executeUpdate();
+    public boolean updateCategory(int userId, int id, String name, String type) {
+        String sql = "UPDATE categories SET name = ?, type = ? WHERE id = ? AND user_id = ?";
+        return METRICS.call("updateCategory", () -> {
+            int rowsAffected = DBManager.executeUpdate(sql, pstmt -> {
+                pstmt.setString(1, name.trim());
+                pstmt.setString(2, type.toUpperCase());
+                pstmt.setInt(3, id);
+                pstmt.setInt(4, userId);
+            });
             if (rowsAffected > 0) {
-                initializeCache(); // キャッシュを更新
+                refreshCache(userId); // そのユーザーのキャッシュを更新
+                DataVersions.bump(userId, DataVersions.Dataset.CATEGORIES);
                 return true;
             }
             return false;
-        } catch (SQLException e) {
-            System.err.println("カテゴリ更新エラー: " + e.getMessage());
-            return false;
-        }
+        });
     }
 
     /**
      * カテゴリを削除します。
+     * 使用中かの確認と削除は同じDBトランザクションで行い、確認と削除の間に別の書き込みが入らないようにします。
      */
-    public boolean deleteCategory(int id) {
-        // カテゴリに関連付けられた取引が存在するかチェック
-        if (isCategoryUsed(id)) {
-            System.err.println("カテゴリ削除エラー: 関連取引が存在するため削除できません。");
-            return false;
-        }
-
-        String sql = "DELETE FROM categories WHERE id = ?";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, id);
-            int rowsAffected = pstmt.executeUpdate();
-            if (rowsAffected > 0) {
-                initializeCache(); // キャッシュを更新
-                return true;
+    public boolean deleteCategory(int userId, int id) {
+        String sql = "DELETE FROM categories WHERE id = ? AND user_id = ?";
+        return METRICS.call("deleteCategory", () -> {
+            boolean deleted = DBManager.inTransaction(conn -> {
+                // カテゴリに関連付けられた取引・定期ルールが存在するかチェック
+                if (isCategoryUsed(conn, userId, id)) {
+                    log.info("カテゴリ {} は取引または定期ルールで使われているため削除しません (ユーザーID: {})", id, userId);
+                    return false;
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setInt(1, id);
+                    pstmt.setInt(2, userId);
+                    return pstmt.executeUpdate() > 0;
+                }
+            });
+            if (deleted) {
+                refreshCache(userId); // そのユーザーのキャッシュを更新
+                DataVersions.bump(userId, DataVersions.Dataset.CATEGORIES);
             }
-            return false;
-        } catch (SQLException e) {
-            System.err.println("カテゴリ削除エラー: " + e.getMessage());
-            return false;
-        }
+            return deleted;
+        });
     }
-    
+
     /**
-     * カテゴリが取引で使われているか確認
+     * カテゴリがユーザーの取引、または定期ルール（終了したものを含む）で使われているか確認
+     * （定期ルールのカテゴリを消すと、次回の取引生成で存在しないカテゴリを参照してしまうため）
      */
-    private boolean isCategoryUsed(int categoryId) {
-        String sql = "SELECT COUNT(*) FROM transactions WHERE category_id = ?";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, categoryId);
+    private static boolean isCategoryUsed(Connection conn, int userId, int categoryId) throws SQLException {
+        String sql = "SELECT EXISTS (SELECT 1 FROM transactions WHERE user_id = ? AND category_id = ?) " +
+                     "OR EXISTS (SELECT 1 FROM recurring_rules WHERE user_id = ? AND category_id = ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, categoryId);
+            pstmt.setInt(3, userId);
+            pstmt.setInt(4, categoryId);
             try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next() && rs.getInt(1) > 0) {
-                    return true;
-                }
+                return rs.next() && rs.getBoolean(1);
             }
-        } catch (SQLException e) {
-            System.err.println("カテゴリ使用状況チェックエラー: " + e.getMessage());
         }
-        return false;
     }
-}
\ No newline at end of file
+}
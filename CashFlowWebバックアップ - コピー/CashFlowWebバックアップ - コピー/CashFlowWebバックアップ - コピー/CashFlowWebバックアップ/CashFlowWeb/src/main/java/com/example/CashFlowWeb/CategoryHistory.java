@@ -0,0 +1,28 @@
+package com.example.CashFlowWeb;
+
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * カテゴリごとの月次純額（収入は正、支出は負）の履歴を保持するモデルクラス（予測用）。
+ * 各配列は startMonth から始まる連続した月に対応し、取引のない月は0です。
+ */
+public class CategoryHistory {
+    private final YearMonth startMonth;
+    private final int monthCount;
+    private final Map<Integer, double[]> netByCategory;
+
+    public CategoryHistory(YearMonth startMonth, int monthCount, Map<Integer, double[]> netByCategory) {
+        this.startMonth = startMonth;
+        this.monthCount = monthCount;
+        this.netByCategory = Collections.unmodifiableMap(netByCategory);
+    }
+
+    public YearMonth getStartMonth() { return startMonth; }
+    public int getMonthCount() { return monthCount; }
+    public Map<Integer, double[]> getNetByCategory() { return netByCategory; }
+
+    /** 履歴の最後の月 */
+    public YearMonth getEndMonth() { return startMonth.plusMonths(monthCount - 1); }
+}
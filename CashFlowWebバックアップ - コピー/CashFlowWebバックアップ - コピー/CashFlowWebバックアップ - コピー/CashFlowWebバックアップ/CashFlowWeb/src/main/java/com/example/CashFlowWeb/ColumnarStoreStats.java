@@ -0,0 +1,27 @@
+package com.example.CashFlowWeb;
+
+/**
+ * 取引の列ストアの状態を保持するモデルクラス（監視用）。
+ */
+public class ColumnarStoreStats {
+    private boolean enabled;
+    private int loadedUsers;    // 列を読み込み済みのユーザー数
+    private long rows;
+    private long allocatedBytes; // 列の配列が確保しているメモリの目安
+    private long loads;         // DBから読み込んだ回数（起動時・読み直し）
+
+    public ColumnarStoreStats(boolean enabled, int loadedUsers, long rows, long allocatedBytes, long loads) {
+        this.enabled = enabled;
+        this.loadedUsers = loadedUsers;
+        this.rows = rows;
+        this.allocatedBytes = allocatedBytes;
+        this.loads = loads;
+    }
+
+    // --- Getter Methods ---
+    public boolean isEnabled() { return enabled; }
+    public int getLoadedUsers() { return loadedUsers; }
+    public long getRows() { return rows; }
+    public long getAllocatedBytes() { return allocatedBytes; }
+    public long getLoads() { return loads; }
+}
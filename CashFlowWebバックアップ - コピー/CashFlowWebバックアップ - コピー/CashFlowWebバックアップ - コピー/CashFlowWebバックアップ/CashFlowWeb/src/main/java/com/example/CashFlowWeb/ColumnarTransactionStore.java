@@ -0,0 +1,550 @@
+package com.example.CashFlowWeb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 取引を列指向の配列でメモリ上に保持し、カテゴリ別の集計をSQLを使わずに行うストア（任意機能）。
+ * 環境変数 CASHFLOW_COLUMNAR_STORE=true（またはシステムプロパティ cashflow.columnar.enabled=true）で有効になります。
+ *
+ * ユーザーごとに、(日付, ID) 順に並べた列（エポック日 int[]、金額(最小単位) long[]、カテゴリ int[]、フラグ byte[]）を持ち、
+ * 日付範囲は二分探索で絞り込みます。
+ * 取引の書き込みは、ユーザー単位のロックを持ったままDBトランザクションと配列への反映を行うため、
+ * 集計結果はコミット済みのDBと常に一致します。
+ * 一括インポートのように1行ずつ反映しない書き込みの後は、次に集計するときにDBから読み直します。
+ */
+public class ColumnarTransactionStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ColumnarTransactionStore.class);
+
+    private static final DaoMetrics METRICS = DaoMetrics.forDao("ColumnarTransactionStore");
+
+    // フラグ列のビット
+    private static final byte INCOME = 1;
+    private static final byte EXPENSE = 1 << 1;
+    private static final byte FUTURE = 1 << 2;
+    private static final byte EXTRAORDINARY = 1 << 3;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final ColumnarTransactionStore INSTANCE = new ColumnarTransactionStore(isEnabledByConfig());
+
+    private final boolean enabled;
+    private final Map<Integer, Columns> byUser = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+
+    /**
+     * アプリ全体で共有するストアを返します（無効な場合は何も保持しないストア）。
+     */
+    public static ColumnarTransactionStore getInstance() {
+        return INSTANCE;
+    }
+
+    ColumnarTransactionStore(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    private static boolean isEnabledByConfig() {
+        String value = System.getProperty("cashflow.columnar.enabled", System.getenv("CASHFLOW_COLUMNAR_STORE"));
+        return value != null && Boolean.parseBoolean(value.trim());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ----------------------------------------
+    // 読み込み
+    // ----------------------------------------
+
+    /**
+     * 全ユーザーの取引をDBから読み込みます（起動時）。無効な場合は何もしません。
+     */
+    public void loadAll() {
+        if (!enabled) {
+            return;
+        }
+        List<Integer> userIds = new ArrayList<>();
+        try (Connection conn = DBManager.connect();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM users")) {
+            while (rs.next()) {
+                userIds.add(rs.getInt("id"));
+            }
+        } catch (SQLException e) {
+            METRICS.recordFailure("loadAll", e);
+            return;
+        }
+
+        long start = System.nanoTime();
+        long rows = 0;
+        for (int userId : userIds) {
+            Columns columns = columnsFor(userId);
+            if (ensureLoaded(userId, columns)) {
+                rows += columns.size;
+            }
+        }
+        log.info("列ストアに取引 {} 件（{} ユーザー）を読み込みました ({} ms)",
+                rows, userIds.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * 保持している全ユーザーの列を破棄し、次に集計するときにDBから読み直させます（DBを直接変更した場合など）。
+     */
+    public void invalidateAll() {
+        for (Columns columns : byUser.values()) {
+            columns.lock.writeLock().lock();
+            try {
+                columns.clear();
+            } finally {
+                columns.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private Columns columnsFor(int userId) {
+        return byUser.computeIfAbsent(userId, k -> new Columns());
+    }
+
+    /**
+     * まだ読み込んでいなければDBから読み込みます。読み込めなかった場合は false を返します。
+     */
+    private boolean ensureLoaded(int userId, Columns columns) {
+        if (columns.loaded) {
+            return true;
+        }
+        columns.lock.writeLock().lock();
+        try {
+            if (!columns.loaded) {
+                columns.load(userId);
+                loads.increment();
+            }
+            return true;
+        } catch (SQLException e) {
+            // 読み込めなかったユーザーはSQLでの集計に戻る
+            METRICS.recordFailure("load", e);
+            columns.clear();
+            return false;
+        } finally {
+            columns.lock.writeLock().unlock();
+        }
+    }
+
+    // ----------------------------------------
+    // 書き込み
+    // ----------------------------------------
+
+    /**
+     * 取引を書き込む処理。DBに対して行った変更を changes に記録します。
+     */
+    @FunctionalInterface
+    public interface Write<T> {
+        T execute(Changes changes) throws SQLException;
+    }
+
+    /**
+     * ユーザーの取引への書き込みを実行し、正常に終わったら記録された変更を列に反映します。
+     * 同じユーザーへの書き込みと集計は、反映が終わるまで待たされます。
+     */
+    public <T> T write(int userId, Write<T> work) throws SQLException {
+        if (!enabled) {
+            return work.execute(Changes.DISCARD);
+        }
+        Columns columns = columnsFor(userId);
+        columns.lock.writeLock().lock();
+        try {
+            Changes changes = new Changes();
+            T result = work.execute(changes);
+            columns.apply(changes);
+            return result;
+        } finally {
+            columns.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 1回の書き込みでDBに加えた変更の記録。
+     */
+    public static class Changes {
+        private static final Changes DISCARD = new Changes();
+
+        private final List<Row> inserted = new ArrayList<>();
+        private final List<Row> deleted = new ArrayList<>();
+        private boolean reloadRequired;
+
+        public void inserted(int id, LocalDate date, long amountMinor, String type, int categoryId, boolean isFuture, boolean isExtraordinary) {
+            if (this != DISCARD) {
+                inserted.add(new Row(id, (int) date.toEpochDay(), amountMinor, categoryId, flagsOf(type, isFuture, isExtraordinary)));
+            }
+        }
+
+        public void deleted(int id, LocalDate date) {
+            if (this != DISCARD) {
+                deleted.add(new Row(id, (int) date.toEpochDay(), 0, 0, (byte) 0));
+            }
+        }
+
+        /**
+         * 変更を1行ずつ記録できない書き込み（一括登録など）の後に、列を読み直させます。
+         */
+        public void reloadRequired() {
+            reloadRequired = true;
+        }
+    }
+
+    private static final class Row {
+        final int id;
+        final int day;
+        final long amount;
+        final int categoryId;
+        final byte flags;
+
+        Row(int id, int day, long amount, int categoryId, byte flags) {
+            this.id = id;
+            this.day = day;
+            this.amount = amount;
+            this.categoryId = categoryId;
+            this.flags = flags;
+        }
+    }
+
+    // ----------------------------------------
+    // 集計
+    // ----------------------------------------
+
+    /**
+     * 期間内の取引金額（最小単位）をカテゴリごとに合計します。取引が1件もないカテゴリは含みません。
+     * ストアが無効な場合、種類が INCOME/EXPENSE 以外の場合、読み込みに失敗した場合は null を返します（呼び出し側はSQLで集計してください）。
+     *
+     * @param startDate     開始日（この日を含む）
+     * @param endDate       終了日（この日を含む）
+     * @param type          INCOME または EXPENSE
+     * @param includeFuture 将来の予定取引を含めるかどうか
+     */
+    public Map<Integer, Long> sumByCategory(int userId, LocalDate startDate, LocalDate endDate, String type, boolean includeFuture) {
+        if (!enabled) {
+            return null;
+        }
+        byte typeFlag = typeFlagOf(type);
+        if (typeFlag == 0) {
+            return null;
+        }
+        Columns columns = columnsFor(userId);
+        if (!ensureLoaded(userId, columns)) {
+            return null;
+        }
+
+        columns.lock.readLock().lock();
+        try {
+            if (!columns.loaded) {
+                // 読み込んだ直後に破棄された
+                return null;
+            }
+            int from = columns.lowerBound((int) startDate.toEpochDay(), Integer.MIN_VALUE);
+            int to = columns.lowerBound((int) endDate.toEpochDay() + 1, Integer.MIN_VALUE);
+            byte mask = (byte) (typeFlag | (includeFuture ? 0 : FUTURE));
+            int[] categories = columns.categories;
+            long[] amounts = columns.amounts;
+            byte[] flags = columns.flags;
+            long[] sums = new long[columns.categoryCount];
+            int[] counts = new int[columns.categoryCount];
+            for (int i = from; i < to; i++) {
+                // 種類のビットが立っていて、（将来分を除く場合は）将来のビットが立っていない行
+                if ((flags[i] & mask) == typeFlag) {
+                    sums[categories[i]] += amounts[i];
+                    counts[categories[i]]++;
+                }
+            }
+
+            Map<Integer, Long> totals = new LinkedHashMap<>();
+            for (int dense = 0; dense < sums.length; dense++) {
+                if (counts[dense] > 0) {
+                    totals.put(columns.categoryIds[dense], sums[dense]);
+                }
+            }
+            return totals;
+        } finally {
+            columns.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * startMonth から monthCount ヶ月分の取引金額（最小単位）を、カテゴリごと・月ごとに合計します。
+     * 値の配列は startMonth からの月の順で、取引が1件もないカテゴリは含みません。
+     * 取引は日付順に並んでいるため、期間を1回走査しながら月の境目で添字を進めます。
+     * null を返す条件は sumByCategory() と同じです。
+     */
+    public Map<Integer, long[]> sumByCategoryAndMonth(int userId, YearMonth startMonth, int monthCount, String type, boolean includeFuture) {
+        if (!enabled) {
+            return null;
+        }
+        byte typeFlag = typeFlagOf(type);
+        if (typeFlag == 0) {
+            return null;
+        }
+        Columns columns = columnsFor(userId);
+        if (!ensureLoaded(userId, columns)) {
+            return null;
+        }
+
+        // 各月の翌月初日（この日以降は次の月）
+        int[] monthEnds = new int[monthCount];
+        for (int m = 0; m < monthCount; m++) {
+            monthEnds[m] = (int) startMonth.plusMonths(m + 1).atDay(1).toEpochDay();
+        }
+
+        columns.lock.readLock().lock();
+        try {
+            if (!columns.loaded) {
+                // 読み込んだ直後に破棄された
+                return null;
+            }
+            int from = columns.lowerBound((int) startMonth.atDay(1).toEpochDay(), Integer.MIN_VALUE);
+            int to = columns.lowerBound(monthEnds[monthCount - 1], Integer.MIN_VALUE);
+            byte mask = (byte) (typeFlag | (includeFuture ? 0 : FUTURE));
+            int[] days = columns.days;
+            int[] categories = columns.categories;
+            long[] amounts = columns.amounts;
+            byte[] flags = columns.flags;
+            long[][] sums = new long[columns.categoryCount][];
+            int month = 0;
+            for (int i = from; i < to; i++) {
+                while (days[i] >= monthEnds[month]) {
+                    month++;
+                }
+                if ((flags[i] & mask) == typeFlag) {
+                    long[] byMonth = sums[categories[i]];
+                    if (byMonth == null) {
+                        byMonth = sums[categories[i]] = new long[monthCount];
+                    }
+                    byMonth[month] += amounts[i];
+                }
+            }
+
+            Map<Integer, long[]> totals = new LinkedHashMap<>();
+            for (int dense = 0; dense < sums.length; dense++) {
+                if (sums[dense] != null) {
+                    totals.put(columns.categoryIds[dense], sums[dense]);
+                }
+            }
+            return totals;
+        } finally {
+            columns.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * ストアの状態（読み込み済みユーザー数、件数、使用メモリの目安）を取得します（監視用）。
+     */
+    public ColumnarStoreStats getStats() {
+        int users = 0;
+        long rows = 0;
+        long bytes = 0;
+        for (Columns columns : byUser.values()) {
+            columns.lock.readLock().lock();
+            try {
+                if (columns.loaded) {
+                    users++;
+                    rows += columns.size;
+                    // id, 日付, カテゴリ (int) + 金額 (long) + フラグ (byte)
+                    bytes += (long) columns.ids.length * (4 + 4 + 4 + 8 + 1);
+                }
+            } finally {
+                columns.lock.readLock().unlock();
+            }
+        }
+        return new ColumnarStoreStats(enabled, users, rows, bytes, loads.sum());
+    }
+
+    private static byte typeFlagOf(String type) {
+        if ("INCOME".equalsIgnoreCase(type)) {
+            return INCOME;
+        }
+        if ("EXPENSE".equalsIgnoreCase(type)) {
+            return EXPENSE;
+        }
+        return 0;
+    }
+
+    private static byte flagsOf(String type, boolean isFuture, boolean isExtraordinary) {
+        return (byte) (typeFlagOf(type) | (isFuture ? FUTURE : 0) | (isExtraordinary ? EXTRAORDINARY : 0));
+    }
+
+    // ----------------------------------------
+    // ユーザーごとの列
+    // ----------------------------------------
+
+    /**
+     * 1ユーザー分の取引の列。フィールドは lock で保護します。
+     * カテゴリ列にはカテゴリIDではなく、ユーザー内で振り直した連番を入れます（集計で配列の添字にするため）。
+     */
+    private static final class Columns {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        volatile boolean loaded;
+
+        int size;
+        int[] ids = new int[0];
+        int[] days = new int[0];
+        long[] amounts = new long[0];
+        int[] categories = new int[0];
+        byte[] flags = new byte[0];
+
+        int categoryCount;
+        int[] categoryIds = new int[0];
+        final Map<Integer, Integer> denseByCategoryId = new HashMap<>();
+
+        void load(int userId) throws SQLException {
+            clear();
+            String sql = "SELECT id, date, amount, type, category_id, is_future, is_extraordinary " +
+                         "FROM transactions WHERE user_id = ? ORDER BY date, id";
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                pstmt.setFetchSize(10_000);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        ensureCapacity(size + 1);
+                        ids[size] = rs.getInt("id");
+                        days[size] = (int) rs.getLong("date");
+                        amounts[size] = rs.getLong("amount");
+                        categories[size] = denseCategory(rs.getInt("category_id"));
+                        flags[size] = flagsOf(rs.getString("type"), rs.getBoolean("is_future"), rs.getBoolean("is_extraordinary"));
+                        size++;
+                    }
+                }
+            }
+            loaded = true;
+        }
+
+        void clear() {
+            loaded = false;
+            size = 0;
+            ids = new int[0];
+            days = new int[0];
+            amounts = new long[0];
+            categories = new int[0];
+            flags = new byte[0];
+            categoryCount = 0;
+            categoryIds = new int[0];
+            denseByCategoryId.clear();
+        }
+
+        /**
+         * 記録された変更を反映します。未読み込みなら何もしません（次の読み込みでDBから反映される）。
+         */
+        void apply(Changes changes) {
+            if (!loaded) {
+                return;
+            }
+            if (changes.reloadRequired) {
+                clear();
+                return;
+            }
+            for (Row row : changes.deleted) {
+                int index = lowerBound(row.day, row.id);
+                if (index >= size || days[index] != row.day || ids[index] != row.id) {
+                    // DBと食い違っているので、次の集計で読み直す
+                    clear();
+                    return;
+                }
+                remove(index);
+            }
+            for (Row row : changes.inserted) {
+                insert(lowerBound(row.day, row.id), row);
+            }
+        }
+
+        /**
+         * (日付, ID) の順で、指定した位置以上になる最初の添字を返します。
+         */
+        int lowerBound(int day, int id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (days[mid] < day || (days[mid] == day && ids[mid] < id)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private void insert(int index, Row row) {
+            ensureCapacity(size + 1);
+            int tail = size - index;
+            if (tail > 0) {
+                // 日付順に届く通常の登録では末尾への追加になり、ずらす必要はない
+                System.arraycopy(ids, index, ids, index + 1, tail);
+                System.arraycopy(days, index, days, index + 1, tail);
+                System.arraycopy(amounts, index, amounts, index + 1, tail);
+                System.arraycopy(categories, index, categories, index + 1, tail);
+                System.arraycopy(flags, index, flags, index + 1, tail);
+            }
+            ids[index] = row.id;
+            days[index] = row.day;
+            amounts[index] = row.amount;
+            categories[index] = denseCategory(row.categoryId);
+            flags[index] = row.flags;
+            size++;
+        }
+
+        private void remove(int index) {
+            int tail = size - index - 1;
+            if (tail > 0) {
+                System.arraycopy(ids, index + 1, ids, index, tail);
+                System.arraycopy(days, index + 1, days, index, tail);
+                System.arraycopy(amounts, index + 1, amounts, index, tail);
+                System.arraycopy(categories, index + 1, categories, index, tail);
+                System.arraycopy(flags, index + 1, flags, index, tail);
+            }
+            size--;
+        }
+
+        private int denseCategory(int categoryId) {
+            Integer dense = denseByCategoryId.get(categoryId);
+            if (dense == null) {
+                dense = categoryCount;
+                if (categoryCount == categoryIds.length) {
+                    categoryIds = Arrays.copyOf(categoryIds, Math.max(16, categoryCount * 2));
+                }
+                categoryIds[categoryCount++] = categoryId;
+                denseByCategoryId.put(categoryId, dense);
+            }
+            return dense;
+        }
+
+        private void ensureCapacity(int required) {
+            if (required <= ids.length) {
+                return;
+            }
+            int capacity = Math.max(INITIAL_CAPACITY, ids.length);
+            while (capacity < required) {
+                capacity = capacity + (capacity >> 1);
+            }
+            ids = Arrays.copyOf(ids, capacity);
+            days = Arrays.copyOf(days, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            categories = Arrays.copyOf(categories, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+    }
+}
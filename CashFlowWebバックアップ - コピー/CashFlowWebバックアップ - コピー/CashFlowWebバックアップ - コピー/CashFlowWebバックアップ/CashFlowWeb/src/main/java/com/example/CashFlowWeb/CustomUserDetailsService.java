@@ -1,24 +1,71 @@
 package com.example.CashFlowWeb;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
 /**
  * Spring Securityがログイン認証を行うために使用するクラス。
  * UserDetailsServiceインターフェースを実装し、
  * ユーザー名からユーザー情報を取得する方法を定義します。
+ * 検索結果は一定時間キャッシュし、ログインが集中しても毎回DBを検索しないようにします。
  */
 @Service // 👈 このクラスをSpringのサービス（Bean）として登録する
 public class CustomUserDetailsService implements UserDetailsService {
 
+    /**
+     * キャッシュの1件分。user が null なら「存在しない」ことをキャッシュしている。
+     */
+    private static final class CacheEntry {
+        final User user;
+        final long expiresAt;
+
+        CacheEntry(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+
     // 依存性の注入 (DI)
     // Springが@Repositoryの付いたUserDAOのインスタンスを自動的にここにセットします。
     @Autowired
     private UserDAO userDAO;
 
+    // キャッシュの有効期間（0ならキャッシュしない）
+    @Value("${security.user-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    // 見つからなかったユーザー名の有効期間（DBエラー時に長く締め出さないよう短くする）
+    @Value("${security.user-cache.negative-ttl-seconds:5}")
+    private long negativeTtlSeconds;
+
+    // キャッシュする最大件数
+    @Value("${security.user-cache.max-size:10000}")
+    private int maxSize;
+
+    // 管理者として扱うユーザー名（カンマ区切り）。DBのロールに関わらず ADMIN にする
+    private final Set<String> adminUsernames;
+
+    // キー: 正規化（小文字化）したユーザー名
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+
+    public CustomUserDetailsService(@Value("${cashflow.admin.usernames:}") String adminUsernames) {
+        this.adminUsernames = Arrays.stream(adminUsernames.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .map(UserDAO::normalize)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
     /**
      * Spring Securityがログイン処理（/login）を実行する際に、
      * ユーザー名（username）を引数としてこのメソッドを呼び出します。
@@ -28,9 +75,9 @@ public class CustomUserDetailsService implements UserDetailsService {
      */
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        
-        // 1. UserDAOを使って、DBからユーザー名で検索
-        User user = userDAO.findByUsername(username);
+
+        // 1. キャッシュ、なければUserDAOを使ってDBからユーザー名で検索
+        User user = findUser(username);
 
         // 2. ユーザーが見つからなかった場合の処理
         if (user == null) {
@@ -38,9 +85,72 @@ public class CustomUserDetailsService implements UserDetailsService {
             throw new UsernameNotFoundException("ユーザーが見つかりません: " + username);
         }
 
-        // 3. ユーザーが見つかった場合
+        // 3. 設定で管理者に指定されたユーザーは ADMIN にする（findUser() はコピーを返すのでキャッシュには影響しない）
+        if (adminUsernames.contains(UserDAO.normalize(user.getUsername()))) {
+            user.setRole(User.ROLE_ADMIN);
+        }
+
+        // 4. ユーザーが見つかった場合
         // User.java (モデル) は既に UserDetails インターフェースを実装しているため、
         // そのまま返すだけでSpring Securityがパスワードの比較などを行います。
         return user;
     }
-}
\ No newline at end of file
+
+    /**
+     * ユーザー名でユーザーを検索します（キャッシュ優先）。見つからなければnull。
+     * 呼び出し側が変更してもキャッシュに影響しないよう、コピーを返します。
+     */
+    public User findUser(String username) {
+        if (username == null) {
+            return null;
+        }
+        String key = UserDAO.normalize(username);
+        long now = System.currentTimeMillis();
+
+        CacheEntry entry = cache.get(key);
+        if (entry == null || entry.expiresAt <= now) {
+            User loaded = userDAO.findByUsername(username);
+            long ttl = (loaded != null ? ttlSeconds : negativeTtlSeconds) * 1000;
+            entry = new CacheEntry(loaded, now + ttl);
+            if (ttl > 0) {
+                if (cache.size() >= maxSize) {
+                    evict(now);
+                }
+                cache.put(key, entry);
+            }
+        }
+        return entry.user == null ? null : copyOf(entry.user);
+    }
+
+    /**
+     * 指定したユーザー名のキャッシュを破棄します（ユーザー登録・変更時）。
+     */
+    public void invalidate(String username) {
+        if (username != null) {
+            cache.remove(UserDAO.normalize(username));
+        }
+    }
+
+    /**
+     * すべてのキャッシュを破棄します（DBをバックアップから戻したときなど）。
+     */
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    /**
+     * 期限切れの項目を削除し、それでも上限に達している場合はキャッシュを空にします。
+     */
+    private void evict(long now) {
+        cache.values().removeIf(e -> e.expiresAt <= now);
+        if (cache.size() >= maxSize) {
+            cache.clear();
+        }
+    }
+
+    private static User copyOf(User user) {
+        User copy = new User(user.getId(), user.getUsername(), user.getPassword());
+        copy.setRole(user.getRole());
+        return copy;
+    }
+}
@@ -1,62 +1,408 @@
 package com.example.CashFlowWeb;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 public class DBManager {
 
+    private static final Logger log = LoggerFactory.getLogger(DBManager.class);
+
+    // 接続先URLは起動時に一度だけ決定する（毎回環境変数を読み直さない）
+    private static final String DB_URL = resolveDbUrl();
+    private static final boolean POSTGRES = !DB_URL.startsWith("jdbc:sqlite:");
+
+    // 接続待ち時間の計測用
+    private static final LongAdder acquireCount = new LongAdder();
+    private static final LongAdder acquireWaitNanos = new LongAdder();
+    private static final AtomicLong maxAcquireWaitNanos = new AtomicLong();
+
+    /**
+     * コネクションプールは最初の connect() 呼び出し時に生成します。
+     */
+    private static class PoolHolder {
+        // 読み取り専用の接続はDBファイルを作れないため、書き込みキュー（ファイルを作成する）を先に用意する
+        // 無効 (DB_SQLITE_WRITE_QUEUE=true 以外、またはPostgreSQL) の場合は null
+        static final SqliteWriteQueue WRITE_QUEUE = createWriteQueue();
+        static final HikariDataSource DATA_SOURCE = createDataSource();
+        // 無効 (DB_BULKHEAD_ENABLED=false) の場合は null
+        static final DbBulkhead BULKHEAD = createBulkhead(DATA_SOURCE);
+    }
+
+    private static String resolveDbUrl() {
+        String dbUrl = System.getenv("JDBC_DATABASE_URL");
+        if (dbUrl != null && !dbUrl.isEmpty()) {
+            // クラウド環境 (Renderなど)
+            return dbUrl;
+        }
+        // ローカル環境（テストなどではシステムプロパティでファイルを切り替えられる）
+        return "jdbc:sqlite:" + System.getProperty("cashflow.sqlite.path", "cashflow.db");
+    }
+
+    /**
+     * バックエンドに合わせたプール設定を作成します。
+     * 各値は環境変数で上書きできます。
+     */
+    private static HikariDataSource createDataSource() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("cashflow-pool");
+        config.setJdbcUrl(DB_URL);
+        config.setConnectionTimeout(envLong("DB_POOL_CONNECTION_TIMEOUT_MS", 10_000));
+        // 接続の待ち時間・使用中の数などを hikaricp.* のメトリクスとして公開する
+        config.setMetricRegistry(Metrics.globalRegistry);
+
+        if (POSTGRES) {
+            config.setMaximumPoolSize(envInt("DB_POOL_MAX_SIZE", 10));
+            config.setMinimumIdle(envInt("DB_POOL_MIN_IDLE", 2));
+            config.setIdleTimeout(envLong("DB_POOL_IDLE_TIMEOUT_MS", 600_000));
+            config.setMaxLifetime(envLong("DB_POOL_MAX_LIFETIME_MS", 1_800_000));
+        } else {
+            // SQLiteは書き込みが常に1本に直列化されるため、接続数は少なく保つ。
+            // 書き込み競合時は即 SQLITE_BUSY にせず busy_timeout の間ロック解放を待たせる。
+            config.setMaximumPoolSize(envInt("DB_POOL_MAX_SIZE", 4));
+            config.setMinimumIdle(envInt("DB_POOL_MIN_IDLE", 1));
+            // ファイルDBなので接続を作り直す必要はない
+            config.setIdleTimeout(0);
+            config.setMaxLifetime(0);
+            config.addDataSourceProperty("busy_timeout", String.valueOf(envInt("DB_SQLITE_BUSY_TIMEOUT_MS", 5_000)));
+            // 索引の多いテーブルへ大量に書き込んでもページの読み直しが起きないよう、ページキャッシュを広げる (KiB単位、負数指定)
+            config.addDataSourceProperty("cache_size", String.valueOf(-envInt("DB_SQLITE_CACHE_KB", 65_536)));
+            if (PoolHolder.WRITE_QUEUE != null) {
+                // 書き込みはすべて書き込みキューの専用接続で行うため、プールの接続は読み取り専用で開く (SQLITE_OPEN_READONLY)
+                config.addDataSourceProperty("open_mode", "1");
+                // HikariCPは接続ごとに読み取り専用フラグを設定し直すため、開いたときのモードと合わせておく
+                config.setReadOnly(true);
+            }
+        }
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * SQLiteの書き込みキューを作成します（DB_SQLITE_WRITE_QUEUE=true の場合のみ）。
+     * 書き込みを1本の専用接続（WALモード）に集め、キューに溜まった分をまとめてコミットします。
+     */
+    private static SqliteWriteQueue createWriteQueue() {
+        if (POSTGRES || !Boolean.parseBoolean(System.getenv("DB_SQLITE_WRITE_QUEUE"))) {
+            return null;
+        }
+        try {
+            return new SqliteWriteQueue(DB_URL,
+                envInt("DB_SQLITE_WRITE_QUEUE_CAPACITY", 10_000),
+                envInt("DB_SQLITE_GROUP_COMMIT_MAX", 128),
+                envInt("DB_SQLITE_BUSY_TIMEOUT_MS", 5_000));
+        } catch (SQLException e) {
+            // 書き込みキューが使えなくても、従来どおりプールから書き込めるようにする
+            log.warn("SQLiteの書き込みキューを作成できないため、無効にして続行します", e);
+            return null;
+        }
+    }
+
+    /**
+     * DBアクセスの同時実行数の制限を作成します。接続はプールの上限まで、書き込みはSQLiteなら1つずつ。
+     * 待てる数 (DB_BULKHEAD_MAX_WAITING) を超えたリクエストは待たせずに 503 で返します。
+     */
+    private static DbBulkhead createBulkhead(HikariDataSource dataSource) {
+        if (!Boolean.parseBoolean(System.getenv().getOrDefault("DB_BULKHEAD_ENABLED", "true"))) {
+            return null;
+        }
+        int poolSize = dataSource.getMaximumPoolSize();
+        return new DbBulkhead(
+            poolSize,
+            POSTGRES ? poolSize : 1,
+            envInt("DB_BULKHEAD_MAX_WAITING", 1_000),
+            dataSource.getConnectionTimeout());
+    }
+
+    static int envInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("環境変数 {} の値が不正です（既定値 {} を使用）: {}", name, defaultValue, value);
+            return defaultValue;
+        }
+    }
+
+    static long envLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("環境変数 {} の値が不正です（既定値 {} を使用）: {}", name, defaultValue, value);
+            return defaultValue;
+        }
+    }
+
     /**
      * データベース接続を取得します。
      * 環境変数 "JDBC_DATABASE_URL" があればそれ（PostgreSQL）を使い、
      * なければローカルのSQLiteを使います。
+     * 接続はコネクションプールから貸し出され、close() でプールに返却されます。
      */
     public static Connection connect() throws SQLException {
-        String dbUrl = System.getenv("JDBC_DATABASE_URL");
-        
-        if (dbUrl != null && !dbUrl.isEmpty()) {
-            // クラウド環境 (Renderなど)
-            return DriverManager.getConnection(dbUrl);
+        DbBulkhead bulkhead = PoolHolder.BULKHEAD;
+        long start = System.nanoTime();
+        Connection conn;
+        if (bulkhead == null) {
+            conn = PoolHolder.DATA_SOURCE.getConnection();
         } else {
-            // ローカル環境
-            return DriverManager.getConnection("jdbc:sqlite:cashflow.db");
+            bulkhead.acquireConnection();
+            try {
+                conn = releasingOnClose(PoolHolder.DATA_SOURCE.getConnection(), bulkhead);
+            } catch (SQLException | RuntimeException e) {
+                bulkhead.releaseConnection();
+                throw e;
+            }
         }
+        long waited = System.nanoTime() - start;
+        acquireCount.increment();
+        acquireWaitNanos.add(waited);
+        maxAcquireWaitNanos.accumulateAndGet(waited, Math::max);
+        // SQLごとの実行時間を計測する（スロークエリログ）
+        return QueryTracer.wrap(conn);
     }
 
-    public static void initializeDatabase() {
-        try (Connection conn = connect();
-             Statement stmt = conn.createStatement()) {
-
-            // 1. カテゴリテーブル
-            stmt.execute("CREATE TABLE IF NOT EXISTS categories (" +
-                         "id SERIAL PRIMARY KEY," + // SQLiteのINTEGER PRIMARY KEY AUTOINCREMENTの代わりにSERIALを使う場合もあるが、互換性のため調整が必要
-                         "name TEXT NOT NULL," +
-                         "type TEXT NOT NULL CHECK(type IN ('INCOME', 'EXPENSE'))" +
-                         ");");
-
-            // ※ PostgreSQLとSQLiteの両方で動くSQLにするため、ID定義を少し工夫します
-            // 以下の書き方はSQLiteでもPostgreSQLでも概ね動作するシンプルな形です
-            
-            // しかし、厳密には AUTOINCREMENT (SQLite) と SERIAL (PostgreSQL) は違います。
-            // 簡易的な対応として、テーブル作成は「アプリ起動時」ではなく
-            // クラウド側で一度だけSQLを流すか、あるいは以下のように汎用的な書き方を試みます。
-            
-            // 今回は複雑さを避けるため、とりあえずテーブル作成のSQLは
-            // 「エラーが出てもドンマイ」の精神で、既存のSQLite用コードを残しつつ
-            // PostgreSQLでは手動作成、またはエラーを無視して進める形にします。
-            // (本格的な移行では create table 文を分ける必要がありますが、まずは接続確認を目指しましょう)
-
-            // SQLite用のテーブル作成ロジック（ローカルではこれが動きます）
-            if (System.getenv("JDBC_DATABASE_URL") == null) {
-                createTablesSQLite(stmt);
-            } else {
-                createTablesPostgres(stmt);
+    /**
+     * close() されたときにバルクヘッドの枠を1度だけ返す接続を返します。
+     */
+    private static Connection releasingOnClose(Connection conn, DbBulkhead bulkhead) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                try {
+                    return method.invoke(conn, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                } finally {
+                    if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                        bulkhead.releaseConnection();
+                    }
+                }
+            });
+    }
+
+    /**
+     * 1つの接続・1つのDBトランザクションの中で処理を実行します。
+     * 処理が正常に終わればコミットし、例外が発生した場合はロールバックします。
+     */
+    public static <T> T inTransaction(SqlWork<T> work) throws SQLException {
+        // SQLiteの書き込みキューが有効なら、専用接続でまとめてコミットされるのを待つ
+        SqliteWriteQueue writeQueue = PoolHolder.WRITE_QUEUE;
+        if (writeQueue != null) {
+            return writeQueue.execute(work);
+        }
+        // 書き込みトランザクションは、接続を取る前に書き込みの枠を取る（SQLiteでは1つずつ実行される）
+        DbBulkhead bulkhead = PoolHolder.BULKHEAD;
+        if (bulkhead == null) {
+            return runInTransaction(work);
+        }
+        bulkhead.acquireWriter();
+        try {
+            return runInTransaction(work);
+        } finally {
+            bulkhead.releaseWriter();
+        }
+    }
+
+    private static <T> T runInTransaction(SqlWork<T> work) throws SQLException {
+        try (Connection conn = connect()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                T result = work.execute(conn);
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
             }
-            
+        }
+    }
+
+    /**
+     * 書き込みを非同期に実行します。返される Future は、コミットされた後に結果で完了します。
+     * SQLiteの書き込みキューが有効ならキューに積んで呼び出し元をブロックせず、無効ならこの場で実行します。
+     */
+    public static <T> CompletableFuture<T> submitWrite(SqlWork<T> work) {
+        SqliteWriteQueue writeQueue = PoolHolder.WRITE_QUEUE;
+        if (writeQueue != null) {
+            return writeQueue.submit(work);
+        }
+        try {
+            return CompletableFuture.completedFuture(inTransaction(work));
+        } catch (SQLException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * inTransaction() などによる書き込みを止めます（DBファイルを丸ごと置き換えるリストアなど）。
+     * 書き込みキューが有効ならキューの順番が来るまで（それまでの書き込みがコミットされるまで）、
+     * 無効ならバルクヘッドの書き込みの枠を取れるまで待ちます。返された WritePause を close() するまで、
+     * 他の書き込みは枠やキューで待ちます。どちらも無効な場合は何も止めません（SQLiteのロックだけで排他されます）。
+     */
+    static WritePause pauseWrites() throws SQLException {
+        SqliteWriteQueue writeQueue = PoolHolder.WRITE_QUEUE;
+        if (writeQueue != null) {
+            return writeQueue.pause()::run;
+        }
+        DbBulkhead bulkhead = PoolHolder.BULKHEAD;
+        if (bulkhead == null) {
+            return () -> { };
+        }
+        bulkhead.acquireWriter();
+        return bulkhead::releaseWriter;
+    }
+
+    /**
+     * pauseWrites() で止めた書き込みを再開するハンドル。
+     */
+    @FunctionalInterface
+    interface WritePause extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * コネクションプールを通さない、SQLiteの専用接続を開きます（バックアップ・リストアなど長時間の処理用）。
+     * プールの接続やバルクヘッドの枠を占有しません。使い終わったら close() してください。
+     */
+    static Connection openSqliteConnection(boolean readOnly) throws SQLException {
+        if (POSTGRES) {
+            throw new IllegalStateException("PostgreSQLには使えません");
+        }
+        Properties props = new Properties();
+        props.setProperty("busy_timeout", String.valueOf(envInt("DB_SQLITE_BUSY_TIMEOUT_MS", 5_000)));
+        if (readOnly) {
+            props.setProperty("open_mode", "1");
+        }
+        return DriverManager.getConnection(DB_URL, props);
+    }
+
+    /**
+     * 1文の更新系SQL (INSERT/UPDATE/DELETE) を書き込みとして実行し、更新件数を返します。
+     * 書き込みは inTransaction() を通すため、書き込みキューやバルクヘッドの対象になります。
+     */
+    public static int executeUpdate(String sql, StatementSetter setter) throws SQLException {
+        return inTransaction(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                setter.set(pstmt);
+                return pstmt.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * executeUpdate() でパラメータを設定する処理。
+     */
+    @FunctionalInterface
+    public interface StatementSetter {
+        void set(PreparedStatement pstmt) throws SQLException;
+    }
+
+    /**
+     * SQLiteの書き込みキューの状況を取得します（監視用）。
+     */
+    public static WriteQueueStats getWriteQueueStats() {
+        SqliteWriteQueue writeQueue = PoolHolder.WRITE_QUEUE;
+        return writeQueue != null ? writeQueue.getStats() : new WriteQueueStats(false, 0, 0, 0, 0, 0.0, 0);
+    }
+
+    /**
+     * inTransaction() で実行する処理。
+     */
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T execute(Connection conn) throws SQLException;
+    }
+
+    /**
+     * PostgreSQLに接続しているかどうかを返します。
+     */
+    public static boolean isPostgres() {
+        return POSTGRES;
+    }
+
+    /**
+     * コネクションプールの利用状況を取得します（監視用）。
+     */
+    public static PoolStats getPoolStats() {
+        HikariPoolMXBean pool = PoolHolder.DATA_SOURCE.getHikariPoolMXBean();
+        DbBulkhead bulkhead = PoolHolder.BULKHEAD;
+        long count = acquireCount.sum();
+        long totalWait = acquireWaitNanos.sum();
+        return new PoolStats(
+            POSTGRES ? "postgresql" : "sqlite",
+            PoolHolder.DATA_SOURCE.getMaximumPoolSize(),
+            pool.getActiveConnections(),
+            pool.getIdleConnections(),
+            pool.getTotalConnections(),
+            pool.getThreadsAwaitingConnection(),
+            count,
+            count == 0 ? 0.0 : totalWait / 1_000_000.0 / count,
+            maxAcquireWaitNanos.get() / 1_000_000.0,
+            bulkhead != null,
+            bulkhead != null ? bulkhead.getMaxWriters() : 0,
+            bulkhead != null ? bulkhead.getMaxWaiting() : 0,
+            bulkhead != null ? bulkhead.getWaiting() : 0,
+            bulkhead != null ? bulkhead.getRejected() : 0
+        );
+    }
+
+    public static void initializeDatabase() {
+        try {
+            inTransaction(conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    // 初期テーブル（スキーマバージョン0）はDBごとに型を合わせて作成する。
+                    // 以降のスキーマ変更は SchemaMigrator のマイグレーションで行う。
+                    // SQLite用のテーブル作成ロジック（ローカルではこれが動きます）
+                    if (!isPostgres()) {
+                        createTablesSQLite(stmt);
+                    } else {
+                        createTablesPostgres(stmt);
+                    }
+                }
+                return null;
+            });
         } catch (SQLException e) {
-            System.err.println("データベース初期化エラー (既存テーブルがある場合は無視してください): " + e.getMessage());
+            log.error("データベース初期化エラー (既存テーブルがある場合は無視してください)", e);
+        }
+
+        SchemaMigrator.migrate();
+    }
+
+    /**
+     * エポック日（INTEGER）の列から "YYYY-MM" 形式の月を求めるSQL式を返します。
+     */
+    public static String monthOfEpochDay(String column) {
+        if (POSTGRES) {
+            return "to_char(DATE '1970-01-01' + " + column + ", 'YYYY-MM')";
         }
+        return "strftime('%Y-%m', " + column + " * 86400, 'unixepoch')";
     }
 
     // SQLite用のテーブル作成
@@ -66,6 +412,7 @@ public class DBManager {
         stmt.execute("CREATE TABLE IF NOT EXISTS assets (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, ticker_symbol TEXT, quantity REAL NOT NULL, purchase_price REAL NOT NULL, current_price REAL, asset_type TEXT NOT NULL)");
         stmt.execute("CREATE TABLE IF NOT EXISTS budgets (id INTEGER PRIMARY KEY AUTOINCREMENT, year_month TEXT NOT NULL, category_id INTEGER NOT NULL, amount REAL NOT NULL, UNIQUE(year_month, category_id))");
         stmt.execute("CREATE TABLE IF NOT EXISTS goals (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, target_amount REAL NOT NULL, current_amount REAL NOT NULL DEFAULT 0, target_date TEXT, image_url TEXT)");
+        stmt.execute("CREATE TABLE IF NOT EXISTS monthly_rollups (month TEXT NOT NULL, category_id INTEGER NOT NULL, type TEXT NOT NULL, is_extraordinary BOOLEAN NOT NULL, total_amount REAL NOT NULL DEFAULT 0, tx_count INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (month, category_id, type, is_extraordinary))");
     }
 
     // PostgreSQL用のテーブル作成 (データ型を少し調整)
@@ -80,5 +427,7 @@ public class DBManager {
         stmt.execute("CREATE TABLE IF NOT EXISTS budgets (id SERIAL PRIMARY KEY, year_month TEXT NOT NULL, category_id INTEGER NOT NULL, amount DOUBLE PRECISION NOT NULL, UNIQUE(year_month, category_id))");
         // 目標
         stmt.execute("CREATE TABLE IF NOT EXISTS goals (id SERIAL PRIMARY KEY, name TEXT NOT NULL, target_amount DOUBLE PRECISION NOT NULL, current_amount DOUBLE PRECISION NOT NULL DEFAULT 0, target_date TEXT, image_url TEXT)");
+        // 月次集計 (取引の書き込み時に差分で更新する)
+        stmt.execute("CREATE TABLE IF NOT EXISTS monthly_rollups (month TEXT NOT NULL, category_id INTEGER NOT NULL, type TEXT NOT NULL, is_extraordinary BOOLEAN NOT NULL, total_amount DOUBLE PRECISION NOT NULL DEFAULT 0, tx_count INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (month, category_id, type, is_extraordinary))");
     }
 }
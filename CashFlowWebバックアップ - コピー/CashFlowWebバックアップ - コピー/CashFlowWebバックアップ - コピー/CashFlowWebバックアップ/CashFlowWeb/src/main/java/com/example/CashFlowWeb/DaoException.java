@@ -0,0 +1,22 @@
+package com.example.CashFlowWeb;
+
+import java.sql.SQLException;
+
+/**
+ * DAOの操作がDBエラーで失敗したときに投げる例外。
+ * 空の結果や false と区別できるよう非検査例外とし、ApiExceptionHandler がクライアントに 500 を返します。
+ */
+public class DaoException extends RuntimeException {
+
+    private final String operation;
+
+    public DaoException(String operation, SQLException cause) {
+        super(operation + " に失敗しました: " + cause.getMessage(), cause);
+        this.operation = operation;
+    }
+
+    /** 失敗した操作（DAO名.メソッド名） */
+    public String getOperation() {
+        return operation;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.CashFlowWeb;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DAOの操作ごとのメトリクスを記録し、SQLException を DaoException に変換するクラス。
+ *
+ * DAOは new で作られSpringのBeanではないため、メーターは Micrometer のグローバルレジストリに登録します
+ * （Spring Boot が Prometheus などのレジストリをグローバルレジストリに追加します）。
+ * 記録するメトリクス（タグ dao, method）:
+ *   - cashflow.dao.operations: 処理時間（outcome=success/error、パーセンタイル用のヒストグラム付き）
+ *   - cashflow.dao.rows: 取得・更新した件数（一覧や件数を返す操作のみ）
+ *   - cashflow.dao.errors: エラー数（exception に例外のクラス名）
+ * DAOごとに1つ forDao() で作り、各操作の本体を call() で包みます。
+ */
+final class DaoMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(DaoMetrics.class);
+    private static final MeterRegistry REGISTRY = Metrics.globalRegistry;
+
+    /**
+     * 1つの操作のメーター。
+     */
+    private static final class Meters {
+        final Timer success;
+        final Timer error;
+        final DistributionSummary rows;
+
+        Meters(String dao, String method) {
+            this.success = timer(dao, method, "success");
+            this.error = timer(dao, method, "error");
+            this.rows = DistributionSummary.builder("cashflow.dao.rows")
+                    .description("DAOの操作で取得・更新した件数")
+                    .tags("dao", dao, "method", method)
+                    .register(REGISTRY);
+        }
+
+        private static Timer timer(String dao, String method, String outcome) {
+            return Timer.builder("cashflow.dao.operations")
+                    .description("DAOの操作の処理時間")
+                    .tags("dao", dao, "method", method, "outcome", outcome)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(50_000))
+                    .maximumExpectedValue(Duration.ofSeconds(30))
+                    .register(REGISTRY);
+        }
+    }
+
+    /**
+     * DBにアクセスする処理。
+     */
+    @FunctionalInterface
+    interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    private final String dao;
+    // キー: メソッド名（毎回レジストリを引かないように保持する）
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+    private DaoMetrics(String dao) {
+        this.dao = dao;
+    }
+
+    static DaoMetrics forDao(String dao) {
+        return new DaoMetrics(dao);
+    }
+
+    /**
+     * body を実行し、処理時間と（一覧・Mapを返した場合は）件数を記録します。
+     * SQLException は記録・ログ出力したうえで DaoException にして投げます。
+     */
+    <T> T call(String method, SqlCall<T> body) {
+        Meters m = meters(method);
+        long start = System.nanoTime();
+        T result = execute(method, m, start, body);
+        if (result instanceof Collection<?> collection) {
+            m.rows.record(collection.size());
+        } else if (result instanceof Map<?, ?> map) {
+            m.rows.record(map.size());
+        }
+        return result;
+    }
+
+    /**
+     * 件数を返す書き込み（一括登録など）を実行し、その件数を記録します。
+     */
+    int update(String method, SqlCall<Integer> body) {
+        Meters m = meters(method);
+        long start = System.nanoTime();
+        int count = execute(method, m, start, body);
+        m.rows.record(count);
+        return count;
+    }
+
+    /**
+     * 呼び出し元で失敗を扱う場合（取り込み結果にエラーとして記録するなど）に、エラーだけを記録します。
+     */
+    void recordFailure(String method, Exception e) {
+        countError(method, e);
+    }
+
+    private <T> T execute(String method, Meters m, long start, SqlCall<T> body) {
+        try {
+            T result = body.call();
+            m.success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (SQLException e) {
+            m.error.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            countError(method, e);
+            throw new DaoException(dao + "." + method, e);
+        } catch (RuntimeException e) {
+            m.error.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            // 内側の操作で記録済みのエラーは数えない
+            if (!(e instanceof DaoException)) {
+                countError(method, e);
+            }
+            throw e;
+        }
+    }
+
+    private void countError(String method, Exception e) {
+        Counter.builder("cashflow.dao.errors")
+                .description("DAOの操作で発生したエラーの数")
+                .tags("dao", dao, "method", method, "exception", e.getClass().getSimpleName())
+                .register(REGISTRY)
+                .increment();
+        if (e instanceof SQLException sqlException) {
+            log.error("DB操作エラー dao={} method={} sqlState={} errorCode={} message={}",
+                    dao, method, sqlException.getSQLState(), sqlException.getErrorCode(), e.getMessage());
+        } else if (e instanceof DbBusyException) {
+            // 混雑による拒否は想定内なのでスタックトレースは出さない
+            log.warn("DB操作の拒否 dao={} method={} message={}", dao, method, e.getMessage());
+        } else {
+            log.error("DB操作エラー dao={} method={}", dao, method, e);
+        }
+    }
+
+    private Meters meters(String method) {
+        return meters.computeIfAbsent(method, k -> new Meters(dao, k));
+    }
+}
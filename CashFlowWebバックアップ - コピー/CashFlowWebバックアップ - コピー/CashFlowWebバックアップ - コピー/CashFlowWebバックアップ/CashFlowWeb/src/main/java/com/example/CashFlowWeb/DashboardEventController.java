@@ -0,0 +1,30 @@
+package com.example.CashFlowWeb;
+
+import org.springframework.http.MediaType;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * ダッシュボード向けのプッシュ通知（Server-Sent Events）のAPIコントローラー。
+ */
+@RestController
+@RequestMapping("/api/events")
+public class DashboardEventController {
+
+    private final DashboardEventService eventService;
+
+    public DashboardEventController(DashboardEventService eventService) {
+        this.eventService = eventService;
+    }
+
+    /**
+     * ログイン中のユーザーの取引の変更を受け取るストリームを開きます（EventSourceで接続）。
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(@AuthenticationPrincipal User user) {
+        return eventService.subscribe(user.getId());
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.CashFlowWeb;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 開いているダッシュボードへ、取引の変更をServer-Sent Eventsでプッシュするサービス。
+ * 取引の書き込みがコミットされると、変更された取引・新しい残高・変わった月の集計行・
+ * 予算超過を差分として送ります。クライアントは一覧や集計を読み直す必要がありません。
+ *
+ * 送信するイベント:
+ *   transaction    … 変更内容（TransactionChange。カテゴリ名を補ったもの）
+ *   balance        … 現在の残高
+ *   summary        … 変更があった月の収入・支出合計（MonthlySummary）
+ *   budget-overrun … 予算を超えた支出カテゴリ（Budget）
+ *   refresh        … CSV一括登録など、差分では表せない変更（件数）
+ */
+@Service
+public class DashboardEventService {
+
+    // 接続が切れたことに気付けるよう、この間隔でコメント行を送る（プロキシのアイドル切断対策も兼ねる）
+    private static final long HEARTBEAT_SECONDS = 25;
+    // 接続の最大時間。切れてもブラウザ(EventSource)が自動で再接続する
+    private static final long EMITTER_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    // 1ユーザーあたりの同時接続数の上限（タブを開きすぎた場合は古い接続から閉じる）
+    private static final int MAX_EMITTERS_PER_USER = 5;
+
+    private final TransactionDAO transactionDAO = new TransactionDAO();
+    private final BudgetDAO budgetDAO = new BudgetDAO();
+    private final CategoryDAO categoryDAO;
+
+    private final Map<Integer, List<SseEmitter>> emittersByUser = new ConcurrentHashMap<>();
+    private final TransactionDAO.ChangeListener listener = this::onChange;
+
+    // 集計の読み直しと送信は書き込んだリクエストのスレッドではなく、ここで順番に行う
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "dashboard-events");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "dashboard-events-heartbeat");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public DashboardEventService(CategoryDAO categoryDAO) {
+        this.categoryDAO = categoryDAO;
+        TransactionDAO.addChangeListener(listener);
+        heartbeat.scheduleAtFixedRate(this::sendHeartbeat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * ユーザーのイベントストリームを開きます。
+     */
+    public SseEmitter subscribe(int userId) {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MILLIS);
+        // remove() が空のリストを外すのと競合しないよう、追加も compute の中で行う
+        List<SseEmitter> emitters = emittersByUser.compute(userId, (id, list) -> {
+            List<SseEmitter> result = list != null ? list : new CopyOnWriteArrayList<>();
+            result.add(emitter);
+            return result;
+        });
+        while (emitters.size() > MAX_EMITTERS_PER_USER) {
+            SseEmitter oldest = emitters.remove(0);
+            oldest.complete();
+        }
+
+        emitter.onCompletion(() -> remove(userId, emitter));
+        emitter.onTimeout(() -> remove(userId, emitter));
+        emitter.onError(e -> remove(userId, emitter));
+
+        // 接続直後に1件送り、レスポンスヘッダーを確定させる（接続確認用）
+        try {
+            emitter.send(SseEmitter.event().comment("connected"));
+        } catch (IOException e) {
+            remove(userId, emitter);
+        }
+        return emitter;
+    }
+
+    /**
+     * 現在の接続数を返します。
+     */
+    public int getSubscriberCount() {
+        return emittersByUser.values().stream().mapToInt(List::size).sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        TransactionDAO.removeChangeListener(listener);
+        heartbeat.shutdownNow();
+        dispatcher.shutdownNow();
+        emittersByUser.values().forEach(emitters -> emitters.forEach(SseEmitter::complete));
+        emittersByUser.clear();
+    }
+
+    /**
+     * 取引の書き込みがコミットされたときに呼ばれます。購読者がいなければ何もしません。
+     */
+    private void onChange(int userId, TransactionChange change) {
+        if (!emittersByUser.containsKey(userId)) {
+            return;
+        }
+        dispatcher.execute(() -> dispatch(userId, change));
+    }
+
+    private void dispatch(int userId, TransactionChange change) {
+        List<SseEmitter> emitters = emittersByUser.get(userId);
+        if (emitters == null || emitters.isEmpty()) {
+            return;
+        }
+
+        if (change.getAction() == TransactionChange.Action.IMPORTED) {
+            // 件数が多く差分で送る意味がないため、読み直しを促す
+            send(userId, emitters, "refresh", Map.of("count", change.getCount()));
+            send(userId, emitters, "balance", transactionDAO.calculateCurrentBalance(userId));
+            return;
+        }
+
+        send(userId, emitters, "transaction", new TransactionChange(change.getAction(),
+                withCategoryName(userId, change.getTransaction()),
+                withCategoryName(userId, change.getPrevious()),
+                change.getCount()));
+        send(userId, emitters, "balance", transactionDAO.calculateCurrentBalance(userId));
+
+        // 変更前と変更後の取引が属する月（更新で月が変わった場合は両方）
+        TreeSet<String> months = new TreeSet<>();
+        Map<YearMonth, Integer> expenseCategories = new LinkedHashMap<>();
+        for (Transaction t : new Transaction[] { change.getTransaction(), change.getPrevious() }) {
+            if (t == null) {
+                continue;
+            }
+            YearMonth month = YearMonth.from(t.getDate());
+            months.add(month.toString());
+            if ("EXPENSE".equals(t.getType()) && t.getId() != 0 && t == change.getTransaction()) {
+                expenseCategories.put(month, t.getCategoryId());
+            }
+        }
+
+        Map<String, MonthlySummary> summaryByMonth = new LinkedHashMap<>();
+        for (MonthlySummary summary : transactionDAO.getMonthlySummary(userId)) {
+            summaryByMonth.put(summary.getMonth(), summary);
+        }
+        for (String month : months) {
+            // 最後の取引が消えた月は集計行がなくなるため、0の行を送る
+            send(userId, emitters, "summary", summaryByMonth.getOrDefault(month, new MonthlySummary(month, 0, 0)));
+        }
+
+        // 支出が増えたカテゴリだけ予算と比べる
+        for (Map.Entry<YearMonth, Integer> entry : expenseCategories.entrySet()) {
+            String yearMonth = entry.getKey().toString();
+            for (Budget budget : budgetDAO.getBudgetsForMonth(userId, entry.getKey())) {
+                if (budget.getCategoryId() == entry.getValue()
+                        && budget.getBudgetAmount() > 0
+                        && budget.getActualAmount() > budget.getBudgetAmount()) {
+                    budget.setYearMonth(yearMonth);
+                    send(userId, emitters, "budget-overrun", budget);
+                }
+            }
+        }
+    }
+
+    private Transaction withCategoryName(int userId, Transaction t) {
+        if (t == null) {
+            return null;
+        }
+        Category category = categoryDAO.getCategoryById(userId, t.getCategoryId());
+        String categoryName = category != null ? category.getName() : t.getCategoryName();
+        return new Transaction(t.getId(), t.getDate(), t.getAmount(), t.getType(), t.getCategoryId(),
+                categoryName, t.getIsFuture(), t.getIsExtraordinary());
+    }
+
+    private void send(int userId, List<SseEmitter> emitters, String name, Object data) {
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                // 切断済みの接続。送信できなかったものは外す
+                remove(userId, emitter);
+            }
+        }
+    }
+
+    private void sendHeartbeat() {
+        emittersByUser.forEach((userId, emitters) -> {
+            for (SseEmitter emitter : emitters) {
+                try {
+                    emitter.send(SseEmitter.event().comment("ping"));
+                } catch (IOException | IllegalStateException e) {
+                    remove(userId, emitter);
+                }
+            }
+        });
+    }
+
+    private void remove(int userId, SseEmitter emitter) {
+        emittersByUser.computeIfPresent(userId, (id, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+}
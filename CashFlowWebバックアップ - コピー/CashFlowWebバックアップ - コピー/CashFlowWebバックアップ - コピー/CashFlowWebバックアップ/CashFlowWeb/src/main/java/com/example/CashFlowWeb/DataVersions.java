@@ -0,0 +1,92 @@
+package com.example.CashFlowWeb;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ユーザーごと・データの種類ごとの版数を管理し、条件付きGET（ETag / If-None-Match）に使うクラス。
+ * 各DAOは書き込みが成功した（コミットした）後に bump() を呼びます。
+ * 読み取り側はデータを読む前にETagを決めるため、書き込みと重なっても「古い版数で新しいデータ」になるだけで、
+ * 変更を見逃すことはありません。
+ * 版数はメモリ上だけで持ちます。起動ごとに異なる値をETagに含めるので、再起動前のETagが一致することはありません。
+ */
+public final class DataVersions {
+
+    /**
+     * 版数を管理するデータの種類。
+     */
+    public enum Dataset {
+        TRANSACTIONS, CATEGORIES, BUDGETS, GOALS, ASSETS, RECURRING_RULES
+    }
+
+    private static final String BOOT_EPOCH = Long.toString(System.currentTimeMillis(), 36);
+    private static final Dataset[] DATASETS = Dataset.values();
+
+    // キー: ユーザーID、値: Dataset の ordinal ごとの版数
+    private static final Map<Integer, AtomicLongArray> versions = new ConcurrentHashMap<>();
+    // DBを直接変更した場合など、全ユーザーのデータが変わった可能性があるときに上げる
+    private static final AtomicLong globalVersion = new AtomicLong();
+
+    private DataVersions() {}
+
+    /**
+     * ユーザーのデータが変更されたことを記録します（書き込みのコミット後に呼びます）。
+     */
+    public static void bump(int userId, Dataset dataset) {
+        versions.computeIfAbsent(userId, k -> new AtomicLongArray(DATASETS.length)).incrementAndGet(dataset.ordinal());
+    }
+
+    /**
+     * 全ユーザーの全データが変更された可能性があることを記録します（管理用の再構築・読み直しの後など）。
+     */
+    public static void bumpAll() {
+        globalVersion.incrementAndGet();
+    }
+
+    /**
+     * 指定したデータの版数から強いETagを作ります。
+     */
+    public static String etag(int userId, Dataset... datasets) {
+        return etag(userId, null, datasets);
+    }
+
+    /**
+     * 指定したデータの版数から強いETagを作ります。
+     * variant には、データ以外に結果を左右する値（基準の月など）を指定します。
+     */
+    public static String etag(int userId, String variant, Dataset... datasets) {
+        AtomicLongArray userVersions = versions.get(userId);
+        StringBuilder tag = new StringBuilder("\"")
+                .append(BOOT_EPOCH).append('-')
+                .append(globalVersion.get()).append("-u")
+                .append(userId);
+        for (Dataset dataset : datasets) {
+            tag.append('-').append(dataset.name().charAt(0))
+               .append(userVersions == null ? 0 : userVersions.get(dataset.ordinal()));
+        }
+        if (variant != null) {
+            tag.append('-').append(variant);
+        }
+        return tag.append('"').toString();
+    }
+
+    /**
+     * ETagを付け、If-None-Match が一致すれば 304 Not Modified にします。
+     * true が返った場合、呼び出し側はレスポンス本文を作らずに null を返してください。
+     */
+    public static boolean checkNotModified(ServletWebRequest request, String etag) {
+        // Spring Security の既定 (no-store) ではブラウザが保存せず If-None-Match を送らないため、
+        // 保存は許可しつつ、使う前に毎回再検証させる
+        request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        return request.checkNotModified(etag);
+    }
+
+    public static boolean checkNotModified(ServletWebRequest request, int userId, Dataset... datasets) {
+        return checkNotModified(request, etag(userId, datasets));
+    }
+}
@@ -0,0 +1,438 @@
+package com.example.CashFlowWeb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.core.DB;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * SQLiteのDBファイルを、アプリケーションを止めずにスナップショットとして保存・復元するサービス。
+ *
+ * バックアップはSQLiteのオンラインバックアップAPIで、元のDBを数ページずつコピーします。
+ * 読み取りのロックはコピーの1回分の間だけ取り、その間に少し休むため、コピー中も書き込みは止まりません。
+ * コピー中に元のDBが他の接続から更新されると、SQLiteはコピーを最初からやり直します。
+ * やり直しが続く場合は、残りのコピーの間だけアプリケーションの書き込みを止め、休まずにコピーして終わらせます。
+ * コピーは一時ファイルに行い、整合性を確認してから名前を変えるため、途中で失敗しても壊れたスナップショットは残りません。
+ *
+ * リストアは他の書き込みを止めたうえで、スナップショットを1回でDBにコピーし、キャッシュをすべて読み直させます。
+ * PostgreSQLのバックアップには pg_dump などを使ってください（このサービスは UnsupportedOperationException を投げます）。
+ */
+@Service
+public class DatabaseBackupService {
+
+    private static final Logger log = LoggerFactory.getLogger(DatabaseBackupService.class);
+
+    private static final DaoMetrics METRICS = DaoMetrics.forDao("DatabaseBackupService");
+
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    // ファイル名は作成日時の順に並ぶ（外部から指定された名前はこの形式のものだけ受け付ける）
+    private static final Pattern NAME_PATTERN = Pattern.compile("cashflow-\\d{8}-\\d{6}-\\d{3}(-pre-restore)?\\.db");
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // 元のDBが書き込み中でロックを取れないときの待ち方（待ち時間 × 回数）
+    private static final int BUSY_SLEEP_MILLIS = 100;
+    private static final int BUSY_RETRIES = 100;
+    // この回数やり直した後は、更新に追い越され続けて終わらないよう、書き込みを止めて休まずにコピーする
+    private static final int MAX_PACED_RESTARTS = 3;
+
+    private final CategoryDAO categoryDAO;
+    private final NetWorthService netWorthService;
+    private final CustomUserDetailsService userDetailsService;
+    // バックアップ・リストアは同時に1つだけ実行する
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @Value("${cashflow.backup.dir:backups}")
+    private String backupDir;
+
+    @Value("${cashflow.backup.retention-count:7}")
+    private int retentionCount;
+
+    @Value("${cashflow.backup.pages-per-step:4096}")
+    private int pagesPerStep;
+
+    @Value("${cashflow.backup.pause-ms:5}")
+    private long pauseMillis;
+
+    @Value("${cashflow.backup.verify:true}")
+    private boolean verify;
+
+    public DatabaseBackupService(CategoryDAO categoryDAO, NetWorthService netWorthService,
+                                 CustomUserDetailsService userDetailsService) {
+        this.categoryDAO = categoryDAO;
+        this.netWorthService = netWorthService;
+        this.userDetailsService = userDetailsService;
+    }
+
+    @Scheduled(cron = "${cashflow.backup.cron:0 0 3 * * *}")
+    public void scheduledBackup() {
+        if (DBManager.isPostgres()) {
+            return;
+        }
+        try {
+            backup();
+        } catch (IllegalStateException e) {
+            log.info("定期バックアップをスキップしました: {}", e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            log.error("定期バックアップのエラー", e);
+        }
+    }
+
+    /**
+     * 現在のDBのスナップショットを作成し、保持数を超えた古いスナップショットを削除します。
+     *
+     * @throws IllegalStateException 他のバックアップ・リストアを実行中の場合
+     */
+    public BackupResult backup() throws IOException {
+        requireSqlite();
+        if (!lock.tryLock()) {
+            throw new IllegalStateException("他のバックアップまたはリストアを実行中です");
+        }
+        try {
+            BackupResult result = snapshot("");
+            prune();
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * スナップショットの一覧を新しい順に返します。
+     */
+    public List<BackupInfo> listBackups() throws IOException {
+        requireSqlite();
+        List<BackupInfo> backups = new ArrayList<>();
+        for (Path file : snapshotFiles()) {
+            LocalDateTime modified = LocalDateTime.ofInstant(Files.getLastModifiedTime(file).toInstant(), ZoneId.systemDefault());
+            backups.add(new BackupInfo(file.getFileName().toString(), Files.size(file), modified.toString()));
+        }
+        return backups;
+    }
+
+    /**
+     * スナップショットからDBを復元します。
+     * スナップショットの整合性とスキーマのバージョンを確認し、現在のDBのスナップショットを取ってから置き換えます。
+     * 置き換えた後は、古いバージョンのスナップショットならマイグレーションを適用し、キャッシュをすべて読み直させます。
+     *
+     * @throws NoSuchFileException      スナップショットがない場合
+     * @throws IllegalArgumentException スナップショットが壊れている、または新しいバージョンのアプリで作られた場合
+     * @throws IllegalStateException    他のバックアップ・リストアを実行中の場合
+     * @throws DaoException             復元したDBへのマイグレーションの適用に失敗した場合
+     */
+    public BackupResult restore(String name) throws IOException {
+        requireSqlite();
+        Path source = resolve(name);
+        if (!lock.tryLock()) {
+            throw new IllegalStateException("他のバックアップまたはリストアを実行中です");
+        }
+        try {
+            long start = System.nanoTime();
+            METRICS.call("validateSnapshot", () -> {
+                validateSnapshot(source);
+                return null;
+            });
+            long validateNanos = System.nanoTime() - start;
+            // 戻した結果が意図と違った場合に備え、置き換える前の状態を残す
+            BackupResult safety = snapshot("-pre-restore");
+
+            long copyStart = System.nanoTime();
+            CopyProgress progress = new CopyProgress(0);
+            METRICS.call("restore", () -> {
+                try (DBManager.WritePause pause = DBManager.pauseWrites();
+                     Connection conn = DBManager.openSqliteConnection(false)) {
+                    // 書き込みは止めてあるため、1回で全ページをコピーする（読み取りはその間ロック待ちになる）
+                    int rc = conn.unwrap(SQLiteConnection.class).getDatabase()
+                            .restore("main", source.toString(), progress, BUSY_SLEEP_MILLIS, BUSY_RETRIES, -1);
+                    progress.check(rc, "リストア");
+                }
+                return null;
+            });
+            // 直前のスナップショットの作成時間は含めない（作成時にログに出力している）
+            long elapsedMillis = (validateNanos + System.nanoTime() - copyStart) / 1_000_000;
+
+            METRICS.call("checkpoint", () -> {
+                // WALモードではコピーした全ページがWALに書かれるため、書き込みを再開してからDBファイルに反映する
+                // （PASSIVE は書き込みを待たせない）
+                try (Connection conn = DBManager.openSqliteConnection(false);
+                     Statement stmt = conn.createStatement()) {
+                    boolean wal;
+                    try (ResultSet rs = stmt.executeQuery("PRAGMA journal_mode")) {
+                        wal = rs.next() && "wal".equalsIgnoreCase(rs.getString(1));
+                    }
+                    if (wal) {
+                        stmt.execute("PRAGMA wal_checkpoint(PASSIVE)");
+                    }
+                }
+                return null;
+            });
+
+            SchemaMigrator.migrate();
+            reloadCaches();
+            BackupResult result = new BackupResult("restore", name, Files.size(source), progress.pageCount, 0,
+                    elapsedMillis, true, safety.getName());
+            log.info("DBをスナップショット {} から復元しました ({}ms、直前の状態は {})", name, elapsedMillis, safety.getName());
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ----------------------------------------
+    // バックアップ
+    // ----------------------------------------
+
+    private BackupResult snapshot(String suffix) throws IOException {
+        Path dir = Files.createDirectories(Path.of(backupDir));
+        String name = "cashflow-" + LocalDateTime.now().format(NAME_FORMAT) + suffix + ".db";
+        Path target = dir.resolve(name);
+        Path temp = dir.resolve(name + TEMP_SUFFIX);
+
+        long start = System.nanoTime();
+        CopyProgress progress = new CopyProgress(pauseMillis);
+        try {
+            METRICS.call("backup", () -> {
+                // プールの接続を長時間占有しないよう、専用の読み取り専用接続からコピーする
+                try (Connection conn = DBManager.openSqliteConnection(true)) {
+                    int rc = conn.unwrap(SQLiteConnection.class).getDatabase()
+                            .backup("main", temp.toString(), progress, BUSY_SLEEP_MILLIS, BUSY_RETRIES, pagesPerStep);
+                    progress.check(rc, "バックアップ");
+                } finally {
+                    progress.resumeWrites();
+                }
+                finishSnapshot(temp);
+                return null;
+            });
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        BackupResult result = new BackupResult("backup", name, Files.size(target), progress.pageCount, progress.restarts,
+                elapsedMillis, verify, null);
+        log.info("DBのスナップショット {} を作成しました ({}バイト、{}ms、{}MB/s、やり直し{}回)", name, result.getSizeBytes(),
+                elapsedMillis, String.format(Locale.ROOT, "%.1f", result.getMbPerSecond()), result.getRestarts());
+        return result;
+    }
+
+    /**
+     * コピーしたスナップショットを単独のファイルで開けるようにし、設定に応じて整合性を確認します。
+     */
+    private void finishSnapshot(Path file) throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file);
+             Statement stmt = conn.createStatement()) {
+            // 元のDBがWALモードでも、スナップショットは -wal ファイルなしで完結させる
+            stmt.execute("PRAGMA journal_mode=DELETE");
+            if (verify) {
+                quickCheck(stmt);
+            }
+        }
+    }
+
+    /**
+     * 保持数を超えた古いスナップショットと、中断したバックアップの一時ファイルを削除します。
+     */
+    private void prune() throws IOException {
+        Path dir = Path.of(backupDir);
+        // ロックを持っているため、残っている一時ファイルは中断したバックアップのもの
+        try (DirectoryStream<Path> temps = Files.newDirectoryStream(dir, "cashflow-*.db" + TEMP_SUFFIX)) {
+            for (Path temp : temps) {
+                Files.deleteIfExists(temp);
+            }
+        }
+        if (retentionCount <= 0) {
+            return;
+        }
+        // 通常のスナップショットとリストア直前のスナップショットは、それぞれ新しいものから保持数まで残す
+        List<Path> regular = new ArrayList<>();
+        List<Path> preRestore = new ArrayList<>();
+        for (Path file : snapshotFiles()) {
+            (file.getFileName().toString().endsWith("-pre-restore.db") ? preRestore : regular).add(file);
+        }
+        deleteOlderThanRetention(regular);
+        deleteOlderThanRetention(preRestore);
+    }
+
+    private void deleteOlderThanRetention(List<Path> newestFirst) throws IOException {
+        for (Path old : newestFirst.subList(Math.min(retentionCount, newestFirst.size()), newestFirst.size())) {
+            Files.deleteIfExists(old);
+            log.info("古いスナップショットを削除しました: {}", old.getFileName());
+        }
+    }
+
+    /**
+     * バックアップのディレクトリにあるスナップショットを新しい順に返します。
+     */
+    private List<Path> snapshotFiles() throws IOException {
+        Path dir = Path.of(backupDir);
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "cashflow-*.db")) {
+            for (Path file : stream) {
+                if (NAME_PATTERN.matcher(file.getFileName().toString()).matches()) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(Comparator.comparing((Path p) -> p.getFileName().toString()).reversed());
+        return files;
+    }
+
+    // ----------------------------------------
+    // リストア
+    // ----------------------------------------
+
+    /**
+     * 指定された名前のスナップショットのパスを返します。名前は一覧と同じ形式のものだけを受け付けます。
+     */
+    private Path resolve(String name) throws NoSuchFileException {
+        if (name == null || !NAME_PATTERN.matcher(name).matches()) {
+            throw new IllegalArgumentException("スナップショットの名前が不正です: " + name);
+        }
+        Path file = Path.of(backupDir).resolve(name);
+        if (!Files.isRegularFile(file)) {
+            throw new NoSuchFileException(name);
+        }
+        return file;
+    }
+
+    /**
+     * スナップショットが壊れておらず、このアプリケーションで扱えるスキーマのバージョンかを確認します。
+     */
+    private static void validateSnapshot(Path file) throws SQLException {
+        Properties props = new Properties();
+        props.setProperty("open_mode", "1");
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file, props);
+             Statement stmt = conn.createStatement()) {
+            quickCheck(stmt);
+            int version;
+            try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+                version = rs.next() ? rs.getInt(1) : 0;
+            } catch (SQLException e) {
+                throw new IllegalArgumentException("スキーマのバージョンが記録されていないため、このアプリケーションのDBではありません");
+            }
+            if (version > SchemaMigrator.getLatestVersion()) {
+                throw new IllegalArgumentException("スナップショットのスキーマ (バージョン" + version
+                        + ") がこのアプリケーション (バージョン" + SchemaMigrator.getLatestVersion() + ") より新しいため復元できません");
+            }
+        }
+    }
+
+    /**
+     * DBの中身が変わったため、メモリ上のキャッシュをすべて破棄・再読み込みし、クライアントのキャッシュも無効にします。
+     * ログイン中のセッションはそのまま残るため、復元したDBにないユーザーはログインし直す必要があります。
+     */
+    private void reloadCaches() {
+        categoryDAO.refreshCache();
+        ColumnarTransactionStore store = ColumnarTransactionStore.getInstance();
+        store.invalidateAll();
+        store.loadAll();
+        AssetPriceDAO.invalidateAll();
+        netWorthService.invalidateAll();
+        userDetailsService.invalidateAll();
+        DataVersions.bumpAll();
+    }
+
+    private static void quickCheck(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA quick_check")) {
+            String status = rs.next() ? rs.getString(1) : null;
+            if (!"ok".equals(status)) {
+                throw new IllegalArgumentException("スナップショットの整合性チェックに失敗しました: " + status);
+            }
+        }
+    }
+
+    private static void requireSqlite() {
+        if (DBManager.isPostgres()) {
+            throw new UnsupportedOperationException("PostgreSQLのバックアップには pg_dump などを使ってください");
+        }
+    }
+
+    /**
+     * コピーの進み具合を受け取り、1回分のコピーごとに少し休んで書き込みに譲ります。
+     * 残りのページ数が増えた場合は、元のDBが更新されてコピーが最初からやり直されたことを表します。
+     */
+    private static final class CopyProgress implements DB.ProgressObserver {
+        private final long pauseMillis;
+        private int lastRemaining = -1;
+        private DBManager.WritePause writePause;
+        int pageCount;
+        int restarts;
+
+        CopyProgress(long pauseMillis) {
+            this.pauseMillis = pauseMillis;
+        }
+
+        @Override
+        public void progress(int remaining, int pageCount) {
+            if (lastRemaining >= 0 && remaining > lastRemaining) {
+                restarts++;
+            }
+            lastRemaining = remaining;
+            this.pageCount = pageCount;
+            if (remaining > 0 && restarts >= MAX_PACED_RESTARTS && writePause == null) {
+                try {
+                    writePause = DBManager.pauseWrites();
+                    log.info("バックアップが{}回やり直されたため、終わるまで書き込みを止めます", restarts);
+                } catch (SQLException | RuntimeException e) {
+                    // 止められなければ、休まずにコピーして追いつくことを試みる
+                    log.warn("バックアップ中の書き込みの停止エラー", e);
+                }
+            }
+            if (remaining > 0 && pauseMillis > 0 && restarts < MAX_PACED_RESTARTS) {
+                try {
+                    Thread.sleep(pauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * コピーのために止めた書き込みを再開します。
+         */
+        void resumeWrites() {
+            if (writePause != null) {
+                writePause.close();
+                writePause = null;
+            }
+        }
+
+        /**
+         * コピーが最後まで終わったかを確認します（ロックを取れずに諦めた場合など）。
+         */
+        void check(int rc, String operation) throws SQLException {
+            if (rc != 0 || lastRemaining != 0) {
+                throw new SQLException(operation + "が完了しませんでした (rc=" + rc + "、残り" + lastRemaining + "ページ)");
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.CashFlowWeb;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DBアクセスの同時実行数を制限するバルクヘッド。
+ *
+ * 仮想スレッドでリクエストを処理すると、数千のリクエストが同時にDBへ向かえるようになります。
+ * 接続数はプールの上限で抑えられますが、待ち行列には上限がなく、SQLiteのネイティブ呼び出し中は
+ * キャリアスレッドが解放されないため、ここで以下を制限します。
+ *   - 接続: プールの上限と同じ数だけ同時に使える。待てる数にも上限を設け、超えたら待たずに 503 にする
+ *   - 書き込みトランザクション: SQLiteは書き込みが常に1本なので1つずつ（PostgreSQLはプールの上限まで）。
+ *     ファイルロックの取り合い（busy_timeout までのリトライ）をJVM内の順番待ちに置き換える
+ */
+final class DbBulkhead {
+
+    private final Semaphore connections;
+    private final Semaphore writers;
+    private final int maxWriters;
+    private final int maxWaiting;
+    private final long timeoutMillis;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    DbBulkhead(int maxConnections, int maxWriters, int maxWaiting, long timeoutMillis) {
+        this.maxWriters = maxWriters;
+        this.maxWaiting = maxWaiting;
+        this.timeoutMillis = timeoutMillis;
+        // 公平モード: 先に待ち始めたリクエストから順に通す（待ち時間の偏りを抑える）
+        this.connections = new Semaphore(maxConnections, true);
+        this.writers = new Semaphore(maxWriters, true);
+    }
+
+    void acquireConnection() {
+        acquire(connections, "DB接続");
+    }
+
+    void releaseConnection() {
+        connections.release();
+    }
+
+    void acquireWriter() {
+        acquire(writers, "DB書き込み");
+    }
+
+    void releaseWriter() {
+        writers.release();
+    }
+
+    private void acquire(Semaphore semaphore, String name) {
+        if (semaphore.tryAcquire()) {
+            return;
+        }
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            rejected.increment();
+            throw new DbBusyException(name + "の待ち行列が上限 (" + maxWaiting + ") に達しました");
+        }
+        try {
+            if (!semaphore.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new DbBusyException(name + "を " + timeoutMillis + "ms 待っても取得できませんでした");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DbBusyException(name + "の待機中に割り込まれました");
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    int getMaxWriters() { return maxWriters; }
+    int getMaxWaiting() { return maxWaiting; }
+    int getWaiting() { return waiting.get(); }
+    long getRejected() { return rejected.sum(); }
+}
@@ -0,0 +1,16 @@
+package com.example.CashFlowWeb;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * DBの同時実行数の上限（バルクヘッド）に達し、待ち行列にも入れなかったときに投げる例外。
+ * DAOの SQLException の処理（空の結果を返す）に紛れないよう非検査例外とし、クライアントには 503 を返します。
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class DbBusyException extends RuntimeException {
+
+    public DbBusyException(String message) {
+        super(message);
+    }
+}
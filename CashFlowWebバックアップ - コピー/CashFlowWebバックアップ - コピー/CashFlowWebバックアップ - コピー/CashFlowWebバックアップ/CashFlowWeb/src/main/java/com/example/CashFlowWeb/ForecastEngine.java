@@ -0,0 +1,264 @@
+package com.example.CashFlowWeb;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * 残高のモンテカルロ予測を行うクラス。
+ *
+ * カテゴリごとに「全期間の平均 + 月ごとの季節成分」を推定し、直近12ヶ月の水準を今後の基準とします。
+ * 予測のぶれは、過去の各月の残差（全カテゴリ合計）をそのまま復元抽出して与えます。
+ * 月単位でまとめて抽出するので、カテゴリ間の相関（例: 賞与月は支出も多い）も保たれます。
+ * 経路は予測専用の ForkJoinPool（並列度は環境変数 FORECAST_PARALLELISM、既定は最大4）で並列に計算します。
+ * 乱数は一定の経路数ごとのチャンクに分割した SplittableRandom を使うため、同じ種であれば並列度に関係なく同じ結果になります。
+ * 全期間・全経路の残高は保持せず、月のブロックごとに残高を記録してパーセンタイルを求めます。
+ */
+public class ForecastEngine {
+
+    public static final int DEFAULT_PATHS = 5_000;
+    public static final int MAX_PATHS = 20_000;
+    public static final int MAX_HORIZON_MONTHS = 120;
+    public static final int MIN_HISTORY_MONTHS = 3;
+
+    // 今後の水準とみなす直近の月数
+    private static final int LEVEL_WINDOW_MONTHS = 12;
+    // 1チャンクの経路数（チャンクの分け方を並列度によらず固定し、同じ種で同じ結果にする）
+    private static final int PATHS_PER_CHUNK = 500;
+    // パーセンタイル計算のために一度に保持する残高の数（月数×経路数）の上限（8MB）
+    private static final int MAX_BUFFERED_BALANCES = 1 << 20;
+
+    // 予測専用のプール。リクエストが重なっても、共通プールを使う他の処理やCPU全体を占有しないよう並列度を制限する
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+            DBManager.envInt("FORECAST_PARALLELISM", Math.min(4, Runtime.getRuntime().availableProcessors())),
+            pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("forecast-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+
+    /**
+     * 予測を実行します。履歴が MIN_HISTORY_MONTHS ヶ月未満の場合は null を返します。
+     *
+     * @param history        臨時収支を除いたカテゴリ別の月次純額（最後の月が直近の確定月）
+     * @param currentBalance 現在の残高
+     * @param targetAmount   目標額
+     * @param horizonMonths  予測する月数 (1〜MAX_HORIZON_MONTHS に丸めます)
+     * @param paths          経路数 (1〜MAX_PATHS に丸めます)
+     * @param seed           乱数の種
+     */
+    public ForecastResult forecast(CategoryHistory history, double currentBalance, double targetAmount,
+                                   int horizonMonths, int paths, long seed) {
+        if (history == null || history.getMonthCount() < MIN_HISTORY_MONTHS) {
+            return null;
+        }
+        long start = System.nanoTime();
+        int horizon = Math.max(1, Math.min(horizonMonths, MAX_HORIZON_MONTHS));
+        int pathCount = Math.max(1, Math.min(paths, MAX_PATHS));
+        int historyMonths = history.getMonthCount();
+        YearMonth firstForecastMonth = history.getEndMonth().plusMonths(1);
+
+        // 1. カテゴリごとにモデルを推定し、毎月の期待値と過去の残差を合計する
+        double[] expected = new double[horizon];
+        double[] residuals = new double[historyMonths];
+        int historyFirstCalendarMonth = history.getStartMonth().getMonthValue() - 1;
+        int forecastFirstCalendarMonth = firstForecastMonth.getMonthValue() - 1;
+        for (double[] series : history.getNetByCategory().values()) {
+            fitCategory(series, historyFirstCalendarMonth, forecastFirstCalendarMonth, expected, residuals);
+        }
+        // 残差の平均は理論上ほぼ0だが、丸めによる偏りが複利的に残高へ効かないよう中心化する
+        double residualMean = Arrays.stream(residuals).average().orElse(0.0);
+        for (int t = 0; t < historyMonths; t++) {
+            residuals[t] -= residualMean;
+        }
+
+        // 2. 経路のシミュレーション（月のブロックごとに、全経路の残高を block[月][経路] に記録する）
+        double[] balances = new double[pathCount]; // 各経路の、直前のブロックの最後の月の残高
+        Arrays.fill(balances, currentBalance);
+        int[] hitMonth = new int[pathCount]; // 目標に初めて到達した月 (0=既に到達, -1=未到達)
+        Arrays.fill(hitMonth, currentBalance >= targetAmount ? 0 : -1);
+        int chunkCount = (pathCount + PATHS_PER_CHUNK - 1) / PATHS_PER_CHUNK;
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[chunkCount];
+        for (int c = 0; c < chunkCount; c++) {
+            randoms[c] = root.split();
+        }
+        int blockMonths = Math.max(1, Math.min(horizon, MAX_BUFFERED_BALANCES / pathCount));
+        double[][] block = new double[blockMonths][pathCount];
+
+        double[] p10 = new double[horizon];
+        double[] p50 = new double[horizon];
+        double[] p90 = new double[horizon];
+        for (int blockStart = 0; blockStart < horizon; blockStart += blockMonths) {
+            int first = blockStart;
+            int months = Math.min(blockMonths, horizon - first);
+            runParallel(chunkCount, c -> {
+                SplittableRandom random = randoms[c];
+                int from = c * PATHS_PER_CHUNK;
+                int to = Math.min(pathCount, from + PATHS_PER_CHUNK);
+                for (int p = from; p < to; p++) {
+                    double balance = balances[p];
+                    int hit = hitMonth[p];
+                    for (int i = 0; i < months; i++) {
+                        int h = first + i;
+                        balance += expected[h] + residuals[random.nextInt(historyMonths)];
+                        block[i][p] = balance;
+                        if (hit < 0 && balance >= targetAmount) {
+                            hit = h + 1;
+                        }
+                    }
+                    balances[p] = balance;
+                    hitMonth[p] = hit;
+                }
+            });
+
+            // 3. 月ごとのパーセンタイル（各月の列を部分選択する。全体の並べ替えは不要）
+            runParallel(months, i -> {
+                double[] column = block[i];
+                int h = first + i;
+                p10[h] = percentile(column, 0, 0.10);
+                p50[h] = percentile(column, (int) (0.10 * (pathCount - 1)) + 1, 0.50);
+                p90[h] = percentile(column, (int) (0.50 * (pathCount - 1)) + 1, 0.90);
+            });
+        }
+
+        // 4. 月ごとの到達確率（初めて到達した月のヒストグラムを累積）
+        int[] firstHits = new int[horizon + 1];
+        for (int hit : hitMonth) {
+            if (hit >= 0) {
+                firstHits[hit]++;
+            }
+        }
+        double[] hitProbability = new double[horizon];
+        int cumulative = firstHits[0];
+        for (int h = 0; h < horizon; h++) {
+            cumulative += firstHits[h + 1];
+            hitProbability[h] = (double) cumulative / pathCount;
+        }
+
+        double[] expectedBalance = new double[horizon];
+        List<String> months = new ArrayList<>(horizon);
+        double balance = currentBalance;
+        for (int h = 0; h < horizon; h++) {
+            balance += expected[h];
+            expectedBalance[h] = balance;
+            months.add(firstForecastMonth.plusMonths(h).toString());
+        }
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return new ForecastResult(months, expectedBalance, p10, p50, p90, hitProbability,
+                hitProbability[horizon - 1], pathCount, historyMonths, seed, elapsedMillis);
+    }
+
+    /**
+     * task(0)〜task(count - 1) を予測専用のプールで並列に実行し、すべて終わるまで待ちます。
+     * （プールのタスクの中で実行した並列ストリームは、共通プールではなくそのプールで処理される）
+     */
+    private static void runParallel(int count, IntConsumer task) {
+        POOL.submit(() -> IntStream.range(0, count).parallel().forEach(task)).join();
+    }
+
+    /**
+     * 1カテゴリ分のモデルを推定し、予測期間の期待値を expected に、過去の残差を residuals に加算します。
+     * 季節成分は観測数 n の月ほど信頼し (n/(n+1) で縮小)、12ヶ月の合計が0になるよう中心化します。
+     */
+    private static void fitCategory(double[] series, int historyFirstCalendarMonth, int forecastFirstCalendarMonth,
+                                    double[] expected, double[] residuals) {
+        int n = series.length;
+        double mean = 0;
+        for (double value : series) {
+            mean += value;
+        }
+        mean /= n;
+
+        double[] seasonal = new double[12];
+        int[] counts = new int[12];
+        for (int t = 0; t < n; t++) {
+            int m = (historyFirstCalendarMonth + t) % 12;
+            seasonal[m] += series[t] - mean;
+            counts[m]++;
+        }
+        double seasonalMean = 0;
+        for (int m = 0; m < 12; m++) {
+            if (counts[m] > 0) {
+                seasonal[m] = seasonal[m] / counts[m] * counts[m] / (counts[m] + 1.0);
+            }
+            seasonalMean += seasonal[m];
+        }
+        seasonalMean /= 12;
+        for (int m = 0; m < 12; m++) {
+            seasonal[m] -= seasonalMean;
+        }
+
+        // 直近の水準（季節成分を除いた平均）
+        int window = Math.min(n, LEVEL_WINDOW_MONTHS);
+        double level = 0;
+        for (int t = n - window; t < n; t++) {
+            level += series[t] - seasonal[(historyFirstCalendarMonth + t) % 12];
+        }
+        level /= window;
+
+        for (int t = 0; t < n; t++) {
+            residuals[t] += series[t] - mean - seasonal[(historyFirstCalendarMonth + t) % 12];
+        }
+        for (int h = 0; h < expected.length; h++) {
+            expected[h] += level + seasonal[(forecastFirstCalendarMonth + h) % 12];
+        }
+    }
+
+    /**
+     * 線形補間でパーセンタイルを求めます。配列は部分的に並べ替えられます。
+     * 低い順に呼び出す場合、前回の位置より小さい要素は from より前に集まっているので、そこから先だけを探します。
+     */
+    private static double percentile(double[] values, int from, double q) {
+        double position = q * (values.length - 1);
+        int lower = (int) position;
+        double lowerValue = select(values, Math.min(from, lower), values.length - 1, lower);
+        if (lower == values.length - 1) {
+            return lowerValue;
+        }
+        // select の後、lower より後ろには lower 以上の値だけが並ぶ
+        double upperValue = values[lower + 1];
+        for (int i = lower + 2; i < values.length; i++) {
+            upperValue = Math.min(upperValue, values[i]);
+        }
+        return lowerValue + (upperValue - lowerValue) * (position - lower);
+    }
+
+    /**
+     * values[left..right] を並べ替えたときに k 番目に来る値を求めます（クイックセレクト）。
+     * 終了後、k より前には k 番目以下、後ろには k 番目以上の値が並びます。
+     */
+    private static double select(double[] values, int left, int right, int k) {
+        while (left < right) {
+            double pivot = values[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) {
+                    double tmp = values[i];
+                    values[i] = values[j];
+                    values[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+}
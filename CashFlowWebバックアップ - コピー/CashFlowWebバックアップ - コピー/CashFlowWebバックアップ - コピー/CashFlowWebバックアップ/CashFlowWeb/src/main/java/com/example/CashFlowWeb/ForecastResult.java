@@ -0,0 +1,53 @@
+package com.example.CashFlowWeb;
+
+import java.util.List;
+
+/**
+ * モンテカルロ予測の結果を保持するモデルクラス。
+ * 配列の添字 i は「i+1ヶ月後の月末」を表します。
+ */
+public class ForecastResult {
+    private List<String> months;             // 予測対象の月 (YYYY-MM)
+    private double[] expectedBalance;        // 季節性モデルによる期待残高（乱数なし）
+    private double[] p10;                    // 残高の10パーセンタイル（悲観）
+    private double[] p50;                    // 残高の中央値
+    private double[] p90;                    // 残高の90パーセンタイル（楽観）
+    private double[] hitProbabilityByMonth;  // その月までに目標額に到達している確率
+    private double probabilityByTargetMonth; // 目標期間内に到達する確率
+    private int paths;                       // シミュレーションした経路数
+    private int historyMonths;               // モデルの推定に使った月数
+    private long seed;                       // 乱数の種（同じ種なら同じ結果）
+    private long elapsedMillis;              // 計算時間
+
+    public ForecastResult(List<String> months, double[] expectedBalance, double[] p10, double[] p50, double[] p90,
+                          double[] hitProbabilityByMonth, double probabilityByTargetMonth,
+                          int paths, int historyMonths, long seed, long elapsedMillis) {
+        this.months = months;
+        this.expectedBalance = expectedBalance;
+        this.p10 = p10;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.hitProbabilityByMonth = hitProbabilityByMonth;
+        this.probabilityByTargetMonth = probabilityByTargetMonth;
+        this.paths = paths;
+        this.historyMonths = historyMonths;
+        this.seed = seed;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    // デフォルトコンストラクタ (JSONデシリアライズに必須)
+    public ForecastResult() {}
+
+    // Getter Methods
+    public List<String> getMonths() { return months; }
+    public double[] getExpectedBalance() { return expectedBalance; }
+    public double[] getP10() { return p10; }
+    public double[] getP50() { return p50; }
+    public double[] getP90() { return p90; }
+    public double[] getHitProbabilityByMonth() { return hitProbabilityByMonth; }
+    public double getProbabilityByTargetMonth() { return probabilityByTargetMonth; }
+    public int getPaths() { return paths; }
+    public int getHistoryMonths() { return historyMonths; }
+    public long getSeed() { return seed; }
+    public long getElapsedMillis() { return elapsedMillis; }
+}
@@ -7,6 +7,7 @@ public class Goal {
     private double currentAmount;
     private String targetDate;
     private String imageUrl;
+    private Integer version; // 楽観的ロック用。更新時に指定すると、その版から変わっていない場合だけ更新する
 
     // Getters
     public int getId() { return id; }
@@ -15,6 +16,7 @@ public class Goal {
     public double getCurrentAmount() { return currentAmount; }
     public String getTargetDate() { return targetDate; }
     public String getImageUrl() { return imageUrl; }
+    public Integer getVersion() { return version; }
 
     // Setters
     public void setId(int id) { this.id = id; }
@@ -23,4 +25,5 @@ public class Goal {
     public void setCurrentAmount(double currentAmount) { this.currentAmount = currentAmount; }
     public void setTargetDate(String targetDate) { this.targetDate = targetDate; }
     public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; }
+    public void setVersion(Integer version) { this.version = version; }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package com.example.CashFlowWeb;
+
+import java.time.LocalDate;
+
+/**
+ * 目標への積立（貯金の追加）のリクエストを保持するモデルクラス。
+ */
+public class GoalContribution {
+    private double amount;
+    private LocalDate date;   // 省略時は今日
+    private Integer version;  // 画面に表示していた目標の版。指定すると、他で更新されていた場合は積み立てない
+
+    // Getters
+    public double getAmount() { return amount; }
+    public LocalDate getDate() { return date; }
+    public Integer getVersion() { return version; }
+
+    // Setters
+    public void setAmount(double amount) { this.amount = amount; }
+    public void setDate(LocalDate date) { this.date = date; }
+    public void setVersion(Integer version) { this.version = version; }
+}
@@ -1,7 +1,10 @@
 package com.example.CashFlowWeb;
 
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import java.util.List;
 
 @RestController
@@ -9,28 +12,61 @@ import java.util.List;
 public class GoalController {
 
     private final GoalDAO goalDAO = new GoalDAO();
+    private final CategoryDAO categoryDAO;
+
+    public GoalController(CategoryDAO categoryDAO) {
+        this.categoryDAO = categoryDAO;
+    }
 
     @GetMapping
-    public List<Goal> getAllGoals() {
-        return goalDAO.getAllGoals();
+    public List<Goal> getAllGoals(@AuthenticationPrincipal User user, ServletWebRequest request) {
+        if (DataVersions.checkNotModified(request, user.getId(), DataVersions.Dataset.GOALS)) {
+            return null;
+        }
+        return goalDAO.getAllGoals(user.getId());
     }
 
     @PostMapping
-    public ResponseEntity<Void> addGoal(@RequestBody Goal goal) {
-        boolean success = goalDAO.addGoal(goal);
+    public ResponseEntity<Void> addGoal(@AuthenticationPrincipal User user, @RequestBody Goal goal) {
+        boolean success = goalDAO.addGoal(user.getId(), goal);
         return success ? ResponseEntity.ok().build() : ResponseEntity.badRequest().build();
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<Void> updateGoal(@PathVariable int id, @RequestBody Goal goal) {
+    public ResponseEntity<Void> updateGoal(@AuthenticationPrincipal User user, @PathVariable int id, @RequestBody Goal goal) {
         goal.setId(id);
-        boolean success = goalDAO.updateGoal(goal);
+        boolean success = goalDAO.updateGoal(user.getId(), goal);
         return success ? ResponseEntity.ok().build() : ResponseEntity.badRequest().build();
     }
     
+    /**
+     * 目標に積み立てます（「貯金」の支出の登録と目標の現在額の加算を1回のリクエスト・1つのDBトランザクションで行います）。
+     * 成功すると更新後の目標を返します。指定した版から目標が変わっていた場合は 409 Conflict を返します。
+     */
+    @PostMapping("/{id}/contributions")
+    public ResponseEntity<Goal> contribute(@AuthenticationPrincipal User user, @PathVariable int id, @RequestBody GoalContribution contribution) {
+        if (!(contribution.getAmount() > 0)) {
+            return ResponseEntity.badRequest().build();
+        }
+        Integer savingsCategoryId = categoryDAO.getSavingsCategoryId(user.getId());
+        if (savingsCategoryId == null) {
+            return ResponseEntity.internalServerError().build();
+        }
+        switch (goalDAO.contribute(user.getId(), id, savingsCategoryId, contribution)) {
+            case CONTRIBUTED:
+                return ResponseEntity.ok(goalDAO.getGoalById(user.getId(), id));
+            case NOT_FOUND:
+                return ResponseEntity.notFound().build();
+            case VERSION_CONFLICT:
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(goalDAO.getGoalById(user.getId(), id));
+            default:
+                return ResponseEntity.internalServerError().build();
+        }
+    }
+
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteGoal(@PathVariable int id) {
-        boolean success = goalDAO.deleteGoal(id);
+    public ResponseEntity<Void> deleteGoal(@AuthenticationPrincipal User user, @PathVariable int id) {
+        boolean success = goalDAO.deleteGoal(user.getId(), id);
         return success ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
     }
 }
\ No newline at end of file
@@ -1,75 +1,198 @@
 package com.example.CashFlowWeb;
 
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
 public class GoalDAO {
 
-    public List<Goal> getAllGoals() {
-        List<Goal> goals = new ArrayList<>();
-        String sql = "SELECT * FROM goals ORDER BY target_date";
-        try (Connection conn = DBManager.connect(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                goals.add(mapToGoal(rs));
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+    // 版の競合（同時に積み立てた場合など）で読み直してやり直す回数
+    private static final int MAX_CONTRIBUTION_ATTEMPTS = 3;
+
+    /**
+     * 積立の結果。
+     */
+    public enum ContributionResult {
+        CONTRIBUTED, NOT_FOUND, VERSION_CONFLICT
+    }
+
+    /**
+     * 積立を取り消すために、DBトランザクションの中から投げる例外。
+     */
+    private static final class ContributionRejected extends SQLException {
+        final ContributionResult result;
+
+        ContributionRejected(ContributionResult result) {
+            super(result.name());
+            this.result = result;
         }
-        return goals;
     }
 
-    public boolean addGoal(Goal goal) {
-        String sql = "INSERT INTO goals(name, target_amount, current_amount, target_date, image_url) VALUES(?, ?, ?, ?, ?)";
-        try (Connection conn = DBManager.connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, goal.getName());
-            pstmt.setDouble(2, goal.getTargetAmount());
-            pstmt.setDouble(3, goal.getCurrentAmount());
-            pstmt.setString(4, goal.getTargetDate());
-            pstmt.setString(5, goal.getImageUrl());
-            pstmt.executeUpdate();
+    private static final DaoMetrics METRICS = DaoMetrics.forDao("GoalDAO");
+
+    private final TransactionDAO transactionDAO = new TransactionDAO();
+
+    public List<Goal> getAllGoals(int userId) {
+        String sql = "SELECT * FROM goals WHERE user_id = ? ORDER BY target_date";
+        return METRICS.call("getAllGoals", () -> {
+            List<Goal> goals = new ArrayList<>();
+            try (Connection conn = DBManager.connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        goals.add(mapToGoal(rs));
+                    }
+                }
+            }
+            return goals;
+        });
+    }
+
+    public Goal getGoalById(int userId, int id) {
+        String sql = "SELECT * FROM goals WHERE id = ? AND user_id = ?";
+        return METRICS.call("getGoalById", () -> {
+            try (Connection conn = DBManager.connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, id);
+                pstmt.setInt(2, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        return mapToGoal(rs);
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    public boolean addGoal(int userId, Goal goal) {
+        String sql = "INSERT INTO goals(user_id, name, target_amount, current_amount, target_date, image_url) VALUES(?, ?, ?, ?, ?, ?)";
+        return METRICS.call("addGoal", () -> {
+            DBManager.executeUpdate(sql, pstmt -> {
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, goal.getName());
+                pstmt.setLong(3, Money.toMinor(goal.getTargetAmount()));
+                pstmt.setLong(4, Money.toMinor(goal.getCurrentAmount()));
+                pstmt.setString(5, goal.getTargetDate());
+                pstmt.setString(6, goal.getImageUrl());
+            });
+            DataVersions.bump(userId, DataVersions.Dataset.GOALS);
             return true;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
-        }
+        });
     }
 
-    public boolean updateGoal(Goal goal) {
-        String sql = "UPDATE goals SET name = ?, target_amount = ?, current_amount = ?, target_date = ?, image_url = ? WHERE id = ?";
-        try (Connection conn = DBManager.connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, goal.getName());
-            pstmt.setDouble(2, goal.getTargetAmount());
-            pstmt.setDouble(3, goal.getCurrentAmount());
-            pstmt.setString(4, goal.getTargetDate());
-            pstmt.setString(5, goal.getImageUrl());
-            pstmt.setInt(6, goal.getId());
-            return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
-        }
+    /**
+     * 目標を更新します。goal に版が指定されていれば、その版から変わっていない場合だけ更新します。
+     */
+    public boolean updateGoal(int userId, Goal goal) {
+        String sql = "UPDATE goals SET name = ?, target_amount = ?, current_amount = ?, target_date = ?, image_url = ?, version = version + 1 WHERE id = ? AND user_id = ?" +
+                     (goal.getVersion() != null ? " AND version = ?" : "");
+        return METRICS.call("updateGoal", () -> {
+            int rowsAffected = DBManager.executeUpdate(sql, pstmt -> {
+                pstmt.setString(1, goal.getName());
+                pstmt.setLong(2, Money.toMinor(goal.getTargetAmount()));
+                pstmt.setLong(3, Money.toMinor(goal.getCurrentAmount()));
+                pstmt.setString(4, goal.getTargetDate());
+                pstmt.setString(5, goal.getImageUrl());
+                pstmt.setInt(6, goal.getId());
+                pstmt.setInt(7, userId);
+                if (goal.getVersion() != null) {
+                    pstmt.setInt(8, goal.getVersion());
+                }
+            });
+            return bumpIfChanged(userId, rowsAffected);
+        });
     }
     
-    public boolean deleteGoal(int id) {
-        String sql = "DELETE FROM goals WHERE id = ?";
-        try (Connection conn = DBManager.connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
+    public boolean deleteGoal(int userId, int id) {
+        String sql = "DELETE FROM goals WHERE id = ? AND user_id = ?";
+        return METRICS.call("deleteGoal", () -> {
+            int rowsAffected = DBManager.executeUpdate(sql, pstmt -> {
+                pstmt.setInt(1, id);
+                pstmt.setInt(2, userId);
+            });
+            return bumpIfChanged(userId, rowsAffected);
+        });
+    }
+
+    /**
+     * 目標に積み立てます。「貯金」カテゴリの支出（臨時）の登録と目標の現在額の加算を1つのDBトランザクションで行い、
+     * どちらかが失敗した場合は両方とも取り消します。現在額は目標額を上限とします。
+     * 目標の更新は版を条件にした UPDATE で行い、同時に積み立てられて版が変わっていた場合は読み直してやり直します
+     * （contribution に版が指定されていた場合はやり直さず VERSION_CONFLICT を返します）。
+     */
+    public ContributionResult contribute(int userId, int goalId, int savingsCategoryId, GoalContribution contribution) {
+        LocalDate date = contribution.getDate() != null ? contribution.getDate() : LocalDate.now();
+        return METRICS.call("contribute", () -> {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    transactionDAO.addTransaction(userId, date, contribution.getAmount(), "EXPENSE", savingsCategoryId, false, true,
+                            conn -> applyContribution(conn, userId, goalId, contribution));
+                    DataVersions.bump(userId, DataVersions.Dataset.GOALS);
+                    return ContributionResult.CONTRIBUTED;
+                } catch (ContributionRejected e) {
+                    boolean retry = e.result == ContributionResult.VERSION_CONFLICT
+                            && contribution.getVersion() == null
+                            && attempt < MAX_CONTRIBUTION_ATTEMPTS;
+                    if (!retry) {
+                        return e.result;
+                    }
+                }
+            }
+        });
+    }
+
+    private Void applyContribution(Connection conn, int userId, int goalId, GoalContribution contribution) throws SQLException {
+        long currentAmount;
+        long targetAmount;
+        int version;
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT current_amount, target_amount, version FROM goals WHERE id = ? AND user_id = ?")) {
+            pstmt.setInt(1, goalId);
+            pstmt.setInt(2, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new ContributionRejected(ContributionResult.NOT_FOUND);
+                }
+                currentAmount = rs.getLong("current_amount");
+                targetAmount = rs.getLong("target_amount");
+                version = rs.getInt("version");
+            }
+        }
+        if (contribution.getVersion() != null && contribution.getVersion() != version) {
+            throw new ContributionRejected(ContributionResult.VERSION_CONFLICT);
+        }
+
+        String sql = "UPDATE goals SET current_amount = ?, version = version + 1 WHERE id = ? AND user_id = ? AND version = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, Math.min(currentAmount + Money.toMinor(contribution.getAmount()), targetAmount));
+            pstmt.setInt(2, goalId);
+            pstmt.setInt(3, userId);
+            pstmt.setInt(4, version);
+            if (pstmt.executeUpdate() == 0) {
+                // 読み取ってから更新するまでの間に、他のリクエストが目標を更新した
+                throw new ContributionRejected(ContributionResult.VERSION_CONFLICT);
+            }
+        }
+        return null;
+    }
+
+    private boolean bumpIfChanged(int userId, int rowsAffected) {
+        if (rowsAffected > 0) {
+            DataVersions.bump(userId, DataVersions.Dataset.GOALS);
+            return true;
         }
+        return false;
     }
 
     private Goal mapToGoal(ResultSet rs) throws SQLException {
         Goal goal = new Goal();
         goal.setId(rs.getInt("id"));
         goal.setName(rs.getString("name"));
-        goal.setTargetAmount(rs.getDouble("target_amount"));
-        goal.setCurrentAmount(rs.getDouble("current_amount"));
+        goal.setTargetAmount(Money.fromMinor(rs.getLong("target_amount")));
+        goal.setCurrentAmount(Money.fromMinor(rs.getLong("current_amount")));
         goal.setTargetDate(rs.getString("target_date"));
         goal.setImageUrl(rs.getString("image_url"));
+        goal.setVersion(rs.getInt("version"));
         return goal;
     }
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+package com.example.CashFlowWeb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 取引の一括インポートの進捗・結果を保持するモデルクラス。
+ */
+public class ImportResult {
+
+    // レスポンスに含める行エラーの上限（大量エラー時にメモリを使い切らないため）
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private long processedRows;
+    private long insertedRows;
+    private long failedRows;
+    private long elapsedMillis;
+    private boolean finished;
+    private List<RowError> errors = new ArrayList<>();
+
+    public void addInserted(long count) { insertedRows += count; }
+    public void addProcessed(long count) { processedRows += count; }
+
+    /**
+     * 行単位のエラーを記録します。
+     */
+    public void addError(long line, String message) {
+        failedRows++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new RowError(line, message));
+        }
+    }
+
+    public void finish(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+        this.finished = true;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) { this.elapsedMillis = elapsedMillis; }
+
+    // --- Getter Methods ---
+    public long getProcessedRows() { return processedRows; }
+    public long getInsertedRows() { return insertedRows; }
+    public long getFailedRows() { return failedRows; }
+    public long getElapsedMillis() { return elapsedMillis; }
+    public boolean getFinished() { return finished; }
+
+    public double getRowsPerSecond() {
+        return elapsedMillis == 0 ? 0.0 : insertedRows * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * 進捗通知ではエラー一覧を省略し、完了時だけ返します。
+     */
+    public List<RowError> getErrors() { return finished ? errors : null; }
+
+    /**
+     * 取り込めなかった行とその理由。
+     */
+    public static class RowError {
+        private long line;
+        private String message;
+
+        public RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine() { return line; }
+        public String getMessage() { return message; }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.CashFlowWeb;
+
+/**
+ * 金額の変換を行うユーティリティクラス。
+ * DBには浮動小数の誤差が出ないよう、金額を最小単位（1/100円）の整数で保存します。
+ * 画面・APIとのやり取りは従来どおり double（円）で行います。
+ */
+public final class Money {
+
+    // 1円あたりの最小単位数
+    public static final int SCALE = 100;
+
+    private Money() {}
+
+    /**
+     * 円の金額を最小単位の整数に変換します。
+     */
+    public static long toMinor(double amount) {
+        return Math.round(amount * SCALE);
+    }
+
+    /**
+     * 最小単位の整数を円の金額に変換します。
+     */
+    public static double fromMinor(long minor) {
+        return (double) minor / SCALE;
+    }
+}
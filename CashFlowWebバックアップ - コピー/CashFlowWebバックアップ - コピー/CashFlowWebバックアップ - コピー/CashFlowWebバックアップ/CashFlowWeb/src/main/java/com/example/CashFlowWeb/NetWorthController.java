@@ -0,0 +1,54 @@
+package com.example.CashFlowWeb;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+@RestController
+@RequestMapping("/api/networth")
+public class NetWorthController {
+
+    private final NetWorthService netWorthService;
+
+    public NetWorthController(NetWorthService netWorthService) {
+        this.netWorthService = netWorthService;
+    }
+
+    /**
+     * 現金残高と資産の評価額を合わせた純資産の推移を取得します（グラフ用）。
+     *
+     * @param startDate 開始日 (YYYY-MM-DD、省略時は endDate の1年前)
+     * @param endDate   終了日 (YYYY-MM-DD、省略時は今日)
+     * @param interval  評価日の間隔 (day / week / month、省略時は day)
+     */
+    @GetMapping
+    public ResponseEntity<NetWorthSeries> getNetWorth(@AuthenticationPrincipal User user,
+                                                      @RequestParam(required = false) String startDate,
+                                                      @RequestParam(required = false) String endDate,
+                                                      @RequestParam(required = false) String interval,
+                                                      ServletWebRequest request) {
+        PortfolioValuationEngine.Interval step = PortfolioValuationEngine.Interval.parse(interval);
+        LocalDate end;
+        LocalDate start;
+        try {
+            end = endDate != null ? LocalDate.parse(endDate) : LocalDate.now();
+            start = startDate != null ? LocalDate.parse(startDate) : end.minusYears(1);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (step == null || start.isAfter(end)
+                || PortfolioValuationEngine.countPoints(start, end, step) > PortfolioValuationEngine.MAX_POINTS) {
+            return ResponseEntity.badRequest().build();
+        }
+        String variant = start + "_" + end + "_" + step;
+        if (DataVersions.checkNotModified(request, DataVersions.etag(user.getId(), variant,
+                DataVersions.Dataset.TRANSACTIONS, DataVersions.Dataset.ASSETS))) {
+            return null;
+        }
+        return ResponseEntity.ok(netWorthService.getSeries(user.getId(), start, end, step));
+    }
+}
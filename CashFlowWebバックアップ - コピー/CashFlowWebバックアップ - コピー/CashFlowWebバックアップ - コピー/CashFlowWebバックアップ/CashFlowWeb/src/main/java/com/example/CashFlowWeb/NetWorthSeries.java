@@ -0,0 +1,46 @@
+package com.example.CashFlowWeb;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 純資産（現金残高 + 資産の評価額）の推移を保持するモデルクラス。
+ */
+public class NetWorthSeries {
+    private final String startDate;
+    private final String endDate;
+    private final String interval;
+    private final List<Point> points;
+
+    public NetWorthSeries(String startDate, String endDate, String interval, List<Point> points) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.interval = interval;
+        this.points = Collections.unmodifiableList(points);
+    }
+
+    public String getStartDate() { return startDate; }
+    public String getEndDate() { return endDate; }
+    public String getInterval() { return interval; }
+    public List<Point> getPoints() { return points; }
+
+    /**
+     * ある日の終わり時点の現金残高・資産評価額・純資産。
+     */
+    public static class Point {
+        private final String date;
+        private final double cash;
+        private final double assets;
+
+        public Point(String date, double cash, double assets) {
+            this.date = date;
+            this.cash = cash;
+            this.assets = assets;
+        }
+
+        public String getDate() { return date; }
+        public double getCash() { return cash; }
+        public double getAssets() { return assets; }
+        public double getNetWorth() { return cash + assets; }
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.CashFlowWeb;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 純資産の推移を計算するサービス。
+ *
+ * ユーザーごとに「日ごとの収支（確定済みの収入 - 支出）」をフェニック木（Binary Indexed Tree）で保持し、
+ * 任意の日の現金残高を O(log 日数) で求めます。評価日の数だけ問い合わせるので、履歴の長さにはほぼ依存しません。
+ * 資産の評価額は PortfolioValuationEngine で同じ評価日について計算します。
+ *
+ * 取引が変更されると、変更された日付だけを「要再読込」として記録し、次の問い合わせでその日の合計だけをDBから読み直します。
+ * 差分を足し込むのではなく、その日の値を置き換えるため、読み込みと書き込みが重なっても二重に数えることはありません。
+ * 一括登録の後や、記録できる範囲の外の日付が変更された場合は、そのユーザーの分をすべて読み直します。
+ */
+@Service
+public class NetWorthService {
+
+    private static final DaoMetrics METRICS = DaoMetrics.forDao("NetWorthService");
+
+    // 読み込んだ範囲の後ろに確保しておく日数（新しい日付の取引で読み直さずに済むように）
+    private static final int HEADROOM_DAYS = 366;
+    // 変更された日付を読み直すときに、1回のクエリで指定する日数
+    private static final int REFRESH_CHUNK = 500;
+
+    private final Map<Integer, DailyBalances> byUser = new ConcurrentHashMap<>();
+    private final AssetDAO assetDAO = new AssetDAO();
+    private final PortfolioValuationEngine valuationEngine = new PortfolioValuationEngine(new AssetPriceDAO());
+    private final TransactionDAO.ChangeListener listener = this::onTransactionChange;
+
+    public NetWorthService() {
+        TransactionDAO.addChangeListener(listener);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        TransactionDAO.removeChangeListener(listener);
+    }
+
+    /**
+     * startDate から endDate まで interval ごとの純資産の推移を計算します。
+     */
+    public NetWorthSeries getSeries(int userId, LocalDate startDate, LocalDate endDate, PortfolioValuationEngine.Interval interval) {
+        PortfolioValuation valuation = valuationEngine.valuate(assetDAO.getAllAssets(userId), startDate, endDate, interval);
+        DailyBalances balances = byUser.computeIfAbsent(userId, k -> new DailyBalances());
+        List<NetWorthSeries.Point> points = METRICS.call("getSeries", () -> {
+            List<NetWorthSeries.Point> cashPoints = new ArrayList<>(valuation.getPoints().size());
+            synchronized (balances) {
+                balances.refresh(userId);
+                for (PortfolioValuation.Point point : valuation.getPoints()) {
+                    long cash = balances.balanceAt((int) LocalDate.parse(point.getDate()).toEpochDay());
+                    cashPoints.add(new NetWorthSeries.Point(point.getDate(), Money.fromMinor(cash), point.getValue()));
+                }
+            }
+            return cashPoints;
+        });
+        return new NetWorthSeries(startDate.toString(), endDate.toString(), interval.name(), points);
+    }
+
+    /**
+     * 保持しているすべてのユーザーの日次収支を破棄し、次の問い合わせで読み直させます（DBを直接変更した場合など）。
+     */
+    public void invalidateAll() {
+        for (DailyBalances balances : byUser.values()) {
+            balances.reloadRequired = true;
+        }
+    }
+
+    /**
+     * 取引の変更（コミット後）を受け取り、影響する日付を記録します。
+     */
+    private void onTransactionChange(int userId, TransactionChange change) {
+        DailyBalances balances = byUser.get(userId);
+        if (balances == null) {
+            return;
+        }
+        if (change.getAction() == TransactionChange.Action.IMPORTED) {
+            balances.reloadRequired = true;
+            return;
+        }
+        if (change.getTransaction() != null) {
+            balances.dirtyDays.add((int) change.getTransaction().getDate().toEpochDay());
+        }
+        if (change.getPrevious() != null) {
+            balances.dirtyDays.add((int) change.getPrevious().getDate().toEpochDay());
+        }
+    }
+
+    // ----------------------------------------
+    // ユーザーごとの日次収支
+    // ----------------------------------------
+
+    /**
+     * 1ユーザー分の日次収支。baseDay からの日数を添字にしたフェニック木で累計を求めます。
+     * 読み書きは this で同期します（dirtyDays と reloadRequired は取引の書き込み側から同期せずに更新されます）。
+     */
+    private static final class DailyBalances {
+        final Set<Integer> dirtyDays = ConcurrentHashMap.newKeySet();
+        volatile boolean reloadRequired = true;
+
+        int baseDay;
+        long[] values = new long[0];
+        long[] tree = new long[1]; // 1始まり
+
+        /**
+         * 未読込なら全体を、変更された日付があればその日だけを読み直します。
+         */
+        void refresh(int userId) throws SQLException {
+            if (reloadRequired) {
+                load(userId);
+                return;
+            }
+            if (dirtyDays.isEmpty()) {
+                return;
+            }
+            // 取り出した日付より後に記録された変更は、次の refresh で読み直す
+            List<Integer> days = new ArrayList<>();
+            for (Iterator<Integer> it = dirtyDays.iterator(); it.hasNext(); ) {
+                int day = it.next();
+                it.remove();
+                if (day < baseDay || day - baseDay >= values.length) {
+                    load(userId);
+                    return;
+                }
+                days.add(day);
+            }
+            Collections.sort(days);
+            try (Connection conn = DBManager.connect()) {
+                for (int from = 0; from < days.size(); from += REFRESH_CHUNK) {
+                    List<Integer> chunk = days.subList(from, Math.min(days.size(), from + REFRESH_CHUNK));
+                    long[] totals = new long[chunk.size()];
+                    String sql = netByDaySql(" AND date IN (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")");
+                    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                        int index = 1;
+                        pstmt.setInt(index++, userId);
+                        for (int day : chunk) {
+                            pstmt.setLong(index++, day);
+                        }
+                        try (ResultSet rs = pstmt.executeQuery()) {
+                            while (rs.next()) {
+                                totals[Collections.binarySearch(chunk, rs.getInt("date"))] = rs.getLong("net");
+                            }
+                        }
+                    }
+                    for (int i = 0; i < chunk.size(); i++) {
+                        set(chunk.get(i) - baseDay, totals[i]);
+                    }
+                }
+            } catch (SQLException e) {
+                // 読み直せなかった日付は次回すべて読み直す
+                reloadRequired = true;
+                throw e;
+            }
+        }
+
+        /**
+         * ユーザーの日次収支をすべて読み込み、木を作り直します。
+         */
+        void load(int userId) throws SQLException {
+            // 読み込みを始める前に記録をリセットする（読み込み中の変更は次回読み直される）
+            reloadRequired = false;
+            dirtyDays.clear();
+            List<long[]> rows = new ArrayList<>();
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(netByDaySql("") + " ORDER BY date")) {
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(new long[] {rs.getLong("date"), rs.getLong("net")});
+                    }
+                }
+            } catch (SQLException e) {
+                reloadRequired = true;
+                throw e;
+            }
+
+            int today = (int) LocalDate.now().toEpochDay();
+            baseDay = rows.isEmpty() ? today : (int) Math.min(rows.get(0)[0], today);
+            int lastDay = rows.isEmpty() ? today : (int) Math.max(rows.get(rows.size() - 1)[0], today);
+            int size = lastDay - baseDay + 1 + HEADROOM_DAYS;
+            values = new long[size];
+            for (long[] row : rows) {
+                values[(int) row[0] - baseDay] = row[1];
+            }
+            // O(n) で木を組み立てる
+            tree = new long[size + 1];
+            for (int i = 1; i <= size; i++) {
+                tree[i] += values[i - 1];
+                int parent = i + (i & -i);
+                if (parent <= size) {
+                    tree[parent] += tree[i];
+                }
+            }
+        }
+
+        /**
+         * day の終わり時点の残高（最小単位）。
+         */
+        long balanceAt(int day) {
+            if (day < baseDay) {
+                return 0;
+            }
+            int index = Math.min(day - baseDay, values.length - 1);
+            long sum = 0;
+            for (int i = index + 1; i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+
+        private void set(int index, long value) {
+            long delta = value - values[index];
+            if (delta == 0) {
+                return;
+            }
+            values[index] = value;
+            for (int i = index + 1; i < tree.length; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+
+        /**
+         * 日付ごとの確定済みの収支（月次集計・残高と同じく、将来の予定取引は含めない）。
+         */
+        private static String netByDaySql(String condition) {
+            return "SELECT date, SUM(CASE WHEN type = 'INCOME' THEN amount WHEN type = 'EXPENSE' THEN -amount ELSE 0 END) AS net " +
+                   "FROM transactions WHERE user_id = ? AND is_future = FALSE" + condition + " GROUP BY date";
+        }
+    }
+}
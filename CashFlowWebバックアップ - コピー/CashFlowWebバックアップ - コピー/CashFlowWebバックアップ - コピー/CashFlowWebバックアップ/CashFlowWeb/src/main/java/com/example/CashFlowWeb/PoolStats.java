@@ -0,0 +1,56 @@
+package com.example.CashFlowWeb;
+
+/**
+ * コネクションプールの利用状況を保持するモデルクラス（監視用）。
+ */
+public class PoolStats {
+    private String backend;
+    private int maxPoolSize;
+    private int activeConnections;
+    private int idleConnections;
+    private int totalConnections;
+    private int threadsAwaitingConnection;
+    private long acquireCount;
+    private double averageWaitMillis; // 接続取得までの平均待ち時間
+    private double maxWaitMillis;     // 接続取得までの最大待ち時間
+    private boolean bulkheadEnabled;
+    private int maxConcurrentWriters; // 同時に実行できる書き込みトランザクション数（SQLiteは1）
+    private int maxWaiting;           // DBアクセスを待てるリクエスト数の上限
+    private int waiting;              // DBアクセスを待っているリクエスト数
+    private long rejectedRequests;    // 上限・タイムアウトで 503 にしたリクエスト数
+
+    public PoolStats(String backend, int maxPoolSize, int activeConnections, int idleConnections, int totalConnections,
+                     int threadsAwaitingConnection, long acquireCount, double averageWaitMillis, double maxWaitMillis,
+                     boolean bulkheadEnabled, int maxConcurrentWriters, int maxWaiting, int waiting, long rejectedRequests) {
+        this.backend = backend;
+        this.maxPoolSize = maxPoolSize;
+        this.activeConnections = activeConnections;
+        this.idleConnections = idleConnections;
+        this.totalConnections = totalConnections;
+        this.threadsAwaitingConnection = threadsAwaitingConnection;
+        this.acquireCount = acquireCount;
+        this.averageWaitMillis = averageWaitMillis;
+        this.maxWaitMillis = maxWaitMillis;
+        this.bulkheadEnabled = bulkheadEnabled;
+        this.maxConcurrentWriters = maxConcurrentWriters;
+        this.maxWaiting = maxWaiting;
+        this.waiting = waiting;
+        this.rejectedRequests = rejectedRequests;
+    }
+
+    // --- Getter Methods ---
+    public String getBackend() { return backend; }
+    public int getMaxPoolSize() { return maxPoolSize; }
+    public int getActiveConnections() { return activeConnections; }
+    public int getIdleConnections() { return idleConnections; }
+    public int getTotalConnections() { return totalConnections; }
+    public int getThreadsAwaitingConnection() { return threadsAwaitingConnection; }
+    public long getAcquireCount() { return acquireCount; }
+    public double getAverageWaitMillis() { return averageWaitMillis; }
+    public double getMaxWaitMillis() { return maxWaitMillis; }
+    public boolean getBulkheadEnabled() { return bulkheadEnabled; }
+    public int getMaxConcurrentWriters() { return maxConcurrentWriters; }
+    public int getMaxWaiting() { return maxWaiting; }
+    public int getWaiting() { return waiting; }
+    public long getRejectedRequests() { return rejectedRequests; }
+}
@@ -1,7 +1,11 @@
 package com.example.CashFlowWeb;
 
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
 @RestController
@@ -9,15 +13,22 @@ import java.util.List;
 public class PortfolioController {
     
     private final AssetDAO assetDAO = new AssetDAO();
+    private final PortfolioValuationEngine valuationEngine = new PortfolioValuationEngine(new AssetPriceDAO());
 
     @GetMapping("/assets")
-    public List<Asset> getAllAssets() {
-        return assetDAO.getAllAssets();
+    public List<Asset> getAllAssets(@AuthenticationPrincipal User user, ServletWebRequest request) {
+        if (DataVersions.checkNotModified(request, user.getId(), DataVersions.Dataset.ASSETS)) {
+            return null;
+        }
+        return assetDAO.getAllAssets(user.getId());
     }
 
     @GetMapping("/assets/{id}")
-    public ResponseEntity<Asset> getAssetById(@PathVariable int id) {
-        Asset asset = assetDAO.getAssetById(id);
+    public ResponseEntity<Asset> getAssetById(@AuthenticationPrincipal User user, @PathVariable int id, ServletWebRequest request) {
+        if (DataVersions.checkNotModified(request, user.getId(), DataVersions.Dataset.ASSETS)) {
+            return null;
+        }
+        Asset asset = assetDAO.getAssetById(user.getId(), id);
         if (asset != null) {
             return ResponseEntity.ok(asset);
         } else {
@@ -26,21 +37,56 @@ public class PortfolioController {
     }
 
     @PostMapping("/assets")
-    public ResponseEntity<Boolean> addAsset(@RequestBody Asset asset) {
-        boolean isSuccess = assetDAO.addAsset(asset);
+    public ResponseEntity<Boolean> addAsset(@AuthenticationPrincipal User user, @RequestBody Asset asset) {
+        boolean isSuccess = assetDAO.addAsset(user.getId(), asset);
         return isSuccess ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false);
     }
 
     @PutMapping("/assets/{id}")
-    public ResponseEntity<Boolean> updateAsset(@PathVariable int id, @RequestBody Asset asset) {
+    public ResponseEntity<Boolean> updateAsset(@AuthenticationPrincipal User user, @PathVariable int id, @RequestBody Asset asset) {
         Asset assetToUpdate = new Asset(id, asset.getName(), asset.getTickerSymbol(), asset.getQuantity(), asset.getPurchasePrice(), asset.getCurrentPrice(), asset.getAssetType());
-        boolean isSuccess = assetDAO.updateAsset(assetToUpdate);
+        boolean isSuccess = assetDAO.updateAsset(user.getId(), assetToUpdate);
         return isSuccess ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false);
     }
 
     @DeleteMapping("/assets/{id}")
-    public ResponseEntity<Boolean> deleteAsset(@PathVariable int id) {
-        boolean isSuccess = assetDAO.deleteAsset(id);
+    public ResponseEntity<Boolean> deleteAsset(@AuthenticationPrincipal User user, @PathVariable int id) {
+        boolean isSuccess = assetDAO.deleteAsset(user.getId(), id);
         return isSuccess ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false);
     }
-}
\ No newline at end of file
+
+    /**
+     * 価格履歴をもとに、ポートフォリオの評価額・損益・資産種別ごとの内訳の推移を取得します。
+     *
+     * @param startDate 開始日 (YYYY-MM-DD、省略時は endDate の1年前)
+     * @param endDate   終了日 (YYYY-MM-DD、省略時は今日)
+     * @param interval  評価日の間隔 (day / week / month、省略時は day)
+     */
+    @GetMapping("/valuation")
+    public ResponseEntity<PortfolioValuation> getValuation(@AuthenticationPrincipal User user,
+                                                           @RequestParam(required = false) String startDate,
+                                                           @RequestParam(required = false) String endDate,
+                                                           @RequestParam(required = false) String interval,
+                                                           ServletWebRequest request) {
+        PortfolioValuationEngine.Interval step = PortfolioValuationEngine.Interval.parse(interval);
+        LocalDate end;
+        LocalDate start;
+        try {
+            end = endDate != null ? LocalDate.parse(endDate) : LocalDate.now();
+            start = startDate != null ? LocalDate.parse(startDate) : end.minusYears(1);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (step == null || start.isAfter(end)
+                || PortfolioValuationEngine.countPoints(start, end, step) > PortfolioValuationEngine.MAX_POINTS) {
+            return ResponseEntity.badRequest().build();
+        }
+        // 価格の取り込みは DataVersions.bumpAll() で全ユーザーのETagを変える
+        String variant = start + "_" + end + "_" + step;
+        if (DataVersions.checkNotModified(request, DataVersions.etag(user.getId(), variant, DataVersions.Dataset.ASSETS))) {
+            return null;
+        }
+        List<Asset> assets = assetDAO.getAllAssets(user.getId());
+        return ResponseEntity.ok(valuationEngine.valuate(assets, start, end, step));
+    }
+}
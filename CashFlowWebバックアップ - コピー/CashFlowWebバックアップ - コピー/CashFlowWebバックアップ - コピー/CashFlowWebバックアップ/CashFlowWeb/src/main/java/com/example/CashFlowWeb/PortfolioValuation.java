@@ -0,0 +1,57 @@
+package com.example.CashFlowWeb;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ポートフォリオの評価額の推移を保持するモデルクラス。
+ */
+public class PortfolioValuation {
+    private final String startDate;
+    private final String endDate;
+    private final String interval;
+    private final List<Point> points;
+
+    public PortfolioValuation(String startDate, String endDate, String interval, List<Point> points) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.interval = interval;
+        this.points = Collections.unmodifiableList(points);
+    }
+
+    public String getStartDate() { return startDate; }
+    public String getEndDate() { return endDate; }
+    public String getInterval() { return interval; }
+    public List<Point> getPoints() { return points; }
+
+    /**
+     * ある日のポートフォリオ全体の評価額・損益と、資産種別ごとの評価額。
+     */
+    public static class Point {
+        private final String date;
+        private final double value;
+        private final double purchaseValue;
+        private final Map<String, Double> allocation;
+
+        public Point(String date, double value, double purchaseValue, Map<String, Double> allocation) {
+            this.date = date;
+            this.value = value;
+            this.purchaseValue = purchaseValue;
+            this.allocation = Collections.unmodifiableMap(allocation);
+        }
+
+        public String getDate() { return date; }
+        public double getValue() { return value; }
+        public double getPurchaseValue() { return purchaseValue; }
+        public double getGainLoss() { return value - purchaseValue; }
+
+        public double getGainLossRate() {
+            if (purchaseValue == 0) return 0.0;
+            return (getGainLoss() / purchaseValue) * 100;
+        }
+
+        /** キー: 資産種別 (asset_type)、値: その種別の評価額 */
+        public Map<String, Double> getAllocation() { return allocation; }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.CashFlowWeb;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 価格履歴からポートフォリオの評価額の推移を計算するクラス。
+ *
+ * 各資産の評価額は「数量 × その日以前の最新価格」です。銘柄ごとに PriceSeries のカーソルを1つ作り、
+ * 評価日を古い順に進めながら価格を引くため、期間内の価格の点はそれぞれ1回しか読みません
+ * （開始日より前の履歴はチェックポイントで読み飛ばします）。
+ * 価格履歴のない資産は現在価格 (current_price)、履歴が始まる前の日は購入価格で評価します。
+ * 保有数量の履歴は持たないため、数量と購入額は期間を通して現在の値を使います。
+ */
+public class PortfolioValuationEngine {
+
+    public static final int MAX_POINTS = 5_000;
+
+    /**
+     * 評価日の間隔。
+     */
+    public enum Interval {
+        DAY, WEEK, MONTH;
+
+        public static Interval parse(String value) {
+            try {
+                return value == null ? DAY : valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        LocalDate next(LocalDate start, int step) {
+            switch (this) {
+                case WEEK: return start.plusWeeks(step);
+                case MONTH: return start.plusMonths(step);
+                default: return start.plusDays(step);
+            }
+        }
+    }
+
+    private final AssetPriceDAO assetPriceDAO;
+
+    public PortfolioValuationEngine(AssetPriceDAO assetPriceDAO) {
+        this.assetPriceDAO = assetPriceDAO;
+    }
+
+    /**
+     * startDate から endDate まで interval ごとの評価日（最後は必ず endDate）の数を返します。
+     */
+    public static long countPoints(LocalDate startDate, LocalDate endDate, Interval interval) {
+        long steps;
+        switch (interval) {
+            case WEEK: steps = ChronoUnit.WEEKS.between(startDate, endDate); break;
+            case MONTH: steps = ChronoUnit.MONTHS.between(startDate, endDate); break;
+            default: steps = ChronoUnit.DAYS.between(startDate, endDate); break;
+        }
+        // 最後の間隔が端数になる場合は endDate を1点追加する
+        return interval.next(startDate, (int) Math.min(steps, Integer.MAX_VALUE)).isBefore(endDate) ? steps + 2 : steps + 1;
+    }
+
+    /**
+     * 評価額の推移を計算します。
+     */
+    public PortfolioValuation valuate(List<Asset> assets, LocalDate startDate, LocalDate endDate, Interval interval) {
+        // 資産ごとの準備（同じ銘柄の資産はカーソルを共有する）
+        int assetCount = assets.size();
+        double[] quantities = new double[assetCount];
+        double[] fallbackPrices = new double[assetCount];
+        double[] purchasePrices = new double[assetCount];
+        PriceSeries.Cursor[] cursors = new PriceSeries.Cursor[assetCount];
+        String[] types = new String[assetCount];
+        Map<String, PriceSeries.Cursor> cursorsByTicker = new HashMap<>();
+        double purchaseValue = 0;
+        for (int i = 0; i < assetCount; i++) {
+            Asset asset = assets.get(i);
+            quantities[i] = asset.getQuantity();
+            purchasePrices[i] = asset.getPurchasePrice();
+            fallbackPrices[i] = asset.getCurrentPrice();
+            types[i] = asset.getAssetType() != null ? asset.getAssetType() : "";
+            purchaseValue += asset.getPurchaseValue();
+            String ticker = AssetPriceDAO.normalizeTicker(asset.getTickerSymbol());
+            if (ticker != null) {
+                cursors[i] = cursorsByTicker.computeIfAbsent(ticker, k -> {
+                    PriceSeries.Snapshot series = assetPriceDAO.getSeries(k);
+                    return series != null && series.size() > 0 ? series.cursor() : null;
+                });
+            }
+        }
+
+        List<PortfolioValuation.Point> points = new ArrayList<>();
+        for (int step = 0; ; step++) {
+            LocalDate date = interval.next(startDate, step);
+            if (date.isAfter(endDate)) {
+                date = endDate;
+            }
+            int day = (int) date.toEpochDay();
+            double value = 0;
+            Map<String, Double> allocation = new TreeMap<>();
+            for (int i = 0; i < assetCount; i++) {
+                double price = fallbackPrices[i];
+                if (cursors[i] != null) {
+                    long scaled = cursors[i].priceAsOf(day);
+                    price = scaled == PriceSeries.NO_PRICE ? purchasePrices[i] : PriceSeries.fromScaled(scaled);
+                }
+                double assetValue = quantities[i] * price;
+                value += assetValue;
+                allocation.merge(types[i], assetValue, Double::sum);
+            }
+            points.add(new PortfolioValuation.Point(date.toString(), value, purchaseValue, allocation));
+            if (!date.isBefore(endDate)) {
+                break;
+            }
+        }
+        return new PortfolioValuation(startDate.toString(), endDate.toString(), interval.name(), points);
+    }
+}
@@ -11,6 +11,7 @@ public class PredictionResult {
     private String feedback;
     private double initialBalance;
     private List<Double> projectionPoints; // 予測グラフ用のデータポイント
+    private ForecastResult forecast; // モンテカルロ予測の詳細（パーセンタイル・到達確率）
 
     public PredictionResult(double averageMonthlyProfit, int estimatedMonths, String feedback, double initialBalance, List<Double> projectionPoints) {
         this.averageMonthlyProfit = averageMonthlyProfit;
@@ -33,4 +34,7 @@ public class PredictionResult {
     public String getFeedback() { return feedback; }
     public double getInitialBalance() { return initialBalance; }
     public List<Double> getProjectionPoints() { return projectionPoints; }
+    public ForecastResult getForecast() { return forecast; }
+
+    public void setForecast(ForecastResult forecast) { this.forecast = forecast; }
 }
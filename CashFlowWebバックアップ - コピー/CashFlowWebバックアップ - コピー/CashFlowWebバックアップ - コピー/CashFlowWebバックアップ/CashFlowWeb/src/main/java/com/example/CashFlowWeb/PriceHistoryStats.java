@@ -0,0 +1,25 @@
+package com.example.CashFlowWeb;
+
+/**
+ * メモリ上の価格履歴の状態を保持するモデルクラス（監視用）。
+ */
+public class PriceHistoryStats {
+    private int loadedTickers;
+    private long points;
+    private long encodedBytes; // 差分符号化後のバイト数（チェックポイントを除く）
+
+    public PriceHistoryStats(int loadedTickers, long points, long encodedBytes) {
+        this.loadedTickers = loadedTickers;
+        this.points = points;
+        this.encodedBytes = encodedBytes;
+    }
+
+    // --- Getter Methods ---
+    public int getLoadedTickers() { return loadedTickers; }
+    public long getPoints() { return points; }
+    public long getEncodedBytes() { return encodedBytes; }
+
+    public double getBytesPerPoint() {
+        return points == 0 ? 0.0 : (double) encodedBytes / points;
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.CashFlowWeb;
+
+import java.util.Arrays;
+
+/**
+ * 1銘柄の価格の時系列を、追記専用のバイト列にまとめて保持するクラス。
+ *
+ * 各点は直前の点との差分（日付は経過日数、価格は差額をジグザグ変換したもの）を可変長整数で書き込みます。
+ * 日々の値動きは小さいため、1点あたり数バイトで済みます（日付int + 価格longの12バイトに対して）。
+ * CHECKPOINT_INTERVAL 点ごとに、その点の日付・価格・続きの位置を記録しておき、
+ * 途中の日付から読み始めるときは二分探索でそこへ飛びます（履歴の先頭から読み直さない）。
+ *
+ * 追記は新しい日付の点だけを受け付けます。書き込み済みのバイトは変更されないため、
+ * 読み取りは Snapshot を取ればロックなしで行えます（追記はその後ろに書かれ、新しい Snapshot で公開されます）。
+ */
+final class PriceSeries {
+
+    /** 価格の保持単位（1 = 0.0001） */
+    static final long PRICE_SCALE = 10_000;
+    /** その日以前に価格がない場合に Cursor が返す値 */
+    static final long NO_PRICE = Long.MIN_VALUE;
+
+    private static final int CHECKPOINT_INTERVAL = 64;
+
+    private byte[] data = new byte[32];
+    private int length;
+    private int count;
+    private int lastDay;
+    private long lastPrice;
+
+    // チェックポイント: その点の番号・日付・価格と、次の点の書き込み位置
+    private int[] checkpointIndexes = new int[4];
+    private int[] checkpointDays = new int[4];
+    private long[] checkpointPrices = new long[4];
+    private int[] checkpointOffsets = new int[4];
+    private int checkpointCount;
+
+    private volatile Snapshot snapshot = new Snapshot(data, 0, 0, checkpointIndexes, checkpointDays, checkpointPrices, checkpointOffsets, 0);
+
+    static long toScaled(double price) {
+        return Math.round(price * PRICE_SCALE);
+    }
+
+    static double fromScaled(long scaled) {
+        return (double) scaled / PRICE_SCALE;
+    }
+
+    /**
+     * 点を末尾に追加します。最後の点より新しい日付でなければ追加せずに false を返します。
+     */
+    synchronized boolean append(int day, long price) {
+        if (count > 0 && day <= lastDay) {
+            return false;
+        }
+        // 可変長整数は1つ最大10バイト
+        ensureCapacity(length + 20);
+        length = writeVarLong(data, length, (long) day - lastDay);
+        length = writeVarLong(data, length, zigzag(price - lastPrice));
+        lastDay = day;
+        lastPrice = price;
+
+        if (count % CHECKPOINT_INTERVAL == 0) {
+            if (checkpointCount == checkpointIndexes.length) {
+                int newSize = checkpointCount * 2;
+                checkpointIndexes = Arrays.copyOf(checkpointIndexes, newSize);
+                checkpointDays = Arrays.copyOf(checkpointDays, newSize);
+                checkpointPrices = Arrays.copyOf(checkpointPrices, newSize);
+                checkpointOffsets = Arrays.copyOf(checkpointOffsets, newSize);
+            }
+            checkpointIndexes[checkpointCount] = count;
+            checkpointDays[checkpointCount] = day;
+            checkpointPrices[checkpointCount] = price;
+            checkpointOffsets[checkpointCount] = length;
+            checkpointCount++;
+        }
+        count++;
+        snapshot = new Snapshot(data, length, count, checkpointIndexes, checkpointDays, checkpointPrices, checkpointOffsets, checkpointCount);
+        return true;
+    }
+
+    /**
+     * 現時点までに追加された点を読むための Snapshot を返します。
+     */
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > data.length) {
+            // 古い配列は既存の Snapshot が読み続けるため、中身はコピーして新しい配列に書き込む
+            data = Arrays.copyOf(data, Math.max(required, data.length * 2));
+        }
+    }
+
+    // ----------------------------------------
+    // 読み取り
+    // ----------------------------------------
+
+    /**
+     * ある時点までの点の集合（不変）。
+     */
+    static final class Snapshot {
+        private final byte[] data;
+        private final int length;
+        private final int count;
+        private final int[] checkpointIndexes;
+        private final int[] checkpointDays;
+        private final long[] checkpointPrices;
+        private final int[] checkpointOffsets;
+        private final int checkpointCount;
+
+        private Snapshot(byte[] data, int length, int count, int[] checkpointIndexes, int[] checkpointDays,
+                         long[] checkpointPrices, int[] checkpointOffsets, int checkpointCount) {
+            this.data = data;
+            this.length = length;
+            this.count = count;
+            this.checkpointIndexes = checkpointIndexes;
+            this.checkpointDays = checkpointDays;
+            this.checkpointPrices = checkpointPrices;
+            this.checkpointOffsets = checkpointOffsets;
+            this.checkpointCount = checkpointCount;
+        }
+
+        int size() { return count; }
+        int encodedBytes() { return length; }
+
+        int firstDay() {
+            return count == 0 ? 0 : checkpointDays[0];
+        }
+
+        /**
+         * 日付の古い順に価格を引くためのカーソルを返します。
+         */
+        Cursor cursor() {
+            return new Cursor(this);
+        }
+
+        /**
+         * day 以前で最も新しいチェックポイントの番号。なければ -1。
+         */
+        private int checkpointAtOrBefore(int day) {
+            int low = 0;
+            int high = checkpointCount;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (checkpointDays[mid] <= day) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low - 1;
+        }
+    }
+
+    /**
+     * 指定した日以前の最新価格を返すカーソル。
+     * 日付を古い順に問い合わせる間は前回の位置から読み進めるだけなので、
+     * 期間全体を問い合わせても各点を1回ずつしか読みません。
+     */
+    static final class Cursor {
+        private final Snapshot snapshot;
+        // 最後に読んだ点（index == -1 なら先頭より前）
+        private int index = -1;
+        private int day;
+        private long price;
+        private int offset;
+        private boolean positioned;
+        private final long[] decoded = new long[1];
+
+        private Cursor(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * day 以前の最新価格を返します。その日以前に点がなければ NO_PRICE。
+         */
+        long priceAsOf(int targetDay) {
+            if (!positioned || targetDay < day) {
+                seek(targetDay);
+            }
+            byte[] data = snapshot.data;
+            while (index + 1 < snapshot.count) {
+                // 次の点を読み、targetDay を過ぎていたら読まなかったことにする
+                int position = readVarLong(data, offset, decoded);
+                int nextDay = (int) (day + decoded[0]);
+                if (nextDay > targetDay) {
+                    break;
+                }
+                position = readVarLong(data, position, decoded);
+                price += unzigzag(decoded[0]);
+                day = nextDay;
+                offset = position;
+                index++;
+            }
+            return index >= 0 ? price : NO_PRICE;
+        }
+
+        private void seek(int targetDay) {
+            int checkpoint = snapshot.checkpointAtOrBefore(targetDay);
+            if (checkpoint < 0) {
+                index = -1;
+                day = 0;
+                price = 0;
+                offset = 0;
+            } else {
+                index = snapshot.checkpointIndexes[checkpoint];
+                day = snapshot.checkpointDays[checkpoint];
+                price = snapshot.checkpointPrices[checkpoint];
+                offset = snapshot.checkpointOffsets[checkpoint];
+            }
+            positioned = true;
+        }
+    }
+
+    // ----------------------------------------
+    // 可変長整数
+    // ----------------------------------------
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int writeVarLong(byte[] buffer, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private static int readVarLong(byte[] buffer, int position, long[] out) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer[position++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        out[0] = value;
+        return position;
+    }
+}
@@ -0,0 +1,517 @@
+package com.example.CashFlowWeb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * 接続をラップしてすべてのSQLの実行時間を計測し、閾値を超えたものを記録するクラス（スロークエリログ）。
+ *
+ * 計測する時間は execute 系の呼び出しと、結果を読み出す ResultSet.next() の合計です（行を処理するアプリ側の時間は含みません）。
+ * 閾値 (DB_SLOW_QUERY_MS) を超えた実行はバインドしたパラメータと一緒にログに出し、直近 DB_SLOW_QUERY_LOG_SIZE 件を保持します。
+ * パラメータのうち文字列（メモや説明など利用者の入力）は長さだけを出し、users テーブルを扱う文（パスワードハッシュを含む）は
+ * すべてのパラメータを伏せます。
+ * また、SQLの文ごとに最大実行時間の長い DB_SLOW_QUERY_TOP 件について、最も遅かった実行のパラメータで実行計画
+ * （SQLiteは EXPLAIN QUERY PLAN、PostgreSQLは参照系なら EXPLAIN ANALYZE）を別スレッドで取得します。
+ * すべての Statement と ResultSet をプロキシ経由で呼び出すことになるため、既定では無効です。調査するときだけ
+ * DB_QUERY_TRACE_ENABLED=true で有効にします。
+ */
+final class QueryTracer {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryTracer.class);
+
+    private static final boolean ENABLED =
+            Boolean.parseBoolean(System.getenv().getOrDefault("DB_QUERY_TRACE_ENABLED", "false"));
+    private static final long THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(DBManager.envLong("DB_SLOW_QUERY_MS", 100));
+    private static final int RECENT_SIZE = DBManager.envInt("DB_SLOW_QUERY_LOG_SIZE", 100);
+    private static final int TOP_STATEMENTS = DBManager.envInt("DB_SLOW_QUERY_TOP", 20);
+    // ログ・画面に出すパラメータ1つあたりの最大文字数
+    private static final int MAX_PARAMETER_LENGTH = 100;
+    // パラメータをすべて伏せる文（users テーブルを扱う文）
+    private static final Pattern SENSITIVE_SQL = Pattern.compile("\\busers\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final LongAdder statementCount = new LongAdder();
+    private static final LongAdder slowCount = new LongAdder();
+    // 新しい順。recent 自体でロックする
+    private static final Deque<SlowQueryReport.Execution> recent = new ArrayDeque<>();
+    // キー: SQL。slowest 自体でロックする
+    private static final Map<String, StatementStats> slowest = new HashMap<>();
+
+    // 実行計画の取得用スレッド。このスレッドが使う接続は計測しない
+    private static volatile Thread planThread;
+    private static final ThreadPoolExecutor planExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(TOP_STATEMENTS), runnable -> {
+                Thread thread = new Thread(runnable, "slow-query-plan");
+                thread.setDaemon(true);
+                planThread = thread;
+                return thread;
+            });
+
+    /**
+     * SQLの文ごとの、閾値を超えた実行の集計。
+     */
+    private static final class StatementStats {
+        final String sql;
+        long count;
+        long totalNanos;
+        long maxNanos;
+        Object[] slowestParameters = new Object[0];
+        List<String> plan = List.of();
+        String planCapturedAt;
+        boolean planPending;
+
+        StatementStats(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    private QueryTracer() {
+    }
+
+    /**
+     * 接続をラップし、その接続で作ったStatementの実行時間を計測させます。無効な場合はそのまま返します。
+     */
+    static Connection wrap(Connection conn) {
+        if (!ENABLED || Thread.currentThread() == planThread) {
+            return conn;
+        }
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                Object result = forward(conn, method, args);
+                switch (method.getName()) {
+                    case "prepareStatement":
+                        return traced((PreparedStatement) result, (String) args[0]);
+                    case "createStatement":
+                        return traced((Statement) result, null);
+                    default:
+                        return result;
+                }
+            });
+    }
+
+    /**
+     * 記録の内容を取得します（監視用）。
+     */
+    static SlowQueryReport getReport() {
+        List<SlowQueryReport.Execution> executions;
+        synchronized (recent) {
+            executions = new ArrayList<>(recent);
+        }
+        List<SlowQueryReport.Statement> statements = new ArrayList<>();
+        synchronized (slowest) {
+            slowest.values().stream()
+                .sorted(Comparator.comparingLong((StatementStats s) -> s.maxNanos).reversed())
+                .forEach(s -> statements.add(new SlowQueryReport.Statement(s.sql, s.count, toMillis(s.maxNanos),
+                        toMillis(s.totalNanos / s.count), formatParameters(s.sql, s.slowestParameters), s.plan, s.planCapturedAt)));
+        }
+        return new SlowQueryReport(ENABLED, TimeUnit.NANOSECONDS.toMillis(THRESHOLD_NANOS), statementCount.sum(), slowCount.sum(),
+                executions, statements);
+    }
+
+    /**
+     * 記録を消去します。
+     */
+    static void reset() {
+        synchronized (recent) {
+            recent.clear();
+        }
+        synchronized (slowest) {
+            slowest.clear();
+        }
+        statementCount.reset();
+        slowCount.reset();
+    }
+
+    // ----------------------------------------
+    // 計測
+    // ----------------------------------------
+
+    private static Statement traced(Statement statement, String sql) {
+        Class<?> type = statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { type },
+                new TracedStatement(statement, sql));
+    }
+
+    /**
+     * Statementへの呼び出しを中継し、バインドしたパラメータを控えながら実行時間を計測します。
+     */
+    private static final class TracedStatement implements InvocationHandler {
+        private final Statement target;
+        private final String preparedSql;
+        private Object[] parameters = new Object[0];
+        private Object[] batchParameters;
+        private String batchSql;
+        private int batchSize;
+        private TracedResultSet openResult;
+
+        TracedStatement(Statement target, String preparedSql) {
+            this.target = target;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (args != null && args.length >= 2 && name.startsWith("set") && args[0] instanceof Integer index
+                    && method.getDeclaringClass() == PreparedStatement.class) {
+                bind(index, name.equals("setNull") ? null : args[1]);
+                return forward(target, method, args);
+            }
+            switch (name) {
+                case "clearParameters":
+                    parameters = new Object[0];
+                    return forward(target, method, args);
+                case "addBatch":
+                    if (batchSize++ == 0) {
+                        batchParameters = parameters.clone();
+                        batchSql = args != null ? (String) args[0] : preparedSql;
+                    }
+                    return forward(target, method, args);
+                case "clearBatch":
+                    batchSize = 0;
+                    return forward(target, method, args);
+                case "executeQuery":
+                    return executeQuery(method, args);
+                case "execute":
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                    return executeUpdate(method, args);
+                case "executeBatch":
+                case "executeLargeBatch":
+                    return executeBatch(method, args);
+                case "close":
+                    finishOpenResult();
+                    return forward(target, method, args);
+                default:
+                    return forward(target, method, args);
+            }
+        }
+
+        private void bind(int index, Object value) {
+            if (index > parameters.length) {
+                parameters = Arrays.copyOf(parameters, index);
+            }
+            parameters[index - 1] = value;
+        }
+
+        private Object executeQuery(Method method, Object[] args) throws Throwable {
+            finishOpenResult();
+            String sql = args != null ? (String) args[0] : preparedSql;
+            long start = System.nanoTime();
+            ResultSet rs;
+            try {
+                rs = (ResultSet) forward(target, method, args);
+            } catch (Throwable e) {
+                record(sql, parameters, System.nanoTime() - start, 0, 0);
+                throw e;
+            }
+            // 結果を読み終えて閉じたときに、読み出しの時間を含めて記録する
+            openResult = new TracedResultSet(rs, sql, parameters.clone(), System.nanoTime() - start);
+            return Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, openResult);
+        }
+
+        private Object executeUpdate(Method method, Object[] args) throws Throwable {
+            finishOpenResult();
+            String sql = args != null ? (String) args[0] : preparedSql;
+            long start = System.nanoTime();
+            Object result = null;
+            try {
+                result = forward(target, method, args);
+                return result;
+            } finally {
+                long rows = result instanceof Number count ? count.longValue() : 0;
+                record(sql, parameters, System.nanoTime() - start, rows, 0);
+            }
+        }
+
+        private Object executeBatch(Method method, Object[] args) throws Throwable {
+            long start = System.nanoTime();
+            Object result = null;
+            try {
+                result = forward(target, method, args);
+                return result;
+            } finally {
+                long rows = 0;
+                if (result instanceof int[] counts) {
+                    rows = Arrays.stream(counts).filter(c -> c > 0).asLongStream().sum();
+                } else if (result instanceof long[] counts) {
+                    rows = Arrays.stream(counts).filter(c -> c > 0).sum();
+                }
+                if (batchSize > 0) {
+                    record(batchSql, batchParameters, System.nanoTime() - start, rows, batchSize);
+                }
+                batchSize = 0;
+            }
+        }
+
+        private void finishOpenResult() {
+            if (openResult != null) {
+                openResult.finish();
+                openResult = null;
+            }
+        }
+    }
+
+    /**
+     * ResultSetへの呼び出しを中継し、next() にかかった時間と行数を数えます。
+     */
+    private static final class TracedResultSet implements InvocationHandler {
+        private final ResultSet target;
+        private final String sql;
+        private final Object[] parameters;
+        private long elapsedNanos;
+        private long rows;
+        private boolean finished;
+
+        TracedResultSet(ResultSet target, String sql, Object[] parameters, long executeNanos) {
+            this.target = target;
+            this.sql = sql;
+            this.parameters = parameters;
+            this.elapsedNanos = executeNanos;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next": {
+                    long start = System.nanoTime();
+                    try {
+                        Object hasNext = forward(target, method, args);
+                        if (Boolean.TRUE.equals(hasNext)) {
+                            rows++;
+                        }
+                        return hasNext;
+                    } finally {
+                        elapsedNanos += System.nanoTime() - start;
+                    }
+                }
+                case "close":
+                    finish();
+                    return forward(target, method, args);
+                default:
+                    return forward(target, method, args);
+            }
+        }
+
+        void finish() {
+            if (!finished) {
+                finished = true;
+                record(sql, parameters, elapsedNanos, rows, 0);
+            }
+        }
+    }
+
+    private static Object forward(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    // ----------------------------------------
+    // 記録
+    // ----------------------------------------
+
+    private static void record(String sql, Object[] boundParameters, long nanos, long rows, int batchSize) {
+        statementCount.increment();
+        if (nanos < THRESHOLD_NANOS || sql == null) {
+            return;
+        }
+        slowCount.increment();
+        // Statementは再利用されてパラメータが上書きされるため、控えておく
+        Object[] parameters = boundParameters.clone();
+        String statement = sql.strip().replaceAll("\\s+", " ");
+        List<String> shown = formatParameters(statement, parameters);
+        log.warn("遅いSQL {} ms rows={} batch={} sql={} params={}",
+                String.format(Locale.ROOT, "%.1f", toMillis(nanos)), rows, batchSize, statement, shown);
+
+        SlowQueryReport.Execution execution = new SlowQueryReport.Execution(LocalDateTime.now().toString(), statement, shown,
+                toMillis(nanos), rows, batchSize);
+        synchronized (recent) {
+            if (recent.size() >= RECENT_SIZE) {
+                recent.removeLast();
+            }
+            recent.addFirst(execution);
+        }
+
+        StatementStats stats;
+        synchronized (slowest) {
+            stats = slowest.get(statement);
+            if (stats == null) {
+                // 上限に達していれば、最大実行時間が最も短い文と入れ替える（それより速ければ集計しない）
+                if (slowest.size() >= TOP_STATEMENTS) {
+                    StatementStats fastest = slowest.values().stream().min(Comparator.comparingLong(s -> s.maxNanos)).orElseThrow();
+                    if (fastest.maxNanos >= nanos) {
+                        return;
+                    }
+                    slowest.remove(fastest.sql);
+                }
+                stats = new StatementStats(statement);
+                slowest.put(statement, stats);
+            }
+            stats.count++;
+            stats.totalNanos += nanos;
+            if (nanos <= stats.maxNanos) {
+                return;
+            }
+            stats.maxNanos = nanos;
+            stats.slowestParameters = parameters;
+            if (stats.planPending || !isExplainable(statement)) {
+                return;
+            }
+            stats.planPending = true;
+        }
+        capturePlanLater(stats, sql, parameters);
+    }
+
+    // ----------------------------------------
+    // 実行計画の取得
+    // ----------------------------------------
+
+    private static void capturePlanLater(StatementStats stats, String sql, Object[] parameters) {
+        try {
+            planExecutor.execute(() -> {
+                List<String> plan;
+                try (Connection conn = DBManager.connect()) {
+                    plan = explain(conn, sql, parameters);
+                } catch (SQLException | RuntimeException e) {
+                    plan = List.of("実行計画の取得に失敗しました: " + e.getMessage());
+                }
+                synchronized (slowest) {
+                    stats.plan = plan;
+                    stats.planCapturedAt = LocalDateTime.now().toString();
+                    stats.planPending = false;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 取得待ちが溜まっている場合は見送り、次に最大実行時間を更新したときに取得する
+            synchronized (slowest) {
+                stats.planPending = false;
+            }
+        }
+    }
+
+    /**
+     * 実行計画を取得できる文（SELECT/WITH/INSERT/UPDATE/DELETE）かどうかを判定します。PRAGMAやDDLは対象外です。
+     */
+    private static boolean isExplainable(String sql) {
+        String head = sql.length() > 6 ? sql.substring(0, 6).toUpperCase(Locale.ROOT) : sql.toUpperCase(Locale.ROOT);
+        return head.startsWith("SELECT") || head.startsWith("WITH") || head.startsWith("INSERT")
+                || head.startsWith("UPDATE") || head.startsWith("DELETE");
+    }
+
+    private static boolean isQuery(String sql) {
+        String head = sql.stripLeading().toUpperCase(Locale.ROOT);
+        return head.startsWith("SELECT") || head.startsWith("WITH");
+    }
+
+    /**
+     * 同じパラメータで実行計画を取得します。
+     * PostgreSQLの EXPLAIN ANALYZE は文を実際に実行するため、参照系の文に限り、ロールバックするトランザクションの中で実行します。
+     */
+    private static List<String> explain(Connection conn, String sql, Object[] parameters) throws SQLException {
+        if (!DBManager.isPostgres()) {
+            return explainSqlite(conn, sql, parameters);
+        }
+        boolean analyze = isQuery(sql);
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement pstmt = conn.prepareStatement((analyze ? "EXPLAIN (ANALYZE, BUFFERS) " : "EXPLAIN ") + sql)) {
+            bindAll(pstmt, parameters);
+            List<String> plan = new ArrayList<>();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    plan.add(rs.getString(1));
+                }
+            }
+            return plan;
+        } finally {
+            conn.rollback();
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * EXPLAIN QUERY PLAN の結果 (id, parent, notused, detail) を、親子関係に合わせて字下げした行にします。
+     */
+    private static List<String> explainSqlite(Connection conn, String sql, Object[] parameters) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        Map<Integer, Integer> depthById = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            bindAll(pstmt, parameters);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int depth = depthById.getOrDefault(rs.getInt("parent"), -1) + 1;
+                    depthById.put(rs.getInt("id"), depth);
+                    plan.add("  ".repeat(depth) + rs.getString("detail"));
+                }
+            }
+        }
+        return plan;
+    }
+
+    private static void bindAll(PreparedStatement pstmt, Object[] parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            pstmt.setObject(i + 1, parameters[i]);
+        }
+    }
+
+    // ----------------------------------------
+    // 表示用
+    // ----------------------------------------
+
+    /**
+     * ログ・画面に出す形にパラメータを整えます。
+     * 文字列は内容を出さずに長さだけを示し、users テーブルを扱う文ではすべてのパラメータを伏せます。
+     */
+    private static List<String> formatParameters(String sql, Object[] parameters) {
+        boolean sensitive = SENSITIVE_SQL.matcher(sql).find();
+        List<String> shown = new ArrayList<>(parameters.length);
+        for (Object value : parameters) {
+            String text;
+            if (sensitive) {
+                text = "***";
+            } else if (value == null) {
+                text = "NULL";
+            } else if (value instanceof byte[] bytes) {
+                text = "byte[" + bytes.length + "]";
+            } else if (value instanceof CharSequence chars) {
+                text = "'***'(" + chars.length() + ")";
+            } else {
+                text = String.valueOf(value);
+            }
+            shown.add(text.length() > MAX_PARAMETER_LENGTH ? text.substring(0, MAX_PARAMETER_LENGTH) + "…" : text);
+        }
+        return shown;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.CashFlowWeb;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 定期取引の規則から展開した、期間内の将来の発生予定（DBには保存されない）を保持するモデルクラス。
+ */
+public class RecurringProjection {
+    private final String startDate;
+    private final String endDate;
+    private final List<Occurrence> occurrences;
+    private final long totalIncomeMinor;
+    private final long totalExpenseMinor;
+
+    public RecurringProjection(String startDate, String endDate, List<Occurrence> occurrences, long totalIncomeMinor, long totalExpenseMinor) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.occurrences = Collections.unmodifiableList(occurrences);
+        this.totalIncomeMinor = totalIncomeMinor;
+        this.totalExpenseMinor = totalExpenseMinor;
+    }
+
+    public String getStartDate() { return startDate; }
+    public String getEndDate() { return endDate; }
+    /** 発生日の古い順 */
+    public List<Occurrence> getOccurrences() { return occurrences; }
+    public double getTotalIncome() { return Money.fromMinor(totalIncomeMinor); }
+    public double getTotalExpense() { return Money.fromMinor(totalExpenseMinor); }
+    public double getNet() { return Money.fromMinor(totalIncomeMinor - totalExpenseMinor); }
+
+    /**
+     * 1回分の発生予定。
+     */
+    public static class Occurrence {
+        private final int ruleId;
+        private final String name;
+        private final String date;
+        private final String type;
+        private final double amount;
+        private final int categoryId;
+        private final String categoryName;
+
+        public Occurrence(int ruleId, String name, String date, String type, double amount, int categoryId, String categoryName) {
+            this.ruleId = ruleId;
+            this.name = name;
+            this.date = date;
+            this.type = type;
+            this.amount = amount;
+            this.categoryId = categoryId;
+            this.categoryName = categoryName;
+        }
+
+        public int getRuleId() { return ruleId; }
+        public String getName() { return name; }
+        public String getDate() { return date; }
+        public String getType() { return type; }
+        public double getAmount() { return amount; }
+        public int getCategoryId() { return categoryId; }
+        public String getCategoryName() { return categoryName; }
+        public boolean getIsFuture() { return true; }
+    }
+}
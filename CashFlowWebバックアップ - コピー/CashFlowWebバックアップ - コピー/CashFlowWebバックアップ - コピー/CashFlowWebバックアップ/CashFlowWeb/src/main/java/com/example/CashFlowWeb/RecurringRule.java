@@ -0,0 +1,123 @@
+package com.example.CashFlowWeb;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+/**
+ * 定期取引の規則（家賃・給与・サブスクリプションなど）を保持するモデルクラス。
+ * n回目の発生日は「開始日 + n × 間隔」で計算します（月末の開始日は、短い月ではその月の末日になります）。
+ */
+public class RecurringRule {
+
+    /**
+     * 発生の単位。
+     */
+    public enum Frequency {
+        WEEKLY, MONTHLY, YEARLY;
+
+        public static Frequency parse(String value) {
+            try {
+                return value == null ? null : valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        LocalDate plus(LocalDate start, long count) {
+            switch (this) {
+                case WEEKLY: return start.plusWeeks(count);
+                case YEARLY: return start.plusYears(count);
+                default: return start.plusMonths(count);
+            }
+        }
+
+        long between(LocalDate start, LocalDate end) {
+            switch (this) {
+                case WEEKLY: return ChronoUnit.WEEKS.between(start, end);
+                case YEARLY: return ChronoUnit.YEARS.between(start, end);
+                default: return ChronoUnit.MONTHS.between(start, end);
+            }
+        }
+    }
+
+    private int id;
+    private String name;
+    private String type; // INCOME (収入) or EXPENSE (支出)
+    private double amount;
+    private int categoryId;
+    private String categoryName;
+    private String frequency;
+    private int intervalCount = 1;
+    private LocalDate startDate;
+    private LocalDate endDate; // null なら無期限
+    private int materializedCount; // 取引として登録済みの回数
+    private LocalDate nextDate; // まだ登録していない最初の発生日（終了済みなら null）
+
+    public RecurringRule(int id, String name, String type, double amount, int categoryId, String categoryName, String frequency,
+                         int intervalCount, LocalDate startDate, LocalDate endDate, int materializedCount, LocalDate nextDate) {
+        this.id = id;
+        this.name = name;
+        this.type = type;
+        this.amount = amount;
+        this.categoryId = categoryId;
+        this.categoryName = categoryName;
+        this.frequency = frequency;
+        this.intervalCount = intervalCount;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.materializedCount = materializedCount;
+        this.nextDate = nextDate;
+    }
+
+    // デフォルトコンストラクタ (Spring BootのJSONデシリアライズに必須)
+    public RecurringRule() {}
+
+    // --- Getter Methods ---
+    public int getId() { return id; }
+    public String getName() { return name; }
+    public String getType() { return type; }
+    public double getAmount() { return amount; }
+    public int getCategoryId() { return categoryId; }
+    public String getCategoryName() { return categoryName; }
+    public String getFrequency() { return frequency; }
+    public int getIntervalCount() { return intervalCount; }
+    public LocalDate getStartDate() { return startDate; }
+    public LocalDate getEndDate() { return endDate; }
+    public int getMaterializedCount() { return materializedCount; }
+    public LocalDate getNextDate() { return nextDate; }
+
+    // --- Setter Methods ---
+    public void setId(int id) { this.id = id; }
+
+    // ----------------------------------------
+    // 発生日の計算
+    // ----------------------------------------
+
+    /**
+     * index 回目（0始まり）の発生日を返します。終了日を過ぎている場合は null。
+     */
+    public LocalDate occurrenceDate(long index) {
+        LocalDate date = Frequency.parse(frequency).plus(startDate, index * intervalCount);
+        return endDate != null && date.isAfter(endDate) ? null : date;
+    }
+
+    /**
+     * 発生日が day 以降になる最初の回（0始まり）を返します。
+     */
+    public long firstIndexOnOrAfter(LocalDate day) {
+        if (!day.isAfter(startDate)) {
+            return 0;
+        }
+        Frequency unit = Frequency.parse(frequency);
+        // 単位の数から見当をつけ、月末の切り詰めによるずれを前後に補正する
+        long index = Math.max(0, unit.between(startDate, day) / intervalCount);
+        while (index > 0 && !unit.plus(startDate, (index - 1) * intervalCount).isBefore(day)) {
+            index--;
+        }
+        while (unit.plus(startDate, index * intervalCount).isBefore(day)) {
+            index++;
+        }
+        return index;
+    }
+}
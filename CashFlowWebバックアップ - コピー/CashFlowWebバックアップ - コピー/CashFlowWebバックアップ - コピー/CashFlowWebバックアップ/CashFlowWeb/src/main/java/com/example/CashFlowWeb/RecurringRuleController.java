@@ -0,0 +1,109 @@
+package com.example.CashFlowWeb;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/recurring-rules")
+public class RecurringRuleController {
+
+    // 展開できる期間の上限（年）
+    private static final int MAX_PROJECTION_YEARS = 10;
+
+    private final RecurringRuleDAO recurringRuleDAO = new RecurringRuleDAO();
+    private final CategoryDAO categoryDAO;
+
+    public RecurringRuleController(CategoryDAO categoryDAO) {
+        this.categoryDAO = categoryDAO;
+    }
+
+    @GetMapping
+    public List<RecurringRule> getAllRules(@AuthenticationPrincipal User user, ServletWebRequest request) {
+        if (DataVersions.checkNotModified(request, user.getId(), DataVersions.Dataset.RECURRING_RULES, DataVersions.Dataset.CATEGORIES)) {
+            return null;
+        }
+        return recurringRuleDAO.getAllRules(user.getId());
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<RecurringRule> getRuleById(@AuthenticationPrincipal User user, @PathVariable int id) {
+        RecurringRule rule = recurringRuleDAO.getRuleById(user.getId(), id);
+        return rule != null ? ResponseEntity.ok(rule) : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * 定期取引の規則を登録します。期日を迎えた回は、スケジューラーが通常の取引として登録します。
+     */
+    @PostMapping
+    public ResponseEntity<Boolean> addRule(@AuthenticationPrincipal User user, @RequestBody RecurringRule rule) {
+        if (!isValid(user, rule) || rule.getStartDate() == null || RecurringRule.Frequency.parse(rule.getFrequency()) == null
+                || rule.getIntervalCount() < 1) {
+            return ResponseEntity.badRequest().body(false);
+        }
+        boolean isSuccess = recurringRuleDAO.addRule(user.getId(), rule);
+        return isSuccess ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false);
+    }
+
+    /**
+     * 規則の名前・区分・金額・カテゴリ・終了日を更新します（開始日・頻度・間隔は変更できません）。
+     */
+    @PutMapping("/{id}")
+    public ResponseEntity<Boolean> updateRule(@AuthenticationPrincipal User user, @PathVariable int id, @RequestBody RecurringRule rule) {
+        if (!isValid(user, rule)) {
+            return ResponseEntity.badRequest().body(false);
+        }
+        rule.setId(id);
+        boolean isSuccess = recurringRuleDAO.updateRule(user.getId(), rule);
+        return isSuccess ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteRule(@AuthenticationPrincipal User user, @PathVariable int id) {
+        boolean success = recurringRuleDAO.deleteRule(user.getId(), id);
+        return success ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * 期間内の将来の発生予定を規則から展開して返します（まだ取引として登録していない回のみ）。
+     *
+     * @param startDate 開始日 (YYYY-MM-DD、省略時は今日)
+     * @param endDate   終了日 (YYYY-MM-DD、省略時は startDate の1年後)
+     */
+    @GetMapping("/projection")
+    public ResponseEntity<RecurringProjection> getProjection(@AuthenticationPrincipal User user,
+                                                             @RequestParam(required = false) String startDate,
+                                                             @RequestParam(required = false) String endDate,
+                                                             ServletWebRequest request) {
+        LocalDate start;
+        LocalDate end;
+        try {
+            start = startDate != null ? LocalDate.parse(startDate) : LocalDate.now();
+            end = endDate != null ? LocalDate.parse(endDate) : start.plusYears(1);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (start.isAfter(end) || end.isAfter(start.plusYears(MAX_PROJECTION_YEARS))) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (DataVersions.checkNotModified(request, DataVersions.etag(user.getId(), start + "_" + end,
+                DataVersions.Dataset.RECURRING_RULES, DataVersions.Dataset.CATEGORIES))) {
+            return null;
+        }
+        return ResponseEntity.ok(recurringRuleDAO.project(user.getId(), start, end));
+    }
+
+    private boolean isValid(User user, RecurringRule rule) {
+        return rule.getName() != null && !rule.getName().isBlank()
+                && ("INCOME".equalsIgnoreCase(rule.getType()) || "EXPENSE".equalsIgnoreCase(rule.getType()))
+                && rule.getAmount() > 0
+                && (rule.getEndDate() == null || rule.getStartDate() == null || !rule.getEndDate().isBefore(rule.getStartDate()))
+                // 他のユーザーのカテゴリには登録させない
+                && categoryDAO.getCategoryById(user.getId(), rule.getCategoryId()) != null;
+    }
+}
@@ -0,0 +1,333 @@
+package com.example.CashFlowWeb;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 定期取引の規則 (recurring_rules) を扱うクラス。
+ *
+ * 将来の発生分は取引として保存せず、予定が必要なときに規則から展開します（project）。
+ * 期日を迎えた発生分は、スケジューラーが promoteDue で通常の取引として登録します。
+ * 登録と規則の「登録済み回数」の更新は1つのDBトランザクションで行うため、同じ回が二重に登録されることはありません。
+ */
+public class RecurringRuleDAO {
+
+    // promoteDue で1回に読み込む規則の数
+    private static final int RULE_BATCH_SIZE = 200;
+    // promoteDue の1回の実行で、1つの規則から登録する最大の回数（残りは次の実行で登録する）
+    private static final int MAX_OCCURRENCES_PER_RUN = 1_000;
+    // project で返す最大の件数
+    public static final int MAX_PROJECTED_OCCURRENCES = 10_000;
+
+    private static final String SELECT_SQL =
+            "SELECT r.*, c.name AS category_name FROM recurring_rules r LEFT JOIN categories c ON r.category_id = c.id ";
+
+    /**
+     * 規則の登録済み回数が読み込んだ時点から変わっていた場合に、DBトランザクションの中から投げる例外（登録を取り消す）。
+     */
+    private static final class RuleChanged extends SQLException {
+        RuleChanged(int ruleId) {
+            super("定期取引の規則が変更されました: " + ruleId);
+        }
+    }
+
+    private static final DaoMetrics METRICS = DaoMetrics.forDao("RecurringRuleDAO");
+
+    private final TransactionDAO transactionDAO = new TransactionDAO();
+
+    public List<RecurringRule> getAllRules(int userId) {
+        String sql = SELECT_SQL + "WHERE r.user_id = ? ORDER BY r.id";
+        return METRICS.call("getAllRules", () -> {
+            List<RecurringRule> rules = new ArrayList<>();
+            try (Connection conn = DBManager.connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rules.add(mapToRule(rs));
+                    }
+                }
+            }
+            return rules;
+        });
+    }
+
+    public RecurringRule getRuleById(int userId, int id) {
+        String sql = SELECT_SQL + "WHERE r.id = ? AND r.user_id = ?";
+        return METRICS.call("getRuleById", () -> {
+            try (Connection conn = DBManager.connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, id);
+                pstmt.setInt(2, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        return mapToRule(rs);
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 規則を登録します。開始日が過去の場合、今日より前の回は登録済みとして扱い、取引は作りません。
+     */
+    public boolean addRule(int userId, RecurringRule rule) {
+        String sql = "INSERT INTO recurring_rules(user_id, name, type, amount, category_id, frequency, interval_count, start_date, end_date, " +
+                     "materialized_count, next_date) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        int skipped = (int) rule.firstIndexOnOrAfter(LocalDate.now());
+        return METRICS.call("addRule", () -> {
+            DBManager.executeUpdate(sql, pstmt -> {
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, rule.getName().trim());
+                pstmt.setString(3, rule.getType().toUpperCase());
+                pstmt.setLong(4, Money.toMinor(rule.getAmount()));
+                pstmt.setInt(5, rule.getCategoryId());
+                pstmt.setString(6, rule.getFrequency().toUpperCase());
+                pstmt.setInt(7, rule.getIntervalCount());
+                pstmt.setLong(8, rule.getStartDate().toEpochDay());
+                setNullableDay(pstmt, 9, rule.getEndDate());
+                pstmt.setInt(10, skipped);
+                setNullableDay(pstmt, 11, rule.occurrenceDate(skipped));
+            });
+            DataVersions.bump(userId, DataVersions.Dataset.RECURRING_RULES);
+            return true;
+        });
+    }
+
+    /**
+     * 規則の名前・区分・金額・カテゴリ・終了日を更新します。登録済みの取引は変更しません。
+     * 開始日・頻度・間隔は登録済みの回数の数え方が変わるため変更できません（削除して登録し直してください）。
+     */
+    public boolean updateRule(int userId, RecurringRule rule) {
+        RecurringRule current = getRuleById(userId, rule.getId());
+        if (current == null) {
+            return false;
+        }
+        RecurringRule updated = new RecurringRule(current.getId(), rule.getName(), rule.getType(), rule.getAmount(), rule.getCategoryId(), null,
+                current.getFrequency(), current.getIntervalCount(), current.getStartDate(), rule.getEndDate(), current.getMaterializedCount(), null);
+        // スケジューラーが同時に回数を進めていた場合は更新しない
+        String sql = "UPDATE recurring_rules SET name = ?, type = ?, amount = ?, category_id = ?, end_date = ?, next_date = ? " +
+                     "WHERE id = ? AND user_id = ? AND materialized_count = ?";
+        return METRICS.call("updateRule", () -> {
+            int rowsAffected = DBManager.executeUpdate(sql, pstmt -> {
+                pstmt.setString(1, updated.getName().trim());
+                pstmt.setString(2, updated.getType().toUpperCase());
+                pstmt.setLong(3, Money.toMinor(updated.getAmount()));
+                pstmt.setInt(4, updated.getCategoryId());
+                setNullableDay(pstmt, 5, updated.getEndDate());
+                setNullableDay(pstmt, 6, updated.occurrenceDate(updated.getMaterializedCount()));
+                pstmt.setInt(7, updated.getId());
+                pstmt.setInt(8, userId);
+                pstmt.setInt(9, updated.getMaterializedCount());
+            });
+            return bumpIfChanged(userId, rowsAffected);
+        });
+    }
+
+    /**
+     * 規則を削除します。登録済みの取引はそのまま残ります。
+     */
+    public boolean deleteRule(int userId, int id) {
+        String sql = "DELETE FROM recurring_rules WHERE id = ? AND user_id = ?";
+        return METRICS.call("deleteRule", () -> {
+            int rowsAffected = DBManager.executeUpdate(sql, pstmt -> {
+                pstmt.setInt(1, id);
+                pstmt.setInt(2, userId);
+            });
+            return bumpIfChanged(userId, rowsAffected);
+        });
+    }
+
+    private boolean bumpIfChanged(int userId, int rowsAffected) {
+        if (rowsAffected > 0) {
+            DataVersions.bump(userId, DataVersions.Dataset.RECURRING_RULES);
+            return true;
+        }
+        return false;
+    }
+
+    // ----------------------------------------
+    // 将来の予定の展開
+    // ----------------------------------------
+
+    /**
+     * startDate から endDate までの、まだ取引として登録していない発生予定を規則から展開します。
+     * 件数が MAX_PROJECTED_OCCURRENCES を超える分は含めません。
+     */
+    public RecurringProjection project(int userId, LocalDate startDate, LocalDate endDate) {
+        List<RecurringProjection.Occurrence> occurrences = new ArrayList<>();
+        long income = 0;
+        long expense = 0;
+        for (RecurringRule rule : getAllRules(userId)) {
+            long amountMinor = Money.toMinor(rule.getAmount());
+            long index = Math.max(rule.getMaterializedCount(), rule.firstIndexOnOrAfter(startDate));
+            LocalDate date;
+            while (occurrences.size() < MAX_PROJECTED_OCCURRENCES
+                    && (date = rule.occurrenceDate(index++)) != null && !date.isAfter(endDate)) {
+                occurrences.add(new RecurringProjection.Occurrence(rule.getId(), rule.getName(), date.toString(), rule.getType(),
+                        rule.getAmount(), rule.getCategoryId(), rule.getCategoryName()));
+                if ("INCOME".equals(rule.getType())) {
+                    income += amountMinor;
+                } else {
+                    expense += amountMinor;
+                }
+            }
+        }
+        // 日付は ISO 形式なので文字列の順で並べられる
+        occurrences.sort(Comparator.comparing(RecurringProjection.Occurrence::getDate));
+        return new RecurringProjection(startDate.toString(), endDate.toString(), occurrences, income, expense);
+    }
+
+    // ----------------------------------------
+    // 期日を迎えた回の登録
+    // ----------------------------------------
+
+    /**
+     * 発生日が today 以前で、まだ登録していない回を全ユーザー分まとめて取引として登録します。
+     * 規則は RULE_BATCH_SIZE 件ずつ読み込み、ユーザーごとに1つのDBトランザクション（JDBCバッチ）で登録します。
+     *
+     * @return 登録した取引の件数
+     */
+    public int promoteDue(LocalDate today) {
+        int promoted = 0;
+        int lastId = 0;
+        while (true) {
+            List<Object[]> batch = loadDueRules(today, lastId);
+            if (batch.isEmpty()) {
+                break;
+            }
+            lastId = ((RecurringRule) batch.get(batch.size() - 1)[1]).getId();
+
+            Map<Integer, List<RecurringRule>> rulesByUser = new LinkedHashMap<>();
+            for (Object[] row : batch) {
+                rulesByUser.computeIfAbsent((Integer) row[0], k -> new ArrayList<>()).add((RecurringRule) row[1]);
+            }
+            for (Map.Entry<Integer, List<RecurringRule>> entry : rulesByUser.entrySet()) {
+                promoted += promote(entry.getKey(), entry.getValue(), today);
+            }
+            if (batch.size() < RULE_BATCH_SIZE) {
+                break;
+            }
+        }
+        return promoted;
+    }
+
+    /**
+     * 期日を迎えた規則を、ID順に lastId の次から RULE_BATCH_SIZE 件読み込みます（要素は {ユーザーID, 規則}）。
+     */
+    private List<Object[]> loadDueRules(LocalDate today, int lastId) {
+        String sql = SELECT_SQL + "WHERE r.next_date <= ? AND r.id > ? ORDER BY r.id LIMIT " + RULE_BATCH_SIZE;
+        return METRICS.call("loadDueRules", () -> {
+            List<Object[]> rules = new ArrayList<>();
+            try (Connection conn = DBManager.connect(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setLong(1, today.toEpochDay());
+                pstmt.setInt(2, lastId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rules.add(new Object[] {rs.getInt("user_id"), mapToRule(rs)});
+                    }
+                }
+            }
+            return rules;
+        });
+    }
+
+    /**
+     * 1ユーザー分の規則について、期日を迎えた回を登録し、規則の登録済み回数と次の発生日を進めます。
+     * 読み込んだ後に規則が変更・削除されていた場合は何も登録せず、次の実行に回します。
+     */
+    private int promote(int userId, List<RecurringRule> rules, LocalDate today) {
+        List<Transaction> rows = new ArrayList<>();
+        long[] newCounts = new long[rules.size()];
+        for (int r = 0; r < rules.size(); r++) {
+            RecurringRule rule = rules.get(r);
+            long index = rule.getMaterializedCount();
+            LocalDate date;
+            while (index - rule.getMaterializedCount() < MAX_OCCURRENCES_PER_RUN
+                    && (date = rule.occurrenceDate(index)) != null && !date.isAfter(today)) {
+                // 定期取引は定常的な収支なので臨時フラグは付けない
+                rows.add(new Transaction(date, rule.getAmount(), rule.getType(), rule.getCategoryId(), false, false));
+                index++;
+            }
+            newCounts[r] = index;
+        }
+
+        DBManager.SqlWork<Void> advance = conn -> {
+            String sql = "UPDATE recurring_rules SET materialized_count = ?, next_date = ? WHERE id = ? AND user_id = ? AND materialized_count = ?";
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int r = 0; r < rules.size(); r++) {
+                    RecurringRule rule = rules.get(r);
+                    pstmt.setLong(1, newCounts[r]);
+                    setNullableDay(pstmt, 2, rule.occurrenceDate(newCounts[r]));
+                    pstmt.setInt(3, rule.getId());
+                    pstmt.setInt(4, userId);
+                    pstmt.setInt(5, rule.getMaterializedCount());
+                    pstmt.addBatch();
+                }
+                int[] counts = pstmt.executeBatch();
+                for (int r = 0; r < counts.length; r++) {
+                    if (counts[r] == 0) {
+                        throw new RuleChanged(rules.get(r).getId());
+                    }
+                }
+            }
+            return null;
+        };
+        try {
+            return METRICS.update("promote", () -> {
+                try {
+                    if (rows.isEmpty()) {
+                        DBManager.inTransaction(advance);
+                    } else {
+                        transactionDAO.addTransactions(userId, rows, advance);
+                    }
+                } catch (RuleChanged e) {
+                    return 0;
+                }
+                DataVersions.bump(userId, DataVersions.Dataset.RECURRING_RULES);
+                return rows.size();
+            });
+        } catch (DaoException e) {
+            // 記録・ログ出力は済んでいる。ほかのユーザーの登録は続ける
+            return 0;
+        }
+    }
+
+    // ----------------------------------------
+    // 補助
+    // ----------------------------------------
+
+    private static void setNullableDay(PreparedStatement pstmt, int index, LocalDate day) throws SQLException {
+        if (day != null) {
+            pstmt.setLong(index, day.toEpochDay());
+        } else {
+            pstmt.setNull(index, Types.BIGINT);
+        }
+    }
+
+    private static LocalDate getNullableDay(ResultSet rs, String column) throws SQLException {
+        long day = rs.getLong(column);
+        return rs.wasNull() ? null : LocalDate.ofEpochDay(day);
+    }
+
+    private RecurringRule mapToRule(ResultSet rs) throws SQLException {
+        return new RecurringRule(
+            rs.getInt("id"),
+            rs.getString("name"),
+            rs.getString("type"),
+            Money.fromMinor(rs.getLong("amount")),
+            rs.getInt("category_id"),
+            rs.getString("category_name"),
+            rs.getString("frequency"),
+            rs.getInt("interval_count"),
+            LocalDate.ofEpochDay(rs.getLong("start_date")),
+            getNullableDay(rs, "end_date"),
+            rs.getInt("materialized_count"),
+            getNullableDay(rs, "next_date")
+        );
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.CashFlowWeb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * 定期取引の規則のうち期日を迎えた回を、定期的に通常の取引として登録するスケジューラー。
+ * 間隔は cashflow.recurring.poll-interval-ms で設定します。
+ */
+@Component
+public class RecurringTransactionScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(RecurringTransactionScheduler.class);
+
+    private final RecurringRuleDAO recurringRuleDAO = new RecurringRuleDAO();
+
+    @Scheduled(initialDelayString = "${cashflow.recurring.initial-delay-ms:30000}",
+               fixedDelayString = "${cashflow.recurring.poll-interval-ms:3600000}")
+    public void promoteDueOccurrences() {
+        runNow();
+    }
+
+    /**
+     * 期日を迎えた回をすぐに登録し、登録した件数を返します。
+     */
+    public int runNow() {
+        int promoted = recurringRuleDAO.promoteDue(LocalDate.now());
+        if (promoted > 0) {
+            log.info("定期取引を{}件登録しました", promoted);
+        }
+        return promoted;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.CashFlowWeb;
+
+import java.util.List;
+
+/**
+ * 月次集計の整合性チェック結果を保持するモデルクラス。
+ */
+public class RollupCheckResult {
+    private int checkedGroups;
+    private List<Mismatch> mismatches;
+
+    public RollupCheckResult(int checkedGroups, List<Mismatch> mismatches) {
+        this.checkedGroups = checkedGroups;
+        this.mismatches = mismatches;
+    }
+
+    // --- Getter Methods ---
+    public boolean getConsistent() { return mismatches.isEmpty(); }
+    public int getCheckedGroups() { return checkedGroups; }
+    public List<Mismatch> getMismatches() { return mismatches; }
+
+    /**
+     * 取引テーブルから計算した値と集計テーブルの値が食い違っている集計行。
+     * group は「月/カテゴリID/収支区分/臨時フラグ」の形式です。
+     */
+    public static class Mismatch {
+        private String group;
+        private double expectedAmount;
+        private double actualAmount;
+        private long expectedCount;
+        private long actualCount;
+
+        public Mismatch(String group, double expectedAmount, double actualAmount, long expectedCount, long actualCount) {
+            this.group = group;
+            this.expectedAmount = expectedAmount;
+            this.actualAmount = actualAmount;
+            this.expectedCount = expectedCount;
+            this.actualCount = actualCount;
+        }
+
+        public String getGroup() { return group; }
+        public double getExpectedAmount() { return expectedAmount; }
+        public double getActualAmount() { return actualAmount; }
+        public long getExpectedCount() { return expectedCount; }
+        public long getActualCount() { return actualCount; }
+    }
+}
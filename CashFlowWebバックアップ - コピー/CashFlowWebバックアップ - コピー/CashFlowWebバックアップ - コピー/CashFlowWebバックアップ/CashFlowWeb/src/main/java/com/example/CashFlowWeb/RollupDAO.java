@@ -0,0 +1,342 @@
+package com.example.CashFlowWeb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 月次集計(monthly_rollups)テーブルのデータベース操作を担当するクラス。
+ * 「ユーザー × 月 × カテゴリ × 収支区分 × 臨時フラグ」ごとの合計額と件数を保持し、
+ * 取引の登録・更新・削除と同じDBトランザクションの中で差分更新します。
+ * 残高や月次集計は取引テーブル全体ではなく、このテーブル（ユーザーの月数に比例する行数）から計算します。
+ * 未来の予定取引 (is_future = TRUE) は集計に含めません。
+ * 金額は取引テーブルと同じく最小単位の整数で保持するため、差分更新を繰り返しても誤差は生じません。
+ */
+public class RollupDAO {
+
+    private static final Logger log = LoggerFactory.getLogger(RollupDAO.class);
+
+    private static final DaoMetrics METRICS = DaoMetrics.forDao("RollupDAO");
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO monthly_rollups(user_id, month, category_id, type, is_extraordinary, total_amount, tx_count) " +
+            "VALUES(?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT(user_id, month, category_id, type, is_extraordinary) DO UPDATE SET " +
+            "total_amount = monthly_rollups.total_amount + excluded.total_amount, " +
+            "tx_count = monthly_rollups.tx_count + excluded.tx_count";
+
+    private static final String CLEANUP_SQL =
+            "DELETE FROM monthly_rollups WHERE user_id = ? AND month = ? AND category_id = ? AND type = ? AND is_extraordinary = ? AND tx_count <= 0";
+
+    /**
+     * 取引1件分の差分を集計に反映します。
+     *
+     * @param sign 追加時は +1、取り消し時は -1
+     */
+    public void applyTransaction(Connection conn, int userId, LocalDate date, double amount, String type, int categoryId,
+                                 boolean isFuture, boolean isExtraordinary, int sign) throws SQLException {
+        DeltaBatch batch = new DeltaBatch();
+        batch.add(userId, date, Money.toMinor(amount), type, categoryId, isFuture, isExtraordinary, sign);
+        batch.flush(conn);
+    }
+
+    /**
+     * 複数の取引の差分を集計行ごとにまとめてから反映するためのバッファ。
+     * 一括登録のように大量の行を書き込む場合、行ごとではなく集計行ごとに1回だけ更新します。
+     */
+    public static class DeltaBatch {
+        // キー: ユーザーID/月/カテゴリID/区分/臨時フラグ  値: {金額(最小単位), 件数}
+        private final Map<String, long[]> deltas = new HashMap<>();
+
+        public void add(int userId, LocalDate date, long amountMinor, String type, int categoryId,
+                        boolean isFuture, boolean isExtraordinary, int sign) {
+            if (isFuture) {
+                return;
+            }
+            String key = userId + "/" + date.toString().substring(0, 7) + "/" + categoryId + "/" + type.toUpperCase() + "/" + isExtraordinary;
+            long[] delta = deltas.computeIfAbsent(key, k -> new long[2]);
+            delta[0] += sign * amountMinor;
+            delta[1] += sign;
+        }
+
+        public boolean isEmpty() {
+            return deltas.isEmpty();
+        }
+
+        /**
+         * 溜めた差分を呼び出し元のDBトランザクション内で反映し、バッファを空にします。
+         */
+        public void flush(Connection conn) throws SQLException {
+            if (deltas.isEmpty()) {
+                return;
+            }
+            boolean hasRemovals = false;
+            try (PreparedStatement pstmt = conn.prepareStatement(UPSERT_SQL)) {
+                for (Map.Entry<String, long[]> entry : deltas.entrySet()) {
+                    bindKey(pstmt, entry.getKey());
+                    pstmt.setLong(6, entry.getValue()[0]);
+                    pstmt.setLong(7, entry.getValue()[1]);
+                    pstmt.addBatch();
+                    hasRemovals |= entry.getValue()[1] < 0;
+                }
+                pstmt.executeBatch();
+            }
+
+            // 取引がなくなった集計行は削除しておく
+            if (hasRemovals) {
+                try (PreparedStatement pstmt = conn.prepareStatement(CLEANUP_SQL)) {
+                    for (Map.Entry<String, long[]> entry : deltas.entrySet()) {
+                        if (entry.getValue()[1] < 0) {
+                            bindKey(pstmt, entry.getKey());
+                            pstmt.addBatch();
+                        }
+                    }
+                    pstmt.executeBatch();
+                }
+            }
+            deltas.clear();
+        }
+
+        private static void bindKey(PreparedStatement pstmt, String key) throws SQLException {
+            String[] parts = key.split("/");
+            pstmt.setInt(1, Integer.parseInt(parts[0]));
+            pstmt.setString(2, parts[1]);
+            pstmt.setInt(3, Integer.parseInt(parts[2]));
+            pstmt.setString(4, parts[3]);
+            pstmt.setBoolean(5, Boolean.parseBoolean(parts[4]));
+        }
+    }
+
+    /**
+     * 集計を取引テーブルから作り直します。
+     */
+    public boolean rebuild() {
+        return METRICS.call("rebuild", () -> {
+            DBManager.inTransaction(conn -> {
+                rebuild(conn);
+                return null;
+            });
+            return true;
+        });
+    }
+
+    /**
+     * 呼び出し元のDBトランザクション内で集計を作り直します（スキーマ移行時など）。
+     */
+    public void rebuild(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM monthly_rollups");
+            stmt.executeUpdate(
+                "INSERT INTO monthly_rollups(user_id, month, category_id, type, is_extraordinary, total_amount, tx_count) " +
+                "SELECT user_id, month, category_id, type, is_extraordinary, SUM(amount), COUNT(*) FROM (" + groupSourceSql() + ") src " +
+                "GROUP BY user_id, month, category_id, type, is_extraordinary");
+        }
+    }
+
+    /**
+     * 集計対象の取引を (ユーザー, 月, カテゴリ, 区分, 臨時フラグ, 金額) の形で返す副問い合わせ。
+     * 所有ユーザーの決まっていない取引（ユーザー登録前の旧データ）は対象外です。
+     */
+    private String groupSourceSql() {
+        return "SELECT user_id, " + DBManager.monthOfEpochDay("date") + " AS month, COALESCE(category_id, 0) AS category_id, " +
+               "type, is_extraordinary, amount FROM transactions WHERE is_future = FALSE AND user_id IS NOT NULL";
+    }
+
+    /**
+     * 集計が空で取引だけが存在する場合（集計導入前のDBなど）に集計を作り直します。
+     */
+    public void rebuildIfEmpty() {
+        String sql = "SELECT (SELECT COUNT(*) FROM monthly_rollups), (SELECT COUNT(*) FROM transactions WHERE is_future = FALSE AND user_id IS NOT NULL)";
+        boolean needsRebuild = METRICS.call("rebuildIfEmpty", () -> {
+            try (Connection conn = DBManager.connect();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+                return rs.next() && rs.getLong(1) == 0 && rs.getLong(2) > 0;
+            }
+        });
+        if (needsRebuild) {
+            rebuild();
+            log.info("月次集計を取引データから作成しました");
+        }
+    }
+
+    /**
+     * 集計テーブルと取引テーブルを突き合わせ、食い違っている集計行を返します。
+     */
+    public RollupCheckResult checkConsistency() {
+        Map<String, long[]> expected = new HashMap<>();
+        Map<String, long[]> actual = new HashMap<>();
+        String expectedSql = "SELECT user_id, month, category_id, type, is_extraordinary, SUM(amount) AS total_amount, COUNT(*) AS tx_count " +
+                             "FROM (" + groupSourceSql() + ") src " +
+                             "GROUP BY user_id, month, category_id, type, is_extraordinary";
+        String actualSql = "SELECT user_id, month, category_id, type, is_extraordinary, total_amount, tx_count FROM monthly_rollups";
+
+        METRICS.call("checkConsistency", () -> {
+            try (Connection conn = DBManager.connect();
+                 Statement stmt = conn.createStatement()) {
+                loadGroups(stmt, expectedSql, expected);
+                loadGroups(stmt, actualSql, actual);
+            }
+            return null;
+        });
+
+        List<RollupCheckResult.Mismatch> mismatches = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : expected.entrySet()) {
+            long[] exp = entry.getValue();
+            long[] act = actual.getOrDefault(entry.getKey(), new long[] {0, 0});
+            if (exp[0] != act[0] || exp[1] != act[1]) {
+                mismatches.add(new RollupCheckResult.Mismatch(entry.getKey(),
+                        Money.fromMinor(exp[0]), Money.fromMinor(act[0]), exp[1], act[1]));
+            }
+        }
+        for (Map.Entry<String, long[]> entry : actual.entrySet()) {
+            if (!expected.containsKey(entry.getKey())) {
+                long[] act = entry.getValue();
+                mismatches.add(new RollupCheckResult.Mismatch(entry.getKey(), 0, Money.fromMinor(act[0]), 0, act[1]));
+            }
+        }
+        return new RollupCheckResult(expected.size(), mismatches);
+    }
+
+    private void loadGroups(Statement stmt, String sql, Map<String, long[]> groups) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                String key = "user" + rs.getInt("user_id") + "/" + rs.getString("month") + "/" + rs.getInt("category_id") + "/" +
+                             rs.getString("type") + "/" + (rs.getBoolean("is_extraordinary") ? "extraordinary" : "regular");
+                groups.put(key, new long[] {rs.getLong("total_amount"), rs.getLong("tx_count")});
+            }
+        }
+    }
+
+    // ----------------------------------------
+    // 集計の読み取り
+    // ----------------------------------------
+
+    /**
+     * ユーザーの現在の残高（確定済みの収入合計 - 支出合計）を集計から計算します。
+     */
+    public double calculateBalance(int userId) {
+        String sql = "SELECT COALESCE(SUM(CASE WHEN type = 'INCOME' THEN total_amount " +
+                     "WHEN type = 'EXPENSE' THEN -total_amount ELSE 0 END), 0) FROM monthly_rollups WHERE user_id = ?";
+        return METRICS.call("calculateBalance", () -> {
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        return Money.fromMinor(rs.getLong(1));
+                    }
+                }
+            }
+            return 0.0;
+        });
+    }
+
+    /**
+     * ユーザーの月ごとの収入・支出合計を新しい月から順に返します。
+     */
+    public List<MonthlySummary> getMonthlySummary(int userId) {
+        String sql = "SELECT month, " +
+                     "  SUM(CASE WHEN type = 'INCOME' THEN total_amount ELSE 0 END) AS totalIncome, " +
+                     "  SUM(CASE WHEN type = 'EXPENSE' THEN total_amount ELSE 0 END) AS totalExpense " +
+                     "FROM monthly_rollups " +
+                     "WHERE user_id = ? " +
+                     "GROUP BY month " +
+                     "ORDER BY month DESC";
+        return METRICS.call("getMonthlySummary", () -> {
+            List<MonthlySummary> summaries = new ArrayList<>();
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        summaries.add(new MonthlySummary(
+                            rs.getString("month"),
+                            Money.fromMinor(rs.getLong("totalIncome")),
+                            Money.fromMinor(rs.getLong("totalExpense"))
+                        ));
+                    }
+                }
+            }
+            return summaries;
+        });
+    }
+
+    /**
+     * ユーザーの臨時収支を除いた月ごとの純利益を、直近 months ヶ月分だけ古い順に返します。
+     */
+    public List<Double> getRecentRegularNetProfits(int userId, int months) {
+        String sql = "SELECT month, SUM(CASE WHEN type = 'INCOME' THEN total_amount ELSE -total_amount END) AS net_profit " +
+                     "FROM monthly_rollups " +
+                     "WHERE user_id = ? AND is_extraordinary = FALSE " +
+                     "GROUP BY month " +
+                     "ORDER BY month DESC " +
+                     "LIMIT ?";
+        return METRICS.call("getRecentRegularNetProfits", () -> {
+            List<Double> netProfits = new ArrayList<>();
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                pstmt.setInt(2, months);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        netProfits.add(Money.fromMinor(rs.getLong("net_profit")));
+                    }
+                }
+            }
+            Collections.reverse(netProfits);
+            return netProfits;
+        });
+    }
+
+    /**
+     * 臨時収支を除いたカテゴリごとの月次純額を、最初に取引のある月から lastMonth まで返します（予測用）。
+     * 取引がない場合は null を返します。
+     */
+    public CategoryHistory getRegularCategoryHistory(int userId, YearMonth lastMonth) {
+        String sql = "SELECT month, category_id, SUM(CASE WHEN type = 'INCOME' THEN total_amount ELSE -total_amount END) AS net " +
+                     "FROM monthly_rollups " +
+                     "WHERE user_id = ? AND is_extraordinary = FALSE AND month <= ? " +
+                     "GROUP BY month, category_id " +
+                     "ORDER BY month";
+        List<String> months = new ArrayList<>();
+        List<Integer> categoryIds = new ArrayList<>();
+        List<Long> nets = new ArrayList<>();
+        METRICS.call("getRegularCategoryHistory", () -> {
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, lastMonth.toString());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        months.add(rs.getString("month"));
+                        categoryIds.add(rs.getInt("category_id"));
+                        nets.add(rs.getLong("net"));
+                    }
+                }
+            }
+            return months;
+        });
+        if (months.isEmpty()) {
+            return null;
+        }
+
+        YearMonth start = YearMonth.parse(months.get(0));
+        int monthCount = (int) ChronoUnit.MONTHS.between(start, lastMonth) + 1;
+        Map<Integer, double[]> netByCategory = new HashMap<>();
+        for (int i = 0; i < months.size(); i++) {
+            int index = (int) ChronoUnit.MONTHS.between(start, YearMonth.parse(months.get(i)));
+            netByCategory.computeIfAbsent(categoryIds.get(i), k -> new double[monthCount])[index] = Money.fromMinor(nets.get(i));
+        }
+        return new CategoryHistory(start, monthCount, netByCategory);
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.CashFlowWeb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * データベーススキーマのバージョン管理を担当するクラス。
+ * DBManager が作成する初期テーブルを「バージョン0」とし、
+ * 以降の変更はここに番号付きのマイグレーションとして追加します。
+ * 適用済みのバージョンは schema_version テーブルに記録され、未適用のものだけが順番に実行されます。
+ */
+public class SchemaMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    /**
+     * 1つのマイグレーション。
+     */
+    private static class Migration {
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void apply(Connection conn, Statement stmt) throws SQLException;
+    }
+
+    // 新しいマイグレーションは末尾に追加する（適用済みのものは変更しないこと）
+    private static final List<Migration> MIGRATIONS = List.of(
+        new Migration(1, "取引の日付をエポック日・金額（取引・予算・目標）を最小単位の整数に変更し、インデックスを追加", SchemaMigrator::typedTransactionColumns),
+        new Migration(2, "全テーブルに所有ユーザー(user_id)を追加し、ユーザー先頭の複合インデックスに変更", SchemaMigrator::userOwnership),
+        new Migration(3, "ユーザー名の検索用に小文字化した列と一意インデックスを追加", SchemaMigrator::normalizedUsername),
+        new Migration(4, "目標に楽観的ロック用のバージョン列を追加", SchemaMigrator::goalVersion),
+        new Migration(5, "銘柄ごとの価格履歴テーブルを追加", SchemaMigrator::assetPrices),
+        new Migration(6, "定期取引の規則テーブルを追加", SchemaMigrator::recurringRules)
+    );
+
+    /**
+     * 未適用のマイグレーションを順番に実行します。
+     * 各マイグレーションは1つのDBトランザクションで実行され、失敗した場合はそこで中断して DaoException を投げます。
+     * 途中のバージョンのスキーマではDAOのSQLが動かないため、起動時（DBManager.initializeDatabase()）に
+     * 失敗した場合はアプリケーションの起動も中止されます。
+     */
+    public static void migrate() {
+        try {
+            DBManager.inTransaction(conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (version INTEGER PRIMARY KEY, description TEXT NOT NULL, applied_at TEXT NOT NULL)");
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new DaoException("SchemaMigrator.migrate (スキーマバージョン表の作成)", e);
+        }
+
+        int current = getCurrentVersion();
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version <= current) {
+                continue;
+            }
+            try {
+                DBManager.inTransaction(conn -> {
+                    try (Statement stmt = conn.createStatement()) {
+                        migration.step.apply(conn, stmt);
+                    }
+                    try (PreparedStatement pstmt = conn.prepareStatement(
+                            "INSERT INTO schema_version(version, description, applied_at) VALUES(?, ?, ?)")) {
+                        pstmt.setInt(1, migration.version);
+                        pstmt.setString(2, migration.description);
+                        pstmt.setString(3, LocalDateTime.now().toString());
+                        pstmt.executeUpdate();
+                    }
+                    return null;
+                });
+                log.info("スキーマをバージョン{}に更新しました: {}", migration.version, migration.description);
+            } catch (SQLException e) {
+                throw new DaoException("SchemaMigrator.migrate (バージョン" + migration.version + ")", e);
+            }
+        }
+    }
+
+    /**
+     * このアプリケーションが知っている最新のバージョン（最後のマイグレーションの番号）を返します。
+     */
+    public static int getLatestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    /**
+     * 適用済みの最新バージョンを返します。未適用なら0。
+     * 取得できない場合に0を返すと適用済みのマイグレーションをやり直してしまうため、DaoException を投げます。
+     */
+    public static int getCurrentVersion() {
+        try (Connection conn = DBManager.connect();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            if (rs.next()) {
+                return rs.getInt(1);
+            }
+        } catch (SQLException e) {
+            throw new DaoException("SchemaMigrator.getCurrentVersion", e);
+        }
+        return 0;
+    }
+
+    // ----------------------------------------
+    // マイグレーション本体
+    // （適用時点のスキーマに対して実行されるため、現在のDAOのSQLは使わず、その時点のSQLをここに書く）
+    // ----------------------------------------
+
+    /**
+     * バージョン1: transactions.date を TEXT からエポック日 (INTEGER)、amount を 1/100円単位の整数に変更します。
+     * 予算 (budgets.amount) と目標 (goals.target_amount, goals.current_amount) の金額も同じ整数にします。
+     * あわせて一覧・カテゴリ別・区分別の検索用に複合インデックスを作成し、月次集計も整数で作り直します。
+     * 資産 (assets) の数量・取得単価・現在値は対象外です。これらは台帳の金額ではなく単価と数量で、
+     * 1/100円に丸めると精度が落ちる（端数のある数量や、小数点以下の桁が多い単価がある）ため、浮動小数のまま保持します。
+     */
+    private static void typedTransactionColumns(Connection conn, Statement stmt) throws SQLException {
+        if (DBManager.isPostgres()) {
+            stmt.execute("ALTER TABLE transactions ALTER COLUMN date TYPE INTEGER USING (date::date - DATE '1970-01-01')");
+            stmt.execute("ALTER TABLE transactions ALTER COLUMN amount TYPE BIGINT USING ROUND(amount * " + Money.SCALE + ")::BIGINT");
+            stmt.execute("DROP TABLE IF EXISTS monthly_rollups");
+            stmt.execute("CREATE TABLE monthly_rollups (month TEXT NOT NULL, category_id INTEGER NOT NULL, type TEXT NOT NULL, is_extraordinary BOOLEAN NOT NULL, total_amount BIGINT NOT NULL DEFAULT 0, tx_count INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (month, category_id, type, is_extraordinary))");
+        } else {
+            // SQLiteは列の型を変更できないため、テーブルを作り直してデータを移す
+            stmt.execute("CREATE TABLE transactions_v1 (id INTEGER PRIMARY KEY AUTOINCREMENT, date INTEGER NOT NULL, amount INTEGER NOT NULL, type TEXT NOT NULL, category_id INTEGER, is_future BOOLEAN DEFAULT FALSE, is_extraordinary BOOLEAN DEFAULT FALSE, FOREIGN KEY (category_id) REFERENCES categories(id))");
+            stmt.execute("INSERT INTO transactions_v1 (id, date, amount, type, category_id, is_future, is_extraordinary) " +
+                         "SELECT id, CAST(julianday(date) - 2440587.5 AS INTEGER), CAST(ROUND(amount * " + Money.SCALE + ") AS INTEGER), " +
+                         "type, category_id, is_future, is_extraordinary FROM transactions");
+            stmt.execute("DROP TABLE transactions");
+            stmt.execute("ALTER TABLE transactions_v1 RENAME TO transactions");
+            stmt.execute("DROP TABLE IF EXISTS monthly_rollups");
+            stmt.execute("CREATE TABLE monthly_rollups (month TEXT NOT NULL, category_id INTEGER NOT NULL, type TEXT NOT NULL, is_extraordinary BOOLEAN NOT NULL, total_amount INTEGER NOT NULL DEFAULT 0, tx_count INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (month, category_id, type, is_extraordinary))");
+        }
+
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_date_id ON transactions (date, id)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_category_date ON transactions (category_id, date)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_type_future_date ON transactions (type, is_future, date)");
+
+        convertToMinorUnits(stmt, "budgets", "amount");
+        convertToMinorUnits(stmt, "goals", "target_amount");
+        convertToMinorUnits(stmt, "goals", "current_amount");
+
+        stmt.executeUpdate(
+            "INSERT INTO monthly_rollups(month, category_id, type, is_extraordinary, total_amount, tx_count) " +
+            "SELECT " + DBManager.monthOfEpochDay("date") + ", COALESCE(category_id, 0), type, is_extraordinary, SUM(amount), COUNT(*) " +
+            "FROM transactions WHERE is_future = FALSE " +
+            "GROUP BY " + DBManager.monthOfEpochDay("date") + ", COALESCE(category_id, 0), type, is_extraordinary");
+    }
+
+    /**
+     * バージョン2: カテゴリ・取引・資産・予算・目標に所有ユーザー (user_id) を追加します。
+     * 既存のデータは最初に登録されたユーザーのものとし、ユーザーがまだいない場合は
+     * 最初のユーザー登録時に引き継ぎます（UserDAO.saveUser）。
+     * 検索はすべてユーザー単位になるため、インデックスも user_id を先頭にしたものに作り直します。
+     */
+    private static void userOwnership(Connection conn, Statement stmt) throws SQLException {
+        if (DBManager.isPostgres()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS users (id SERIAL PRIMARY KEY, username TEXT NOT NULL UNIQUE, password_hash TEXT NOT NULL, role TEXT NOT NULL)");
+        } else {
+            stmt.execute("CREATE TABLE IF NOT EXISTS users (id INTEGER PRIMARY KEY AUTOINCREMENT, username TEXT NOT NULL UNIQUE, password_hash TEXT NOT NULL, role TEXT NOT NULL)");
+        }
+
+        for (String table : List.of("categories", "transactions", "assets", "budgets", "goals")) {
+            stmt.execute("ALTER TABLE " + table + " ADD COLUMN user_id INTEGER REFERENCES users(id)");
+            stmt.execute("UPDATE " + table + " SET user_id = (SELECT MIN(id) FROM users)");
+        }
+
+        stmt.execute("DROP INDEX IF EXISTS idx_transactions_date_id");
+        stmt.execute("DROP INDEX IF EXISTS idx_transactions_category_date");
+        stmt.execute("DROP INDEX IF EXISTS idx_transactions_type_future_date");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_user_date_id ON transactions (user_id, date, id)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_user_category_date ON transactions (user_id, category_id, date)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_user_type_future_date ON transactions (user_id, type, is_future, date)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_categories_user ON categories (user_id)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_assets_user ON assets (user_id)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_budgets_user_month ON budgets (user_id, year_month)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_goals_user ON goals (user_id)");
+
+        // 月次集計はユーザーを主キーの先頭に加えて作り直す
+        String amountType = DBManager.isPostgres() ? "BIGINT" : "INTEGER";
+        stmt.execute("DROP TABLE IF EXISTS monthly_rollups");
+        stmt.execute("CREATE TABLE monthly_rollups (user_id INTEGER NOT NULL, month TEXT NOT NULL, category_id INTEGER NOT NULL, type TEXT NOT NULL, is_extraordinary BOOLEAN NOT NULL, total_amount " + amountType + " NOT NULL DEFAULT 0, tx_count INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (user_id, month, category_id, type, is_extraordinary))");
+        stmt.executeUpdate(
+            "INSERT INTO monthly_rollups(user_id, month, category_id, type, is_extraordinary, total_amount, tx_count) " +
+            "SELECT user_id, " + DBManager.monthOfEpochDay("date") + ", COALESCE(category_id, 0), type, is_extraordinary, SUM(amount), COUNT(*) " +
+            "FROM transactions WHERE is_future = FALSE AND user_id IS NOT NULL " +
+            "GROUP BY user_id, " + DBManager.monthOfEpochDay("date") + ", COALESCE(category_id, 0), type, is_extraordinary");
+    }
+
+    /**
+     * バージョン3: users に小文字化したユーザー名 (username_lower) を追加し、一意インデックスを作成します。
+     * LOWER(username) = LOWER(?) による全件走査をなくし、大文字小文字だけが違うユーザー名の重複登録もDBで防ぎます。
+     * SQLiteの LOWER() はASCIIしか変換しないため、既存行の値はJava側で小文字化して設定します。
+     */
+    private static void normalizedUsername(Connection conn, Statement stmt) throws SQLException {
+        stmt.execute("ALTER TABLE users ADD COLUMN username_lower TEXT");
+        try (ResultSet rs = stmt.executeQuery("SELECT id, username FROM users");
+             PreparedStatement pstmt = conn.prepareStatement("UPDATE users SET username_lower = ? WHERE id = ?")) {
+            while (rs.next()) {
+                pstmt.setString(1, UserDAO.normalize(rs.getString("username")));
+                pstmt.setInt(2, rs.getInt("id"));
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_users_username_lower ON users (username_lower)");
+    }
+
+    /**
+     * バージョン4: goals に version を追加します。更新のたびに1増やし、
+     * 読み取った時点から他の更新が入っていないことを UPDATE の条件で確認します（楽観的ロック）。
+     */
+    private static void goalVersion(Connection conn, Statement stmt) throws SQLException {
+        stmt.execute("ALTER TABLE goals ADD COLUMN version INTEGER NOT NULL DEFAULT 0");
+    }
+
+    /**
+     * バージョン5: 銘柄ごとの日次価格 asset_prices を追加します。
+     * 日付はエポック日、価格は PriceSeries.PRICE_SCALE 倍した整数で保持し、(銘柄, 日付) を主キーにします。
+     * 価格は市場のデータなのでユーザーには属しません。
+     */
+    private static void assetPrices(Connection conn, Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS asset_prices (ticker_symbol TEXT NOT NULL, date INTEGER NOT NULL, price BIGINT NOT NULL, " +
+                     "PRIMARY KEY (ticker_symbol, date))" + (DBManager.isPostgres() ? "" : " WITHOUT ROWID"));
+    }
+
+    /**
+     * バージョン6: 定期取引の規則 recurring_rules を追加します。
+     * 発生日は開始日と「何回目か」から計算するため、未来の発生分は行として持ちません。
+     * 取引として登録済みの回数 (materialized_count) と次の発生日 (next_date、終了済みなら NULL) を持ち、
+     * 期日を迎えた規則は next_date のインデックスで探します。
+     */
+    private static void recurringRules(Connection conn, Statement stmt) throws SQLException {
+        String idColumn = DBManager.isPostgres() ? "id SERIAL PRIMARY KEY" : "id INTEGER PRIMARY KEY AUTOINCREMENT";
+        stmt.execute("CREATE TABLE IF NOT EXISTS recurring_rules (" + idColumn + ", user_id INTEGER NOT NULL, name TEXT NOT NULL, " +
+                     "type TEXT NOT NULL, amount BIGINT NOT NULL, category_id INTEGER NOT NULL, frequency TEXT NOT NULL, " +
+                     "interval_count INTEGER NOT NULL DEFAULT 1, start_date INTEGER NOT NULL, end_date INTEGER, " +
+                     "materialized_count INTEGER NOT NULL DEFAULT 0, next_date INTEGER, " +
+                     "FOREIGN KEY (category_id) REFERENCES categories(id))");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_recurring_rules_user ON recurring_rules (user_id)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_recurring_rules_next_date ON recurring_rules (next_date)");
+    }
+
+    /**
+     * 金額の列を 1/100円単位の整数に変換します。
+     * SQLiteは列の型を変更できないため、整数の列を追加して値を移し、元の列を削除してから名前を付け替えます
+     * （追加する列には NOT NULL のため既定値 0 を付けます）。
+     */
+    private static void convertToMinorUnits(Statement stmt, String table, String column) throws SQLException {
+        if (DBManager.isPostgres()) {
+            stmt.execute("ALTER TABLE " + table + " ALTER COLUMN " + column + " TYPE BIGINT USING ROUND(" + column + " * " + Money.SCALE + ")::BIGINT");
+            return;
+        }
+        String minorColumn = column + "_minor";
+        stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + minorColumn + " INTEGER NOT NULL DEFAULT 0");
+        stmt.executeUpdate("UPDATE " + table + " SET " + minorColumn + " = CAST(ROUND(COALESCE(" + column + ", 0) * " + Money.SCALE + ") AS INTEGER)");
+        stmt.execute("ALTER TABLE " + table + " DROP COLUMN " + column);
+        stmt.execute("ALTER TABLE " + table + " RENAME COLUMN " + minorColumn + " TO " + column);
+    }
+}
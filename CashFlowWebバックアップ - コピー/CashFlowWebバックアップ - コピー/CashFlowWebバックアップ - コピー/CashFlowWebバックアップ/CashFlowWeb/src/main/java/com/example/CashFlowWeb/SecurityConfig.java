@@ -1,5 +1,6 @@
 package com.example.CashFlowWeb;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -24,8 +25,13 @@ public class SecurityConfig {
                     "/api/auth/register", // 【★最重要】登録APIを許可
                     "/style.css"          // CSS
                 ).permitAll()
-                
-                // 2. 【認証必須】その他のすべてのリクエスト（index.htmlなど）は認証を必須にする
+
+                // 2. 【管理者のみ】全ユーザーのデータに影響する運用API（集計の再構築、キャッシュの再読込、
+                //    価格の取り込み、バックアップ・リストア、スロークエリログなど）
+                //    管理者は最初に登録したユーザーと、cashflow.admin.usernames で指定したユーザー
+                .requestMatchers("/api/admin/**").hasRole(User.ROLE_ADMIN)
+
+                // 3. 【認証必須】その他のすべてのリクエスト（index.htmlなど）は認証を必須にする
                 .anyRequest().authenticated()
             )
             
@@ -51,9 +57,11 @@ public class SecurityConfig {
 
     /**
      * パスワードをハッシュ化するためのエンコーダー
+     * ストレングス（計算コスト、4〜31）は security.bcrypt.strength で変更できます。
+     * 1上げるごとにハッシュ計算の時間が倍になります（既存のハッシュはそのまま検証できます）。
      */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${security.bcrypt.strength:10}") int strength) {
+        return new BCryptPasswordEncoder(strength);
     }
 }
\ No newline at end of file
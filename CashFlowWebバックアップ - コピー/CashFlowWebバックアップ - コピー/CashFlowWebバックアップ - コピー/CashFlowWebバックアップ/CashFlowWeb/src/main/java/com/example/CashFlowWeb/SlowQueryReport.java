@@ -0,0 +1,94 @@
+package com.example.CashFlowWeb;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 遅いSQLの記録（スロークエリログ）を保持するモデルクラス（監視用）。
+ * recent は閾値を超えた実行を新しい順に、slowest はSQLの文ごとにまとめて最大実行時間の長い順に並べます。
+ */
+public class SlowQueryReport {
+    private final boolean enabled;
+    private final long thresholdMillis;
+    private final long statementCount;   // 計測したSQLの実行回数
+    private final long slowCount;        // そのうち閾値を超えた回数
+    private final List<Execution> recent;
+    private final List<Statement> slowest;
+
+    public SlowQueryReport(boolean enabled, long thresholdMillis, long statementCount, long slowCount,
+                           List<Execution> recent, List<Statement> slowest) {
+        this.enabled = enabled;
+        this.thresholdMillis = thresholdMillis;
+        this.statementCount = statementCount;
+        this.slowCount = slowCount;
+        this.recent = Collections.unmodifiableList(recent);
+        this.slowest = Collections.unmodifiableList(slowest);
+    }
+
+    public boolean getEnabled() { return enabled; }
+    public long getThresholdMillis() { return thresholdMillis; }
+    public long getStatementCount() { return statementCount; }
+    public long getSlowCount() { return slowCount; }
+    public List<Execution> getRecent() { return recent; }
+    public List<Statement> getSlowest() { return slowest; }
+
+    /**
+     * 閾値を超えた1回の実行。
+     */
+    public static class Execution {
+        private final String executedAt;
+        private final String sql;
+        private final List<String> parameters;
+        private final double elapsedMillis; // 実行と結果の読み出し（next()）にかかった時間
+        private final long rows;            // 読み出した行数、または更新件数
+        private final int batchSize;        // バッチ実行の場合の件数（バッチでなければ0）
+
+        public Execution(String executedAt, String sql, List<String> parameters, double elapsedMillis, long rows, int batchSize) {
+            this.executedAt = executedAt;
+            this.sql = sql;
+            this.parameters = Collections.unmodifiableList(parameters);
+            this.elapsedMillis = elapsedMillis;
+            this.rows = rows;
+            this.batchSize = batchSize;
+        }
+
+        public String getExecutedAt() { return executedAt; }
+        public String getSql() { return sql; }
+        public List<String> getParameters() { return parameters; }
+        public double getElapsedMillis() { return elapsedMillis; }
+        public long getRows() { return rows; }
+        public int getBatchSize() { return batchSize; }
+    }
+
+    /**
+     * 閾値を超えたことのあるSQLの文ごとの集計と、最も遅かった実行のパラメータで取得した実行計画。
+     */
+    public static class Statement {
+        private final String sql;
+        private final long slowCount;
+        private final double maxMillis;
+        private final double averageMillis; // 閾値を超えた実行の平均
+        private final List<String> slowestParameters;
+        private final List<String> plan;    // 未取得なら空
+        private final String planCapturedAt;
+
+        public Statement(String sql, long slowCount, double maxMillis, double averageMillis, List<String> slowestParameters,
+                         List<String> plan, String planCapturedAt) {
+            this.sql = sql;
+            this.slowCount = slowCount;
+            this.maxMillis = maxMillis;
+            this.averageMillis = averageMillis;
+            this.slowestParameters = Collections.unmodifiableList(slowestParameters);
+            this.plan = Collections.unmodifiableList(plan);
+            this.planCapturedAt = planCapturedAt;
+        }
+
+        public String getSql() { return sql; }
+        public long getSlowCount() { return slowCount; }
+        public double getMaxMillis() { return maxMillis; }
+        public double getAverageMillis() { return averageMillis; }
+        public List<String> getSlowestParameters() { return slowestParameters; }
+        public List<String> getPlan() { return plan; }
+        public String getPlanCapturedAt() { return planCapturedAt; }
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.CashFlowWeb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SQLiteへの書き込みを1本の専用接続・1つのスレッドに集める書き込みキュー。
+ *
+ * SQLiteの書き込みはファイル単位で1つずつしか実行できず、複数の接続から書くとロックの取り合い
+ * (SQLITE_BUSY) になります。ここでは書き込みをキューに積み、専用スレッドが溜まった分をまとめて
+ * 1回のコミットで反映します（グループコミット）。1件ごとにセーブポイントを置くため、
+ * 失敗した書き込みだけを取り消し、残りはそのままコミットできます。
+ * 呼び出し元の Future はコミットが終わってから完了します。
+ *
+ * 専用接続はWALモードで開くため、読み取り（プールの読み取り専用接続）は書き込み中もブロックされません。
+ */
+final class SqliteWriteQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(SqliteWriteQueue.class);
+
+    /**
+     * キューに積んだ1件の書き込み。
+     */
+    private static final class Task<T> {
+        final DBManager.SqlWork<T> work;
+        final boolean exclusive; // トランザクションの外で実行する（それまでの書き込みはコミットしておく）
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        T result;
+
+        Task(DBManager.SqlWork<T> work, boolean exclusive) {
+            this.work = work;
+            this.exclusive = exclusive;
+        }
+
+        void run(Connection conn) throws SQLException {
+            result = work.execute(conn);
+        }
+
+        void complete() {
+            future.complete(result);
+        }
+    }
+
+    private final Connection conn;
+    private final BlockingQueue<Task<?>> queue;
+    private final int maxBatchSize;
+    private final Thread writer;
+
+    private final LongAdder completedWrites = new LongAdder();
+    private final LongAdder failedWrites = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final AtomicLong maxBatch = new AtomicLong();
+
+    SqliteWriteQueue(String url, int capacity, int maxBatchSize, int busyTimeoutMillis) throws SQLException {
+        Properties props = new Properties();
+        props.setProperty("busy_timeout", String.valueOf(busyTimeoutMillis));
+        this.conn = QueryTracer.wrap(DriverManager.getConnection(url, props));
+        try (Statement stmt = conn.createStatement()) {
+            // WALはDBファイルに記録されるため、読み取り専用の接続にも効く
+            stmt.execute("PRAGMA journal_mode=WAL");
+        }
+        conn.setAutoCommit(false);
+
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.writer = new Thread(this::runLoop, "sqlite-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 書き込みをキューに積みます。返される Future はコミット後に結果で完了します。
+     * キューが一杯の場合は待たずに DbBusyException を投げます。
+     */
+    <T> CompletableFuture<T> submit(DBManager.SqlWork<T> work) {
+        return offer(new Task<>(work, false));
+    }
+
+    private <T> CompletableFuture<T> offer(Task<T> task) {
+        if (!queue.offer(task)) {
+            throw new DbBusyException("SQLiteの書き込みキューが一杯です (" + queue.size() + "件)");
+        }
+        return task.future;
+    }
+
+    /**
+     * 書き込みを実行し、コミットされるまで待って結果を返します。
+     * 書き込みの中から呼ばれた場合（入れ子）は、キューを通さずにその書き込みの一部として実行します。
+     */
+    <T> T execute(DBManager.SqlWork<T> work) throws SQLException {
+        if (Thread.currentThread() == writer) {
+            return work.execute(conn);
+        }
+        return await(submit(work));
+    }
+
+    /**
+     * 書き込みを止めます。キューの順番が来たら、それまでの書き込みをコミットしてから書き込みスレッドを止め、
+     * 止まるまで待って戻ります。返された処理を呼ぶまで、後続の書き込みはキューで待ちます。
+     */
+    Runnable pause() throws SQLException {
+        if (Thread.currentThread() == writer) {
+            throw new IllegalStateException("書き込みの中からは止められません");
+        }
+        CompletableFuture<Void> paused = new CompletableFuture<>();
+        CountDownLatch resume = new CountDownLatch(1);
+        offer(new Task<>(conn -> {
+            paused.complete(null);
+            try {
+                resume.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }, true));
+        try {
+            await(paused);
+        } catch (SQLException | RuntimeException e) {
+            resume.countDown();
+            throw e;
+        }
+        return resume::countDown;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("書き込みの完了待ちに割り込まれました", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new SQLException(cause);
+        }
+    }
+
+    private void runLoop() {
+        List<Task<?>> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            // 待っている間に溜まった分をまとめて1回でコミットする
+            queue.drainTo(batch, maxBatchSize - 1);
+            maxBatch.accumulateAndGet(batch.size(), Math::max);
+            runBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void runBatch(List<Task<?>> batch) {
+        List<Task<?>> applied = new ArrayList<>(batch.size());
+        try {
+            for (Task<?> task : batch) {
+                if (task.exclusive) {
+                    commitApplied(applied);
+                    try {
+                        task.run(conn);
+                        task.complete();
+                    } catch (Throwable e) {
+                        task.future.completeExceptionally(e);
+                    }
+                    continue;
+                }
+                Savepoint savepoint = conn.setSavepoint();
+                try {
+                    task.run(conn);
+                    conn.releaseSavepoint(savepoint);
+                    applied.add(task);
+                } catch (Throwable e) {
+                    // この書き込みだけを取り消す（取り消せなければ下の catch でまとめて失敗にする）
+                    conn.rollback(savepoint);
+                    conn.releaseSavepoint(savepoint);
+                    failedWrites.increment();
+                    task.future.completeExceptionally(e);
+                }
+            }
+            commitApplied(applied);
+        } catch (SQLException | RuntimeException e) {
+            log.error("SQLiteの書き込みキューのコミットエラー (batch={})", batch.size(), e);
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackError) {
+                log.warn("SQLiteの書き込みキューのロールバックエラー", rollbackError);
+            }
+            for (Task<?> task : batch) {
+                if (!task.future.isDone()) {
+                    failedWrites.increment();
+                    task.future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * ここまでに適用した書き込みをコミットし、呼び出し元の Future を完了します。
+     */
+    private void commitApplied(List<Task<?>> applied) throws SQLException {
+        conn.commit();
+        commits.increment();
+        completedWrites.add(applied.size());
+        applied.forEach(Task::complete);
+        applied.clear();
+    }
+
+    WriteQueueStats getStats() {
+        long commitCount = commits.sum();
+        long completed = completedWrites.sum();
+        return new WriteQueueStats(true, queue.size(), completed, failedWrites.sum(), commitCount,
+            commitCount == 0 ? 0.0 : (double) completed / commitCount, maxBatch.get());
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.CashFlowWeb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 取引の一括書き込み（登録・更新・削除の混在）のリクエストを保持するモデルクラス。
+ */
+public class TransactionBatchRequest {
+
+    /**
+     * 1件分の操作。
+     */
+    public static class Operation {
+        private String op;                // CREATE / UPDATE / DELETE
+        private Integer id;               // UPDATE / DELETE の対象ID
+        private String ref;               // クライアント側の識別子（結果にそのまま返す。オフラインで作成した行の対応付け用）
+        private Transaction transaction;  // CREATE / UPDATE の内容
+
+        // Getters
+        public String getOp() { return op; }
+        public Integer getId() { return id; }
+        public String getRef() { return ref; }
+        public Transaction getTransaction() { return transaction; }
+
+        // Setters
+        public void setOp(String op) { this.op = op; }
+        public void setId(Integer id) { this.id = id; }
+        public void setRef(String ref) { this.ref = ref; }
+        public void setTransaction(Transaction transaction) { this.transaction = transaction; }
+    }
+
+    private boolean atomic; // true なら1件でも失敗したらすべて取り消す（all-or-nothing）
+    private List<Operation> operations = new ArrayList<>();
+
+    // Getters
+    public boolean getAtomic() { return atomic; }
+    public List<Operation> getOperations() { return operations; }
+
+    // Setters
+    public void setAtomic(boolean atomic) { this.atomic = atomic; }
+    public void setOperations(List<Operation> operations) { this.operations = operations; }
+}
@@ -0,0 +1,100 @@
+package com.example.CashFlowWeb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 取引の一括書き込みの結果を保持するモデルクラス。操作ごとの結果をリクエストと同じ順番で返します。
+ */
+public class TransactionBatchResult {
+
+    /**
+     * 操作ごとの結果。
+     */
+    public enum Status {
+        OK,          // 反映した
+        INVALID,     // 内容が不正（種類・カテゴリ・金額など）
+        NOT_FOUND,   // 更新・削除の対象がない
+        ROLLED_BACK, // この操作は正しいが、all-or-nothing で他の操作が失敗したため取り消した
+        FAILED       // DBエラー
+    }
+
+    public static class Item {
+        private int index;
+        private String ref;
+        private String op;
+        private Integer id;
+        private Status status;
+        private String message;
+
+        public Item(int index, String ref, String op, Integer id) {
+            this.index = index;
+            this.ref = ref;
+            this.op = op;
+            this.id = id;
+        }
+
+        void reject(Status status, String message) {
+            this.status = status;
+            this.message = message;
+        }
+
+        void succeed(int id) {
+            this.id = id;
+            this.status = Status.OK;
+        }
+
+        public int getIndex() { return index; }
+        public String getRef() { return ref; }
+        public String getOp() { return op; }
+        public Integer getId() { return id; }
+        public Status getStatus() { return status; }
+        public String getMessage() { return message; }
+    }
+
+    private boolean atomic;
+    private boolean committed;
+    private final List<Item> results = new ArrayList<>();
+
+    public TransactionBatchResult(boolean atomic) {
+        this.atomic = atomic;
+    }
+
+    public Item add(int index, String ref, String op, Integer id) {
+        Item item = new Item(index, ref, op, id);
+        results.add(item);
+        return item;
+    }
+
+    /**
+     * 失敗した操作があるかどうかを返します（all-or-nothing で続行してよいかの判定用）。
+     */
+    public boolean hasFailures() {
+        return results.stream().anyMatch(item -> item.status != null && item.status != Status.OK);
+    }
+
+    /**
+     * 結果が決まっていない操作を、すべて指定した状態にします（DBエラーや取り消しのとき）。
+     */
+    void rejectPending(Status status, String message) {
+        for (Item item : results) {
+            if (item.status == null) {
+                item.reject(status, message);
+            }
+        }
+    }
+
+    void setCommitted(boolean committed) { this.committed = committed; }
+
+    public boolean getAtomic() { return atomic; }
+    public boolean getCommitted() { return committed; }
+    public List<Item> getResults() { return results; }
+
+    public int getSucceeded() {
+        return (int) results.stream().filter(item -> item.status == Status.OK).count();
+    }
+
+    public int getFailed() {
+        return results.size() - getSucceeded();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.CashFlowWeb;
+
+/**
+ * 取引の変更内容を保持するモデルクラス（ダッシュボードへのプッシュ通知用）。
+ */
+public class TransactionChange {
+
+    public enum Action {
+        CREATED, UPDATED, DELETED, IMPORTED
+    }
+
+    private Action action;
+    private Transaction transaction; // 変更後の取引（削除・一括登録では null）
+    private Transaction previous;    // 変更前の取引（登録・一括登録では null）
+    private int count;               // 変更した件数
+
+    public TransactionChange(Action action, Transaction transaction, Transaction previous, int count) {
+        this.action = action;
+        this.transaction = transaction;
+        this.previous = previous;
+        this.count = count;
+    }
+
+    // デフォルトコンストラクタ (JSONデシリアライズに必須)
+    public TransactionChange() {}
+
+    public static TransactionChange created(Transaction transaction) {
+        return new TransactionChange(Action.CREATED, transaction, null, 1);
+    }
+
+    public static TransactionChange updated(Transaction transaction, Transaction previous) {
+        return new TransactionChange(Action.UPDATED, transaction, previous, 1);
+    }
+
+    public static TransactionChange deleted(Transaction previous) {
+        return new TransactionChange(Action.DELETED, null, previous, 1);
+    }
+
+    public static TransactionChange imported(int count) {
+        return new TransactionChange(Action.IMPORTED, null, null, count);
+    }
+
+    // Getter Methods
+    public Action getAction() { return action; }
+    public Transaction getTransaction() { return transaction; }
+    public Transaction getPrevious() { return previous; }
+    public int getCount() { return count; }
+}
@@ -1,22 +1,63 @@
 package com.example.CashFlowWeb;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.format.annotation.DateTimeFormat;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import static com.example.CashFlowWeb.DataVersions.Dataset.CATEGORIES;
+import static com.example.CashFlowWeb.DataVersions.Dataset.TRANSACTIONS;
 
 @RestController
 @RequestMapping("/api/transactions")
 public class TransactionController {
     
     private final TransactionDAO transactionDAO = new TransactionDAO();
-    private final CategoryDAO categoryDAO = new CategoryDAO(); 
+    private final ForecastEngine forecastEngine = new ForecastEngine();
+    private final TransactionExporter transactionExporter = new TransactionExporter(transactionDAO);
+    private final CategoryDAO categoryDAO;
+    private final ObjectMapper objectMapper;
+    // ストリーミング用: 1行ごとにflushしない（flushはバッファが溜まったときだけ）
+    private final ObjectWriter rowWriter;
+
+    // ページングAPIの1ページあたりの件数
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    // 一括書き込みAPIで1回に受け付ける操作数
+    private static final int MAX_BATCH_OPERATIONS = 5000;
 
-    public TransactionController() {
+    public TransactionController(ObjectMapper objectMapper, CategoryDAO categoryDAO) {
+        this.objectMapper = objectMapper;
+        this.categoryDAO = categoryDAO;
+        this.rowWriter = objectMapper.writerFor(Transaction.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
         DBManager.initializeDatabase();
+        new RollupDAO().rebuildIfEmpty();
         categoryDAO.initializeCache();
+        ColumnarTransactionStore.getInstance().loadAll();
     }
 
     // ----------------------------------------
@@ -24,35 +65,187 @@ public class TransactionController {
     // ----------------------------------------
     
     @GetMapping
-    public List<Transaction> getAllTransactions() {
-        return transactionDAO.getAllTransactions();
+    public List<Transaction> getAllTransactions(@AuthenticationPrincipal User user, ServletWebRequest request) {
+        if (DataVersions.checkNotModified(request, user.getId(), TRANSACTIONS, CATEGORIES)) {
+            return null;
+        }
+        return transactionDAO.getAllTransactions(user.getId());
     }
     
     @GetMapping("/filter")
     public List<Transaction> getFilteredTransactions(
+            @AuthenticationPrincipal User user,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) Integer categoryId,
+            @RequestParam(required = false) String type,
+            ServletWebRequest request) {
+        if (DataVersions.checkNotModified(request, user.getId(), TRANSACTIONS, CATEGORIES)) {
+            return null;
+        }
+        return transactionDAO.getFilteredTransactions(user.getId(), startDate, endDate, categoryId, type);
+    }
+
+    /**
+     * 取引一覧をキーセット方式で1ページずつ取得します。
+     * 2ページ目以降は、前のレスポンスの nextCursor を cursor に指定します。
+     */
+    @GetMapping("/page")
+    public ResponseEntity<TransactionPage> getTransactionPage(
+            @AuthenticationPrincipal User user,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) Integer categoryId,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+            ServletWebRequest request) {
+        TransactionPage.Cursor after;
+        try {
+            after = (cursor == null || cursor.isEmpty()) ? null : TransactionPage.Cursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (DataVersions.checkNotModified(request, user.getId(), TRANSACTIONS, CATEGORIES)) {
+            return null;
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return ResponseEntity.ok(transactionDAO.getTransactionPage(user.getId(), startDate, endDate, categoryId, type, after, pageSize));
+    }
+
+    /**
+     * 絞り込み条件に一致する取引を、DBから読みながらそのままレスポンスに書き出します。
+     * format=ndjson なら1行1件のJSON、それ以外はJSON配列で返します。
+     */
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamTransactions(
+            @AuthenticationPrincipal User user,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) Integer categoryId,
+            @RequestParam(required = false) String type,
+            @RequestParam(defaultValue = "json") String format,
+            ServletWebRequest request) {
+        if (DataVersions.checkNotModified(request, user.getId(), TRANSACTIONS, CATEGORIES)) {
+            return null;
+        }
+        boolean ndjson = "ndjson".equalsIgnoreCase(format);
+        // 書き出しは別スレッドで行われるため、ユーザーIDはここで確定しておく
+        int userId = user.getId();
+
+        StreamingResponseBody body = out -> {
+            if (ndjson) {
+                writeNdjson(out, userId, startDate, endDate, categoryId, type);
+            } else {
+                writeJsonArray(out, userId, startDate, endDate, categoryId, type);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.parseMediaType("application/x-ndjson") : MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * 絞り込み条件（/filter と同じ）に一致する取引を、CSVまたはXLSXのファイルとしてダウンロードします。
+     * DBから読みながらそのまま書き出すため、件数が多くてもメモリ使用量は増えません。
+     * CSVは、クライアントが Accept-Encoding で gzip を受け付ける場合は gzip で圧縮して返します
+     * （XLSXはそれ自体がZIPで圧縮されているため圧縮しません）。
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(
+            @AuthenticationPrincipal User user,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
             @RequestParam(required = false) Integer categoryId,
-            @RequestParam(required = false) String type) {
-        return transactionDAO.getFilteredTransactions(startDate, endDate, categoryId, type);
+            @RequestParam(required = false) String type,
+            @RequestParam(defaultValue = "csv") String format,
+            ServletWebRequest request) {
+        TransactionExporter.Format exportFormat = TransactionExporter.Format.parse(format);
+        if (exportFormat == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = exportFormat == TransactionExporter.Format.CSV
+                && acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+        // 圧縮の有無で中身が変わるため、ETagも分ける
+        String etag = DataVersions.etag(user.getId(), "export_" + exportFormat.getExtension() + (gzip ? "_gzip" : ""),
+                TRANSACTIONS, CATEGORIES);
+        if (DataVersions.checkNotModified(request, etag)) {
+            return null;
+        }
+        int userId = user.getId();
+
+        StreamingResponseBody body = out -> {
+            if (!gzip) {
+                transactionExporter.export(exportFormat, out, userId, startDate, endDate, categoryId, type);
+                return;
+            }
+            GZIPOutputStream compressed = new GZIPOutputStream(out, 1 << 16);
+            transactionExporter.export(exportFormat, compressed, userId, startDate, endDate, categoryId, type);
+            compressed.finish();
+        };
+        String filename = "transactions-" + LocalDate.now() + "." + exportFormat.getExtension();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
+    private void writeNdjson(OutputStream out, int userId, LocalDate startDate, LocalDate endDate, Integer categoryId, String type) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            // ルート値どうしの区切り（既定は空白）を改行に置き換える
+            generator.setRootValueSeparator(null);
+            transactionDAO.streamFilteredTransactions(userId, startDate, endDate, categoryId, type, t -> {
+                rowWriter.writeValue(generator, t);
+                generator.writeRaw('\n');
+            });
+        } catch (SQLException e) {
+            throw new IOException("取引のストリーミングに失敗しました", e);
+        }
+    }
+
+    private void writeJsonArray(OutputStream out, int userId, LocalDate startDate, LocalDate endDate, Integer categoryId, String type) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            transactionDAO.streamFilteredTransactions(userId, startDate, endDate, categoryId, type,
+                    t -> rowWriter.writeValue(generator, t));
+            generator.writeEndArray();
+        } catch (SQLException e) {
+            throw new IOException("取引のストリーミングに失敗しました", e);
+        }
     }
 
     @GetMapping("/balance")
-    public double getCurrentBalance() {
-        return transactionDAO.calculateCurrentBalance();
+    public Double getCurrentBalance(@AuthenticationPrincipal User user, ServletWebRequest request) {
+        if (DataVersions.checkNotModified(request, user.getId(), TRANSACTIONS)) {
+            return null;
+        }
+        return transactionDAO.calculateCurrentBalance(user.getId());
     }
 
     @GetMapping("/summary")
-    public List<MonthlySummary> getMonthlySummary() {
-        return transactionDAO.getMonthlySummary();
+    public List<MonthlySummary> getMonthlySummary(@AuthenticationPrincipal User user, ServletWebRequest request) {
+        if (DataVersions.checkNotModified(request, user.getId(), TRANSACTIONS)) {
+            return null;
+        }
+        return transactionDAO.getMonthlySummary(user.getId());
     }
     
     @GetMapping("/summary/category")
     public List<CategorySummary> getCategorySummary(
+            @AuthenticationPrincipal User user,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
-            @RequestParam String type) {
-        return transactionDAO.getCategorySummary(startDate, endDate, type);
+            @RequestParam String type,
+            ServletWebRequest request) {
+        if (DataVersions.checkNotModified(request, user.getId(), TRANSACTIONS, CATEGORIES)) {
+            return null;
+        }
+        return transactionDAO.getCategorySummary(user.getId(), startDate, endDate, type);
     }
 
     // ----------------------------------------
@@ -60,8 +253,13 @@ public class TransactionController {
     // ----------------------------------------
 
     @PostMapping
-    public ResponseEntity<Boolean> addTransaction(@RequestBody Transaction transaction) {
+    public ResponseEntity<Boolean> addTransaction(@AuthenticationPrincipal User user, @RequestBody Transaction transaction) {
+        // 他のユーザーのカテゴリには登録させない
+        if (categoryDAO.getCategoryById(user.getId(), transaction.getCategoryId()) == null) {
+            return ResponseEntity.badRequest().body(false);
+        }
         boolean isSuccess = transactionDAO.addTransaction(
+            user.getId(),
             transaction.getDate(),
             transaction.getAmount(),
             transaction.getType(),
@@ -72,13 +270,117 @@ public class TransactionController {
         return isSuccess ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false);
     }
 
+    /**
+     * 登録・更新・削除が混在した操作をまとめて反映します（モバイルのオフライン編集の同期用）。
+     * すべての操作を1つのDBトランザクション・種類ごとのJDBCバッチで実行し、操作ごとの結果を同じ順番で返します。
+     * atomic: true の場合は1件でも失敗するとすべて取り消し（422）、false の場合は失敗した操作だけを飛ばして残りを反映します。
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<TransactionBatchResult> applyBatch(@AuthenticationPrincipal User user, @RequestBody TransactionBatchRequest request) {
+        List<TransactionBatchRequest.Operation> operations = request.getOperations();
+        if (operations == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (operations.size() > MAX_BATCH_OPERATIONS) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+
+        TransactionBatchResult result = new TransactionBatchResult(request.getAtomic());
+        for (int i = 0; i < operations.size(); i++) {
+            TransactionBatchRequest.Operation op = operations.get(i);
+            TransactionBatchResult.Item item = result.add(i, op.getRef(), op.getOp(), op.getId());
+            String error = validateBatchOperation(user.getId(), op);
+            if (error != null) {
+                item.reject(TransactionBatchResult.Status.INVALID, error);
+            }
+        }
+        transactionDAO.applyBatch(user.getId(), request, result);
+
+        if (result.getCommitted()) {
+            return ResponseEntity.ok(result);
+        }
+        boolean dbError = result.getResults().stream().anyMatch(item -> item.getStatus() == TransactionBatchResult.Status.FAILED);
+        return ResponseEntity.status(dbError ? HttpStatus.INTERNAL_SERVER_ERROR : HttpStatus.UNPROCESSABLE_ENTITY).body(result);
+    }
+
+    /**
+     * 一括書き込みの1操作を検証します。問題がなければnull、あればその理由を返します。
+     */
+    private String validateBatchOperation(int userId, TransactionBatchRequest.Operation op) {
+        String kind = op.getOp() == null ? "" : op.getOp().toUpperCase();
+        if (!kind.equals("CREATE") && !kind.equals("UPDATE") && !kind.equals("DELETE")) {
+            return "op は CREATE / UPDATE / DELETE のいずれかを指定してください";
+        }
+        if (!kind.equals("CREATE") && op.getId() == null) {
+            return "更新・削除には id が必要です";
+        }
+        if (kind.equals("DELETE")) {
+            return null;
+        }
+        Transaction t = op.getTransaction();
+        if (t == null || t.getDate() == null || t.getType() == null) {
+            return "transaction の日付と種類は必須です";
+        }
+        if (!"INCOME".equalsIgnoreCase(t.getType()) && !"EXPENSE".equalsIgnoreCase(t.getType())) {
+            return "種類は INCOME または EXPENSE を指定してください";
+        }
+        // 他のユーザーのカテゴリには登録させない
+        if (categoryDAO.getCategoryById(userId, t.getCategoryId()) == null) {
+            return "カテゴリが見つかりません: " + t.getCategoryId();
+        }
+        return null;
+    }
+
+    /**
+     * CSV/OFXファイルから取引を一括登録します。
+     * 取り込み中はチャンクを登録するたびに進捗をNDJSONで1行ずつ返し、
+     * 最後の行 (finished: true) に行ごとのエラー一覧を含めます。
+     *
+     * @param format     csv または ofx
+     * @param categoryId OFXでカテゴリ名が一致しなかった明細の登録先カテゴリ
+     */
+    @PostMapping("/import")
+    public ResponseEntity<StreamingResponseBody> importTransactions(
+            @AuthenticationPrincipal User user,
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) Integer categoryId) {
+        boolean ofx = "ofx".equalsIgnoreCase(format);
+        if (!ofx && !"csv".equalsIgnoreCase(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (categoryId != null && categoryDAO.getCategoryById(user.getId(), categoryId) == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        TransactionImporter importer = new TransactionImporter(transactionDAO, categoryDAO, user.getId());
+
+        StreamingResponseBody body = out -> {
+            TransactionImporter.ProgressListener listener = progress -> {
+                out.write(objectMapper.writeValueAsBytes(progress));
+                out.write('\n');
+                out.flush();
+            };
+            try (Reader reader = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8), 1 << 16)) {
+                ImportResult result = ofx ? importer.importOfx(reader, categoryId, listener) : importer.importCsv(reader, listener);
+                listener.onProgress(result);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
     // ----------------------------------------
     // U (Update) - 取引更新
     // ----------------------------------------
 
     @PutMapping("/{id}")
-    public ResponseEntity<Boolean> updateTransaction(@PathVariable int id, @RequestBody Transaction transaction) {
+    public ResponseEntity<Boolean> updateTransaction(@AuthenticationPrincipal User user, @PathVariable int id, @RequestBody Transaction transaction) {
+        if (categoryDAO.getCategoryById(user.getId(), transaction.getCategoryId()) == null) {
+            return ResponseEntity.badRequest().body(false);
+        }
         boolean isSuccess = transactionDAO.updateTransaction(
+            user.getId(),
             id,
             transaction.getDate(),
             transaction.getAmount(),
@@ -95,8 +397,8 @@ public class TransactionController {
     // ----------------------------------------
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Boolean> deleteTransaction(@PathVariable int id) {
-        boolean isSuccess = transactionDAO.deleteTransaction(id);
+    public ResponseEntity<Boolean> deleteTransaction(@AuthenticationPrincipal User user, @PathVariable int id) {
+        boolean isSuccess = transactionDAO.deleteTransaction(user.getId(), id);
         return isSuccess ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false);
     }
 
@@ -104,35 +406,72 @@ public class TransactionController {
     // 予測機能 API
     // ----------------------------------------
     
+    /**
+     * 目標額の達成見込みを予測します。
+     * 全期間の履歴からカテゴリごとの季節性モデルを推定し、モンテカルロ法で残高の分布（P10/P50/P90）と
+     * 月ごとの到達確率を求めます。見込み月数は到達確率が50%を超える最初の月です。
+     *
+     * @param paths 経路数 (省略時 5000、最大 20000)
+     * @param seed  乱数の種 (指定すると同じ結果を再現できます)
+     */
     @GetMapping("/predict")
     public ResponseEntity<PredictionResult> predictTargetAchievement(
+        @AuthenticationPrincipal User user,
         @RequestParam double targetAmount,
-        @RequestParam int targetMonths) {
+        @RequestParam int targetMonths,
+        @RequestParam(required = false) Integer paths,
+        @RequestParam(required = false) Long seed,
+        ServletWebRequest request) {
 
-        double currentBalance = transactionDAO.calculateCurrentBalance();
-        List<Double> pastNetProfits = transactionDAO.getPastThreeMonthsRegularNetProfits();
-        
-        if (pastNetProfits.size() < 3) {
+        // 乱数の種を指定した場合だけ結果が再現できるのでキャッシュ可能（当月を基準にするため月もETagに含める）
+        YearMonth currentMonth = YearMonth.now();
+        if (seed != null && DataVersions.checkNotModified(request,
+                DataVersions.etag(user.getId(), currentMonth.toString(), TRANSACTIONS))) {
+            return null;
+        }
+
+        double currentBalance = transactionDAO.calculateCurrentBalance(user.getId());
+        // 当月は途中なので、前月までの確定した月をモデルに使う
+        CategoryHistory history = transactionDAO.getRegularCategoryHistory(user.getId(), currentMonth.minusMonths(1));
+        ForecastResult forecast = forecastEngine.forecast(
+            history,
+            currentBalance,
+            targetAmount,
+            targetMonths,
+            paths != null ? paths : ForecastEngine.DEFAULT_PATHS,
+            seed != null ? seed : System.nanoTime()
+        );
+
+        if (forecast == null) {
             return ResponseEntity.ok(new PredictionResult(0, 0, "過去3ヶ月分のデータが不足しているため、予測できません。", currentBalance));
         }
-        
-        double averageProfit = pastNetProfits.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
-        
-        List<Double> projectionPoints = new ArrayList<>();
-        double projectedBalance = currentBalance;
-        projectionPoints.add(projectedBalance);
-        for (int i = 0; i < targetMonths; i++) {
-            projectedBalance += averageProfit;
-            projectionPoints.add(projectedBalance);
+
+        double[] p50 = forecast.getP50();
+        double[] hitProbability = forecast.getHitProbabilityByMonth();
+        int horizon = p50.length;
+        double averageProfit = (forecast.getExpectedBalance()[horizon - 1] - currentBalance) / horizon;
+
+        // グラフ用には中央値の経路を使う
+        List<Double> projectionPoints = new ArrayList<>(horizon + 1);
+        projectionPoints.add(currentBalance);
+        for (double balance : p50) {
+            projectionPoints.add(balance);
         }
 
-        int estimatedMonths;
+        int estimatedMonths = -1;
         if (currentBalance >= targetAmount) {
             estimatedMonths = 0;
-        } else if (averageProfit <= 0) {
-            estimatedMonths = -1;
         } else {
-            estimatedMonths = (int) Math.ceil((targetAmount - currentBalance) / averageProfit);
+            for (int h = 0; h < horizon; h++) {
+                if (hitProbability[h] >= 0.5) {
+                    estimatedMonths = h + 1;
+                    break;
+                }
+            }
+            // 予測期間内に届かない場合は、期待値のペースから概算する
+            if (estimatedMonths == -1 && averageProfit > 0) {
+                estimatedMonths = Math.max(horizon + 1, (int) Math.ceil((targetAmount - currentBalance) / averageProfit));
+            }
         }
         
         String feedback;
@@ -155,16 +494,24 @@ public class TransactionController {
                 estimatedMonths
             );
         }
+        if (estimatedMonths != 0) {
+            feedback += String.format(" 期間内（%dヶ月）に目標を達成できる確率は**%.0f%%**です。",
+                horizon, forecast.getProbabilityByTargetMonth() * 100);
+        }
 
         PredictionResult result = new PredictionResult(averageProfit, estimatedMonths, feedback, currentBalance, projectionPoints);
+        result.setForecast(forecast);
         return ResponseEntity.ok(result);
     }
     /**
      * IDを指定して単一の取引データを取得します。
      */
     @GetMapping("/{id}")
-    public ResponseEntity<Transaction> getTransactionById(@PathVariable int id) {
-        Transaction transaction = transactionDAO.getTransactionById(id);
+    public ResponseEntity<Transaction> getTransactionById(@AuthenticationPrincipal User user, @PathVariable int id, ServletWebRequest request) {
+        if (DataVersions.checkNotModified(request, user.getId(), TRANSACTIONS, CATEGORIES)) {
+            return null;
+        }
+        Transaction transaction = transactionDAO.getTransactionById(user.getId(), id);
         if (transaction != null) {
             return ResponseEntity.ok(transaction);
         } else {
@@ -1,53 +1,335 @@
 package com.example.CashFlowWeb;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
 import java.sql.*;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class TransactionDAO {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionDAO.class);
+
+    // ストリーミング取得時に1回の往復で読み込む行数
+    private static final int STREAM_FETCH_SIZE = 500;
+    // SQLiteでストリーミング取得する際に1回のSELECTで読む行数（この件数ごとに読み取りのロックを外す）
+    private static final int STREAM_CHUNK_SIZE = 5_000;
+
+    // 取引の変更（コミット後）の通知先。TransactionDAO はあちこちで new されるため、リスナーはクラス全体で共有する
+    private static final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    private static final DaoMetrics METRICS = DaoMetrics.forDao("TransactionDAO");
+
+    private final RollupDAO rollupDAO = new RollupDAO();
+    private final ColumnarTransactionStore columnarStore = ColumnarTransactionStore.getInstance();
+
+    /**
+     * 取引の変更を受け取るリスナー。書き込みがコミットされた後、書き込んだスレッドで呼ばれます。
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+        void onChange(int userId, TransactionChange change);
+    }
+
+    public static void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    public static void removeChangeListener(ChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    private static void publish(int userId, TransactionChange change) {
+        for (ChangeListener listener : changeListeners) {
+            try {
+                listener.onChange(userId, change);
+            } catch (RuntimeException e) {
+                // 通知の失敗で書き込み自体を失敗扱いにはしない
+                log.warn("取引変更の通知エラー (ユーザーID: {})", userId, e);
+            }
+        }
+    }
     
-    public boolean addTransaction(LocalDate date, double amount, String type, int categoryId, boolean isFuture, boolean isExtraordinary) {
-        String sql = "INSERT INTO transactions(date, amount, type, category_id, is_future, is_extraordinary) VALUES(?, ?, ?, ?, ?, ?)";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, date.toString());
-            pstmt.setDouble(2, amount);
-            pstmt.setString(3, type.toUpperCase());
-            pstmt.setInt(4, categoryId);
-            pstmt.setBoolean(5, isFuture);
-            pstmt.setBoolean(6, isExtraordinary); 
-            
-            pstmt.executeUpdate();
+    public boolean addTransaction(int userId, LocalDate date, double amount, String type, int categoryId, boolean isFuture, boolean isExtraordinary) {
+        return METRICS.call("addTransaction", () -> {
+            addTransaction(userId, date, amount, type, categoryId, isFuture, isExtraordinary, conn -> null);
             return true;
-        } catch (SQLException e) {
-            System.err.println("データ登録エラー: " + e.getMessage());
-            return false;
-        }
+        });
+    }
+
+    /**
+     * 取引を登録し、同じDBトランザクションの中で続けて sameTransaction を実行します（目標への積立など）。
+     * sameTransaction が例外を投げた場合は取引の登録も取り消され、その例外がそのまま投げられます。
+     *
+     * @return sameTransaction の戻り値
+     */
+    public <T> T addTransaction(int userId, LocalDate date, double amount, String type, int categoryId, boolean isFuture, boolean isExtraordinary,
+                                DBManager.SqlWork<T> sameTransaction) throws SQLException {
+        String sql = "INSERT INTO transactions(user_id, date, amount, type, category_id, is_future, is_extraordinary) VALUES(?, ?, ?, ?, ?, ?, ?)";
+        int[] id = new int[1];
+        // 取引の登録と月次集計の更新を1つのDBトランザクションで行う
+        T result = columnarStore.write(userId, changes -> DBManager.inTransaction(conn -> {
+            int generatedId = 0;
+            try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setInt(1, userId);
+                pstmt.setLong(2, date.toEpochDay());
+                pstmt.setLong(3, Money.toMinor(amount));
+                pstmt.setString(4, type.toUpperCase());
+                pstmt.setInt(5, categoryId);
+                pstmt.setBoolean(6, isFuture);
+                pstmt.setBoolean(7, isExtraordinary); 
+                pstmt.executeUpdate();
+                try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        generatedId = keys.getInt(1);
+                        changes.inserted(generatedId, date, Money.toMinor(amount), type, categoryId, isFuture, isExtraordinary);
+                    } else {
+                        changes.reloadRequired();
+                    }
+                }
+            }
+            rollupDAO.applyTransaction(conn, userId, date, amount, type, categoryId, isFuture, isExtraordinary, +1);
+            T after = sameTransaction.execute(conn);
+            id[0] = generatedId;
+            return after;
+        }));
+        DataVersions.bump(userId, DataVersions.Dataset.TRANSACTIONS);
+        publish(userId, TransactionChange.created(
+                new Transaction(id[0], date, amount, type.toUpperCase(), categoryId, null, isFuture, isExtraordinary)));
+        return result;
     }
     
-    public List<Transaction> getAllTransactions() {
-        return getFilteredTransactions(null, null, null, null);
+    /**
+     * 複数の取引をJDBCバッチで1つのDBトランザクションにまとめて登録します（一括インポート用）。
+     * 月次集計も集計行ごとにまとめて更新します。
+     *
+     * @return 登録した件数
+     * @throws SQLException 登録に失敗した場合（この場合は1件も登録されない）
+     */
+    public int addTransactions(int userId, List<Transaction> rows) throws SQLException {
+        return addTransactions(userId, rows, conn -> null);
     }
 
-    public List<Transaction> getFilteredTransactions(LocalDate startDate, LocalDate endDate, Integer categoryId, String type) {
-        List<Transaction> transactions = new ArrayList<>();
+    /**
+     * 複数の取引を登録し、同じDBトランザクションの中で続けて sameTransaction を実行します（定期取引の規則の更新など）。
+     * sameTransaction が例外を投げた場合は取引の登録も取り消され、その例外がそのまま投げられます。
+     *
+     * @return 登録した件数
+     */
+    public int addTransactions(int userId, List<Transaction> rows, DBManager.SqlWork<?> sameTransaction) throws SQLException {
+        String sql = "INSERT INTO transactions(user_id, date, amount, type, category_id, is_future, is_extraordinary) VALUES(?, ?, ?, ?, ?, ?, ?)";
+        int inserted = columnarStore.write(userId, changes -> DBManager.inTransaction(conn -> {
+            RollupDAO.DeltaBatch deltas = new RollupDAO.DeltaBatch();
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (Transaction t : rows) {
+                    long amountMinor = Money.toMinor(t.getAmount());
+                    pstmt.setInt(1, userId);
+                    pstmt.setLong(2, t.getDate().toEpochDay());
+                    pstmt.setLong(3, amountMinor);
+                    pstmt.setString(4, t.getType().toUpperCase());
+                    pstmt.setInt(5, t.getCategoryId());
+                    pstmt.setBoolean(6, t.getIsFuture());
+                    pstmt.setBoolean(7, t.getIsExtraordinary());
+                    pstmt.addBatch();
+                    deltas.add(userId, t.getDate(), amountMinor, t.getType(), t.getCategoryId(), t.getIsFuture(), t.getIsExtraordinary(), +1);
+                }
+                pstmt.executeBatch();
+            }
+            deltas.flush(conn);
+            sameTransaction.execute(conn);
+            // バッチ登録では行ごとのIDを取得できないため、列ストアは次の集計時に読み直す
+            changes.reloadRequired();
+            return rows.size();
+        }));
+        DataVersions.bump(userId, DataVersions.Dataset.TRANSACTIONS);
+        publish(userId, TransactionChange.imported(inserted));
+        return inserted;
+    }
+    
+    public List<Transaction> getAllTransactions(int userId) {
+        return getFilteredTransactions(userId, null, null, null, null);
+    }
+
+    public List<Transaction> getFilteredTransactions(int userId, LocalDate startDate, LocalDate endDate, Integer categoryId, String type) {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = buildFilterQuery(userId, startDate, endDate, categoryId, type, params);
+        sql.append(" ORDER BY t.date DESC, t.id DESC");
+
+        return METRICS.call("getFilteredTransactions", () -> {
+            List<Transaction> transactions = new ArrayList<>();
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            
+                bindParams(pstmt, params);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        transactions.add(mapToTransaction(rs));
+                    }
+                }
+            }
+            return transactions;
+        });
+    }
+
+    /**
+     * 絞り込み条件に一致する取引を1ページ分取得します（キーセット方式）。
+     * 並び順は一覧と同じ (date DESC, id DESC) で、cursor より後ろの行だけを読みます。
+     * OFFSETを使わないため、ページが深くなっても読み飛ばしのコストはかかりません。
+     *
+     * @param cursor 前ページ末尾の位置。最初のページはnull。
+     * @param limit  1ページの最大件数
+     */
+    public TransactionPage getTransactionPage(int userId, LocalDate startDate, LocalDate endDate, Integer categoryId, String type,
+                                              TransactionPage.Cursor cursor, int limit) {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = buildFilterQuery(userId, startDate, endDate, categoryId, type, params);
+
+        if (cursor != null) {
+            // 行値比較にすると (user_id, date, id) インデックスの範囲検索になる
+            sql.append(" AND (t.date, t.id) < (?, ?)");
+            params.add(cursor.getDate().toEpochDay());
+            params.add(cursor.getId());
+        }
+        // 次ページの有無を判定するため1件多く読む
+        sql.append(" ORDER BY t.date DESC, t.id DESC LIMIT ?");
+        params.add(limit + 1);
+
+        List<Transaction> transactions = METRICS.call("getTransactionPage", () -> {
+            List<Transaction> rows = new ArrayList<>();
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+
+                bindParams(pstmt, params);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(mapToTransaction(rs));
+                    }
+                }
+            }
+            return rows;
+        });
+
+        boolean hasMore = transactions.size() > limit;
+        if (hasMore) {
+            transactions.remove(transactions.size() - 1);
+        }
+        return new TransactionPage(transactions, hasMore);
+    }
+
+    /**
+     * 絞り込み条件に一致する取引を1行ずつ handler に渡します（ストリーミング用）。
+     * 結果をリストに溜めないため、件数に関わらずメモリ使用量は一定です。
+     * ダウンロードはクライアントの速度次第で長引くため、プールの接続を書き出しの間ずっと占有しないようにします。
+     * PostgreSQLはプールの接続でカーソルを使って読みます。SQLiteはプールを通さない読み取り専用の専用接続で、
+     * getTransactionPage() と同じキーセット方式で STREAM_CHUNK_SIZE 件ずつ読み、読み取りのロックを外してから書き出します
+     * （1つのSELECTを最後まで開いたままにすると、ロールバックジャーナルでは読み終わるまで書き込みのコミットを待たせるため）。
+     */
+    public void streamFilteredTransactions(int userId, LocalDate startDate, LocalDate endDate, Integer categoryId, String type,
+                                           RowHandler handler) throws SQLException, IOException {
+        if (!DBManager.isPostgres()) {
+            streamInChunks(userId, startDate, endDate, categoryId, type, handler);
+            return;
+        }
+
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = buildFilterQuery(userId, startDate, endDate, categoryId, type, params);
+        sql.append(" ORDER BY t.date DESC, t.id DESC");
+
+        try (Connection conn = DBManager.connect()) {
+            // PostgreSQLはautocommit無効時のみfetchSize単位でカーソル読み込みを行う
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                pstmt.setFetchSize(STREAM_FETCH_SIZE);
+                bindParams(pstmt, params);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        handler.handle(mapToTransaction(rs));
+                    }
+                }
+                conn.commit();
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * SQLite用: 専用接続で STREAM_CHUNK_SIZE 件ずつ読み、1回分を読み終えて文を閉じてから handler に渡します。
+     * 読み取りの合間に書き込まれた行は、まだ読んでいない範囲にあれば含まれます（同じ行を2回渡すことはありません）。
+     */
+    private void streamInChunks(int userId, LocalDate startDate, LocalDate endDate, Integer categoryId, String type,
+                                RowHandler handler) throws SQLException, IOException {
+        List<Transaction> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+        Transaction last = null;
+        try (Connection conn = DBManager.openSqliteConnection(true)) {
+            do {
+                List<Object> params = new ArrayList<>();
+                StringBuilder sql = buildFilterQuery(userId, startDate, endDate, categoryId, type, params);
+                if (last != null) {
+                    sql.append(" AND (t.date, t.id) < (?, ?)");
+                    params.add(last.getDate().toEpochDay());
+                    params.add(last.getId());
+                }
+                sql.append(" ORDER BY t.date DESC, t.id DESC LIMIT ?");
+                params.add(STREAM_CHUNK_SIZE);
+
+                chunk.clear();
+                try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                    bindParams(pstmt, params);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            chunk.add(mapToTransaction(rs));
+                        }
+                    }
+                }
+                for (Transaction transaction : chunk) {
+                    handler.handle(transaction);
+                }
+                if (!chunk.isEmpty()) {
+                    last = chunk.get(chunk.size() - 1);
+                }
+            } while (chunk.size() == STREAM_CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * ストリーミング取得時に1行ずつ呼び出されるコールバック。
+     */
+    @FunctionalInterface
+    public interface RowHandler {
+        void handle(Transaction transaction) throws IOException;
+    }
+
+    /**
+     * 一覧・ページ・ストリーミングで共通の SELECT 文と絞り込み条件を組み立てます。
+     * 常にユーザーで絞り込むため、検索はそのユーザーの行だけを対象にします。
+     */
+    private StringBuilder buildFilterQuery(int userId, LocalDate startDate, LocalDate endDate, Integer categoryId, String type, List<Object> params) {
         StringBuilder sql = new StringBuilder(
             "SELECT t.id, t.date, t.amount, t.type, t.category_id, c.name AS category_name, t.is_future, t.is_extraordinary " +
-            "FROM transactions t JOIN categories c ON t.category_id = c.id WHERE 1=1"
+            "FROM transactions t JOIN categories c ON t.category_id = c.id WHERE t.user_id = ?"
         );
-        
-        List<Object> params = new ArrayList<>();
+        params.add(userId);
 
         if (startDate != null) {
             sql.append(" AND t.date >= ?");
-            params.add(startDate.toString());
+            params.add(startDate.toEpochDay());
         }
         if (endDate != null) {
             sql.append(" AND t.date <= ?");
-            params.add(endDate.toString());
+            params.add(endDate.toEpochDay());
         }
         if (categoryId != null) {
             sql.append(" AND t.category_id = ?");
@@ -57,208 +339,457 @@ public class TransactionDAO {
             sql.append(" AND t.type = ?");
             params.add(type.toUpperCase());
         }
+        return sql;
+    }
 
-        sql.append(" ORDER BY t.date DESC, t.id DESC");
+    private void bindParams(PreparedStatement pstmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            pstmt.setObject(i + 1, params.get(i));
+        }
+    }
 
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
-            
-            for (int i = 0; i < params.size(); i++) {
-                pstmt.setObject(i + 1, params.get(i));
+    private Transaction mapToTransaction(ResultSet rs) throws SQLException {
+        return new Transaction(
+            rs.getInt("id"),
+            LocalDate.ofEpochDay(rs.getLong("date")),
+            Money.fromMinor(rs.getLong("amount")),
+            rs.getString("type"),
+            rs.getInt("category_id"),
+            rs.getString("category_name"),
+            rs.getBoolean("is_future"),
+            rs.getBoolean("is_extraordinary")
+        );
+    }
+
+    public boolean updateTransaction(int userId, int id, LocalDate date, double amount, String type, int categoryId, boolean isFuture, boolean isExtraordinary) {
+        String sql = "UPDATE transactions SET date = ?, amount = ?, type = ?, category_id = ?, is_future = ?, is_extraordinary = ? WHERE id = ? AND user_id = ?";
+        return METRICS.call("updateTransaction", () -> {
+            Transaction previous = columnarStore.write(userId, changes -> DBManager.inTransaction(conn -> {
+                // 月次集計から旧データ分を差し引くため、更新前の行を読んでおく
+                Transaction before = selectRawTransaction(conn, userId, id);
+                if (before == null) {
+                    return null;
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setLong(1, date.toEpochDay());
+                    pstmt.setLong(2, Money.toMinor(amount));
+                    pstmt.setString(3, type.toUpperCase());
+                    pstmt.setInt(4, categoryId);
+                    pstmt.setBoolean(5, isFuture);
+                    pstmt.setBoolean(6, isExtraordinary);
+                    pstmt.setInt(7, id);
+                    pstmt.setInt(8, userId);
+                    pstmt.executeUpdate();
+                }
+                applyToRollup(conn, userId, before, -1);
+                rollupDAO.applyTransaction(conn, userId, date, amount, type, categoryId, isFuture, isExtraordinary, +1);
+                changes.deleted(id, before.getDate());
+                changes.inserted(id, date, Money.toMinor(amount), type, categoryId, isFuture, isExtraordinary);
+                return before;
+            }));
+            if (previous == null) {
+                return false;
             }
+            DataVersions.bump(userId, DataVersions.Dataset.TRANSACTIONS);
+            publish(userId, TransactionChange.updated(
+                    new Transaction(id, date, amount, type.toUpperCase(), categoryId, null, isFuture, isExtraordinary), previous));
+            return true;
+        });
+    }
 
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    transactions.add(new Transaction(
-                        rs.getInt("id"),
-                        LocalDate.parse(rs.getString("date")),
-                        rs.getDouble("amount"),
-                        rs.getString("type"),
-                        rs.getInt("category_id"),
-                        rs.getString("category_name"),
-                        rs.getBoolean("is_future"),
-                        rs.getBoolean("is_extraordinary")
-                    ));
+    public boolean deleteTransaction(int userId, int id) {
+        String sql = "DELETE FROM transactions WHERE id = ? AND user_id = ?";
+        return METRICS.call("deleteTransaction", () -> {
+            Transaction previous = columnarStore.write(userId, changes -> DBManager.inTransaction(conn -> {
+                Transaction before = selectRawTransaction(conn, userId, id);
+                if (before == null) {
+                    return null;
                 }
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setInt(1, id);
+                    pstmt.setInt(2, userId);
+                    pstmt.executeUpdate();
+                }
+                applyToRollup(conn, userId, before, -1);
+                changes.deleted(id, before.getDate());
+                return before;
+            }));
+            if (previous == null) {
+                return false;
+            }
+            DataVersions.bump(userId, DataVersions.Dataset.TRANSACTIONS);
+            publish(userId, TransactionChange.deleted(previous));
+            return true;
+        });
+    }
+
+    // 一括書き込みで対象の取引を読むときの IN (...) の最大件数
+    private static final int BATCH_LOOKUP_CHUNK = 500;
+
+    /**
+     * 登録・更新・削除が混在した操作を、1つのDBトランザクションでまとめて反映します（オフライン編集の同期用）。
+     * result には操作と同じ順番で結果の行が用意されている必要があり、すでに状態が付いている（検証で弾かれた）操作は実行しません。
+     *
+     * 対象の行を1回の IN 検索で読み、同じ取引への複数の操作はメモリ上で最終状態にまとめてから、
+     * UPDATE・DELETE・INSERT をそれぞれJDBCバッチで実行します。月次集計も集計行ごとにまとめて更新します。
+     * all-or-nothing の場合、1件でも失敗する操作があればDBには何も書き込みません。
+     */
+    public void applyBatch(int userId, TransactionBatchRequest request, TransactionBatchResult result) {
+        List<TransactionBatchRequest.Operation> operations = request.getOperations();
+        List<TransactionBatchResult.Item> items = result.getResults();
+
+        List<Integer> targetIds = new ArrayList<>();
+        for (int i = 0; i < operations.size(); i++) {
+            if (items.get(i).getStatus() == null && operations.get(i).getId() != null) {
+                targetIds.add(operations.get(i).getId());
+            }
+        }
+
+        try {
+            boolean written = columnarStore.write(userId, changes -> DBManager.inTransaction(conn -> {
+                Map<Integer, Transaction> originals = selectRawTransactions(conn, userId, targetIds);
+                Map<Integer, Transaction> current = new LinkedHashMap<>(originals);
+                Map<Integer, TransactionBatchResult.Item> lastWriteById = new LinkedHashMap<>();
+                List<Transaction> inserts = new ArrayList<>();
+                List<TransactionBatchResult.Item> insertItems = new ArrayList<>();
+
+                // 1. 各操作をメモリ上で順番に適用し、取引ごとの最終状態を求める
+                for (int i = 0; i < operations.size(); i++) {
+                    TransactionBatchRequest.Operation op = operations.get(i);
+                    TransactionBatchResult.Item item = items.get(i);
+                    if (item.getStatus() != null) {
+                        continue;
+                    }
+                    String kind = op.getOp().toUpperCase();
+                    if (kind.equals("CREATE")) {
+                        Transaction t = op.getTransaction();
+                        inserts.add(new Transaction(0, t.getDate(), t.getAmount(), t.getType().toUpperCase(), t.getCategoryId(), null,
+                                t.getIsFuture(), t.getIsExtraordinary()));
+                        insertItems.add(item);
+                    } else if (!current.containsKey(op.getId())) {
+                        item.reject(TransactionBatchResult.Status.NOT_FOUND, "取引が見つかりません: " + op.getId());
+                    } else if (kind.equals("UPDATE")) {
+                        Transaction t = op.getTransaction();
+                        current.put(op.getId(), new Transaction(op.getId(), t.getDate(), t.getAmount(), t.getType().toUpperCase(), t.getCategoryId(), null,
+                                t.getIsFuture(), t.getIsExtraordinary()));
+                        lastWriteById.put(op.getId(), item);
+                    } else {
+                        current.remove(op.getId());
+                        lastWriteById.put(op.getId(), item);
+                    }
+                }
+                if (request.getAtomic() && result.hasFailures()) {
+                    return false;
+                }
+
+                // 2. 最終状態との差分を、種類ごとのJDBCバッチで反映する
+                RollupDAO.DeltaBatch deltas = new RollupDAO.DeltaBatch();
+                String updateSql = "UPDATE transactions SET date = ?, amount = ?, type = ?, category_id = ?, is_future = ?, is_extraordinary = ? WHERE id = ? AND user_id = ?";
+                String deleteSql = "DELETE FROM transactions WHERE id = ? AND user_id = ?";
+                try (PreparedStatement update = conn.prepareStatement(updateSql);
+                     PreparedStatement delete = conn.prepareStatement(deleteSql)) {
+                    for (Integer id : lastWriteById.keySet()) {
+                        Transaction before = originals.get(id);
+                        Transaction after = current.get(id);
+                        addDelta(deltas, userId, before, -1);
+                        changes.deleted(id, before.getDate());
+                        if (after == null) {
+                            delete.setInt(1, id);
+                            delete.setInt(2, userId);
+                            delete.addBatch();
+                            continue;
+                        }
+                        bindTransaction(update, after);
+                        update.setInt(7, id);
+                        update.setInt(8, userId);
+                        update.addBatch();
+                        addDelta(deltas, userId, after, +1);
+                        changes.inserted(id, after.getDate(), Money.toMinor(after.getAmount()), after.getType(), after.getCategoryId(),
+                                after.getIsFuture(), after.getIsExtraordinary());
+                    }
+                    update.executeBatch();
+                    delete.executeBatch();
+                }
+
+                int[] insertedIds = insertAll(conn, userId, inserts);
+                for (int i = 0; i < inserts.size(); i++) {
+                    Transaction t = inserts.get(i);
+                    addDelta(deltas, userId, t, +1);
+                    if (insertedIds[i] > 0) {
+                        changes.inserted(insertedIds[i], t.getDate(), Money.toMinor(t.getAmount()), t.getType(), t.getCategoryId(),
+                                t.getIsFuture(), t.getIsExtraordinary());
+                    } else {
+                        changes.reloadRequired();
+                    }
+                }
+                deltas.flush(conn);
+
+                // 3. 操作ごとの結果（コミットに失敗した場合は下の catch で上書きする）
+                for (int i = 0; i < operations.size(); i++) {
+                    TransactionBatchResult.Item item = items.get(i);
+                    if (item.getStatus() == null && operations.get(i).getId() != null) {
+                        item.succeed(operations.get(i).getId());
+                    }
+                }
+                for (int i = 0; i < insertItems.size(); i++) {
+                    insertItems.get(i).succeed(insertedIds[i]);
+                }
+                return !lastWriteById.isEmpty() || !inserts.isEmpty();
+            }));
+
+            if (request.getAtomic() && result.hasFailures()) {
+                result.rejectPending(TransactionBatchResult.Status.ROLLED_BACK, "他の操作が失敗したため取り消しました");
+                return;
+            }
+            result.setCommitted(true);
+            if (written) {
+                DataVersions.bump(userId, DataVersions.Dataset.TRANSACTIONS);
+                // 件数が多くなりうるため、ダッシュボードには読み直しを促す
+                publish(userId, TransactionChange.imported(result.getSucceeded()));
             }
         } catch (SQLException e) {
-            System.err.println("データ取得エラー: " + e.getMessage());
+            // 失敗は操作ごとの結果として返すため、例外にはせずエラーだけを記録する
+            METRICS.recordFailure("applyBatch", e);
+            for (TransactionBatchResult.Item item : items) {
+                if (item.getStatus() == TransactionBatchResult.Status.OK) {
+                    item.reject(TransactionBatchResult.Status.FAILED, "DBエラーのため反映できませんでした");
+                }
+            }
+            result.rejectPending(TransactionBatchResult.Status.FAILED, "DBエラーのため反映できませんでした");
         }
-        return transactions;
     }
 
-    public boolean updateTransaction(int id, LocalDate date, double amount, String type, int categoryId, boolean isFuture, boolean isExtraordinary) {
-        String sql = "UPDATE transactions SET date = ?, amount = ?, type = ?, category_id = ?, is_future = ?, is_extraordinary = ? WHERE id = ?";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    /**
+     * 取引をまとめて登録し、登録した順に採番されたIDを返します（取得できなかった場合は0）。
+     * PostgreSQLはバッチでも採番されたIDを返せるためJDBCバッチで、
+     * SQLiteはバッチでは最後のIDしか返らない（かつプロセス内で往復のコストがない）ため1件ずつ実行します。
+     */
+    private int[] insertAll(Connection conn, int userId, List<Transaction> rows) throws SQLException {
+        int[] ids = new int[rows.size()];
+        if (rows.isEmpty()) {
+            return ids;
+        }
+        String sql = "INSERT INTO transactions(date, amount, type, category_id, is_future, is_extraordinary, user_id) VALUES(?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < rows.size(); i++) {
+                bindTransaction(pstmt, rows.get(i));
+                pstmt.setInt(7, userId);
+                if (DBManager.isPostgres()) {
+                    pstmt.addBatch();
+                    continue;
+                }
+                pstmt.executeUpdate();
+                try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                    ids[i] = keys.next() ? keys.getInt(1) : 0;
+                }
+            }
+            if (DBManager.isPostgres()) {
+                pstmt.executeBatch();
+                try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                    for (int i = 0; i < ids.length && keys.next(); i++) {
+                        ids[i] = keys.getInt(1);
+                    }
+                }
+            }
+        }
+        return ids;
+    }
 
-            pstmt.setString(1, date.toString());
-            pstmt.setDouble(2, amount);
-            pstmt.setString(3, type.toUpperCase());
-            pstmt.setInt(4, categoryId);
-            pstmt.setBoolean(5, isFuture);
-            pstmt.setBoolean(6, isExtraordinary);
-            pstmt.setInt(7, id);
+    /**
+     * 取引の内容を、date, amount, type, category_id, is_future, is_extraordinary の順でパラメータ1〜6に設定します。
+     */
+    private static void bindTransaction(PreparedStatement pstmt, Transaction t) throws SQLException {
+        pstmt.setLong(1, t.getDate().toEpochDay());
+        pstmt.setLong(2, Money.toMinor(t.getAmount()));
+        pstmt.setString(3, t.getType());
+        pstmt.setInt(4, t.getCategoryId());
+        pstmt.setBoolean(5, t.getIsFuture());
+        pstmt.setBoolean(6, t.getIsExtraordinary());
+    }
 
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
-        } catch (SQLException e) {
-            System.err.println("データ更新エラー: " + e.getMessage());
-            return false;
+    private static void addDelta(RollupDAO.DeltaBatch deltas, int userId, Transaction t, int sign) {
+        deltas.add(userId, t.getDate(), Money.toMinor(t.getAmount()), t.getType(), t.getCategoryId(),
+                t.getIsFuture(), t.getIsExtraordinary(), sign);
+    }
+
+    /**
+     * 書き込みトランザクション内で、ユーザーの取引を複数まとめて読みます（見つからないIDは結果に含まれません）。
+     */
+    private Map<Integer, Transaction> selectRawTransactions(Connection conn, int userId, List<Integer> ids) throws SQLException {
+        Map<Integer, Transaction> found = new LinkedHashMap<>();
+        List<Integer> distinct = ids.stream().distinct().toList();
+        for (int from = 0; from < distinct.size(); from += BATCH_LOOKUP_CHUNK) {
+            List<Integer> chunk = distinct.subList(from, Math.min(from + BATCH_LOOKUP_CHUNK, distinct.size()));
+            String sql = "SELECT id, date, amount, type, category_id, is_future, is_extraordinary FROM transactions WHERE user_id = ? AND id IN (" +
+                         String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                for (int i = 0; i < chunk.size(); i++) {
+                    pstmt.setInt(i + 2, chunk.get(i));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Transaction t = mapRawTransaction(rs);
+                        found.put(t.getId(), t);
+                    }
+                }
+            }
         }
+        return found;
     }
 
-    public boolean deleteTransaction(int id) {
-        String sql = "DELETE FROM transactions WHERE id = ?";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
+    /**
+     * 書き込みトランザクション内で、カテゴリ名を結合せずにユーザーの取引1件を読みます。
+     */
+    private Transaction selectRawTransaction(Connection conn, int userId, int id) throws SQLException {
+        String sql = "SELECT id, date, amount, type, category_id, is_future, is_extraordinary FROM transactions WHERE id = ? AND user_id = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, id);
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
-        } catch (SQLException e) {
-            System.err.println("データ削除エラー: " + e.getMessage());
-            return false;
+            pstmt.setInt(2, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapRawTransaction(rs);
+                }
+            }
         }
+        return null;
+    }
+
+    private static Transaction mapRawTransaction(ResultSet rs) throws SQLException {
+        return new Transaction(
+            rs.getInt("id"),
+            LocalDate.ofEpochDay(rs.getLong("date")),
+            Money.fromMinor(rs.getLong("amount")),
+            rs.getString("type"),
+            rs.getInt("category_id"),
+            null,
+            rs.getBoolean("is_future"),
+            rs.getBoolean("is_extraordinary")
+        );
+    }
+
+    private void applyToRollup(Connection conn, int userId, Transaction t, int sign) throws SQLException {
+        rollupDAO.applyTransaction(conn, userId, t.getDate(), t.getAmount(), t.getType(), t.getCategoryId(),
+                t.getIsFuture(), t.getIsExtraordinary(), sign);
     }
     
-    public double calculateCurrentBalance() {
-        String sql = "SELECT " +
-                     "  COALESCE(SUM(CASE WHEN type = 'INCOME' THEN amount ELSE 0 END), 0) - " +
-                     "  COALESCE(SUM(CASE WHEN type = 'EXPENSE' THEN amount ELSE 0 END), 0) " +
-                     "FROM transactions " +
-                     "WHERE is_future = FALSE";
-        try (Connection conn = DBManager.connect();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            if (rs.next()) {
-                return rs.getDouble(1);
-            }
-        } catch (SQLException e) {
-            System.err.println("残高計算エラー: " + e.getMessage());
-        }
-        return 0.0;
+    /**
+     * ユーザーの現在の残高を返します。取引テーブル全体ではなく月次集計から計算します。
+     */
+    public double calculateCurrentBalance(int userId) {
+        return rollupDAO.calculateBalance(userId);
     }
     
-    public List<CategorySummary> getCategorySummary(LocalDate startDate, LocalDate endDate, String type) {
-        List<CategorySummary> summaryList = new ArrayList<>();
+    public List<CategorySummary> getCategorySummary(int userId, LocalDate startDate, LocalDate endDate, String type) {
+        // 列ストアが有効なら、取引テーブルを読まずにメモリ上で集計する
+        Map<Integer, Long> totals = columnarStore.sumByCategory(userId, startDate, endDate, type, false);
+        if (totals != null) {
+            return toCategorySummaries(userId, totals);
+        }
+
         String sql = "SELECT c.name AS category_name, SUM(t.amount) AS total_amount " +
                      "FROM transactions t " +
                      "JOIN categories c ON t.category_id = c.id " +
-                     "WHERE t.date BETWEEN ? AND ? AND t.type = ? AND t.is_future = FALSE " +
+                     "WHERE t.user_id = ? AND t.date BETWEEN ? AND ? AND t.type = ? AND t.is_future = FALSE " +
                      "GROUP BY c.name " +
                      "ORDER BY total_amount DESC";
 
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        return METRICS.call("getCategorySummary", () -> {
+            List<CategorySummary> summaryList = new ArrayList<>();
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setString(1, startDate.toString());
-            pstmt.setString(2, endDate.toString());
-            pstmt.setString(3, type.toUpperCase());
+                pstmt.setInt(1, userId);
+                pstmt.setLong(2, startDate.toEpochDay());
+                pstmt.setLong(3, endDate.toEpochDay());
+                pstmt.setString(4, type.toUpperCase());
 
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    summaryList.add(new CategorySummary(
-                        rs.getString("category_name"),
-                        rs.getDouble("total_amount")
-                    ));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        summaryList.add(new CategorySummary(
+                            rs.getString("category_name"),
+                            Money.fromMinor(rs.getLong("total_amount"))
+                        ));
+                    }
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("カテゴリ別集計エラー: " + e.getMessage());
-        }
-        return summaryList;
+            return summaryList;
+        });
     }
     
-    public List<MonthlySummary> getMonthlySummary() {
-        List<MonthlySummary> summaries = new ArrayList<>();
-        String sql = "SELECT " +
-                     "  strftime('%Y-%m', date) AS month, " +
-                     "  SUM(CASE WHEN type = 'INCOME' THEN amount ELSE 0 END) AS totalIncome, " +
-                     "  SUM(CASE WHEN type = 'EXPENSE' THEN amount ELSE 0 END) AS totalExpense " +
-                     "FROM transactions " +
-                     "WHERE is_future = FALSE " +
-                     "GROUP BY month " +
-                     "ORDER BY month DESC";
-
-        try (Connection conn = DBManager.connect();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                summaries.add(new MonthlySummary(
-                    rs.getString("month"),
-                    rs.getDouble("totalIncome"),
-                    rs.getDouble("totalExpense")
-                ));
+    /**
+     * カテゴリIDごとの合計を、SQL版と同じくカテゴリ名でまとめて金額の降順に並べます。
+     */
+    private List<CategorySummary> toCategorySummaries(int userId, Map<Integer, Long> totals) {
+        String sql = "SELECT id, name FROM categories WHERE user_id = ?";
+        Map<String, Long> byName = METRICS.call("getCategorySummary", () -> {
+            Map<String, Long> merged = new LinkedHashMap<>();
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Long total = totals.get(rs.getInt("id"));
+                        if (total != null) {
+                            merged.merge(rs.getString("name"), total, Long::sum);
+                        }
+                    }
+                }
             }
-        } catch (SQLException e) {
-            System.err.println("月次集計エラー: " + e.getMessage());
-        }
-        return summaries;
+            return merged;
+        });
+
+        List<CategorySummary> summaryList = new ArrayList<>();
+        byName.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+            .forEach(e -> summaryList.add(new CategorySummary(e.getKey(), Money.fromMinor(e.getValue()))));
+        return summaryList;
     }
     
-    public List<Double> getPastThreeMonthsRegularNetProfits() {
-        String sql = "SELECT strftime('%Y-%m', date) AS month, " +
-                     "SUM(CASE WHEN type = 'INCOME' THEN amount ELSE -amount END) AS net_profit " +
-                     "FROM transactions " +
-                     "WHERE is_future = FALSE AND is_extraordinary = FALSE " +
-                     "GROUP BY month " +
-                     "ORDER BY month DESC " +
-                     "LIMIT 3";
-        
-        List<Double> netProfits = new ArrayList<>();
-
-        try (Connection conn = DBManager.connect();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                netProfits.add(rs.getDouble("net_profit"));
-            }
-        } catch (SQLException e) {
-            System.err.println("過去3ヶ月純利益取得エラー: " + e.getMessage());
-        }
-        return netProfits.stream()
-                         .collect(Collectors.collectingAndThen(Collectors.toList(), lst -> {
-                             java.util.Collections.reverse(lst);
-                             return lst;
-                         }));
+    /**
+     * ユーザーの月ごとの収入・支出合計を返します。月次集計から読むため、取引件数ではなく月数に比例します。
+     */
+    public List<MonthlySummary> getMonthlySummary(int userId) {
+        return rollupDAO.getMonthlySummary(userId);
     }
+    
+    public List<Double> getPastThreeMonthsRegularNetProfits(int userId) {
+        return rollupDAO.getRecentRegularNetProfits(userId, 3);
+    }
+
+    /**
+     * 予測に使う、臨時収支を除いたカテゴリごとの月次純額の履歴を返します（月次集計から読みます）。
+     */
+    public CategoryHistory getRegularCategoryHistory(int userId, YearMonth lastMonth) {
+        return rollupDAO.getRegularCategoryHistory(userId, lastMonth);
+    }
+
     /**
      * IDを指定して単一の取引データを取得します。
+     * @param userId 所有ユーザーID（他のユーザーの取引は見つからない扱い）
      * @param id 取引ID
      * @return 見つかった取引データ。見つからなければnull。
      */
-    public Transaction getTransactionById(int id) {
+    public Transaction getTransactionById(int userId, int id) {
         String sql = "SELECT t.id, t.date, t.amount, t.type, t.category_id, c.name AS category_name, t.is_future, t.is_extraordinary " +
                      "FROM transactions t " +
                      "JOIN categories c ON t.category_id = c.id " +
-                     "WHERE t.id = ?";
+                     "WHERE t.id = ? AND t.user_id = ?";
 
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        return METRICS.call("getTransactionById", () -> {
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
-            pstmt.setInt(1, id);
+                pstmt.setInt(1, id);
+                pstmt.setInt(2, userId);
 
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return new Transaction(
-                        rs.getInt("id"),
-                        LocalDate.parse(rs.getString("date")),
-                        rs.getDouble("amount"),
-                        rs.getString("type"),
-                        rs.getInt("category_id"),
-                        rs.getString("category_name"),
-                        rs.getBoolean("is_future"),
-                        rs.getBoolean("is_extraordinary")
-                    );
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        return mapToTransaction(rs);
+                    }
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("単一取引の取得エラー: " + e.getMessage());
-        }
-        return null; // データが見つからない場合
+            return null; // データが見つからない場合
+        });
     }
 }
\ No newline at end of file
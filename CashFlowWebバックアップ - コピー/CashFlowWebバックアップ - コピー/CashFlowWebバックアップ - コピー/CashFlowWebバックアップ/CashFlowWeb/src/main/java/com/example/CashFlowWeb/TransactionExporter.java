@@ -0,0 +1,175 @@
+package com.example.CashFlowWeb;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 絞り込み条件に一致する取引を、CSVまたはXLSXとして書き出すクラス。
+ * 取引はDBから1行ずつ読みながらそのまま出力先に書くため、件数に関わらずメモリ使用量は一定です。
+ * CSVの列は取り込み (TransactionImporter) と同じ名前なので、書き出したファイルをそのまま取り込めます。
+ */
+public class TransactionExporter {
+
+    /**
+     * 書き出し形式。
+     */
+    public enum Format {
+        CSV("text/csv; charset=UTF-8", "csv"),
+        XLSX("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() { return contentType; }
+        public String getExtension() { return extension; }
+
+        /**
+         * 形式名（大文字小文字を区別しない）から変換します。不正な値なら null を返します。
+         */
+        public static Format parse(String value) {
+            try {
+                return value == null ? null : Format.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final List<String> COLUMNS =
+            List.of("id", "date", "amount", "type", "category_id", "category", "is_future", "is_extraordinary");
+
+    private final TransactionDAO transactionDAO;
+
+    public TransactionExporter(TransactionDAO transactionDAO) {
+        this.transactionDAO = transactionDAO;
+    }
+
+    /**
+     * 取引を書き出し、書き出した件数を返します。out は閉じません。
+     * 書き出しの途中でDBエラーが発生した場合は IOException を投げます（レスポンスは送信済みのため、ステータスは変えられません）。
+     */
+    public long export(Format format, OutputStream out, int userId, LocalDate startDate, LocalDate endDate, Integer categoryId,
+                       String type) throws IOException {
+        long[] count = new long[1];
+        try {
+            if (format == Format.XLSX) {
+                XlsxStreamWriter xlsx = new XlsxStreamWriter(out, "取引", COLUMNS);
+                transactionDAO.streamFilteredTransactions(userId, startDate, endDate, categoryId, type, t -> {
+                    writeXlsxRow(xlsx, t);
+                    count[0]++;
+                });
+                // 途中で失敗した場合は、不完全なファイルだと分かるようZIPを完了させない
+                xlsx.close();
+            } else {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+                // Excelで開いたときに文字化けしないようBOMを付ける（取り込み側はBOMを読み飛ばす）
+                writer.write('\uFEFF');
+                writeCsvRecord(writer, COLUMNS);
+                transactionDAO.streamFilteredTransactions(userId, startDate, endDate, categoryId, type, t -> {
+                    writeCsvRow(writer, t);
+                    count[0]++;
+                });
+                writer.flush();
+            }
+        } catch (SQLException e) {
+            throw new IOException("取引の書き出しに失敗しました", e);
+        }
+        return count[0];
+    }
+
+    // ----------------------------------------
+    // CSV
+    // ----------------------------------------
+
+    private static void writeCsvRow(Writer writer, Transaction t) throws IOException {
+        writer.write(Integer.toString(t.getId()));
+        writer.write(',');
+        writer.write(t.getDate().toString());
+        writer.write(',');
+        writer.write(formatAmount(t.getAmount()));
+        writer.write(',');
+        writer.write(t.getType());
+        writer.write(',');
+        writer.write(Integer.toString(t.getCategoryId()));
+        writer.write(',');
+        writeCsvField(writer, t.getCategoryName());
+        writer.write(',');
+        writer.write(Boolean.toString(t.getIsFuture()));
+        writer.write(',');
+        writer.write(Boolean.toString(t.getIsExtraordinary()));
+        writer.write("\r\n");
+    }
+
+    private static void writeCsvRecord(Writer writer, List<String> fields) throws IOException {
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeCsvField(writer, fields.get(i));
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * RFC 4180 に従い、カンマ・ダブルクォート・改行を含むフィールドだけをダブルクォートで囲みます。
+     */
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    // ----------------------------------------
+    // XLSX
+    // ----------------------------------------
+
+    private static void writeXlsxRow(XlsxStreamWriter xlsx, Transaction t) throws IOException {
+        xlsx.startRow();
+        xlsx.number(t.getId());
+        xlsx.date(t.getDate());
+        xlsx.number(formatAmount(t.getAmount()));
+        xlsx.text(t.getType());
+        xlsx.number(t.getCategoryId());
+        xlsx.text(t.getCategoryName());
+        xlsx.bool(t.getIsFuture());
+        xlsx.bool(t.getIsExtraordinary());
+        xlsx.endRow();
+    }
+
+    /**
+     * 金額を最小単位から10進表記にします（"1000"、"1234.5" のように、不要な小数点以下の0は付けません）。
+     */
+    private static String formatAmount(double amount) {
+        long minor = Money.toMinor(amount);
+        if (minor % Money.SCALE == 0) {
+            return Long.toString(minor / Money.SCALE);
+        }
+        return BigDecimal.valueOf(minor, 2).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,444 @@
+package com.example.CashFlowWeb;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 銀行などからエクスポートしたCSV/OFXファイルを読み込み、取引を一括登録するクラス。
+ * ファイルは先頭から1件ずつ読み、CHUNK_SIZE 件ごとに1つのDBトランザクションでまとめて登録します。
+ * 不正な行はスキップして行番号と理由を記録し、残りの行の取り込みは続けます。
+ */
+public class TransactionImporter {
+
+    private static final DaoMetrics METRICS = DaoMetrics.forDao("TransactionImporter");
+
+    // 1回のDBトランザクションで登録する件数
+    private static final int CHUNK_SIZE = 5_000;
+
+    private final TransactionDAO transactionDAO;
+    private final CategoryDAO categoryDAO;
+    // 取り込み先のユーザー（カテゴリもこのユーザーのものだけを使う）
+    private final int userId;
+
+    /**
+     * チャンクを登録するたびに呼び出される進捗通知。
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(ImportResult progress) throws IOException;
+    }
+
+    public TransactionImporter(TransactionDAO transactionDAO, CategoryDAO categoryDAO, int userId) {
+        this.transactionDAO = transactionDAO;
+        this.categoryDAO = categoryDAO;
+        this.userId = userId;
+    }
+
+    // ----------------------------------------
+    // CSV
+    // ----------------------------------------
+
+    /**
+     * ヘッダー行付きのCSVを取り込みます。
+     * 必須列: date(日付), amount(金額), category(カテゴリ名) または category_id
+     * 任意列: type(区分: INCOME/EXPENSE/収入/支出), is_future, is_extraordinary
+     * type列がない場合は、金額がマイナスなら支出、プラスなら収入として扱います。
+     */
+    public ImportResult importCsv(Reader reader, ProgressListener listener) throws IOException {
+        long startedAt = System.currentTimeMillis();
+        ImportResult result = new ImportResult();
+        CsvReader csv = new CsvReader(reader);
+        Map<String, Map<String, Integer>> categoryIndex = buildCategoryIndex();
+
+        List<String> header = csv.readRecord();
+        if (header == null) {
+            result.finish(System.currentTimeMillis() - startedAt);
+            return result;
+        }
+        int dateCol = findColumn(header, "date", "日付");
+        int amountCol = findColumn(header, "amount", "金額");
+        int typeCol = findColumn(header, "type", "区分", "収支");
+        int categoryCol = findColumn(header, "category", "category_name", "カテゴリ");
+        int categoryIdCol = findColumn(header, "category_id");
+        int futureCol = findColumn(header, "is_future");
+        int extraordinaryCol = findColumn(header, "is_extraordinary");
+        if (dateCol < 0 || amountCol < 0 || (categoryCol < 0 && categoryIdCol < 0)) {
+            result.addError(1, "ヘッダーに date, amount, category (または category_id) の列が必要です");
+            result.finish(System.currentTimeMillis() - startedAt);
+            return result;
+        }
+
+        Chunk chunk = new Chunk();
+        List<String> record;
+        while ((record = csv.readRecord()) != null) {
+            long line = csv.getRecordLine();
+            result.addProcessed(1);
+            try {
+                LocalDate date = parseDate(field(record, dateCol));
+                double amount = parseAmount(field(record, amountCol));
+                String type = typeCol >= 0 ? parseType(field(record, typeCol)) : null;
+                if (type == null) {
+                    type = amount < 0 ? "EXPENSE" : "INCOME";
+                }
+                amount = Math.abs(amount);
+
+                int categoryId;
+                String idValue = field(record, categoryIdCol);
+                if (!idValue.isEmpty()) {
+                    categoryId = Integer.parseInt(idValue);
+                    if (categoryDAO.getCategoryById(userId, categoryId) == null) {
+                        throw new IllegalArgumentException("カテゴリが見つかりません: ID " + categoryId);
+                    }
+                } else {
+                    categoryId = resolveCategory(categoryIndex, field(record, categoryCol), type);
+                }
+
+                chunk.add(line, new Transaction(date, amount, type, categoryId,
+                        parseFlag(field(record, futureCol)), parseFlag(field(record, extraordinaryCol))));
+            } catch (IllegalArgumentException | DateTimeException e) {
+                result.addError(line, e.getMessage());
+            }
+
+            if (chunk.size() >= CHUNK_SIZE) {
+                flush(chunk, result, startedAt, listener);
+            }
+        }
+        flush(chunk, result, startedAt, listener);
+        result.finish(System.currentTimeMillis() - startedAt);
+        return result;
+    }
+
+    // ----------------------------------------
+    // OFX
+    // ----------------------------------------
+
+    /**
+     * OFX (SGML形式の1.x / XML形式の2.x) の明細 (STMTTRN) を取り込みます。
+     * 金額の符号で収入/支出を判定し、NAME がカテゴリ名と一致すればそのカテゴリ、
+     * 一致しなければ defaultCategoryId に登録します。
+     */
+    public ImportResult importOfx(Reader reader, Integer defaultCategoryId, ProgressListener listener) throws IOException {
+        long startedAt = System.currentTimeMillis();
+        ImportResult result = new ImportResult();
+        Map<String, Map<String, Integer>> categoryIndex = buildCategoryIndex();
+        OfxTokenizer ofx = new OfxTokenizer(reader);
+
+        Chunk chunk = new Chunk();
+        Map<String, String> fields = null;
+        long recordNo = 0;
+        String[] token;
+        while ((token = ofx.next()) != null) {
+            String tag = token[0];
+            if (tag.equals("STMTTRN")) {
+                fields = new HashMap<>();
+            } else if (tag.equals("/STMTTRN") && fields != null) {
+                recordNo++;
+                result.addProcessed(1);
+                try {
+                    chunk.add(recordNo, toTransaction(fields, categoryIndex, defaultCategoryId));
+                } catch (IllegalArgumentException | DateTimeException e) {
+                    result.addError(recordNo, e.getMessage());
+                }
+                fields = null;
+                if (chunk.size() >= CHUNK_SIZE) {
+                    flush(chunk, result, startedAt, listener);
+                }
+            } else if (fields != null && !tag.startsWith("/") && token[1] != null) {
+                fields.put(tag, token[1]);
+            }
+        }
+        flush(chunk, result, startedAt, listener);
+        result.finish(System.currentTimeMillis() - startedAt);
+        return result;
+    }
+
+    private Transaction toTransaction(Map<String, String> fields, Map<String, Map<String, Integer>> categoryIndex,
+                                      Integer defaultCategoryId) {
+        String posted = fields.get("DTPOSTED");
+        String amountValue = fields.get("TRNAMT");
+        if (posted == null || posted.length() < 8 || amountValue == null) {
+            throw new IllegalArgumentException("DTPOSTED または TRNAMT がありません");
+        }
+        LocalDate date = LocalDate.of(Integer.parseInt(posted.substring(0, 4)),
+                Integer.parseInt(posted.substring(4, 6)), Integer.parseInt(posted.substring(6, 8)));
+        double amount = parseAmount(amountValue);
+        String type = amount < 0 ? "EXPENSE" : "INCOME";
+
+        String name = fields.getOrDefault("NAME", fields.getOrDefault("MEMO", ""));
+        Integer categoryId = lookupCategory(categoryIndex, name, type);
+        if (categoryId == null) {
+            if (defaultCategoryId == null) {
+                throw new IllegalArgumentException("カテゴリが見つかりません: " + name);
+            }
+            categoryId = defaultCategoryId;
+        }
+        return new Transaction(date, Math.abs(amount), type, categoryId, false, false);
+    }
+
+    // ----------------------------------------
+    // 登録処理
+    // ----------------------------------------
+
+    /**
+     * 溜まった行を1つのDBトランザクションで登録し、進捗を通知します。
+     * 登録に失敗したチャンクは、その全行をエラーとして記録します。
+     */
+    private void flush(Chunk chunk, ImportResult result, long startedAt, ProgressListener listener) throws IOException {
+        if (chunk.size() == 0) {
+            return;
+        }
+        try {
+            result.addInserted(transactionDAO.addTransactions(userId, chunk.rows));
+        } catch (SQLException e) {
+            // 失敗したチャンクは行ごとのエラーとして返すため、例外にはせずエラーだけを記録する
+            METRICS.recordFailure("addTransactions", e);
+            String message = "DB登録エラー: " + e.getMessage();
+            for (long line : chunk.lines) {
+                result.addError(line, message);
+            }
+        }
+        chunk.clear();
+        result.setElapsedMillis(System.currentTimeMillis() - startedAt);
+        if (listener != null) {
+            listener.onProgress(result);
+        }
+    }
+
+    private static class Chunk {
+        final List<Transaction> rows = new ArrayList<>(CHUNK_SIZE);
+        final List<Long> lines = new ArrayList<>(CHUNK_SIZE);
+
+        void add(long line, Transaction row) {
+            rows.add(row);
+            lines.add(line);
+        }
+
+        int size() { return rows.size(); }
+
+        void clear() {
+            rows.clear();
+            lines.clear();
+        }
+    }
+
+    // ----------------------------------------
+    // カテゴリ解決・値の変換
+    // ----------------------------------------
+
+    /**
+     * CategoryDAO のキャッシュから、ユーザーのカテゴリの「区分 → カテゴリ名 → ID」の索引を作ります。
+     */
+    private Map<String, Map<String, Integer>> buildCategoryIndex() {
+        Map<String, Map<String, Integer>> index = new HashMap<>();
+        for (Category category : categoryDAO.getAllCategories(userId)) {
+            index.computeIfAbsent(category.getType(), k -> new HashMap<>())
+                 .putIfAbsent(category.getName().trim(), category.getId());
+        }
+        return index;
+    }
+
+    private Integer lookupCategory(Map<String, Map<String, Integer>> index, String name, String type) {
+        Map<String, Integer> byName = index.get(type);
+        return byName == null ? null : byName.get(name.trim());
+    }
+
+    private int resolveCategory(Map<String, Map<String, Integer>> index, String name, String type) {
+        Integer id = lookupCategory(index, name, type);
+        if (id == null) {
+            throw new IllegalArgumentException("カテゴリが見つかりません: " + name + " (" + type + ")");
+        }
+        return id;
+    }
+
+    private static int findColumn(List<String> header, String... names) {
+        for (int i = 0; i < header.size(); i++) {
+            String column = header.get(i).trim().toLowerCase(Locale.ROOT);
+            for (String name : names) {
+                if (column.equals(name)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static String field(List<String> record, int column) {
+        if (column < 0 || column >= record.size()) {
+            return "";
+        }
+        return record.get(column).trim();
+    }
+
+    private static LocalDate parseDate(String value) {
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("日付が空です");
+        }
+        return LocalDate.parse(value.replace('/', '-'));
+    }
+
+    private static double parseAmount(String value) {
+        String cleaned = value.replace(",", "").replace("¥", "").replace("円", "").trim();
+        try {
+            return Double.parseDouble(cleaned);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("金額が不正です: " + value);
+        }
+    }
+
+    private static String parseType(String value) {
+        switch (value.toUpperCase(Locale.ROOT)) {
+            case "":
+                return null;
+            case "INCOME":
+            case "収入":
+                return "INCOME";
+            case "EXPENSE":
+            case "支出":
+                return "EXPENSE";
+            default:
+                throw new IllegalArgumentException("区分が不正です: " + value);
+        }
+    }
+
+    private static boolean parseFlag(String value) {
+        return value.equalsIgnoreCase("true") || value.equals("1");
+    }
+
+    // ----------------------------------------
+    // パーサー
+    // ----------------------------------------
+
+    /**
+     * RFC 4180 形式のCSVを1レコードずつ読む簡易パーサー。
+     * ダブルクォートで囲まれたフィールド内のカンマ・改行に対応します。
+     */
+    static class CsvReader {
+        private final Reader reader;
+        private int pending = -2; // 先読みした文字 (-2: なし)
+        private long line = 1;
+        private long recordLine;
+
+        CsvReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        long getRecordLine() { return recordLine; }
+
+        private int read() throws IOException {
+            if (pending != -2) {
+                int c = pending;
+                pending = -2;
+                return c;
+            }
+            return reader.read();
+        }
+
+        /**
+         * 次のレコードを返します。ファイル末尾ならnull。空行は読み飛ばします。
+         */
+        List<String> readRecord() throws IOException {
+            while (true) {
+                recordLine = line;
+                List<String> fields = new ArrayList<>();
+                StringBuilder field = new StringBuilder();
+                boolean quoted = false;
+                boolean any = false;
+                int c;
+                while (true) {
+                    c = read();
+                    if (c == -1) {
+                        break;
+                    }
+                    any = true;
+                    if (quoted) {
+                        if (c == '"') {
+                            int next = read();
+                            if (next == '"') {
+                                field.append('"');
+                            } else {
+                                quoted = false;
+                                pending = next;
+                            }
+                        } else {
+                            if (c == '\n') {
+                                line++;
+                            }
+                            field.append((char) c);
+                        }
+                    } else if (c == '"') {
+                        quoted = true;
+                    } else if (c == ',') {
+                        fields.add(field.toString());
+                        field.setLength(0);
+                    } else if (c == '\r') {
+                        // CRLF のCRは無視する
+                    } else if (c == '\n') {
+                        line++;
+                        break;
+                    } else if (c == '\uFEFF' && fields.isEmpty() && field.length() == 0) {
+                        // BOMは無視する
+                    } else {
+                        field.append((char) c);
+                    }
+                }
+                if (!any) {
+                    return null;
+                }
+                fields.add(field.toString());
+                if (fields.size() == 1 && fields.get(0).trim().isEmpty()) {
+                    if (c == -1) {
+                        return null;
+                    }
+                    continue;
+                }
+                return fields;
+            }
+        }
+    }
+
+    /**
+     * OFXのタグと値を順番に返す簡易トークナイザー。
+     * SGML形式 (終了タグ省略) とXML形式の両方を扱えるよう、値はタグ直後のテキストから取ります。
+     */
+    static class OfxTokenizer {
+        private final Reader reader;
+        private int pending = -2;
+
+        OfxTokenizer(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * {タグ名, 値} を返します。値がなければ null、ファイル末尾なら配列自体が null。
+         */
+        String[] next() throws IOException {
+            int c = pending != -2 ? pending : reader.read();
+            pending = -2;
+            while (c != -1 && c != '<') {
+                c = reader.read();
+            }
+            if (c == -1) {
+                return null;
+            }
+            StringBuilder tag = new StringBuilder();
+            while ((c = reader.read()) != -1 && c != '>') {
+                tag.append((char) c);
+            }
+            StringBuilder value = new StringBuilder();
+            while ((c = reader.read()) != -1 && c != '<') {
+                value.append((char) c);
+            }
+            pending = c;
+            String text = value.toString().trim();
+            return new String[] {tag.toString().trim().toUpperCase(Locale.ROOT), text.isEmpty() ? null : text};
+        }
+    }
+}
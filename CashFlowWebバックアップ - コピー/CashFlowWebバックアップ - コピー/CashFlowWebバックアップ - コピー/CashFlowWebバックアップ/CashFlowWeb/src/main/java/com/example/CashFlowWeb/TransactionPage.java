@@ -0,0 +1,64 @@
+package com.example.CashFlowWeb;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * キーセット方式のページング結果を保持するモデルクラス。
+ * nextCursor を次のリクエストの cursor に渡すと続きのページを取得できます。
+ */
+public class TransactionPage {
+    private List<Transaction> items;
+    private boolean hasMore;
+    private String nextCursor; // 最後のページではnull
+
+    public TransactionPage(List<Transaction> items, boolean hasMore) {
+        this.items = items;
+        this.hasMore = hasMore;
+        if (hasMore && !items.isEmpty()) {
+            Transaction last = items.get(items.size() - 1);
+            this.nextCursor = new Cursor(last.getDate(), last.getId()).encode();
+        }
+    }
+
+    // --- Getter Methods ---
+    public List<Transaction> getItems() { return items; }
+    public boolean getHasMore() { return hasMore; }
+    public String getNextCursor() { return nextCursor; }
+
+    /**
+     * ページ末尾の位置 (date, id)。クライアントには不透明な文字列として渡します。
+     */
+    public static class Cursor {
+        private final LocalDate date;
+        private final int id;
+
+        public Cursor(LocalDate date, int id) {
+            this.date = date;
+            this.id = id;
+        }
+
+        public LocalDate getDate() { return date; }
+        public int getId() { return id; }
+
+        public String encode() {
+            String raw = date + ":" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * @throws IllegalArgumentException 不正なカーソル文字列の場合
+         */
+        public static Cursor decode(String value) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+                int sep = raw.indexOf(':');
+                return new Cursor(LocalDate.parse(raw.substring(0, sep)), Integer.parseInt(raw.substring(sep + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("不正なカーソルです: " + value, e);
+            }
+        }
+    }
+}
@@ -17,8 +17,12 @@ public class User implements UserDetails {
     private String username;
     private String password; // データベースにはハッシュ化されたパスワードを保存します
     
-    // Spring Security が要求する権限（今回は全員 "USER" 固定）
-    private String role = "USER"; 
+    // 一般ユーザーと、運用API (/api/admin/**) を使える管理者のロール
+    public static final String ROLE_USER = "USER";
+    public static final String ROLE_ADMIN = "ADMIN";
+
+    // Spring Security が要求する権限（"USER" または "ADMIN"）
+    private String role = ROLE_USER; 
 
     // --- コンストラクタ ---
     public User() {}
@@ -4,7 +4,10 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Locale;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 // ▼▼▼ この1行を追加 ▼▼▼
 import org.springframework.stereotype.Repository;
 // ▲▲▲ この1行を追加 ▲▲▲
@@ -15,6 +18,10 @@ import org.springframework.stereotype.Repository;
 @Repository // 👈 1. このクラスをSpringのBeanとして登録する
 public class UserDAO {
 
+    private static final Logger log = LoggerFactory.getLogger(UserDAO.class);
+
+    private static final DaoMetrics METRICS = DaoMetrics.forDao("UserDAO");
+
     /**
      * ユーザー名（username）を指定して、データベースからユーザー情報を検索します。
      * Spring Securityの認証処理（ログイン時）に使われます。
@@ -23,29 +30,29 @@ public class UserDAO {
      * @return 見つかったUserオブジェクト。見つからなければnull。
      */
     public User findByUsername(String username) {
-        // ユーザー名は大文字小文字を区別しない（toLowerCase()）
-        String sql = "SELECT id, username, password_hash, role FROM users WHERE LOWER(username) = LOWER(?)";
+        // ユーザー名は大文字小文字を区別しない（小文字化した列の一意インデックスで検索する）
+        String sql = "SELECT id, username, password_hash, role FROM users WHERE username_lower = ?";
         
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        return METRICS.call("findByUsername", () -> {
+            try (Connection conn = DBManager.connect();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setString(1, username);
+                pstmt.setString(1, normalize(username));
 
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    // DBから取得した情報をUserオブジェクトにマッピング
-                    User user = new User();
-                    user.setId(rs.getInt("id"));
-                    user.setUsername(rs.getString("username"));
-                    user.setPassword(rs.getString("password_hash")); // ハッシュ化されたパスワード
-                    user.setRole(rs.getString("role"));
-                    return user;
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        // DBから取得した情報をUserオブジェクトにマッピング
+                        User user = new User();
+                        user.setId(rs.getInt("id"));
+                        user.setUsername(rs.getString("username"));
+                        user.setPassword(rs.getString("password_hash")); // ハッシュ化されたパスワード
+                        user.setRole(rs.getString("role"));
+                        return user;
+                    }
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("ユーザー検索エラー: " + e.getMessage());
-        }
-        return null; // ユーザーが見つからなかった場合
+            return null; // ユーザーが見つからなかった場合
+        });
     }
 
     /**
@@ -57,20 +64,81 @@ public class UserDAO {
      */
     public boolean saveUser(User user) {
         // パスワードは、AuthController側でハッシュ化されてから渡される想定
-        String sql = "INSERT INTO users(username, password_hash, role) VALUES(?, ?, ?)";
+        String sql = "INSERT INTO users(username, username_lower, password_hash, role) VALUES(?, ?, ?, ?)";
 
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try {
+            DBManager.inTransaction(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, user.getUsername());
+                    pstmt.setString(2, normalize(user.getUsername()));
+                    pstmt.setString(3, user.getPassword()); // ハッシュ化済みパスワード
+                    pstmt.setString(4, user.getRole());
+                    pstmt.executeUpdate();
+                }
+                setUpIfFirstUser(conn, user);
+                return null;
+            });
+            return true;
+        } catch (SQLException e) {
+            if (isConstraintViolation(e)) {
+                // ユーザー名の重複（登録APIで409として扱う）
+                return false;
+            }
+            METRICS.recordFailure("saveUser", e);
+            throw new DaoException("UserDAO.saveUser", e);
+        }
+    }
 
-            pstmt.setString(1, user.getUsername());
-            pstmt.setString(2, user.getPassword()); // ハッシュ化済みパスワード
-            pstmt.setString(3, user.getRole());
+    /**
+     * 一意制約などの制約違反かどうかを判定します（SQLite: SQLITE_CONSTRAINT、PostgreSQL: SQLState 23xxx）。
+     */
+    private static boolean isConstraintViolation(SQLException e) {
+        String state = e.getSQLState();
+        return (state != null && state.startsWith("23")) || (e.getErrorCode() & 0xFF) == 19;
+    }
 
+    /**
+     * 検索・重複判定用にユーザー名を正規化（小文字化）します。
+     */
+    public static String normalize(String username) {
+        return username == null ? null : username.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 最初に登録されたユーザーを管理者 (ADMIN) にし、所有者の決まっていないデータ（ユーザー分離前から存在する行）を引き継ぎます。
+     */
+    private void setUpIfFirstUser(Connection conn, User user) throws SQLException {
+        String username = user.getUsername();
+        int userId;
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT id, (SELECT COUNT(*) FROM users) AS user_count FROM users WHERE username = ?")) {
+            pstmt.setString(1, username);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next() || rs.getInt("user_count") != 1) {
+                    return;
+                }
+                userId = rs.getInt("id");
+            }
+        }
+
+        // 運用API (/api/admin/**) を使えるユーザーがいなくならないよう、最初のユーザーは管理者にする
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE users SET role = ? WHERE id = ?")) {
+            pstmt.setString(1, User.ROLE_ADMIN);
+            pstmt.setInt(2, userId);
             pstmt.executeUpdate();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("ユーザー保存エラー (ユーザー名が重複している可能性あり): " + e.getMessage());
-            return false;
+        }
+        user.setRole(User.ROLE_ADMIN);
+
+        int adopted = 0;
+        for (String table : new String[] {"categories", "transactions", "assets", "budgets", "goals"}) {
+            try (PreparedStatement pstmt = conn.prepareStatement("UPDATE " + table + " SET user_id = ? WHERE user_id IS NULL")) {
+                pstmt.setInt(1, userId);
+                adopted += pstmt.executeUpdate();
+            }
+        }
+        if (adopted > 0) {
+            new RollupDAO().rebuild(conn);
+            log.info("既存データ {} 件をユーザー「{}」に引き継ぎました", adopted, username);
         }
     }
-}
\ No newline at end of file
+}
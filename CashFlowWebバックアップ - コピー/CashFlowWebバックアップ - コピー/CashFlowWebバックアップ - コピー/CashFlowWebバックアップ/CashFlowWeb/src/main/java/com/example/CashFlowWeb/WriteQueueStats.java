@@ -0,0 +1,34 @@
+package com.example.CashFlowWeb;
+
+/**
+ * SQLiteの書き込みキューの状況を保持するモデルクラス（監視用）。
+ */
+public class WriteQueueStats {
+    private boolean enabled;
+    private int queued;                // コミット待ちの書き込み数
+    private long completedWrites;      // コミットした書き込み数
+    private long failedWrites;         // 失敗（取り消し）した書き込み数
+    private long commits;              // コミット回数
+    private double averageBatchSize;   // 1回のコミットにまとめた書き込み数の平均
+    private long maxBatchSize;
+
+    public WriteQueueStats(boolean enabled, int queued, long completedWrites, long failedWrites, long commits,
+                           double averageBatchSize, long maxBatchSize) {
+        this.enabled = enabled;
+        this.queued = queued;
+        this.completedWrites = completedWrites;
+        this.failedWrites = failedWrites;
+        this.commits = commits;
+        this.averageBatchSize = averageBatchSize;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    // --- Getter Methods ---
+    public boolean getEnabled() { return enabled; }
+    public int getQueued() { return queued; }
+    public long getCompletedWrites() { return completedWrites; }
+    public long getFailedWrites() { return failedWrites; }
+    public long getCommits() { return commits; }
+    public double getAverageBatchSize() { return averageBatchSize; }
+    public long getMaxBatchSize() { return maxBatchSize; }
+}
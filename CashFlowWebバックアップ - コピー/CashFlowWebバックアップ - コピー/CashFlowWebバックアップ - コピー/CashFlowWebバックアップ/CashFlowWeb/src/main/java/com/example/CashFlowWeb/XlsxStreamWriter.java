@@ -0,0 +1,290 @@
+package com.example.CashFlowWeb;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * XLSX（Office Open XML のスプレッドシート）を1行ずつ書き出すクラス。
+ *
+ * 行はそのままシートのXMLとしてZIPに圧縮しながら出力先へ書くため、行数に関わらずメモリ使用量は一定です
+ * （一時ファイルも作りません）。文字列は共有文字列表を使わずセルに直接書きます。
+ * 1シートの行数の上限 (1,048,576行) に達した場合は、同じヘッダーで次のシートに続けます。
+ * シートの数は書き終えるまで分からないため、ブック全体の定義は close() でZIPの最後に書きます。
+ *
+ * 使い方: startRow() の後にセルを左から順に書き、endRow() で行を閉じます。
+ */
+final class XlsxStreamWriter implements AutoCloseable {
+
+    // 1シートの最大行数（ヘッダー行を含む）
+    static final int MAX_ROWS_PER_SHEET = 1_048_576;
+
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PACKAGE_REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+    // styles.xml の cellXfs の番号
+    private static final int STYLE_DATE = 1;
+    private static final int STYLE_HEADER = 2;
+
+    // Excelの日付のシリアル値 (1900年基準) で 1970-01-01 にあたる値
+    private static final long EPOCH_SERIAL = 25_569;
+
+    private final ZipOutputStream zip;
+    private final Writer xml;
+    private final String sheetName;
+    private final List<String> header;
+    private int sheetCount;
+    private int rowsInSheet;
+    private boolean rowOpen;
+
+    /**
+     * @param out       出力先（close() でZIPを完了しますが、out 自体は閉じません）
+     * @param sheetName シート名（2枚目以降は「名前 (2)」のように番号を付けます）
+     * @param header    各シートの1行目に書く列名
+     */
+    XlsxStreamWriter(OutputStream out, String sheetName, List<String> header) throws IOException {
+        this.zip = new ZipOutputStream(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                // 呼び出し元の出力先は閉じない
+                flush();
+            }
+        }, StandardCharsets.UTF_8);
+        // エクスポートは件数が多いため、圧縮率より速度を優先する
+        zip.setLevel(Deflater.BEST_SPEED);
+        this.xml = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 1 << 16);
+        this.sheetName = sheetName;
+        this.header = header;
+        startSheet();
+    }
+
+    /**
+     * 新しい行を始めます。シートが一杯なら次のシートに移ります。
+     */
+    void startRow() throws IOException {
+        if (rowsInSheet == MAX_ROWS_PER_SHEET) {
+            endSheet();
+            startSheet();
+        }
+        rowsInSheet++;
+        xml.write("<row r=\"");
+        xml.write(Integer.toString(rowsInSheet));
+        xml.write("\">");
+        rowOpen = true;
+    }
+
+    void endRow() throws IOException {
+        xml.write("</row>\n");
+        rowOpen = false;
+    }
+
+    /**
+     * 数値のセルを書きます。value は "1234.5" のような10進表記の文字列です。
+     */
+    void number(String value) throws IOException {
+        xml.write("<c><v>");
+        xml.write(value);
+        xml.write("</v></c>");
+    }
+
+    void number(long value) throws IOException {
+        number(Long.toString(value));
+    }
+
+    /**
+     * 日付のセルを書きます（シリアル値と日付の表示形式）。
+     */
+    void date(LocalDate value) throws IOException {
+        xml.write("<c s=\"" + STYLE_DATE + "\"><v>");
+        xml.write(Long.toString(value.toEpochDay() + EPOCH_SERIAL));
+        xml.write("</v></c>");
+    }
+
+    void bool(boolean value) throws IOException {
+        xml.write(value ? "<c t=\"b\"><v>1</v></c>" : "<c t=\"b\"><v>0</v></c>");
+    }
+
+    void text(String value) throws IOException {
+        text(value, 0);
+    }
+
+    private void text(String value, int style) throws IOException {
+        if (value == null) {
+            xml.write("<c/>");
+            return;
+        }
+        xml.write(style == 0 ? "<c t=\"inlineStr\"><is><t>" : "<c s=\"" + style + "\" t=\"inlineStr\"><is><t>");
+        writeEscaped(value);
+        xml.write("</t></is></c>");
+    }
+
+    /**
+     * 最後のシートを閉じ、ブックの定義を書いてZIPを完了します。
+     */
+    @Override
+    public void close() throws IOException {
+        if (rowOpen) {
+            endRow();
+        }
+        endSheet();
+        writeEntry("[Content_Types].xml", contentTypes());
+        writeEntry("_rels/.rels", XML_DECLARATION
+                + "<Relationships xmlns=\"" + PACKAGE_REL_NS + "\">"
+                + "<Relationship Id=\"rId1\" Type=\"" + REL_NS + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                + "</Relationships>");
+        writeEntry("xl/workbook.xml", workbook());
+        writeEntry("xl/_rels/workbook.xml.rels", workbookRelationships());
+        writeEntry("xl/styles.xml", STYLES);
+        zip.close();
+    }
+
+    // ----------------------------------------
+    // シート
+    // ----------------------------------------
+
+    private void startSheet() throws IOException {
+        sheetCount++;
+        rowsInSheet = 0;
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheetCount + ".xml"));
+        xml.write(XML_DECLARATION);
+        xml.write("<worksheet xmlns=\"" + MAIN_NS + "\">");
+        // ヘッダー行をスクロールしても表示したままにする
+        xml.write("<sheetViews><sheetView workbookViewId=\"0\">"
+                + "<pane ySplit=\"1\" topLeftCell=\"A2\" activePane=\"bottomLeft\" state=\"frozen\"/>"
+                + "</sheetView></sheetViews>");
+        xml.write("<sheetData>\n");
+        startRow();
+        for (String column : header) {
+            text(column, STYLE_HEADER);
+        }
+        endRow();
+    }
+
+    private void endSheet() throws IOException {
+        xml.write("</sheetData></worksheet>");
+        xml.flush();
+        zip.closeEntry();
+    }
+
+    private void writeEntry(String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        xml.write(content);
+        xml.flush();
+        zip.closeEntry();
+    }
+
+    private String contentTypes() {
+        StringBuilder sb = new StringBuilder(XML_DECLARATION)
+            .append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+            .append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+            .append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+            .append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>")
+            .append("<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+        for (int i = 1; i <= sheetCount; i++) {
+            sb.append("<Override PartName=\"/xl/worksheets/sheet").append(i)
+              .append(".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+        return sb.append("</Types>").toString();
+    }
+
+    private String workbook() {
+        StringBuilder sb = new StringBuilder(XML_DECLARATION)
+            .append("<workbook xmlns=\"").append(MAIN_NS).append("\" xmlns:r=\"").append(REL_NS).append("\"><sheets>");
+        for (int i = 1; i <= sheetCount; i++) {
+            String name = i == 1 ? sheetName : sheetName + " (" + i + ")";
+            sb.append("<sheet name=\"").append(escape(name)).append("\" sheetId=\"").append(i)
+              .append("\" r:id=\"rId").append(i).append("\"/>");
+        }
+        return sb.append("</sheets></workbook>").toString();
+    }
+
+    private String workbookRelationships() {
+        StringBuilder sb = new StringBuilder(XML_DECLARATION)
+            .append("<Relationships xmlns=\"").append(PACKAGE_REL_NS).append("\">");
+        for (int i = 1; i <= sheetCount; i++) {
+            sb.append("<Relationship Id=\"rId").append(i).append("\" Type=\"").append(REL_NS)
+              .append("/worksheet\" Target=\"worksheets/sheet").append(i).append(".xml\"/>");
+        }
+        sb.append("<Relationship Id=\"rId").append(sheetCount + 1).append("\" Type=\"").append(REL_NS)
+          .append("/styles\" Target=\"styles.xml\"/>");
+        return sb.append("</Relationships>").toString();
+    }
+
+    // 0: 標準、1: 日付 (numFmtId 14)、2: 太字（ヘッダー）
+    private static final String STYLES = XML_DECLARATION
+        + "<styleSheet xmlns=\"" + MAIN_NS + "\">"
+        + "<fonts count=\"2\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font>"
+        + "<font><b/><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>"
+        + "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill></fills>"
+        + "<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>"
+        + "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+        + "<cellXfs count=\"3\">"
+        + "<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+        + "<xf numFmtId=\"14\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/>"
+        + "<xf numFmtId=\"0\" fontId=\"1\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\"/>"
+        + "</cellXfs></styleSheet>";
+
+    // ----------------------------------------
+    // エスケープ
+    // ----------------------------------------
+
+    private void writeEscaped(String value) throws IOException {
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            String replacement = replacement(value.charAt(i));
+            if (replacement != null) {
+                xml.write(value, start, i - start);
+                xml.write(replacement);
+                start = i + 1;
+            }
+        }
+        xml.write(value, start, value.length() - start);
+    }
+
+    private static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            String replacement = replacement(value.charAt(i));
+            if (replacement != null) {
+                sb.append(replacement);
+            } else {
+                sb.append(value.charAt(i));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * XMLに書けない文字の置き換え先を返します（そのまま書ける場合は null）。XMLで使えない制御文字は削除します。
+     */
+    private static String replacement(char c) {
+        switch (c) {
+            case '&': return "&amp;";
+            case '<': return "&lt;";
+            case '>': return "&gt;";
+            case '"': return "&quot;";
+            case '\t':
+            case '\n':
+            case '\r':
+                return null;
+            default:
+                return c < 0x20 ? "" : null;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.CashFlowWeb;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * CategoryDAO のカテゴリ削除のテスト。
+ */
+class CategoryDAOTest {
+
+	@TempDir
+	static Path dir;
+
+	private static CategoryDAO categoryDAO;
+
+	@BeforeAll
+	static void setUp() {
+		TestDatabase.useFileIn(dir);
+		DBManager.initializeDatabase();
+		categoryDAO = new CategoryDAO();
+	}
+
+	@Test
+	void deletesUnusedCategory() {
+		int userId = TestDatabase.createUser("unused-user");
+		int id = addCategory(userId, "未使用");
+
+		assertTrue(categoryDAO.deleteCategory(userId, id));
+		assertNull(categoryDAO.getCategoryById(userId, id));
+	}
+
+	@Test
+	void keepsCategoryUsedByTransaction() {
+		int userId = TestDatabase.createUser("used-user");
+		int id = addCategory(userId, "食費");
+		assertTrue(new TransactionDAO().addTransaction(userId, LocalDate.of(2025, 6, 1), 1000, "EXPENSE", id, false, false));
+
+		assertFalse(categoryDAO.deleteCategory(userId, id));
+		assertNotNull(categoryDAO.getCategoryById(userId, id));
+	}
+
+	@Test
+	void doesNotDeleteOtherUsersCategory() {
+		int ownerId = TestDatabase.createUser("owner");
+		int otherId = TestDatabase.createUser("other");
+		int id = addCategory(ownerId, "交通費");
+
+		assertFalse(categoryDAO.deleteCategory(otherId, id));
+		assertNotNull(categoryDAO.getCategoryById(ownerId, id));
+	}
+
+	private static int addCategory(int userId, String name) {
+		assertTrue(categoryDAO.addCategory(userId, name, "EXPENSE"));
+		return categoryDAO.getAllCategories(userId).stream()
+				.filter(c -> c.getName().equals(name))
+				.findFirst()
+				.orElseThrow()
+				.getId();
+	}
+}
@@ -0,0 +1,109 @@
+package com.example.CashFlowWeb;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 条件付きGET（ETag / If-None-Match）のテスト。
+ * 変更がなければ 304 になり、DAOで書き込んだ後は同じ If-None-Match でも 200（本文あり）になることを確かめます。
+ */
+class DataVersionsTest {
+
+	@TempDir
+	static Path dir;
+
+	private static final DataVersions.Dataset[] TRANSACTION_LIST = {
+		DataVersions.Dataset.TRANSACTIONS, DataVersions.Dataset.CATEGORIES
+	};
+
+	private static int userId;
+	private static int otherUserId;
+	private static int categoryId;
+
+	@BeforeAll
+	static void setUp() {
+		TestDatabase.useFileIn(dir);
+		DBManager.initializeDatabase();
+		userId = TestDatabase.createUser("etag-user");
+		otherUserId = TestDatabase.createUser("other-user");
+		CategoryDAO categoryDAO = new CategoryDAO();
+		categoryDAO.addCategory(userId, "食費", "EXPENSE");
+		categoryId = categoryDAO.getAllCategories(userId).stream()
+				.filter(c -> c.getName().equals("食費"))
+				.findFirst()
+				.orElseThrow()
+				.getId();
+	}
+
+	@Test
+	void notModifiedUntilWrite() {
+		// 1回目: If-None-Match なし → 200 と ETag
+		Exchange first = get(null, userId);
+		assertFalse(first.notModified);
+		String etag = first.response.getHeader(HttpHeaders.ETAG);
+		assertNotNull(etag);
+		assertEquals("private, no-cache", first.response.getHeader(HttpHeaders.CACHE_CONTROL));
+
+		// 2回目: 同じETag → 304
+		Exchange second = get(etag, userId);
+		assertTrue(second.notModified);
+		assertEquals(304, second.response.getStatus());
+
+		// 他のユーザーの書き込みでは変わらない
+		new TransactionDAO().addTransaction(otherUserId, LocalDate.of(2025, 6, 15), 100, "EXPENSE", categoryId, false, false);
+		assertTrue(get(etag, userId).notModified);
+
+		// 書き込み後: 同じETag → 200 と新しいETag
+		assertTrue(new TransactionDAO().addTransaction(userId, LocalDate.of(2025, 6, 15), 100, "EXPENSE", categoryId, false, false));
+		Exchange third = get(etag, userId);
+		assertFalse(third.notModified);
+		assertEquals(200, third.response.getStatus());
+		String newEtag = third.response.getHeader(HttpHeaders.ETAG);
+		assertNotEquals(etag, newEtag);
+
+		// 新しいETagなら再び 304
+		assertTrue(get(newEtag, userId).notModified);
+	}
+
+	@Test
+	void categoryWriteChangesTransactionListEtag() {
+		String etag = DataVersions.etag(userId, TRANSACTION_LIST);
+		new CategoryDAO().addCategory(userId, "日用品", "EXPENSE");
+		assertFalse(get(etag, userId).notModified);
+	}
+
+	@Test
+	void bumpAllInvalidatesEveryUser() {
+		String etag = DataVersions.etag(otherUserId, TRANSACTION_LIST);
+		assertTrue(get(etag, otherUserId).notModified);
+		DataVersions.bumpAll();
+		assertFalse(get(etag, otherUserId).notModified);
+	}
+
+	private static Exchange get(String ifNoneMatch, int user) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/transactions");
+		if (ifNoneMatch != null) {
+			request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+		}
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		boolean notModified = DataVersions.checkNotModified(new ServletWebRequest(request, response), user, TRANSACTION_LIST);
+		return new Exchange(response, notModified);
+	}
+
+	private record Exchange(MockHttpServletResponse response, boolean notModified) {
+	}
+}
@@ -0,0 +1,72 @@
+package com.example.CashFlowWeb;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.YearMonth;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ForecastEngine のモンテカルロ予測のテスト。
+ * 最大の経路数・月数では残高を月のブロックに分けて計算するため、ブロックをまたいでも結果が連続することも確かめます。
+ */
+class ForecastEngineTest {
+
+	private static final YearMonth START = YearMonth.of(2023, 1);
+
+	private final ForecastEngine engine = new ForecastEngine();
+
+	@Test
+	void withoutNoiseEveryPercentileFollowsExpectedBalance() {
+		// 毎月同じ額なら残差は0になり、すべての経路が期待値どおりに進む
+		CategoryHistory history = history(new double[] { 1000, 1000, 1000, 1000, 1000, 1000 });
+
+		ForecastResult result = engine.forecast(history, 500, 60_000,
+				ForecastEngine.MAX_HORIZON_MONTHS, ForecastEngine.MAX_PATHS, 1L);
+
+		assertEquals(ForecastEngine.MAX_PATHS, result.getPaths());
+		double[] expected = result.getExpectedBalance();
+		assertEquals(ForecastEngine.MAX_HORIZON_MONTHS, expected.length);
+		assertEquals(500 + 1000 * ForecastEngine.MAX_HORIZON_MONTHS, expected[expected.length - 1], 1e-6);
+		assertArrayEquals(expected, result.getP10(), 1e-6);
+		assertArrayEquals(expected, result.getP50(), 1e-6);
+		assertArrayEquals(expected, result.getP90(), 1e-6);
+		// 60ヶ月目に 500 + 60000 となり、初めて目標に届く
+		double[] hit = result.getHitProbabilityByMonth();
+		assertEquals(0.0, hit[58]);
+		assertEquals(1.0, hit[59]);
+		assertEquals(1.0, hit[hit.length - 1]);
+	}
+
+	@Test
+	void sameSeedGivesSameResult() {
+		CategoryHistory history = history(new double[] { 300, -200, 800, 100, -500, 900, 50, 400, -100, 600, 200, -300 });
+
+		ForecastResult first = engine.forecast(history, 0, 2_000, 36, 3_000, 42L);
+		ForecastResult second = engine.forecast(history, 0, 2_000, 36, 3_000, 42L);
+
+		assertArrayEquals(first.getP10(), second.getP10());
+		assertArrayEquals(first.getP50(), second.getP50());
+		assertArrayEquals(first.getP90(), second.getP90());
+		assertArrayEquals(first.getHitProbabilityByMonth(), second.getHitProbabilityByMonth());
+		for (int h = 0; h < 36; h++) {
+			assertTrue(first.getP10()[h] <= first.getP50()[h] && first.getP50()[h] <= first.getP90()[h]);
+			if (h > 0) {
+				assertTrue(first.getHitProbabilityByMonth()[h - 1] <= first.getHitProbabilityByMonth()[h]);
+			}
+		}
+	}
+
+	@Test
+	void requiresMinimumHistory() {
+		assertNull(engine.forecast(history(new double[] { 100, 200 }), 0, 1_000, 12, 100, 1L));
+	}
+
+	private static CategoryHistory history(double[] series) {
+		return new CategoryHistory(START, series.length, Map.of(1, series));
+	}
+}
@@ -0,0 +1,144 @@
+package com.example.CashFlowWeb;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * GoalDAO の積立（版による競合の検出と、版を指定しない場合のやり直し）のテスト。
+ */
+class GoalDAOTest {
+
+	@TempDir
+	static Path dir;
+
+	private static GoalDAO goalDAO;
+	private static TransactionDAO transactionDAO;
+	private static CategoryDAO categoryDAO;
+
+	@BeforeAll
+	static void setUp() {
+		TestDatabase.useFileIn(dir);
+		DBManager.initializeDatabase();
+		goalDAO = new GoalDAO();
+		transactionDAO = new TransactionDAO();
+		categoryDAO = new CategoryDAO();
+	}
+
+	@Test
+	void staleVersionIsRejectedAndNothingIsWritten() {
+		int userId = TestDatabase.createUser("stale-user");
+		Goal goal = addGoal(userId, 10000);
+		int savings = categoryDAO.getSavingsCategoryId(userId);
+
+		// 別の画面で目標が更新され、版が進んだ
+		goal.setName("旅行（更新）");
+		assertTrue(goalDAO.updateGoal(userId, goal));
+
+		GoalContribution contribution = contribution(1000);
+		contribution.setVersion(goal.getVersion());
+		assertEquals(GoalDAO.ContributionResult.VERSION_CONFLICT, goalDAO.contribute(userId, goal.getId(), savings, contribution));
+
+		// 目標の現在額も「貯金」の取引も、どちらも反映されていない
+		assertEquals(0, goalDAO.getGoalById(userId, goal.getId()).getCurrentAmount(), 0.001);
+		assertEquals(0, transactionDAO.getAllTransactions(userId).size());
+
+		// 最新の版を指定し直せば積み立てられる
+		contribution.setVersion(goalDAO.getGoalById(userId, goal.getId()).getVersion());
+		assertEquals(GoalDAO.ContributionResult.CONTRIBUTED, goalDAO.contribute(userId, goal.getId(), savings, contribution));
+		Goal after = goalDAO.getGoalById(userId, goal.getId());
+		assertEquals(1000, after.getCurrentAmount(), 0.001);
+		assertEquals(contribution.getVersion() + 1, after.getVersion());
+		assertEquals(1, transactionDAO.getAllTransactions(userId).size());
+	}
+
+	@Test
+	void staleUpdateIsRejected() {
+		int userId = TestDatabase.createUser("update-user");
+		Goal goal = addGoal(userId, 10000);
+		Goal other = goalDAO.getGoalById(userId, goal.getId());
+
+		goal.setName("先に保存");
+		assertTrue(goalDAO.updateGoal(userId, goal));
+		other.setName("後から保存");
+		assertFalse(goalDAO.updateGoal(userId, other));
+		assertEquals("先に保存", goalDAO.getGoalById(userId, goal.getId()).getName());
+	}
+
+	@Test
+	void concurrentContributionsWithoutVersionAllApply() throws Exception {
+		int userId = TestDatabase.createUser("concurrent-user");
+		Goal goal = addGoal(userId, 1_000_000);
+		int savings = categoryDAO.getSavingsCategoryId(userId);
+		int threads = 8;
+		int perThread = 5;
+
+		// 版を指定しない積立は、同時に行われても（版が変わっていれば読み直してやり直し）失われずにすべて反映される
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<GoalDAO.ContributionResult>> results = new ArrayList<>();
+			for (int i = 0; i < threads * perThread; i++) {
+				results.add(executor.submit(() -> goalDAO.contribute(userId, goal.getId(), savings, contribution(0.1))));
+			}
+			for (Future<GoalDAO.ContributionResult> result : results) {
+				assertEquals(GoalDAO.ContributionResult.CONTRIBUTED, result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		Goal after = goalDAO.getGoalById(userId, goal.getId());
+		// 金額は最小単位の整数で足すため、0.1円を40回積み立てても誤差が出ない
+		assertEquals(4.0, after.getCurrentAmount());
+		assertEquals(threads * perThread, after.getVersion());
+		assertEquals(threads * perThread, transactionDAO.getAllTransactions(userId).size());
+	}
+
+	@Test
+	void contributionIsCappedAtTarget() {
+		int userId = TestDatabase.createUser("cap-user");
+		Goal goal = addGoal(userId, 1500);
+		int savings = categoryDAO.getSavingsCategoryId(userId);
+
+		assertEquals(GoalDAO.ContributionResult.CONTRIBUTED, goalDAO.contribute(userId, goal.getId(), savings, contribution(1000)));
+		assertEquals(GoalDAO.ContributionResult.CONTRIBUTED, goalDAO.contribute(userId, goal.getId(), savings, contribution(1000)));
+		assertEquals(1500, goalDAO.getGoalById(userId, goal.getId()).getCurrentAmount(), 0.001);
+	}
+
+	@Test
+	void contributionToMissingGoalIsNotFound() {
+		int userId = TestDatabase.createUser("missing-user");
+		int savings = categoryDAO.getSavingsCategoryId(userId);
+		assertEquals(GoalDAO.ContributionResult.NOT_FOUND, goalDAO.contribute(userId, Integer.MAX_VALUE, savings, contribution(100)));
+		assertEquals(0, transactionDAO.getAllTransactions(userId).size());
+	}
+
+	private static Goal addGoal(int userId, double targetAmount) {
+		Goal goal = new Goal();
+		goal.setName("旅行");
+		goal.setTargetAmount(targetAmount);
+		goal.setCurrentAmount(0);
+		goal.setTargetDate("2030-01-01");
+		goalDAO.addGoal(userId, goal);
+		return goalDAO.getAllGoals(userId).get(0);
+	}
+
+	private static GoalContribution contribution(double amount) {
+		GoalContribution contribution = new GoalContribution();
+		contribution.setAmount(amount);
+		contribution.setDate(LocalDate.of(2025, 6, 15));
+		return contribution;
+	}
+}
@@ -0,0 +1,54 @@
+package com.example.CashFlowWeb;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * マイグレーションが失敗したときに、途中のスキーマのまま起動を続けずに例外で中断することのテスト。
+ */
+class SchemaMigratorFailureTest {
+
+	@TempDir
+	static Path dir;
+
+	@BeforeAll
+	static void setUp() throws SQLException {
+		Path db = TestDatabase.useFileIn(dir);
+		// バージョン0のテーブルに、エポック日に変換できない日付の取引を入れておく（バージョン1が NOT NULL 制約で失敗する）
+		try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + db);
+			 Statement stmt = conn.createStatement()) {
+			stmt.execute("CREATE TABLE categories (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, type TEXT NOT NULL)");
+			stmt.execute("CREATE TABLE transactions (id INTEGER PRIMARY KEY AUTOINCREMENT, date TEXT NOT NULL, amount REAL NOT NULL, type TEXT NOT NULL, category_id INTEGER, is_future BOOLEAN DEFAULT FALSE, is_extraordinary BOOLEAN DEFAULT FALSE, FOREIGN KEY (category_id) REFERENCES categories(id))");
+			stmt.execute("INSERT INTO categories (id, name, type) VALUES (1, '食費', 'EXPENSE')");
+			stmt.execute("INSERT INTO transactions (date, amount, type, category_id) VALUES ('2024-03-15', 100, 'EXPENSE', 1), ('not-a-date', 200, 'EXPENSE', 1)");
+		}
+	}
+
+	@Test
+	void failedMigrationAbortsInitialization() throws SQLException {
+		DaoException e = assertThrows(DaoException.class, DBManager::initializeDatabase);
+		assertTrue(e.getOperation().contains("バージョン1"));
+
+		// 失敗したマイグレーションは記録されず、テーブルも移行前のまま残る
+		assertEquals(0, SchemaMigrator.getCurrentVersion());
+		try (Connection conn = DBManager.connect();
+			 Statement stmt = conn.createStatement();
+			 ResultSet rs = stmt.executeQuery("SELECT COUNT(*), MIN(typeof(date)) FROM transactions")) {
+			assertTrue(rs.next());
+			assertEquals(2, rs.getInt(1));
+			assertEquals("text", rs.getString(2));
+		}
+	}
+}
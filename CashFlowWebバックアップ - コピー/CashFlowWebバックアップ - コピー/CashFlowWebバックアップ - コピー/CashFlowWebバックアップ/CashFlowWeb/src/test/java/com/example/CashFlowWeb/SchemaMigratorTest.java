@@ -0,0 +1,122 @@
+package com.example.CashFlowWeb;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * バージョン0（マイグレーション導入前）のスキーマとデータから、最新バージョンまで移行できることのテスト。
+ */
+class SchemaMigratorTest {
+
+	@TempDir
+	static Path dir;
+
+	@BeforeAll
+	static void setUp() throws SQLException {
+		Path db = TestDatabase.useFileIn(dir);
+		// DBManager.createTablesSQLite と同じバージョン0のテーブルに、移行前の形式（日付は文字列、金額は円の実数）でデータを入れる
+		try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + db);
+			 Statement stmt = conn.createStatement()) {
+			stmt.execute("CREATE TABLE categories (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, type TEXT NOT NULL)");
+			stmt.execute("CREATE TABLE transactions (id INTEGER PRIMARY KEY AUTOINCREMENT, date TEXT NOT NULL, amount REAL NOT NULL, type TEXT NOT NULL, category_id INTEGER, is_future BOOLEAN DEFAULT FALSE, is_extraordinary BOOLEAN DEFAULT FALSE, FOREIGN KEY (category_id) REFERENCES categories(id))");
+			stmt.execute("CREATE TABLE assets (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, ticker_symbol TEXT, quantity REAL NOT NULL, purchase_price REAL NOT NULL, current_price REAL, asset_type TEXT NOT NULL)");
+			stmt.execute("CREATE TABLE budgets (id INTEGER PRIMARY KEY AUTOINCREMENT, year_month TEXT NOT NULL, category_id INTEGER NOT NULL, amount REAL NOT NULL, UNIQUE(year_month, category_id))");
+			stmt.execute("CREATE TABLE goals (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, target_amount REAL NOT NULL, current_amount REAL NOT NULL DEFAULT 0, target_date TEXT, image_url TEXT)");
+			stmt.execute("CREATE TABLE monthly_rollups (month TEXT NOT NULL, category_id INTEGER NOT NULL, type TEXT NOT NULL, is_extraordinary BOOLEAN NOT NULL, total_amount REAL NOT NULL DEFAULT 0, tx_count INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (month, category_id, type, is_extraordinary))");
+
+			stmt.execute("INSERT INTO categories (id, name, type) VALUES (1, '食費', 'EXPENSE'), (2, '給与', 'INCOME')");
+			stmt.execute("INSERT INTO transactions (date, amount, type, category_id, is_future, is_extraordinary) VALUES " +
+						 "('2024-03-15', 1234.56, 'EXPENSE', 1, 0, 0), " +
+						 "('2024-03-25', 250000, 'INCOME', 2, 0, 0), " +
+						 "('2024-04-01', 0.1, 'EXPENSE', 1, 0, 1), " +
+						 "('2024-05-01', 5000, 'EXPENSE', 1, 1, 0)");
+			stmt.execute("INSERT INTO budgets (year_month, category_id, amount) VALUES ('2024-03', 1, 30000.1)");
+			stmt.execute("INSERT INTO goals (name, target_amount, current_amount, target_date) VALUES ('旅行', 100000.3, 0.1, '2025-01-01')");
+		}
+
+		DBManager.initializeDatabase();
+	}
+
+	@Test
+	void migratesToLatestVersion() {
+		assertEquals(SchemaMigrator.getLatestVersion(), SchemaMigrator.getCurrentVersion());
+	}
+
+	@Test
+	void version1ConvertsDatesAndAmountsToIntegers() throws SQLException {
+		try (Connection conn = DBManager.connect();
+			 Statement stmt = conn.createStatement();
+			 ResultSet rs = stmt.executeQuery("SELECT date, typeof(date), amount, typeof(amount) FROM transactions ORDER BY id")) {
+			assertTrue(rs.next());
+			assertEquals(LocalDate.of(2024, 3, 15).toEpochDay(), rs.getLong(1));
+			assertEquals("integer", rs.getString(2));
+			assertEquals(123456, rs.getLong(3));
+			assertEquals("integer", rs.getString(4));
+			assertTrue(rs.next());
+			assertEquals(25000000, rs.getLong(3));
+			assertTrue(rs.next());
+			assertEquals(LocalDate.of(2024, 4, 1).toEpochDay(), rs.getLong(1));
+			assertEquals(10, rs.getLong(3));
+		}
+	}
+
+	@Test
+	void version1ConvertsBudgetAndGoalAmountsToIntegers() throws SQLException {
+		try (Connection conn = DBManager.connect();
+			 Statement stmt = conn.createStatement()) {
+			try (ResultSet rs = stmt.executeQuery("SELECT amount, typeof(amount) FROM budgets")) {
+				assertTrue(rs.next());
+				assertEquals(3000010, rs.getLong(1));
+				assertEquals("integer", rs.getString(2));
+			}
+			try (ResultSet rs = stmt.executeQuery("SELECT target_amount, current_amount, typeof(current_amount) FROM goals")) {
+				assertTrue(rs.next());
+				assertEquals(10000030, rs.getLong(1));
+				assertEquals(10, rs.getLong(2));
+				assertEquals("integer", rs.getString(3));
+			}
+		}
+	}
+
+	@Test
+	void version2HandsExistingDataToFirstUser() throws SQLException {
+		// ユーザーがいない状態で移行したデータは所有者なしで残り、最初に登録したユーザーが引き継ぐ
+		int userId = TestDatabase.createUser("first");
+
+		assertEquals(4, new TransactionDAO().getAllTransactions(userId).size());
+		assertEquals(2, countWhere("categories", "user_id = " + userId));
+		assertEquals(0, countWhere("transactions", "user_id IS NULL"));
+		assertEquals(1, new GoalDAO().getAllGoals(userId).size());
+
+		// 引き継いだ取引から月次集計が作り直されている（予定の取引は含まない）
+		RollupDAO rollupDAO = new RollupDAO();
+		assertTrue(rollupDAO.checkConsistency().getConsistent());
+		assertEquals(250000 - 1234.56 - 0.1, rollupDAO.calculateBalance(userId), 0.001);
+		assertEquals(1, countWhere("monthly_rollups", "user_id = " + userId + " AND month = '2024-03' AND type = 'EXPENSE' AND total_amount = 123456"));
+
+		// 2人目のユーザーには引き継がれない
+		int secondId = TestDatabase.createUser("second");
+		assertTrue(new TransactionDAO().getAllTransactions(secondId).isEmpty());
+	}
+
+	private static int countWhere(String table, String condition) throws SQLException {
+		try (Connection conn = DBManager.connect();
+			 Statement stmt = conn.createStatement();
+			 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table + " WHERE " + condition)) {
+			rs.next();
+			return rs.getInt(1);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package com.example.CashFlowWeb;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SqliteWriteQueue のグループコミットのテスト。
+ * 書き込みスレッドを止めている間に積んだ書き込みが1回のコミットにまとまり、
+ * 失敗した1件だけがセーブポイントまで取り消されることを確かめます。
+ */
+class SqliteWriteQueueTest {
+
+	@TempDir
+	Path dir;
+
+	private String url;
+	private SqliteWriteQueue queue;
+
+	/**
+	 * 呼び出し元が型で見分ける例外（GoalDAO.ContributionRejected と同じ使い方）。
+	 */
+	private static final class Rejected extends SQLException {
+		Rejected() {
+			super("rejected");
+		}
+	}
+
+	@BeforeEach
+	void setUp() throws SQLException {
+		url = "jdbc:sqlite:" + dir.resolve("queue-test.db");
+		try (Connection conn = DriverManager.getConnection(url); Statement stmt = conn.createStatement()) {
+			stmt.execute("CREATE TABLE items (id INTEGER PRIMARY KEY, name TEXT NOT NULL)");
+		}
+		queue = new SqliteWriteQueue(url, 100, 100, 5_000);
+	}
+
+	@Test
+	void failedTaskRollsBackOnlyItsOwnWork() throws Exception {
+		CountDownLatch release = blockWriter();
+
+		// 成功・失敗・成功の3件を同じバッチに積む
+		CompletableFuture<Integer> first = queue.submit(conn -> insert(conn, 1, "first"));
+		CompletableFuture<Boolean> firstVisible = first.thenApply(r -> rowExists(1));
+		CompletableFuture<Integer> failing = queue.submit(conn -> {
+			insert(conn, 2, "failing");
+			throw new Rejected();
+		});
+		CompletableFuture<Integer> third = queue.submit(conn -> insert(conn, 3, "third"));
+		CompletableFuture<Boolean> thirdVisible = third.thenApply(r -> rowExists(3));
+		release.countDown();
+
+		assertEquals(1, first.get(10, TimeUnit.SECONDS));
+		assertEquals(1, third.get(10, TimeUnit.SECONDS));
+		assertTrue(failing.isCompletedExceptionally());
+
+		// 失敗した書き込みの行だけが取り消され、他の2件は同じコミットで反映されている
+		assertEquals(List.of(1, 3), ids());
+		// 成功した書き込みの Future は、別の接続から行が見える（コミット済みの）状態で完了している
+		assertTrue(firstVisible.get(10, TimeUnit.SECONDS));
+		assertTrue(thirdVisible.get(10, TimeUnit.SECONDS));
+
+		WriteQueueStats stats = queue.getStats();
+		assertEquals(2, stats.getCommits());
+		assertEquals(3, stats.getMaxBatchSize());
+		assertEquals(1, stats.getFailedWrites());
+	}
+
+	@Test
+	void executeRethrowsOriginalExceptionType() throws Exception {
+		Rejected rejected = new Rejected();
+		SQLException thrown = assertThrows(SQLException.class, () -> queue.execute(conn -> {
+			insert(conn, 1, "rejected");
+			throw rejected;
+		}));
+		// ExecutionException などで包まずに、投げた例外そのものを返す（呼び出し元は型で catch する）
+		assertSame(rejected, thrown);
+		assertTrue(ids().isEmpty());
+
+		// キューはそのまま使い続けられる
+		int inserted = queue.execute(conn -> insert(conn, 2, "next"));
+		assertEquals(1, inserted);
+		assertEquals(List.of(2), ids());
+	}
+
+	// ----------------------------------------
+	// ヘルパー
+	// ----------------------------------------
+
+	/**
+	 * 書き込みスレッドを止めておき、返したラッチを下ろすまで後続の書き込みをキューに溜めます。
+	 */
+	private CountDownLatch blockWriter() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		queue.submit(conn -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return null;
+		});
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		return release;
+	}
+
+	private static int insert(Connection conn, int id, String name) throws SQLException {
+		try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO items (id, name) VALUES (?, ?)")) {
+			pstmt.setInt(1, id);
+			pstmt.setString(2, name);
+			return pstmt.executeUpdate();
+		}
+	}
+
+	private List<Integer> ids() throws SQLException {
+		List<Integer> ids = new ArrayList<>();
+		try (Connection conn = DriverManager.getConnection(url);
+			 Statement stmt = conn.createStatement();
+			 ResultSet rs = stmt.executeQuery("SELECT id FROM items ORDER BY id")) {
+			while (rs.next()) {
+				ids.add(rs.getInt(1));
+			}
+		}
+		return ids;
+	}
+
+	private boolean rowExists(int id) {
+		try {
+			return ids().contains(id);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+}
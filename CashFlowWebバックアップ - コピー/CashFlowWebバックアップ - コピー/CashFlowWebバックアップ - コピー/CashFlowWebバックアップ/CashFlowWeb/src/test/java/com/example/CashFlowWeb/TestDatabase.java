@@ -0,0 +1,33 @@
+package com.example.CashFlowWeb;
+
+import java.nio.file.Path;
+
+/**
+ * DAOのテスト用に、一時ディレクトリのSQLiteファイルへ接続させるためのヘルパー。
+ * DBManager は最初に読み込まれたときに接続先を決めるため、テストクラスごとに別のJVMで実行します（pom.xml の surefire 設定）。
+ */
+final class TestDatabase {
+
+	private TestDatabase() {
+	}
+
+	/**
+	 * 接続先を dir 内の新しいファイルにします。DBManager を使う前に呼んでください。
+	 */
+	static Path useFileIn(Path dir) {
+		Path db = dir.resolve("cashflow-test.db");
+		System.setProperty("cashflow.sqlite.path", db.toString());
+		return db;
+	}
+
+	/**
+	 * ユーザーを登録し、そのIDを返します（最初のユーザーは管理者になり、所有者のないデータを引き継ぎます）。
+	 */
+	static int createUser(String username) {
+		UserDAO userDAO = new UserDAO();
+		if (!userDAO.saveUser(new User(username, "-"))) {
+			throw new IllegalStateException("ユーザーを登録できませんでした: " + username);
+		}
+		return userDAO.findByUsername(username).getId();
+	}
+}
@@ -0,0 +1,281 @@
+package com.example.CashFlowWeb;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * TransactionDAO の月次集計の更新、キーセット方式のページ取得、まとめて登録・反映する処理のテスト。
+ * テストごとに別のユーザーを使い、互いのデータが混ざらないようにします。
+ */
+class TransactionDAOTest {
+
+	@TempDir
+	static Path dir;
+
+	private static final LocalDate DAY = LocalDate.of(2025, 6, 15);
+
+	private static TransactionDAO transactionDAO;
+	private static RollupDAO rollupDAO;
+	private static CategoryDAO categoryDAO;
+
+	@BeforeAll
+	static void setUp() {
+		TestDatabase.useFileIn(dir);
+		DBManager.initializeDatabase();
+		transactionDAO = new TransactionDAO();
+		rollupDAO = new RollupDAO();
+		categoryDAO = new CategoryDAO();
+	}
+
+	@Test
+	void rollupsFollowAddUpdateAndDelete() {
+		int userId = TestDatabase.createUser("rollup-user");
+		int food = addCategory(userId, "食費", "EXPENSE");
+		int salary = addCategory(userId, "給与", "INCOME");
+
+		assertTrue(transactionDAO.addTransaction(userId, DAY, 300000, "INCOME", salary, false, false));
+		assertTrue(transactionDAO.addTransaction(userId, DAY, 1234.56, "EXPENSE", food, false, false));
+		assertTrue(transactionDAO.addTransaction(userId, DAY.minusMonths(1), 999.99, "EXPENSE", food, false, true));
+		// 予定の取引は集計に含まれない
+		assertTrue(transactionDAO.addTransaction(userId, DAY.plusMonths(1), 50000, "EXPENSE", food, true, false));
+		assertConsistent();
+		assertEquals(300000 - 1234.56 - 999.99, rollupDAO.calculateBalance(userId), 0.001);
+
+		// 月・金額・区分をまたぐ更新では、元の集計行から引いて新しい集計行に足す
+		Transaction expense = findByAmount(userId, 1234.56);
+		assertTrue(transactionDAO.updateTransaction(userId, expense.getId(), DAY.minusMonths(2), 2000, "INCOME", salary, false, false));
+		assertConsistent();
+		assertEquals(300000 + 2000 - 999.99, rollupDAO.calculateBalance(userId), 0.001);
+
+		// 予定を確定させると集計に入る
+		Transaction planned = findByAmount(userId, 50000);
+		assertTrue(transactionDAO.updateTransaction(userId, planned.getId(), DAY.plusMonths(1), 50000, "EXPENSE", food, false, false));
+		assertConsistent();
+		assertEquals(300000 + 2000 - 999.99 - 50000, rollupDAO.calculateBalance(userId), 0.001);
+
+		assertTrue(transactionDAO.deleteTransaction(userId, planned.getId()));
+		assertTrue(transactionDAO.deleteTransaction(userId, findByAmount(userId, 999.99).getId()));
+		assertConsistent();
+		assertEquals(300000 + 2000, rollupDAO.calculateBalance(userId), 0.001);
+	}
+
+	@Test
+	void rollupsFollowBatch() {
+		int userId = TestDatabase.createUser("batch-user");
+		int food = addCategory(userId, "食費", "EXPENSE");
+		assertTrue(transactionDAO.addTransaction(userId, DAY, 100, "EXPENSE", food, false, false));
+		assertTrue(transactionDAO.addTransaction(userId, DAY, 200, "EXPENSE", food, false, false));
+		int first = findByAmount(userId, 100).getId();
+		int second = findByAmount(userId, 200).getId();
+
+		TransactionBatchRequest request = batch(false,
+				create(new Transaction(DAY.minusMonths(1), 300, "EXPENSE", food, false, false)),
+				update(first, new Transaction(DAY, 150, "EXPENSE", food, false, false)),
+				// 同じ取引への複数の操作は最後の状態にまとめられる
+				update(first, new Transaction(DAY.plusMonths(1), 175, "EXPENSE", food, false, true)),
+				delete(second));
+		TransactionBatchResult result = apply(userId, request);
+
+		assertTrue(result.getCommitted());
+		assertEquals(4, result.getSucceeded());
+		assertConsistent();
+		assertEquals(-(300 + 175), rollupDAO.calculateBalance(userId), 0.001);
+		assertEquals(2, transactionDAO.getAllTransactions(userId).size());
+	}
+
+	@Test
+	void atomicBatchWithFailureWritesNothing() {
+		int userId = TestDatabase.createUser("atomic-user");
+		int food = addCategory(userId, "食費", "EXPENSE");
+		assertTrue(transactionDAO.addTransaction(userId, DAY, 100, "EXPENSE", food, false, false));
+		int existing = findByAmount(userId, 100).getId();
+
+		TransactionBatchRequest request = batch(true,
+				create(new Transaction(DAY, 500, "EXPENSE", food, false, false)),
+				update(existing, new Transaction(DAY, 999, "EXPENSE", food, false, false)),
+				delete(Integer.MAX_VALUE));
+		TransactionBatchResult result = apply(userId, request);
+
+		assertFalse(result.getCommitted());
+		assertEquals(0, result.getSucceeded());
+		assertEquals(TransactionBatchResult.Status.NOT_FOUND, result.getResults().get(2).getStatus());
+		assertEquals(TransactionBatchResult.Status.ROLLED_BACK, result.getResults().get(0).getStatus());
+		List<Transaction> rows = transactionDAO.getAllTransactions(userId);
+		assertEquals(1, rows.size());
+		assertEquals(100, rows.get(0).getAmount(), 0.001);
+		assertConsistent();
+		assertEquals(-100, rollupDAO.calculateBalance(userId), 0.001);
+	}
+
+	@Test
+	void failureInSameTransactionRollsBackInsertsAndRollups() {
+		int userId = TestDatabase.createUser("rollback-user");
+		int food = addCategory(userId, "食費", "EXPENSE");
+		List<Transaction> rows = List.of(
+				new Transaction(DAY, 100, "EXPENSE", food, false, false),
+				new Transaction(DAY.minusMonths(1), 200, "EXPENSE", food, false, false));
+
+		assertThrows(SQLException.class, () -> transactionDAO.addTransactions(userId, rows, conn -> {
+			throw new SQLException("同じトランザクションの後続の処理が失敗した");
+		}));
+
+		assertTrue(transactionDAO.getAllTransactions(userId).isEmpty());
+		assertConsistent();
+		assertEquals(0, rollupDAO.calculateBalance(userId), 0.001);
+	}
+
+	@Test
+	void keysetPagesVisitEveryRowOnceAcrossSameDate() {
+		int userId = TestDatabase.createUser("page-user");
+		int food = addCategory(userId, "食費", "EXPENSE");
+		// 同じ日付に5件、前日に2件、さらに前月に1件
+		for (int i = 1; i <= 5; i++) {
+			assertTrue(transactionDAO.addTransaction(userId, DAY, i, "EXPENSE", food, false, false));
+		}
+		assertTrue(transactionDAO.addTransaction(userId, DAY.minusDays(1), 6, "EXPENSE", food, false, false));
+		assertTrue(transactionDAO.addTransaction(userId, DAY.minusDays(1), 7, "EXPENSE", food, false, false));
+		assertTrue(transactionDAO.addTransaction(userId, DAY.minusMonths(1), 8, "EXPENSE", food, false, false));
+
+		List<Integer> expected = transactionDAO.getAllTransactions(userId).stream()
+				.sorted(Comparator.comparing(Transaction::getDate).thenComparing(Transaction::getId).reversed())
+				.map(Transaction::getId)
+				.toList();
+		assertEquals(8, expected.size());
+
+		// 件数ちょうどで終わるページ（8件を4件ずつ・8件ずつ）や、1件だけの最終ページも含めて確かめる
+		for (int limit = 1; limit <= 9; limit++) {
+			List<Integer> visited = new ArrayList<>();
+			TransactionPage.Cursor cursor = null;
+			int pages = 0;
+			while (true) {
+				TransactionPage page = transactionDAO.getTransactionPage(userId, null, null, null, null, cursor, limit);
+				pages++;
+				assertTrue(pages <= expected.size() + 1, "カーソルが進まない (limit=" + limit + ")");
+				assertTrue(page.getItems().size() <= limit);
+				page.getItems().forEach(t -> visited.add(t.getId()));
+				if (!page.getHasMore()) {
+					break;
+				}
+				assertEquals(limit, page.getItems().size(), "続きがあるページは満杯になる");
+				Transaction last = page.getItems().get(page.getItems().size() - 1);
+				cursor = new TransactionPage.Cursor(last.getDate(), last.getId());
+			}
+			assertEquals(expected, visited, "limit=" + limit);
+			assertEquals((expected.size() + limit - 1) / limit, pages, "最後のページの後に空のページを返さない (limit=" + limit + ")");
+		}
+	}
+
+	@Test
+	void keysetPageAfterLastRowIsEmpty() {
+		int userId = TestDatabase.createUser("last-page-user");
+		int food = addCategory(userId, "食費", "EXPENSE");
+		assertTrue(transactionDAO.addTransaction(userId, DAY, 1, "EXPENSE", food, false, false));
+		Transaction only = transactionDAO.getAllTransactions(userId).get(0);
+
+		TransactionPage page = transactionDAO.getTransactionPage(userId, null, null, null, null,
+				new TransactionPage.Cursor(only.getDate(), only.getId()), 10);
+		assertTrue(page.getItems().isEmpty());
+		assertFalse(page.getHasMore());
+	}
+
+	@Test
+	void streamReturnsSameRowsAsList() throws Exception {
+		int userId = TestDatabase.createUser("stream-user");
+		int food = addCategory(userId, "食費", "EXPENSE");
+		for (int i = 1; i <= 20; i++) {
+			assertTrue(transactionDAO.addTransaction(userId, DAY.minusDays(i % 3), i, "EXPENSE", food, false, false));
+		}
+		List<Integer> streamed = new ArrayList<>();
+		transactionDAO.streamFilteredTransactions(userId, null, null, null, null, t -> streamed.add(t.getId()));
+
+		List<Integer> listed = transactionDAO.getFilteredTransactions(userId, null, null, null, null).stream()
+				.map(Transaction::getId)
+				.toList();
+		assertEquals(listed, streamed);
+		Set<Integer> unique = new HashSet<>(streamed);
+		assertEquals(20, unique.size());
+	}
+
+	// ----------------------------------------
+	// ヘルパー
+	// ----------------------------------------
+
+	private static int addCategory(int userId, String name, String type) {
+		assertTrue(categoryDAO.addCategory(userId, name, type));
+		return categoryDAO.getAllCategories(userId).stream()
+				.filter(c -> c.getName().equals(name) && c.getType().equals(type))
+				.findFirst()
+				.orElseThrow()
+				.getId();
+	}
+
+	private static Transaction findByAmount(int userId, double amount) {
+		Transaction found = transactionDAO.getAllTransactions(userId).stream()
+				.filter(t -> Math.abs(t.getAmount() - amount) < 0.001)
+				.findFirst()
+				.orElse(null);
+		assertNotNull(found, "金額 " + amount + " の取引");
+		return found;
+	}
+
+	private static void assertConsistent() {
+		RollupCheckResult check = rollupDAO.checkConsistency();
+		assertTrue(check.getConsistent(), () -> "集計が取引と食い違っている: " + check.getMismatches().stream()
+				.map(m -> m.getGroup() + " expected=" + m.getExpectedAmount() + "/" + m.getExpectedCount()
+						+ " actual=" + m.getActualAmount() + "/" + m.getActualCount())
+				.toList());
+	}
+
+	private static TransactionBatchRequest batch(boolean atomic, TransactionBatchRequest.Operation... operations) {
+		TransactionBatchRequest request = new TransactionBatchRequest();
+		request.setAtomic(atomic);
+		request.setOperations(List.of(operations));
+		return request;
+	}
+
+	private static TransactionBatchResult apply(int userId, TransactionBatchRequest request) {
+		TransactionBatchResult result = new TransactionBatchResult(request.getAtomic());
+		for (int i = 0; i < request.getOperations().size(); i++) {
+			TransactionBatchRequest.Operation op = request.getOperations().get(i);
+			result.add(i, op.getRef(), op.getOp(), op.getId());
+		}
+		transactionDAO.applyBatch(userId, request, result);
+		return result;
+	}
+
+	private static TransactionBatchRequest.Operation create(Transaction transaction) {
+		return operation("CREATE", null, transaction);
+	}
+
+	private static TransactionBatchRequest.Operation update(int id, Transaction transaction) {
+		return operation("UPDATE", id, transaction);
+	}
+
+	private static TransactionBatchRequest.Operation delete(int id) {
+		return operation("DELETE", id, null);
+	}
+
+	private static TransactionBatchRequest.Operation operation(String kind, Integer id, Transaction transaction) {
+		TransactionBatchRequest.Operation op = new TransactionBatchRequest.Operation();
+		op.setOp(kind);
+		op.setId(id);
+		op.setTransaction(transaction);
+		return op;
+	}
+}
@@ -0,0 +1,205 @@
+package com.example.CashFlowWeb;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * TransactionImporter のCSV/OFXの読み込み、行エラーの記録、チャンク単位の登録のテスト。
+ * テストごとに別のユーザーを使い、互いのデータが混ざらないようにします。
+ */
+class TransactionImporterTest {
+
+	@TempDir
+	static Path dir;
+
+	private static TransactionDAO transactionDAO;
+	private static RollupDAO rollupDAO;
+	private static CategoryDAO categoryDAO;
+
+	@BeforeAll
+	static void setUp() {
+		TestDatabase.useFileIn(dir);
+		DBManager.initializeDatabase();
+		transactionDAO = new TransactionDAO();
+		rollupDAO = new RollupDAO();
+		categoryDAO = new CategoryDAO();
+	}
+
+	@Test
+	void csvHandlesQuotedCommasQuotesAndNewlines() throws Exception {
+		int userId = TestDatabase.createUser("csv-user");
+		int dining = addCategory(userId, "外食, \"カフェ\"", "EXPENSE");
+		int salary = addCategory(userId, "給与", "INCOME");
+		String csv = "﻿date,amount,type,category,memo\r\n"
+				+ "2025/06/01,\"1,200\",支出,\"外食, \"\"カフェ\"\"\",\"1行目\r\n2行目\"\r\n"
+				+ "\r\n"
+				+ "2025-06-25,300000,,給与,\"給与, 6月分\"\r\n"
+				+ "2025-06-30,-800,,\"外食, \"\"カフェ\"\"\",\r\n"
+				+ "2025-13-01,100,EXPENSE,\"外食, \"\"カフェ\"\"\",\"日付が\n不正\"\r\n"
+				+ "2025-07-01,abc,EXPENSE,\"外食, \"\"カフェ\"\"\",\r\n";
+
+		ImportResult result = importerFor(userId).importCsv(new StringReader(csv), null);
+
+		assertTrue(result.getFinished());
+		assertEquals(5, result.getProcessedRows());
+		assertEquals(3, result.getInsertedRows());
+		assertEquals(2, result.getFailedRows());
+		// 引用符内の改行の分も数えた、元ファイルでの行番号を返す
+		assertEquals(List.of(7L, 9L), result.getErrors().stream().map(ImportResult.RowError::getLine).toList());
+
+		List<Transaction> expenses = byDate(userId, dining);
+		assertEquals(2, expenses.size());
+		assertEquals(LocalDate.of(2025, 6, 1), expenses.get(0).getDate());
+		assertEquals(1200, expenses.get(0).getAmount(), 0.001);
+		// type列が空なら金額の符号で区分を決め、金額は絶対値で登録する
+		assertEquals("EXPENSE", expenses.get(1).getType());
+		assertEquals(800, expenses.get(1).getAmount(), 0.001);
+		assertEquals(300000, byDate(userId, salary).get(0).getAmount(), 0.001);
+		assertConsistent();
+	}
+
+	@Test
+	void csvWithoutRequiredColumnsReportsHeaderError() throws Exception {
+		int userId = TestDatabase.createUser("header-user");
+		ImportResult result = importerFor(userId).importCsv(new StringReader("日付,メモ\n2025-06-01,x\n"), null);
+
+		assertEquals(0, result.getProcessedRows());
+		assertEquals(1, result.getFailedRows());
+		assertEquals(1L, result.getErrors().get(0).getLine());
+	}
+
+	@Test
+	void ofxReadsSgmlAndXmlStatements() throws Exception {
+		int userId = TestDatabase.createUser("ofx-user");
+		int food = addCategory(userId, "食費", "EXPENSE");
+		int other = addCategory(userId, "その他", "INCOME");
+		String ofx = "OFXHEADER:100\n"
+				+ "DATA:OFXSGML\n\n"
+				+ "<OFX><BANKMSGSRSV1><STMTTRNRS><STMTRS><BANKTRANLIST>\n"
+				+ "<STMTTRN>\n<TRNTYPE>DEBIT\n<DTPOSTED>20250615120000[+9:JST]\n<TRNAMT>-1500.50\n<NAME>食費\n</STMTTRN>\n"
+				+ "<STMTTRN><TRNTYPE>CREDIT</TRNTYPE><DTPOSTED>20250625</DTPOSTED><TRNAMT>250000</TRNAMT>"
+				+ "<NAME>知らない入金</NAME></STMTTRN>\n"
+				+ "<STMTTRN>\n<TRNTYPE>DEBIT\n<TRNAMT>-100\n</STMTTRN>\n"
+				+ "</BANKTRANLIST></STMTRS></STMTTRNRS></BANKMSGSRSV1></OFX>\n";
+
+		ImportResult result = importerFor(userId).importOfx(new StringReader(ofx), other, null);
+
+		assertEquals(3, result.getProcessedRows());
+		assertEquals(2, result.getInsertedRows());
+		// OFXでは明細の通し番号をエラー位置として返す
+		assertEquals(3L, result.getErrors().get(0).getLine());
+
+		Transaction expense = byDate(userId, food).get(0);
+		assertEquals(LocalDate.of(2025, 6, 15), expense.getDate());
+		assertEquals(1500.50, expense.getAmount(), 0.001);
+		assertEquals("EXPENSE", expense.getType());
+		// NAME がカテゴリと一致しなければ既定のカテゴリに入る
+		Transaction income = byDate(userId, other).get(0);
+		assertEquals(250000, income.getAmount(), 0.001);
+		assertEquals("INCOME", income.getType());
+		assertConsistent();
+	}
+
+	@Test
+	void reportedErrorsAreCappedButAllFailuresAreCounted() throws Exception {
+		int userId = TestDatabase.createUser("error-user");
+		StringBuilder csv = new StringBuilder("date,amount,category\n");
+		for (int i = 0; i < 1500; i++) {
+			csv.append("2025-06-01,x,どこにもない\n");
+		}
+
+		List<ImportResult> progress = new ArrayList<>();
+		ImportResult result = importerFor(userId).importCsv(new StringReader(csv.toString()), progress::add);
+
+		assertEquals(1500, result.getProcessedRows());
+		assertEquals(0, result.getInsertedRows());
+		assertEquals(1500, result.getFailedRows());
+		assertEquals(1000, result.getErrors().size());
+		assertEquals(2L, result.getErrors().get(0).getLine());
+		// 登録する行がなければ進捗も通知しない
+		assertTrue(progress.isEmpty());
+	}
+
+	@Test
+	void failedChunkIsRolledBackWithoutAffectingOtherChunks() throws Exception {
+		int userId = TestDatabase.createUser("chunk-user");
+		int food = addCategory(userId, "食費", "EXPENSE");
+		int rejected = addCategory(userId, "拒否", "EXPENSE");
+		// 1チャンク目の途中の1行だけDBで失敗させる
+		try (Connection conn = DBManager.connect(); Statement stmt = conn.createStatement()) {
+			stmt.execute("CREATE TRIGGER reject_import BEFORE INSERT ON transactions WHEN NEW.category_id = " + rejected
+					+ " BEGIN SELECT RAISE(ABORT, 'rejected'); END");
+		}
+		StringBuilder csv = new StringBuilder("date,amount,category_id\n");
+		for (int i = 1; i <= 5_001; i++) {
+			csv.append("2025-06-01,-10,").append(i == 100 ? rejected : food).append('\n');
+		}
+
+		List<Long> progressRows = new ArrayList<>();
+		List<List<ImportResult.RowError>> progressErrors = new ArrayList<>();
+		ImportResult result;
+		try {
+			result = importerFor(userId).importCsv(new StringReader(csv.toString()), p -> {
+				progressRows.add(p.getProcessedRows());
+				progressErrors.add(p.getErrors());
+			});
+		} finally {
+			try (Connection conn = DBManager.connect(); Statement stmt = conn.createStatement()) {
+				stmt.execute("DROP TRIGGER reject_import");
+			}
+		}
+
+		assertEquals(List.of(5_000L, 5_001L), progressRows);
+		// 進捗通知にはエラー一覧を含めない
+		assertNull(progressErrors.get(0));
+		assertEquals(5_001, result.getProcessedRows());
+		// 失敗した1チャンク目は全行がエラーになり、1件も登録されない
+		assertEquals(1, result.getInsertedRows());
+		assertEquals(5_000, result.getFailedRows());
+		assertTrue(result.getErrors().get(0).getMessage().startsWith("DB登録エラー"));
+		assertEquals(1, transactionDAO.getFilteredTransactions(userId, null, null, food, null).size());
+		assertEquals(-10, rollupDAO.calculateBalance(userId), 0.001);
+		assertConsistent();
+	}
+
+	// ----------------------------------------
+	// ヘルパー
+	// ----------------------------------------
+
+	private static TransactionImporter importerFor(int userId) {
+		return new TransactionImporter(transactionDAO, categoryDAO, userId);
+	}
+
+	private static int addCategory(int userId, String name, String type) {
+		assertTrue(categoryDAO.addCategory(userId, name, type));
+		return categoryDAO.getAllCategories(userId).stream()
+				.filter(c -> c.getName().equals(name) && c.getType().equals(type))
+				.findFirst()
+				.orElseThrow()
+				.getId();
+	}
+
+	private static List<Transaction> byDate(int userId, int categoryId) {
+		List<Transaction> rows = new ArrayList<>(transactionDAO.getFilteredTransactions(userId, null, null, categoryId, null));
+		rows.sort(Comparator.comparing(Transaction::getDate));
+		return rows;
+	}
+
+	private static void assertConsistent() {
+		assertTrue(rollupDAO.checkConsistency().getConsistent());
+	}
+}